@@ -0,0 +1,55 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An entry of a {@link BTreeInternalPage}: a key, the values of the key
+ * fields of the tree in order, and the pages of its two children.  All
+ * keys in the subtree of the left child are less than or equal to the
+ * key, and all keys in the subtree of the right child are greater than or
+ * equal to it.  Adjacent entries of a page share a child:
+ * the right child of one is the left child of the next.
+ */
+public class BTreeEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Field[] key;
+    private BTreePageId leftChild;
+    private BTreePageId rightChild;
+
+    public BTreeEntry(Field[] key, BTreePageId leftChild, BTreePageId rightChild) {
+        this.key = key;
+        this.leftChild = leftChild;
+        this.rightChild = rightChild;
+    }
+
+    public Field[] getKey() {
+        return key;
+    }
+
+    public BTreePageId getLeftChild() {
+        return leftChild;
+    }
+
+    public BTreePageId getRightChild() {
+        return rightChild;
+    }
+
+    public void setKey(Field[] key) {
+        this.key = key;
+    }
+
+    public void setLeftChild(BTreePageId leftChild) {
+        this.leftChild = leftChild;
+    }
+
+    public void setRightChild(BTreePageId rightChild) {
+        this.rightChild = rightChild;
+    }
+
+    public String toString() {
+        return "[" + leftChild.getPageNumber() + "|" + Arrays.toString(key) + "|" + rightChild.getPageNumber() + "]";
+    }
+}
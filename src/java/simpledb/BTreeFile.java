@@ -0,0 +1,911 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BTreeFile is a DbFile that stores the tuples of a table in a B+ tree on
+ * one of its fields, the key.  Whole tuples are stored in the leaves
+ * ({@link BTreeLeafPage}) in key order, and the leaves are linked to their
+ * siblings, so a scan returns the tuples in key order and a lookup or a
+ * range scan reads only the internal pages ({@link BTreeInternalPage}) on
+ * one path from the root plus the leaves that hold the range; see
+ * {@link #indexIterator} and {@link IndexScan}.  Keys need not be unique.
+ * A tree may also be keyed on more than one field: the tuples are then
+ * ordered by the key, then by the other key fields in turn, and the
+ * internal pages hold the values of all of them, so a tuple whose key
+ * fields are unique is found by one descent, see {@link #deleteKey}.
+ * <p>
+ * Page 0 of the file is a {@link BTreeRootPtrPage}; the other pages follow,
+ * BufferPool.getPageSize() bytes each.  A new file starts out as the root
+ * pointer and one empty leaf.  Pages freed by merges are recorded in a
+ * chain of {@link BTreeHeaderPage}s and reused by later splits.
+ * <p>
+ * All pages are read and written through the BufferPool, so the tree is
+ * locked and logged like any other table: a lookup takes shared locks on
+ * the pages on its path, and an update takes exclusive locks on the pages
+ * it changes.  Pages do not point to their parents; an update remembers
+ * the path it descended instead, so a split doesn't have to update (and
+ * lock) the pages it moves.
+ *
+ * @see IndexScan
+ */
+public class BTreeFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final int[] keyFields;
+    private final int tableid;
+
+    // incremented by every insert and delete, so iterators notice that the
+    // leaves they have recorded may have changed
+    private final AtomicLong modCount = new AtomicLong();
+    // freed pages by the transaction that freed them; a transaction does
+    // not reuse its own freed pages, which it may need back if it aborts
+    private final Map<Integer, TransactionId> freedBy = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a B+ tree file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this
+     *            B+ tree; it is created if it doesn't exist yet
+     * @param key
+     *            the field the tree is keyed on
+     * @param td
+     *            the tuple descriptor of tuples in the file
+     */
+    public BTreeFile(File f, int key, TupleDesc td) {
+        this(f, new int[]{key}, td);
+    }
+
+    /**
+     * Constructs a B+ tree file keyed on more than one field.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this
+     *            B+ tree; it is created if it doesn't exist yet
+     * @param keyFields
+     *            the fields the tree is keyed on, in order; the first is
+     *            the key that index predicates apply to
+     * @param td
+     *            the tuple descriptor of tuples in the file
+     */
+    public BTreeFile(File f, int[] keyFields, TupleDesc td) {
+        if (keyFields.length == 0) {
+            throw new IllegalArgumentException("no key fields");
+        }
+        for (int key : keyFields) {
+            if (key < 0 || key >= td.numFields()) {
+                throw new IllegalArgumentException("no field " + key + " in " + td);
+            }
+        }
+        this.f = f;
+        this.td = td;
+        this.keyFields = keyFields.clone();
+        this.tableid = f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the File backing this BTreeFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this BTreeFile, the hash code of
+     * the absolute file name, as for a HeapFile.
+     */
+    public int getId() {
+        return tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the index of the field the tree is keyed on
+     */
+    public int keyField() {
+        return keyFields[0];
+    }
+
+    /**
+     * @return the indexes of the fields the tree is keyed on, the key
+     *   first
+     */
+    public int[] keyFields() {
+        return keyFields.clone();
+    }
+
+    /**
+     * Returns the number of pages in this file, not counting the root
+     * pointer page.
+     */
+    public int numPages() {
+        return (int) Math.max(0, f.length() / BufferPool.getPageSize() - 1);
+    }
+
+    // writes the root pointer and an empty leaf if the file is new
+    private synchronized void init() throws IOException {
+        if (f.length() > 0) {
+            return;
+        }
+        try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+            w.write(BTreeRootPtrPage.createPageData(1, BTreePageId.LEAF));
+            w.write(BTreePage.createEmptyPageData());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        BTreePageId id = (BTreePageId) pid;
+        byte[] data = new byte[BufferPool.getPageSize()];
+        synchronized (this) {
+            try {
+                init();
+                if (id.getPageNumber() < 0 || id.getPageNumber() > numPages()) {
+                    throw new IllegalArgumentException("no page " + id.getPageNumber() + " in " + f);
+                }
+                try (RandomAccessFile r = new RandomAccessFile(f, "r")) {
+                    r.seek((long) id.getPageNumber() * BufferPool.getPageSize());
+                    r.readFully(data);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new IllegalArgumentException();
+            }
+        }
+        try {
+            switch (id.pgcateg()) {
+                case BTreePageId.ROOT_PTR:
+                    return new BTreeRootPtrPage(id, data);
+                case BTreePageId.INTERNAL:
+                    return new BTreeInternalPage(id, data);
+                case BTreePageId.LEAF:
+                    return new BTreeLeafPage(id, data);
+                default:
+                    return new BTreeHeaderPage(id, data);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        byte[] data = page.getPageData();
+        synchronized (this) {
+            try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+                w.seek((long) page.getId().getPageNumber() * BufferPool.getPageSize());
+                w.write(data);
+            }
+        }
+    }
+
+    /**
+     * Fetches a page through the BufferPool, unless this operation has
+     * already fetched it for writing.  Pages fetched for writing are added
+     * to dirtypages and stay pinned until the operation returns them.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        Page p = dirtypages.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    // unpins a page fetched read-only by getPage
+    private void unpin(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid) {
+        if (!dirtypages.containsKey(pid)) {
+            Database.getBufferPool().unpinPage(tid, pid);
+        }
+    }
+
+    private BTreeRootPtrPage getRootPtrPage(TransactionId tid, Map<PageId, Page> dirtypages, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (BTreeRootPtrPage) getPage(tid, dirtypages, BTreeRootPtrPage.getId(tableid), perm);
+    }
+
+    private BTreePageId getRootId(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, TransactionAbortedException {
+        BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY);
+        BTreePageId rootId = rootPtr.getRootId();
+        unpin(tid, dirtypages, rootPtr.getId());
+        return rootId;
+    }
+
+    /**
+     * Descends from page pid to the leftmost leaf that may hold key, or to
+     * the leftmost leaf of all if key is null.  A key with fewer fields
+     * than the key fields matches every key it is a prefix of.  Internal pages are read
+     * read-only and unpinned on the way down; the leaf is fetched with perm
+     * and stays pinned.
+     *
+     * @param path if not null, the internal pages on the way down are
+     *   appended to it, root first
+     */
+    private BTreeLeafPage findLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid,
+            Permissions perm, Field[] key, List<BTreePageId> path)
+            throws DbException, TransactionAbortedException {
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            int i = 0;
+            while (key != null && i < page.getNumEntries() && BTreePage.compareKeys(page.getKey(i), key) < 0) {
+                i++;
+            }
+            BTreePageId child = page.getChildId(i);
+            unpin(tid, dirtypages, pid);
+            if (path != null) {
+                path.add(pid);
+            }
+            pid = child;
+        }
+        return (BTreeLeafPage) getPage(tid, dirtypages, pid, perm);
+    }
+
+    /**
+     * Finds the path from page pid to the specified leaf, which holds a
+     * tuple with the specified key, or to a leaf that holds a tuple with
+     * the key if leaf is null.  With duplicate keys more than one subtree
+     * may hold the key, so they are searched in turn; with unique keys
+     * that only happens if a key on the way is equal to the key.
+     *
+     * @return the leaf, or null if it wasn't found; the internal pages on
+     *   the way are then appended to path, root first
+     */
+    private BTreePageId findPath(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Field[] key,
+            BTreePageId leaf, List<BTreePageId> path) throws DbException, TransactionAbortedException {
+        if (pid.pgcateg() == BTreePageId.LEAF) {
+            if (leaf != null) {
+                return pid.equals(leaf) ? pid : null;
+            }
+            BTreeLeafPage page = (BTreeLeafPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            boolean found = findTuple(page, key) != null;
+            unpin(tid, dirtypages, pid);
+            return found ? pid : null;
+        }
+        BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+        List<BTreePageId> candidates = new ArrayList<>();
+        int n = page.getNumEntries();
+        for (int i = 0; i <= n; i++) {
+            if ((i == 0 || BTreePage.compareKeys(page.getKey(i - 1), key) <= 0)
+                    && (i == n || BTreePage.compareKeys(page.getKey(i), key) >= 0)) {
+                candidates.add(page.getChildId(i));
+            }
+        }
+        unpin(tid, dirtypages, pid);
+        path.add(pid);
+        for (BTreePageId child : candidates) {
+            BTreePageId found = findPath(tid, dirtypages, child, key, leaf, path);
+            if (found != null) {
+                return found;
+            }
+        }
+        path.remove(path.size() - 1);
+        return null;
+    }
+
+    // the first tuple on the leaf whose key fields are equal to key, or null
+    private Tuple findTuple(BTreeLeafPage leaf, Field[] key) {
+        Iterator<Tuple> it = leaf.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (BTreePage.compareKeys(BTreePage.keyOf(t, keyFields), key) == 0) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        Field[] key = BTreePage.keyOf(t, keyFields);
+        List<BTreePageId> path = new ArrayList<>();
+        BTreeLeafPage leaf = findLeafPage(tid, dirtypages, getRootId(tid, dirtypages), Permissions.READ_WRITE,
+                key, path);
+        if (leaf.getNumEmptySlots() == 0) {
+            leaf = splitLeafPage(tid, dirtypages, leaf, path, key);
+        }
+        leaf.insertTuple(t);
+        modCount.incrementAndGet();
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * Splits a full leaf: the upper half of its tuples move to a new right
+     * sibling, and the first key of the new page is inserted into the
+     * parent, which may be split in turn.
+     *
+     * @param path the internal pages above the leaf, root first; consumed
+     * @param key the key about to be inserted
+     * @return the half that key belongs in
+     */
+    private BTreeLeafPage splitLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leaf,
+            List<BTreePageId> path, Field[] key) throws DbException, IOException, TransactionAbortedException {
+        BTreeLeafPage right = (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+        List<Tuple> moving = new ArrayList<>();
+        Iterator<Tuple> it = leaf.reverseIterator();
+        for (int i = leaf.getNumTuples() / 2; i > 0; i--) {
+            moving.add(it.next());
+        }
+        Collections.reverse(moving);
+        for (Tuple m : moving) {
+            leaf.deleteTuple(m);
+            right.insertTuple(m);
+        }
+        Field[] mid = BTreePage.keyOf(moving.get(0), keyFields);
+
+        BTreePageId oldRight = leaf.getRightSiblingId();
+        if (oldRight != null) {
+            BTreeLeafPage next = (BTreeLeafPage) getPage(tid, dirtypages, oldRight, Permissions.READ_WRITE);
+            next.setLeftSiblingId(right.getId());
+        }
+        right.setRightSiblingId(oldRight);
+        right.setLeftSiblingId(leaf.getId());
+        leaf.setRightSiblingId(right.getId());
+
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages, path, leaf.getId());
+        parent.insertEntry(new BTreeEntry(mid, leaf.getId(), right.getId()));
+        return BTreePage.compareKeys(key, mid) > 0 ? right : leaf;
+    }
+
+    /**
+     * Returns the parent of the specified child with room for one more
+     * entry, splitting it if it is full, or a new, empty root if the child
+     * is the root.
+     *
+     * @param path the internal pages above the child, root first; consumed
+     */
+    private BTreeInternalPage getParentWithEmptySlots(TransactionId tid, Map<PageId, Page> dirtypages,
+            List<BTreePageId> path, BTreePageId child) throws DbException, IOException, TransactionAbortedException {
+        if (path.isEmpty()) {
+            BTreeInternalPage root = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+            getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(root.getId());
+            return root;
+        }
+        BTreePageId parentId = path.remove(path.size() - 1);
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, parentId, Permissions.READ_WRITE);
+        if (parent.getNumEmptySlots() == 0) {
+            parent = splitInternalPage(tid, dirtypages, parent, path, child);
+        }
+        return parent;
+    }
+
+    /**
+     * Splits a full internal page: the upper half of its entries move to a
+     * new right sibling, and the middle key moves up to the parent.
+     *
+     * @param path the internal pages above page, root first; consumed
+     * @param child a child of page
+     * @return the half that now holds child
+     */
+    private BTreeInternalPage splitInternalPage(TransactionId tid, Map<PageId, Page> dirtypages,
+            BTreeInternalPage page, List<BTreePageId> path, BTreePageId child)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage right = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+        int n = page.getNumEntries();
+        int keep = (n - 1) / 2;
+        Field[] up = page.getKey(keep);
+        for (int j = keep + 1; j < n; j++) {
+            right.insertEntry(new BTreeEntry(page.getKey(j), page.getChildId(j), page.getChildId(j + 1)));
+        }
+        for (int j = n - 1; j >= keep; j--) {
+            page.deleteKeyAndRightChild(j);
+        }
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages, path, page.getId());
+        parent.insertEntry(new BTreeEntry(up, page.getId(), right.getId()));
+        return right.indexOfChild(child) >= 0 ? right : page;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableid) {
+            throw new DbException("tuple is not in this table");
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        BTreePageId leafId = new BTreePageId(tableid, rid.getPageId().getPageNumber(), BTreePageId.LEAF);
+        List<BTreePageId> path = new ArrayList<>();
+        if (findPath(tid, dirtypages, getRootId(tid, dirtypages), BTreePage.keyOf(t, keyFields), leafId,
+                path) == null) {
+            throw new DbException("tuple is not in this table");
+        }
+        BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, dirtypages, leafId, Permissions.READ_WRITE);
+        leaf.deleteTuple(t);
+        return deleted(tid, dirtypages, leaf, path);
+    }
+
+    /**
+     * Deletes a tuple whose key fields are equal to key.  It is looked up
+     * from the root, so for a tree whose key fields are unique, like the
+     * entries of a {@link SecondaryIndex}, the delete reads one path of the
+     * tree, without a scan for the tuple first.
+     *
+     * @param key the values of all the key fields, in order
+     * @return the pages that were modified, see {@link #deleteTuple}
+     * @throws DbException if no tuple has the key
+     */
+    public ArrayList<Page> deleteKey(TransactionId tid, Field[] key)
+            throws DbException, IOException, TransactionAbortedException {
+        if (key.length != keyFields.length) {
+            throw new IllegalArgumentException("key has " + key.length + " fields, not " + keyFields.length);
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        List<BTreePageId> path = new ArrayList<>();
+        BTreePageId leafId = findPath(tid, dirtypages, getRootId(tid, dirtypages), key, null, path);
+        if (leafId == null) {
+            throw new DbException("no tuple with key " + Arrays.toString(key));
+        }
+        BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, dirtypages, leafId, Permissions.READ_WRITE);
+        Tuple t = findTuple(leaf, key);
+        if (t == null) {
+            throw new DbException("no tuple with key " + Arrays.toString(key));
+        }
+        leaf.deleteTuple(t);
+        return deleted(tid, dirtypages, leaf, path);
+    }
+
+    // fixes the leaf a tuple has just been deleted from
+    private ArrayList<Page> deleted(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leaf,
+            List<BTreePageId> path) throws DbException, IOException, TransactionAbortedException {
+        modCount.incrementAndGet();
+        if (!path.isEmpty() && leaf.getNumTuples() < leaf.getMaxTuples() / 2) {
+            handleMinOccupancyLeaf(tid, dirtypages, leaf, path);
+        }
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * Fixes a leaf that is less than half full by merging it with a
+     * sibling, or by moving tuples from the sibling if they don't fit on
+     * one page.  The left sibling is used unless the leaf is the leftmost
+     * child of its parent.
+     *
+     * @param path the internal pages above the leaf, root first; consumed
+     */
+    private void handleMinOccupancyLeaf(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leaf,
+            List<BTreePageId> path) throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, path.get(path.size() - 1),
+                Permissions.READ_WRITE);
+        int i = parent.indexOfChild(leaf.getId());
+        BTreeLeafPage left;
+        BTreeLeafPage right;
+        if (i > 0) {
+            left = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(i - 1), Permissions.READ_WRITE);
+            right = leaf;
+            i--;
+        } else {
+            left = leaf;
+            right = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(1), Permissions.READ_WRITE);
+        }
+        if (left.getNumTuples() + right.getNumTuples() <= left.getMaxTuples()) {
+            mergeLeafPages(tid, dirtypages, left, right, parent, i, path);
+        } else {
+            balanceLeafPages(left, right, parent, i);
+        }
+    }
+
+    /**
+     * Moves tuples between two sibling leaves until they hold the same
+     * number, and updates the key between them in the parent.
+     */
+    private void balanceLeafPages(BTreeLeafPage left, BTreeLeafPage right, BTreeInternalPage parent, int keyIndex)
+            throws DbException {
+        int target = (left.getNumTuples() + right.getNumTuples()) / 2;
+        if (left.getNumTuples() > target) {
+            List<Tuple> moving = new ArrayList<>();
+            Iterator<Tuple> it = left.reverseIterator();
+            for (int i = left.getNumTuples() - target; i > 0; i--) {
+                moving.add(it.next());
+            }
+            for (Tuple m : moving) {
+                left.deleteTuple(m);
+                right.insertTuple(m);
+            }
+        } else {
+            List<Tuple> moving = new ArrayList<>();
+            Iterator<Tuple> it = right.iterator();
+            for (int i = right.getNumTuples() - target; i > 0; i--) {
+                moving.add(it.next());
+            }
+            for (Tuple m : moving) {
+                right.deleteTuple(m);
+                left.insertTuple(m);
+            }
+        }
+        parent.setKey(keyIndex, BTreePage.keyOf(right.iterator().next(), keyFields));
+    }
+
+    /**
+     * Moves all tuples of right into left, frees right and deletes the
+     * entry that points to it from the parent.
+     */
+    private void mergeLeafPages(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage left,
+            BTreeLeafPage right, BTreeInternalPage parent, int keyIndex, List<BTreePageId> path)
+            throws DbException, IOException, TransactionAbortedException {
+        List<Tuple> moving = new ArrayList<>();
+        right.iterator().forEachRemaining(moving::add);
+        for (Tuple m : moving) {
+            right.deleteTuple(m);
+            left.insertTuple(m);
+        }
+        BTreePageId next = right.getRightSiblingId();
+        if (next != null) {
+            ((BTreeLeafPage) getPage(tid, dirtypages, next, Permissions.READ_WRITE)).setLeftSiblingId(left.getId());
+        }
+        left.setRightSiblingId(next);
+        setEmptyPage(tid, dirtypages, right.getId().getPageNumber());
+        deleteParentEntry(tid, dirtypages, left.getId(), parent, keyIndex, path);
+    }
+
+    /**
+     * Deletes key keyIndex and the child to its right, which has been
+     * merged into left, from parent.  If that empties the root, left
+     * becomes the root; if it leaves another page less than half full, the
+     * page is fixed like a leaf.
+     *
+     * @param path the internal pages down to and including parent; consumed
+     */
+    private void deleteParentEntry(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId left,
+            BTreeInternalPage parent, int keyIndex, List<BTreePageId> path)
+            throws DbException, IOException, TransactionAbortedException {
+        parent.deleteKeyAndRightChild(keyIndex);
+        path.remove(path.size() - 1);
+        if (path.isEmpty()) {
+            if (parent.getNumEntries() == 0) {
+                getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(left);
+                setEmptyPage(tid, dirtypages, parent.getId().getPageNumber());
+            }
+        } else if (parent.getNumEntries() < parent.getMaxEntries() / 2) {
+            handleMinOccupancyInternal(tid, dirtypages, parent, path);
+        }
+    }
+
+    /**
+     * Fixes an internal page that is less than half full, like
+     * {@link #handleMinOccupancyLeaf}; keys move through the parent.
+     *
+     * @param path the internal pages above page, root first; consumed
+     */
+    private void handleMinOccupancyInternal(TransactionId tid, Map<PageId, Page> dirtypages,
+            BTreeInternalPage page, List<BTreePageId> path)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, path.get(path.size() - 1),
+                Permissions.READ_WRITE);
+        int i = parent.indexOfChild(page.getId());
+        BTreeInternalPage left;
+        BTreeInternalPage right;
+        if (i > 0) {
+            left = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(i - 1), Permissions.READ_WRITE);
+            right = page;
+            i--;
+        } else {
+            left = page;
+            right = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(1), Permissions.READ_WRITE);
+        }
+        if (left.getNumEntries() + right.getNumEntries() + 1 <= left.getMaxEntries()) {
+            mergeInternalPages(tid, dirtypages, left, right, parent, i, path);
+        } else {
+            balanceInternalPages(left, right, parent, i);
+        }
+    }
+
+    /**
+     * Rotates entries between two sibling internal pages, through the key
+     * between them in the parent, until they hold about the same number.
+     */
+    private void balanceInternalPages(BTreeInternalPage left, BTreeInternalPage right, BTreeInternalPage parent,
+            int keyIndex) throws DbException {
+        while (left.getNumEntries() > right.getNumEntries() + 1) {
+            int n = left.getNumEntries();
+            Field[] last = left.getKey(n - 1);
+            right.insertEntry(new BTreeEntry(parent.getKey(keyIndex), left.getChildId(n), right.getChildId(0)));
+            left.deleteKeyAndRightChild(n - 1);
+            parent.setKey(keyIndex, last);
+        }
+        while (right.getNumEntries() > left.getNumEntries() + 1) {
+            Field[] first = right.getKey(0);
+            left.insertEntry(new BTreeEntry(parent.getKey(keyIndex), left.getChildId(left.getNumEntries()),
+                    right.getChildId(0)));
+            right.deleteKeyAndLeftChild(0);
+            parent.setKey(keyIndex, first);
+        }
+    }
+
+    /**
+     * Moves the key between left and right in the parent and all entries
+     * of right into left, then frees right.
+     */
+    private void mergeInternalPages(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage left,
+            BTreeInternalPage right, BTreeInternalPage parent, int keyIndex, List<BTreePageId> path)
+            throws DbException, IOException, TransactionAbortedException {
+        left.insertEntry(new BTreeEntry(parent.getKey(keyIndex), left.getChildId(left.getNumEntries()),
+                right.getChildId(0)));
+        for (int j = 0; j < right.getNumEntries(); j++) {
+            left.insertEntry(new BTreeEntry(right.getKey(j), right.getChildId(j), right.getChildId(j + 1)));
+        }
+        setEmptyPage(tid, dirtypages, right.getId().getPageNumber());
+        deleteParentEntry(tid, dirtypages, left.getId(), parent, keyIndex, path);
+    }
+
+    /**
+     * Returns a page number that is free for a new page, cleared on disk:
+     * a page freed by another transaction, or a new page appended to the
+     * file.
+     */
+    private int getEmptyPageNo(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreePageId headerId = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getHeaderId();
+        unpin(tid, dirtypages, BTreeRootPtrPage.getId(tableid));
+        for (int headerNo = 0; headerId != null; headerNo++) {
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtypages, headerId, Permissions.READ_WRITE);
+            for (int slot = header.getEmptySlot(0); slot >= 0; slot = header.getEmptySlot(slot + 1)) {
+                int pgNo = headerNo * BTreeHeaderPage.getNumSlots() + slot;
+                if (!tid.equals(freedBy.get(pgNo))) {
+                    header.markSlotUsed(slot, true);
+                    freedBy.remove(pgNo);
+                    writeEmptyPage(pgNo);
+                    return pgNo;
+                }
+            }
+            headerId = header.getNextPageId();
+        }
+        synchronized (this) {
+            int pgNo = numPages() + 1;
+            writeEmptyPage(pgNo);
+            return pgNo;
+        }
+    }
+
+    // clears page pgNo on disk
+    private synchronized void writeEmptyPage(int pgNo) throws IOException {
+        try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+            w.seek((long) pgNo * BufferPool.getPageSize());
+            w.write(BTreePage.createEmptyPageData());
+        }
+    }
+
+    /**
+     * Returns a new, empty page of the specified category, locked and
+     * pinned for writing.  A reused page is cleared on disk and its old
+     * version dropped from the BufferPool first.
+     */
+    private BTreePage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int pgcateg)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreePageId id = new BTreePageId(tableid, getEmptyPageNo(tid, dirtypages), pgcateg);
+        Database.getBufferPool().discardPage(id);
+        return (BTreePage) getPage(tid, dirtypages, id, Permissions.READ_WRITE);
+    }
+
+    /**
+     * Marks page pgNo as free in the header pages, adding header pages as
+     * needed.
+     */
+    private void setEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int pgNo)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY);
+        BTreePageId headerId = rootPtr.getHeaderId();
+        unpin(tid, dirtypages, rootPtr.getId());
+        BTreeHeaderPage header;
+        if (headerId == null) {
+            header = (BTreeHeaderPage) getEmptyPage(tid, dirtypages, BTreePageId.HEADER);
+            header.init();
+            getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setHeaderId(header.getId());
+        } else {
+            header = (BTreeHeaderPage) getPage(tid, dirtypages, headerId, Permissions.READ_WRITE);
+        }
+        for (int headerNo = pgNo / BTreeHeaderPage.getNumSlots(); headerNo > 0; headerNo--) {
+            BTreePageId nextId = header.getNextPageId();
+            BTreeHeaderPage next;
+            if (nextId == null) {
+                next = (BTreeHeaderPage) getEmptyPage(tid, dirtypages, BTreePageId.HEADER);
+                next.init();
+                next.setPrevPageId(header.getId());
+                header.setNextPageId(next.getId());
+            } else {
+                next = (BTreeHeaderPage) getPage(tid, dirtypages, nextId, Permissions.READ_WRITE);
+            }
+            header = next;
+        }
+        header.markSlotUsed(pgNo % BTreeHeaderPage.getNumSlots(), false);
+        freedBy.put(pgNo, tid);
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples whose keys satisfy ipred, in key
+     * order.  Only the pages on the path to the first such tuple and the
+     * leaves that hold the matching tuples are read.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param ipred the predicate on the key, or null for all tuples
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new BTreeFileIterator(tid, ipred);
+    }
+
+    /**
+     * Iterates over the leaves from left to right.  Each leaf's tuples are
+     * copied when it is reached and the leaf is unpinned right away, so the
+     * iterator can run below an operator that updates the tree, like
+     * Delete.  If the tree has changed since a leaf was copied, its tuples
+     * may have moved and its right sibling may have been merged away, so
+     * before returning another tuple the iterator descends again from the
+     * root to the last key it returned and skips the tuples it has already
+     * returned.  A leaf read again may hold new copies of those tuples, so
+     * they are recognized by their fields, not by identity; tuples with the
+     * same fields are interchangeable, and the ones deleted since they were
+     * returned (see {@link BTreeLeafPage#deleteTuple}) are no longer
+     * skipped.
+     */
+    private class BTreeFileIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final IndexPredicate ipred;  // null for all tuples
+        private Iterator<Tuple> tuples;  // of the current leaf, null if closed
+        private BTreePageId nextLeaf;
+        private long expectedModCount;
+        private Field lastKey;  // null until a tuple is returned
+        private final List<Tuple> returnedAtLastKey = new ArrayList<>();
+        // the fields of the tuples at lastKey still to skip after a descent,
+        // with the number of tuples that have them
+        private final Map<List<Field>, Integer> skip = new HashMap<>();
+
+        BTreeFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            lastKey = null;
+            returnedAtLastKey.clear();
+            skip.clear();
+            descend(startKey());
+        }
+
+        // the first key that can match
+        private Field startKey() {
+            if (ipred == null) {
+                return null;
+            }
+            switch (ipred.getOp()) {
+                case EQUALS:
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQ:
+                    return ipred.getField();
+                default:
+                    return null;
+            }
+        }
+
+        // true if no tuple with this key or a greater one can match
+        private boolean pastEnd(Field key) {
+            if (ipred == null) {
+                return false;
+            }
+            switch (ipred.getOp()) {
+                case EQUALS:
+                case LESS_THAN_OR_EQ:
+                    return key.compare(Predicate.Op.GREATER_THAN, ipred.getField());
+                case LESS_THAN:
+                    return key.compare(Predicate.Op.GREATER_THAN_OR_EQ, ipred.getField());
+                default:
+                    return false;
+            }
+        }
+
+        private void descend(Field key) throws DbException, TransactionAbortedException {
+            Map<PageId, Page> none = Collections.emptyMap();
+            expectedModCount = modCount.get();
+            Field[] prefix = key == null ? null : new Field[]{key};
+            load(findLeafPage(tid, none, getRootId(tid, none), Permissions.READ_ONLY, prefix, null));
+        }
+
+        private void load(BTreeLeafPage leaf) {
+            List<Tuple> copy = new ArrayList<>(leaf.getNumTuples());
+            leaf.iterator().forEachRemaining(copy::add);
+            tuples = copy.iterator();
+            nextLeaf = leaf.getRightSiblingId();
+            Database.getBufferPool().unpinPage(tid, leaf.getId());
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (tuples != null) {
+                if (modCount.get() != expectedModCount) {
+                    // tuples may have moved since the leaf was copied, so
+                    // the RecordIds in the copy may be stale
+                    skip.clear();
+                    for (Tuple r : returnedAtLastKey) {
+                        if (r.getRecordId() != null) {
+                            skip.merge(fields(r), 1, Integer::sum);
+                        }
+                    }
+                    descend(lastKey != null ? lastKey : startKey());
+                }
+                while (tuples.hasNext()) {
+                    Tuple t = tuples.next();
+                    Field key = t.getField(keyFields[0]);
+                    if (lastKey != null && (key.compare(Predicate.Op.LESS_THAN, lastKey)
+                            || (key.compare(Predicate.Op.EQUALS, lastKey) && skipped(t)))) {
+                        continue;  // returned before the tree changed
+                    }
+                    if (pastEnd(key)) {
+                        tuples = null;
+                        return null;
+                    }
+                    if (ipred == null || ipred.matches(key)) {
+                        if (lastKey == null || !key.compare(Predicate.Op.EQUALS, lastKey)) {
+                            lastKey = key;
+                            returnedAtLastKey.clear();
+                            skip.clear();
+                        }
+                        returnedAtLastKey.add(t);
+                        return t;
+                    }
+                }
+                if (nextLeaf == null) {
+                    tuples = null;
+                } else {
+                    load((BTreeLeafPage) Database.getBufferPool().getPage(tid, nextLeaf, Permissions.READ_ONLY));
+                }
+            }
+            return null;
+        }
+
+        // true if a tuple with t's fields is still to skip, which is then
+        // counted off
+        private boolean skipped(Tuple t) {
+            List<Field> key = fields(t);
+            Integer n = skip.get(key);
+            if (n == null) {
+                return false;
+            }
+            if (n == 1) {
+                skip.remove(key);
+            } else {
+                skip.put(key, n - 1);
+            }
+            return true;
+        }
+
+        private List<Field> fields(Tuple t) {
+            List<Field> fields = new ArrayList<>(td.numFields());
+            t.fields().forEachRemaining(fields::add);
+            return fields;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            tuples = null;
+        }
+    }
+}
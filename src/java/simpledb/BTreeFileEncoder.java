@@ -0,0 +1,157 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFileEncoder builds a BTreeFile bottom up from tuples sorted on the
+ * key, instead of inserting them one at a time.  The leaves are written
+ * in key order, each filled to the fill factor, then each level of
+ * internal pages above them, up to the root; every page is written once,
+ * in page number order, and nothing goes through the BufferPool.
+ * <p>
+ * The file has the format of {@link BTreeFile}: page 0 is the root
+ * pointer, pages 1 to L are the leaves from left to right, and the
+ * internal pages follow, level by level, ending with the root.
+ */
+public class BTreeFileEncoder {
+
+    /**
+     * The default fill factor: leaves and internal pages are left with some
+     * room, so the first inserts after a load don't split every page.
+     */
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+
+    /**
+     * Write a BTreeFile of tuples to outFile, replacing its contents.
+     *
+     * @param tuples the tuples, sorted on keyField
+     * @param outFile the file to write
+     * @param td the TupleDesc of the tuples
+     * @param keyField the index of the key field
+     * @param fillFactor the fraction of each page to fill, in (0, 1]; a
+     *   page holds at least one tuple or two children
+     * @throws IOException if the output file can't be written
+     * @throws IllegalArgumentException if the tuples aren't sorted
+     */
+    public static void bulkLoad(Iterator<Tuple> tuples, File outFile, TupleDesc td, int keyField,
+            double fillFactor) throws IOException {
+        bulkLoad(tuples, outFile, td, new int[]{keyField}, fillFactor);
+    }
+
+    /**
+     * Write a BTreeFile keyed on more than one field, see
+     * {@link BTreeFile#BTreeFile(File, int[], TupleDesc)}, to outFile.
+     *
+     * @param tuples the tuples, sorted on the key fields in order
+     * @param keyFields the indexes of the key fields, the key first
+     * @see #bulkLoad(Iterator, File, TupleDesc, int, double)
+     */
+    public static void bulkLoad(Iterator<Tuple> tuples, File outFile, TupleDesc td, int[] keyFields,
+            double fillFactor) throws IOException {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1]");
+        }
+        int perLeaf = Math.max(1, (int) (BTreeLeafPage.getMaxTuples(td) * fillFactor));
+        Type[] keyTypes = BTreeInternalPage.keyTypes(td, keyFields);
+        int maxEntries = BTreeInternalPage.getMaxEntries(keyTypes);
+        int perPage = Math.min(maxEntries + 1, Math.max(3, (int) (maxEntries * fillFactor) + 1));
+
+        try (RandomAccessFile w = new RandomAccessFile(outFile, "rw")) {
+            w.setLength(0);
+            // the root pointer is written last, when the root is known
+            w.write(BTreePage.createEmptyPageData());
+
+            // the first key and page number of every page of the level
+            List<Field[]> firstKeys = new ArrayList<>();
+            List<Integer> pages = new ArrayList<>();
+
+            // a full leaf is held back until the next one is started, so
+            // the last two can share their tuples if the last is short
+            List<Tuple> prev = null;
+            List<Tuple> cur = new ArrayList<>();
+            int pgNo = 1;
+            Field[] lastKey = null;
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                Field[] key = BTreePage.keyOf(t, keyFields);
+                if (lastKey != null && BTreePage.compareKeys(key, lastKey) < 0) {
+                    throw new IllegalArgumentException("tuples are not sorted on fields " + Arrays.toString(keyFields));
+                }
+                lastKey = key;
+                if (cur.size() == perLeaf) {
+                    if (prev != null) {
+                        writeLeaf(w, td, keyFields, prev, pgNo++, true, firstKeys, pages);
+                    }
+                    prev = cur;
+                    cur = new ArrayList<>();
+                }
+                cur.add(t);
+            }
+            if (prev != null) {
+                if (cur.size() * 2 < prev.size()) {
+                    List<Tuple> all = new ArrayList<>(prev);
+                    all.addAll(cur);
+                    prev = all.subList(0, (all.size() + 1) / 2);
+                    cur = all.subList((all.size() + 1) / 2, all.size());
+                }
+                writeLeaf(w, td, keyFields, prev, pgNo++, true, firstKeys, pages);
+            }
+            writeLeaf(w, td, keyFields, cur, pgNo++, false, firstKeys, pages);
+
+            int category = BTreePageId.LEAF;
+            while (pages.size() > 1) {
+                List<Field[]> upperKeys = new ArrayList<>();
+                List<Integer> upperPages = new ArrayList<>();
+                // spread the children evenly, so every page has at least two
+                int n = pages.size();
+                int numPages = (n + perPage - 1) / perPage;
+                for (int i = 0, start = 0; i < numPages; i++) {
+                    int end = start + n / numPages + (i < n % numPages ? 1 : 0);
+                    w.write(BTreeInternalPage.createPageData(keyTypes, category,
+                            firstKeys.subList(start + 1, end), pages.subList(start, end)));
+                    upperKeys.add(firstKeys.get(start));
+                    upperPages.add(pgNo++);
+                    start = end;
+                }
+                firstKeys = upperKeys;
+                pages = upperPages;
+                category = BTreePageId.INTERNAL;
+            }
+
+            w.seek(0);
+            w.write(BTreeRootPtrPage.createPageData(pages.get(0), category));
+        }
+    }
+
+    /**
+     * Writes the next leaf, pgNo, and records its first key.  A leaf with
+     * no tuples is only written for an empty tree.
+     */
+    private static void writeLeaf(RandomAccessFile w, TupleDesc td, int[] keyFields, List<Tuple> tuples,
+            int pgNo, boolean hasRight, List<Field[]> firstKeys, List<Integer> pages) throws IOException {
+        int left = pgNo == 1 ? BTreePage.NO_PAGE : pgNo - 1;
+        int right = hasRight ? pgNo + 1 : BTreePage.NO_PAGE;
+        w.write(BTreeLeafPage.createPageData(td, tuples, left, right));
+        firstKeys.add(tuples.isEmpty() ? null : BTreePage.keyOf(tuples.get(0), keyFields));
+        pages.add(pgNo);
+    }
+
+    /**
+     * Sorts tuples on keyField, on disk if there are too many to sort in
+     * memory, then writes them as a BTreeFile to outFile; see
+     * {@link #bulkLoad}.
+     *
+     * @throws IOException if the sort runs or the output file can't be
+     *   written
+     */
+    public static void convert(Iterator<Tuple> tuples, File outFile, TupleDesc td, int keyField,
+            double fillFactor) throws IOException {
+        try (ExternalSort sort = new ExternalSort(td, keyField, ExternalSort.DEFAULT_RUN_SIZE)) {
+            while (tuples.hasNext()) {
+                sort.add(tuples.next());
+            }
+            bulkLoad(sort.sorted(), outFile, td, keyField, fillFactor);
+        }
+    }
+}
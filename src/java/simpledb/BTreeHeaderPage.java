@@ -0,0 +1,110 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * BTreeHeaderPage is a page of the bitmap of used pages of a
+ * {@link BTreeFile}.  Header page i of the chain that starts at the root
+ * pointer page covers pages i * getNumSlots() to (i + 1) * getNumSlots() - 1;
+ * a clear bit marks a page that was freed by a merge and may be reused.
+ * Pages past the end of the chain are in use.  The format is
+ * <pre>
+ *   prev    4 bytes, page number of the previous header page, or 0
+ *   next    4 bytes, page number of the next header page, or 0
+ *   bitmap  the rest of the page, bit j set if page j is used
+ * </pre>
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private static final int BITMAP_OFFSET = 8;
+
+    private int prev;
+    private int next;
+    private final byte[] bitmap;
+
+    /**
+     * Create a BTreeHeaderPage from a set of bytes of data read from disk.
+     */
+    public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.prev = readInt(data, 0);
+        this.next = readInt(data, 4);
+        this.bitmap = new byte[getNumSlots() / 8];
+        System.arraycopy(data, BITMAP_OFFSET, bitmap, 0, bitmap.length);
+    }
+
+    /** @return the number of pages a header page covers */
+    public static int getNumSlots() {
+        return (BufferPool.getPageSize() - BITMAP_OFFSET) * 8;
+    }
+
+    public BTreeHeaderPage getBeforeImage() {
+        try {
+            return new BTreeHeaderPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        writeInt(data, 0, prev);
+        writeInt(data, 4, next);
+        System.arraycopy(bitmap, 0, data, BITMAP_OFFSET, bitmap.length);
+        return data;
+    }
+
+    /** Marks every page this header page covers as used. */
+    public void init() {
+        beginWrite();
+        java.util.Arrays.fill(bitmap, 0, bitmap.length, (byte) 0xff);
+    }
+
+    public BTreePageId getPrevPageId() {
+        return pageId(prev, BTreePageId.HEADER);
+    }
+
+    public BTreePageId getNextPageId() {
+        return pageId(next, BTreePageId.HEADER);
+    }
+
+    public void setPrevPageId(BTreePageId id) {
+        beginWrite();
+        this.prev = id == null ? NO_PAGE : id.getPageNumber();
+    }
+
+    public void setNextPageId(BTreePageId id) {
+        beginWrite();
+        this.next = id == null ? NO_PAGE : id.getPageNumber();
+    }
+
+    /** @return true if the page in slot i is used */
+    public boolean isSlotUsed(int i) {
+        return (bitmap[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    public void markSlotUsed(int i, boolean used) {
+        beginWrite();
+        if (used) {
+            bitmap[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            bitmap[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * @return the first slot at or after from whose page is free, or -1 if
+     *   there is none
+     */
+    public int getEmptySlot(int from) {
+        for (int i = from; i < getNumSlots(); i++) {
+            if (bitmap[i / 8] == (byte) 0xff) {
+                i |= 7;  // the rest of this byte is used
+            } else if (!isSlotUsed(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
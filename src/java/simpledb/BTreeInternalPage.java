@@ -0,0 +1,297 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * BTreeInternalPage is an internal node of a {@link BTreeFile}.  It holds
+ * n keys and n + 1 child pointers; the keys in the subtree of child i are
+ * &gt;= key i - 1 and &lt;= key i.  The entries are kept packed at the
+ * start of the page in key order.  The format is
+ * <pre>
+ *   category  1 byte, the category of the children, LEAF or INTERNAL
+ *   n         4 bytes, the number of keys
+ *   keys      maxEntries keys, each the key fields of the tree in
+ *             order, in the format of Field.serialize
+ *   children  maxEntries + 1 page numbers, 4 bytes each
+ * </pre>
+ * where maxEntries is floor((BufferPool.getPageSize() - 9) / (key size +
+ * 4)).  A page that holds no keys and no children is empty; the first
+ * {@link #insertEntry} gives it its first two children.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private static final int KEYS_OFFSET = 5;
+
+    private final Type[] keyTypes;
+    private final int keySize;
+    private final int maxEntries;
+    private final Field[][] keys;
+    private final int[] children;
+    private int numEntries;
+    private int childCategory;
+
+    /**
+     * Create a BTreeInternalPage from a set of bytes of data read from
+     * disk.  The table must be a BTreeFile in the catalog.
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.keyTypes = keyTypes(file.getTupleDesc(), file.keyFields());
+        this.keySize = keySize(keyTypes);
+        this.maxEntries = getMaxEntries(keyTypes);
+        this.keys = new Field[maxEntries][];
+        this.children = new int[maxEntries + 1];
+        this.childCategory = data[0];
+        this.numEntries = readInt(data, 1);
+        int offset = KEYS_OFFSET;
+        for (int i = 0; i < numEntries; i++) {
+            keys[i] = readKey(keyTypes, data, offset + i * keySize);
+        }
+        offset += maxEntries * keySize;
+        for (int i = 0; i <= numEntries; i++) {
+            children[i] = readInt(data, offset + i * 4);
+        }
+    }
+
+    /** @return the number of keys an internal page with keys of type t holds */
+    public static int getMaxEntries(Type t) {
+        return getMaxEntries(new Type[]{t});
+    }
+
+    /**
+     * @return the number of keys an internal page holds whose keys have
+     *   fields of the specified types
+     */
+    public static int getMaxEntries(Type[] keyTypes) {
+        return (BufferPool.getPageSize() - KEYS_OFFSET - 4) / (keySize(keyTypes) + 4);
+    }
+
+    /** @return the types of the key fields of a tree with schema td */
+    static Type[] keyTypes(TupleDesc td, int[] keyFields) {
+        Type[] types = new Type[keyFields.length];
+        for (int i = 0; i < keyFields.length; i++) {
+            types[i] = td.getFieldType(keyFields[i]);
+        }
+        return types;
+    }
+
+    private static int keySize(Type[] keyTypes) {
+        int size = 0;
+        for (Type t : keyTypes) {
+            size += t.getLen();
+        }
+        return size;
+    }
+
+    private static Field[] readKey(Type[] keyTypes, byte[] data, int offset) {
+        Field[] key = new Field[keyTypes.length];
+        for (int j = 0; j < keyTypes.length; j++) {
+            key[j] = readField(keyTypes[j], data, offset);
+            offset += keyTypes[j].getLen();
+        }
+        return key;
+    }
+
+    private static void writeKey(Field[] key, byte[] data, int offset) {
+        for (Field f : key) {
+            offset += f.serialize(data, offset);
+        }
+    }
+
+    /**
+     * Static method to generate the data of an internal page whose keys
+     * have fields of the types keyTypes that holds keys and children, one
+     * more child than keys, for writing a page without going through the
+     * catalog.
+     *
+     * @param childCategory the category of the children, LEAF or INTERNAL
+     * @param children the page numbers of the children
+     */
+    public static byte[] createPageData(Type[] keyTypes, int childCategory, List<Field[]> keys,
+            List<Integer> children) {
+        int maxEntries = getMaxEntries(keyTypes);
+        int keySize = keySize(keyTypes);
+        if (keys.size() > maxEntries || children.size() != keys.size() + 1) {
+            throw new IllegalArgumentException(keys.size() + " keys and " + children.size()
+                    + " children don't make an internal page");
+        }
+        byte[] data = createEmptyPageData();
+        data[0] = (byte) childCategory;
+        writeInt(data, 1, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            writeKey(keys.get(i), data, KEYS_OFFSET + i * keySize);
+        }
+        int offset = KEYS_OFFSET + maxEntries * keySize;
+        for (int i = 0; i < children.size(); i++) {
+            writeInt(data, offset + i * 4, children.get(i));
+        }
+        return data;
+    }
+
+    public BTreeInternalPage getBeforeImage() {
+        try {
+            return new BTreeInternalPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        data[0] = (byte) childCategory;
+        writeInt(data, 1, numEntries);
+        int offset = KEYS_OFFSET;
+        for (int i = 0; i < numEntries; i++) {
+            writeKey(keys[i], data, offset + i * keySize);
+        }
+        offset += maxEntries * keySize;
+        for (int i = 0; i <= numEntries; i++) {
+            writeInt(data, offset + i * 4, children[i]);
+        }
+        return data;
+    }
+
+    /** @return the number of keys this page can hold */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /** @return the number of keys on this page */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /** @return the number of keys that can still be inserted */
+    public int getNumEmptySlots() {
+        return maxEntries - numEntries;
+    }
+
+    /** @return true if this page has no children */
+    public boolean isEmpty() {
+        return numEntries == 0 && children[0] == NO_PAGE;
+    }
+
+    /** @return key i, 0 &lt;= i &lt; getNumEntries() */
+    public Field[] getKey(int i) {
+        if (i < 0 || i >= numEntries) {
+            throw new IndexOutOfBoundsException("no key " + i);
+        }
+        return keys[i];
+    }
+
+    /** Replaces key i, for instance after moving tuples between leaves. */
+    public void setKey(int i, Field[] key) {
+        if (i < 0 || i >= numEntries) {
+            throw new IndexOutOfBoundsException("no key " + i);
+        }
+        beginWrite();
+        keys[i] = key;
+    }
+
+    /** @return child i, 0 &lt;= i &lt;= getNumEntries() */
+    public BTreePageId getChildId(int i) {
+        if (i < 0 || i > numEntries) {
+            throw new IndexOutOfBoundsException("no child " + i);
+        }
+        return pageId(children[i], childCategory);
+    }
+
+    /** @return the category of the children, LEAF or INTERNAL */
+    public int getChildCategory() {
+        return childCategory;
+    }
+
+    /** @return the index of the specified child, or -1 */
+    public int indexOfChild(BTreePageId id) {
+        for (int i = 0; i <= numEntries; i++) {
+            if (children[i] == id.getPageNumber()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts an entry into the page.  One of the children of e must
+     * already be a child of this page, next to where the key belongs;
+     * the other child is inserted next to it.  The first entry of an empty
+     * page sets both children.
+     *
+     * @throws DbException if the page is full or doesn't hold either child
+     */
+    public void insertEntry(BTreeEntry e) throws DbException {
+        if (numEntries == maxEntries) {
+            throw new DbException("page is full (no empty slots)");
+        }
+        Field[] key = e.getKey();
+        if (key.length != keyTypes.length) {
+            throw new DbException("key type does not match");
+        }
+        for (int j = 0; j < key.length; j++) {
+            if (!keyTypes[j].equals(key[j].getType())) {
+                throw new DbException("key type does not match");
+            }
+        }
+        if (isEmpty()) {
+            beginWrite();
+            childCategory = e.getLeftChild().pgcateg();
+            keys[0] = e.getKey();
+            children[0] = e.getLeftChild().getPageNumber();
+            children[1] = e.getRightChild().getPageNumber();
+            numEntries = 1;
+            return;
+        }
+        if (e.getLeftChild().pgcateg() != childCategory) {
+            throw new DbException("child category does not match");
+        }
+        int left = indexOfChild(e.getLeftChild());
+        int right = indexOfChild(e.getRightChild());
+        int keyIndex;
+        int childIndex;
+        int child;
+        if (left >= 0) {
+            keyIndex = left;
+            childIndex = left + 1;
+            child = e.getRightChild().getPageNumber();
+        } else if (right >= 0) {
+            keyIndex = right;
+            childIndex = right;
+            child = e.getLeftChild().getPageNumber();
+        } else {
+            throw new DbException("neither child of the entry is on this page");
+        }
+        beginWrite();
+        System.arraycopy(keys, keyIndex, keys, keyIndex + 1, numEntries - keyIndex);
+        System.arraycopy(children, childIndex, children, childIndex + 1, numEntries + 1 - childIndex);
+        keys[keyIndex] = e.getKey();
+        children[childIndex] = child;
+        numEntries++;
+    }
+
+    /** Deletes key i and the child to its right. */
+    public void deleteKeyAndRightChild(int i) {
+        delete(i, i + 1);
+    }
+
+    /** Deletes key i and the child to its left. */
+    public void deleteKeyAndLeftChild(int i) {
+        delete(i, i);
+    }
+
+    private void delete(int keyIndex, int childIndex) {
+        if (keyIndex < 0 || keyIndex >= numEntries) {
+            throw new IndexOutOfBoundsException("no key " + keyIndex);
+        }
+        beginWrite();
+        System.arraycopy(keys, keyIndex + 1, keys, keyIndex, numEntries - keyIndex - 1);
+        System.arraycopy(children, childIndex + 1, children, childIndex, numEntries - childIndex);
+        numEntries--;
+        keys[numEntries] = null;
+        children[numEntries + 1] = NO_PAGE;
+    }
+}
@@ -0,0 +1,297 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * BTreeLeafPage is a leaf of a {@link BTreeFile}.  It holds whole tuples
+ * of the table in slots, like a {@link HeapPage}, but keeps the used slots
+ * in order of the key fields, and links to its neighbors so a scan can go
+ * from leaf to leaf.  The format is
+ * <pre>
+ *   left    4 bytes, page number of the left sibling, or 0
+ *   right   4 bytes, page number of the right sibling, or 0
+ *   header  ceiling(numSlots / 8) bytes, bit i set if slot i is used
+ *   slots   numSlots tuples, TupleDesc.getSize() bytes each
+ * </pre>
+ * where numSlots is floor((BufferPool.getPageSize() - 8) * 8 / (tuple size
+ * * 8 + 1)).  Deleting a tuple only clears its slot, so the other tuples
+ * keep their RecordIds; inserting a tuple shifts the tuples between its
+ * place and the nearest empty slot.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private static final int HEADER_OFFSET = 8;
+
+    private final TupleDesc td;
+    private final int[] keyFields;
+    private final int numSlots;
+    private final byte[] header;
+    private final Tuple[] tuples;
+    private int leftSibling;
+    private int rightSibling;
+
+    /**
+     * Create a BTreeLeafPage from a set of bytes of data read from disk.
+     * The table must be a BTreeFile in the catalog.
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = file.getTupleDesc();
+        this.keyFields = file.keyFields();
+        this.numSlots = getMaxTuples(td);
+        this.leftSibling = readInt(data, 0);
+        this.rightSibling = readInt(data, 4);
+        this.header = Arrays.copyOfRange(data, HEADER_OFFSET, HEADER_OFFSET + (numSlots + 7) / 8);
+        this.tuples = new Tuple[numSlots];
+        int offset = HEADER_OFFSET + header.length;
+        for (int i = 0; i < numSlots; i++, offset += td.getSize()) {
+            if (isSlotUsed(i)) {
+                Tuple t = new Tuple(td);
+                int fieldOffset = offset;
+                for (int j = 0; j < td.numFields(); j++) {
+                    t.setField(j, readField(td.getFieldType(j), data, fieldOffset));
+                    fieldOffset += td.getFieldType(j).getLen();
+                }
+                t.setRecordId(new RecordId(pid, i));
+                tuples[i] = t;
+            }
+        }
+    }
+
+    /** @return the number of tuples a leaf of a table with schema td holds */
+    public static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.getPageSize() - HEADER_OFFSET) * 8 / (td.getSize() * 8 + 1);
+    }
+
+    /**
+     * Static method to generate the data of a leaf of a table with schema
+     * td that holds tuples, in order, in its first slots, for writing a
+     * page without going through the catalog.
+     *
+     * @param left the page number of the left sibling, or 0
+     * @param right the page number of the right sibling, or 0
+     */
+    public static byte[] createPageData(TupleDesc td, List<Tuple> tuples, int left, int right) {
+        int numSlots = getMaxTuples(td);
+        if (tuples.size() > numSlots) {
+            throw new IllegalArgumentException(tuples.size() + " tuples don't fit on a leaf");
+        }
+        byte[] data = createEmptyPageData();
+        writeInt(data, 0, left);
+        writeInt(data, 4, right);
+        int offset = HEADER_OFFSET + (numSlots + 7) / 8;
+        for (int i = 0; i < tuples.size(); i++, offset += td.getSize()) {
+            data[HEADER_OFFSET + i / 8] |= (byte) (1 << (i % 8));
+            int fieldOffset = offset;
+            for (int j = 0; j < td.numFields(); j++) {
+                fieldOffset += tuples.get(i).getField(j).serialize(data, fieldOffset);
+            }
+        }
+        return data;
+    }
+
+    public BTreeLeafPage getBeforeImage() {
+        try {
+            return new BTreeLeafPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        writeInt(data, 0, leftSibling);
+        writeInt(data, 4, rightSibling);
+        System.arraycopy(header, 0, data, HEADER_OFFSET, header.length);
+        int offset = HEADER_OFFSET + header.length;
+        for (int i = 0; i < numSlots; i++, offset += td.getSize()) {
+            if (tuples[i] != null) {
+                int fieldOffset = offset;
+                for (int j = 0; j < td.numFields(); j++) {
+                    fieldOffset += tuples[i].getField(j).serialize(data, fieldOffset);
+                }
+            }
+        }
+        return data;
+    }
+
+    /** @return the id of the left sibling, or null if this is the first leaf */
+    public BTreePageId getLeftSiblingId() {
+        return pageId(leftSibling, BTreePageId.LEAF);
+    }
+
+    /** @return the id of the right sibling, or null if this is the last leaf */
+    public BTreePageId getRightSiblingId() {
+        return pageId(rightSibling, BTreePageId.LEAF);
+    }
+
+    public void setLeftSiblingId(BTreePageId id) {
+        beginWrite();
+        this.leftSibling = id == null ? NO_PAGE : id.getPageNumber();
+    }
+
+    public void setRightSiblingId(BTreePageId id) {
+        beginWrite();
+        this.rightSibling = id == null ? NO_PAGE : id.getPageNumber();
+    }
+
+    /** @return the number of tuples this page can hold */
+    public int getMaxTuples() {
+        return numSlots;
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        return numSlots - getNumEmptySlots();
+    }
+
+    /** @return the number of empty slots on this page */
+    public int getNumEmptySlots() {
+        int empty = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                empty++;
+            }
+        }
+        return empty;
+    }
+
+    /** @return true if slot i of this page is used */
+    public boolean isSlotUsed(int i) {
+        return (header[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean used) {
+        if (used) {
+            header[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            header[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    // moves the tuple in slot from to the empty slot to, if there is one
+    private void moveRecord(int from, int to) {
+        if (isSlotUsed(from) && !isSlotUsed(to)) {
+            tuples[to] = tuples[from];
+            tuples[to].setRecordId(new RecordId(pid, to));
+            tuples[from] = null;
+            markSlotUsed(to, true);
+            markSlotUsed(from, false);
+        }
+    }
+
+    /**
+     * Adds the specified tuple to the page in order of the key fields; the
+     * tuple is updated to reflect that it is now stored on this page.
+     *
+     * @throws DbException if the page is full or the TupleDesc doesn't match
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        int emptySlot = -1;
+        for (int i = 0; i < numSlots && emptySlot < 0; i++) {
+            if (!isSlotUsed(i)) {
+                emptySlot = i;
+            }
+        }
+        if (emptySlot < 0) {
+            throw new DbException("page is full (no empty slots)");
+        }
+        beginWrite();
+
+        // the last tuple whose key is <= the new key
+        Field[] key = keyOf(t, keyFields);
+        int lessOrEqKey = -1;
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                if (compareKeys(keyOf(tuples[i], keyFields), key) <= 0) {
+                    lessOrEqKey = i;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        // shift the tuples in between toward the empty slot
+        int goodSlot;
+        if (emptySlot < lessOrEqKey) {
+            for (int i = emptySlot; i < lessOrEqKey; i++) {
+                moveRecord(i + 1, i);
+            }
+            goodSlot = lessOrEqKey;
+        } else {
+            for (int i = emptySlot; i > lessOrEqKey + 1; i--) {
+                moveRecord(i - 1, i);
+            }
+            goodSlot = lessOrEqKey + 1;
+        }
+
+        t.setRecordId(new RecordId(pid, goodSlot));
+        tuples[goodSlot] = t;
+        markSlotUsed(goodSlot, true);
+    }
+
+    /**
+     * Delete the specified tuple from the page; its slot becomes empty, and
+     * the tuple, like the page's copy of it, no longer has a RecordId.
+     * Tuples move between leaves, so the slot must hold a tuple with the
+     * same fields, not just any tuple.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple not on this page");
+        }
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("tuple slot already empty");
+        }
+        for (int j = 0; j < td.numFields(); j++) {
+            if (!tuples[slot].getField(j).equals(t.getField(j))) {
+                throw new DbException("tuple not on this page");
+            }
+        }
+        beginWrite();
+        markSlotUsed(slot, false);
+        tuples[slot].setRecordId(null);
+        tuples[slot] = null;
+        t.setRecordId(null);
+    }
+
+    /**
+     * @return the tuples on this page in order of the key fields (calling
+     *   remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        List<Tuple> list = new ArrayList<>(numSlots);
+        for (int i = 0; i < numSlots; i++) {
+            if (tuples[i] != null) {
+                list.add(tuples[i]);
+            }
+        }
+        return Collections.unmodifiableList(list).iterator();
+    }
+
+    /**
+     * @return the tuples on this page in reverse order of the key fields
+     */
+    public Iterator<Tuple> reverseIterator() {
+        List<Tuple> list = new ArrayList<>(numSlots);
+        for (int i = numSlots - 1; i >= 0; i--) {
+            if (tuples[i] != null) {
+                list.add(tuples[i]);
+            }
+        }
+        return Collections.unmodifiableList(list).iterator();
+    }
+}
@@ -0,0 +1,145 @@
+package simpledb;
+
+/**
+ * BTreePage holds what all the pages of a {@link BTreeFile} have in common:
+ * the page id, the dirty flag, the copy-on-write before image (see
+ * {@link HeapPage}) and helpers to encode numbers and fields at offsets of
+ * a page.
+ * <p>
+ * Like every page, each subclass must have a single constructor of the
+ * form Page(PageId id, byte[] data), so recovery and the BufferPool's arena
+ * can rebuild it; leaf and internal pages get the schema and key field of
+ * their tree from the Catalog.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+    /** The page number stored in a page pointer that points nowhere. */
+    public static final int NO_PAGE = 0;
+
+    protected final BTreePageId pid;
+    private volatile TransactionId isDirty;  // null if not dirty
+
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(); see HeapPage
+    private byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * The page keeps data as its before image, so the caller must not
+     * modify the array afterwards.
+     */
+    protected BTreePage(BTreePageId id, byte[] data) {
+        this.pid = id;
+        this.oldData = data;
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public BTreePageId getId() {
+        return this.pid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.isDirty = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return this.isDirty;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            // copy-on-write: the current contents are only serialized if
+            // the page is modified again, see beginWrite()
+            oldData = null;
+        }
+    }
+
+    /**
+     * Called by subclasses before the page is modified: if the before image
+     * is still the current contents, copy them now.
+     */
+    protected void beginWrite() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    /** @return the bytes of the before image of this page */
+    protected byte[] getBeforeImageData() {
+        synchronized (oldDataLock) {
+            return oldData != null ? oldData : getPageData();
+        }
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * page of any category.  Passing the result to the constructor of any
+     * BTreePage subclass gives an empty page.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /** @return the page id of category pgcateg stored as pgNo, or null */
+    protected BTreePageId pageId(int pgNo, int pgcateg) {
+        return pgNo == NO_PAGE ? null : new BTreePageId(pid.getTableId(), pgNo, pgcateg);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    static void writeInt(byte[] data, int offset, int v) {
+        data[offset] = (byte) (v >>> 24);
+        data[offset + 1] = (byte) (v >>> 16);
+        data[offset + 2] = (byte) (v >>> 8);
+        data[offset + 3] = (byte) v;
+    }
+
+    /** @return the values of the key fields of t, in order */
+    static Field[] keyOf(Tuple t, int[] keyFields) {
+        Field[] key = new Field[keyFields.length];
+        for (int i = 0; i < keyFields.length; i++) {
+            key[i] = t.getField(keyFields[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Compares two keys field by field, as far as the shorter one goes, so
+     * a key is equal to the longer keys it is a prefix of.
+     *
+     * @return a negative number, zero or a positive number as a is less
+     *   than, equal to or greater than b
+     */
+    static int compareKeys(Field[] a, Field[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i].compare(Predicate.Op.LESS_THAN, b[i])) {
+                return -1;
+            }
+            if (a[i].compare(Predicate.Op.GREATER_THAN, b[i])) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Decodes a field of the specified type at offset, in the format of
+     * {@link Field#serialize}.
+     */
+    static Field readField(Type type, byte[] data, int offset) {
+        int value = readInt(data, offset);
+        if (type == Type.INT_TYPE) {
+            return new IntField(value);
+        }
+        return new StringField(new String(data, offset + 4, value), Type.STRING_LEN);
+    }
+}
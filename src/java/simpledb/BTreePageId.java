@@ -0,0 +1,101 @@
+package simpledb;
+
+/** Unique identifier for the pages of a {@link BTreeFile}. */
+public class BTreePageId implements PageId {
+
+    /** The page at the start of the file that points to the root. */
+    public final static int ROOT_PTR = 0;
+    /** An internal (non-leaf) node of the tree. */
+    public final static int INTERNAL = 1;
+    /** A leaf of the tree, holding tuples. */
+    public final static int LEAF = 2;
+    /** A page of the bitmap of free pages. */
+    public final static int HEADER = 3;
+
+    private int tableId;
+    private int pgNo;
+    private int pgcateg;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific B+ tree.
+     *
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table; the root pointer page is
+     *   page 0
+     * @param pgcateg which kind of page it is, ROOT_PTR, INTERNAL, LEAF or
+     *   HEADER
+     */
+    public BTreePageId(int tableId, int pgNo, int pgcateg) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.pgcateg = pgcateg;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the page number in the table getTableId() associated with
+     *   this PageId
+     */
+    public int getPageNumber() {
+        return this.pgNo;
+    }
+
+    /**
+     * @return the category of this page: ROOT_PTR, INTERNAL, LEAF or HEADER
+     */
+    public int pgcateg() {
+        return this.pgcateg;
+    }
+
+    /**
+     * @return a hash code for this page, represented by the concatenation of
+     *   the table number and the page number
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return (this.tableId + "").hashCode() + (this.pgNo + "").hashCode();
+    }
+
+    /**
+     * Compares one PageId to another.  The category is not compared: it
+     * only tells {@link BTreeFile#readPage} how to parse the page, and a
+     * page that is freed and reused may change category, but it is the
+     * same page for locking and caching.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., page numbers and table
+     *   ids are the same)
+     */
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BTreePageId)) {
+            return false;
+        }
+        BTreePageId other = (BTreePageId) o;
+        return this.pgNo == other.pgNo && this.tableId == other.tableId;
+    }
+
+    public String toString() {
+        String[] categories = {"ROOT_PTR", "INTERNAL", "LEAF", "HEADER"};
+        return "(" + tableId + ", " + pgNo + ", " + categories[pgcateg] + ")";
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+        data[0] = getTableId();
+        data[1] = getPageNumber();
+        data[2] = pgcateg();
+        return data;
+    }
+}
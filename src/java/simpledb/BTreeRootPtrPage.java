@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * BTreeRootPtrPage is page 0 of a {@link BTreeFile}.  The root of the tree
+ * moves when the root is split or when it loses its last entry, so this
+ * page, which never moves, points to it.  It also points to the first
+ * {@link BTreeHeaderPage}, if the tree has freed any pages.  The format is
+ * <pre>
+ *   root      4 bytes, page number of the root
+ *   category  1 byte, BTreePageId.LEAF or BTreePageId.INTERNAL
+ *   header    4 bytes, page number of the first header page, or 0
+ * </pre>
+ * followed by zeroes to the page size.
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    private int root;
+    private int rootCategory;
+    private int header;
+
+    /**
+     * Create a BTreeRootPtrPage from a set of bytes of data read from disk.
+     */
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.root = readInt(data, 0);
+        this.rootCategory = data[4];
+        this.header = readInt(data, 5);
+    }
+
+    /** @return the id of the root pointer page of the specified table */
+    public static BTreePageId getId(int tableid) {
+        return new BTreePageId(tableid, 0, BTreePageId.ROOT_PTR);
+    }
+
+    /**
+     * Static method to generate the data of a root pointer page that points
+     * to the root pgNo, of category rootCategory, and to no header page.
+     */
+    public static byte[] createPageData(int pgNo, int rootCategory) {
+        byte[] data = createEmptyPageData();
+        writeInt(data, 0, pgNo);
+        data[4] = (byte) rootCategory;
+        return data;
+    }
+
+    public BTreeRootPtrPage getBeforeImage() {
+        try {
+            return new BTreeRootPtrPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        writeInt(data, 0, root);
+        data[4] = (byte) rootCategory;
+        writeInt(data, 5, header);
+        return data;
+    }
+
+    /** @return the id of the root page, or null if the tree has none yet */
+    public BTreePageId getRootId() {
+        return pageId(root, rootCategory);
+    }
+
+    /**
+     * Makes the specified leaf or internal page the root of the tree.
+     */
+    public void setRootId(BTreePageId id) throws DbException {
+        if (id.pgcateg() != BTreePageId.LEAF && id.pgcateg() != BTreePageId.INTERNAL) {
+            throw new DbException("the root must be a leaf or internal page");
+        }
+        beginWrite();
+        this.root = id.getPageNumber();
+        this.rootCategory = id.pgcateg();
+    }
+
+    /** @return the id of the first header page, or null if there is none */
+    public BTreePageId getHeaderId() {
+        return pageId(header, BTreePageId.HEADER);
+    }
+
+    public void setHeaderId(BTreePageId id) {
+        beginWrite();
+        this.header = id == null ? NO_PAGE : id.getPageNumber();
+    }
+}
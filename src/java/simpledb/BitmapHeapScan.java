@@ -0,0 +1,307 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * BitmapHeapScan is an access method that reads the tuples of a heap table
+ * that satisfy a {@link Condition}, an AND/OR combination of predicates on
+ * the fields of the table.  It first combines the bitmaps of the
+ * predicates, from the table's {@link BitmapIndex}es, or from the entries
+ * of its {@link SecondaryIndex}es, into the bitmap of the tuples that may
+ * satisfy the condition, and then reads only the pages those tuples are
+ * on, in page order, each page once.  The condition is checked again on
+ * each tuple read, so predicates of an AND without an index on their field
+ * are simply left to that check.
+ */
+public class BitmapHeapScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A condition on the tuples of a table: a predicate, or the AND or the
+     * OR of other conditions.
+     */
+    public static class Condition implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Predicate predicate;  // null for AND and OR
+        private final boolean and;
+        private final Condition[] operands;
+
+        private Condition(Predicate predicate, boolean and, Condition[] operands) {
+            this.predicate = predicate;
+            this.and = and;
+            this.operands = operands;
+        }
+
+        /** @return the condition that p holds */
+        public static Condition of(Predicate p) {
+            return new Condition(p, false, new Condition[0]);
+        }
+
+        /** @return the condition that all operands hold */
+        public static Condition and(Condition... operands) {
+            return new Condition(null, true, operands.clone());
+        }
+
+        /** @return the condition that some operand holds */
+        public static Condition or(Condition... operands) {
+            return new Condition(null, false, operands.clone());
+        }
+
+        /** @return true if t satisfies this condition */
+        public boolean filter(Tuple t) {
+            if (predicate != null) {
+                return predicate.filter(t);
+            }
+            for (Condition c : operands) {
+                if (c.filter(t) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+
+        /**
+         * @return the positions, see {@link BitmapIndex#position}, of the
+         *   tuples of the table that may satisfy this condition, or null if
+         *   the indexes of the table can't tell
+         */
+        RoaringBitmap positions(TransactionId tid, int tableid)
+                throws DbException, TransactionAbortedException {
+            if (predicate != null) {
+                return lookup(tid, tableid, predicate);
+            }
+            RoaringBitmap result = null;
+            for (Condition c : operands) {
+                RoaringBitmap bitmap = c.positions(tid, tableid);
+                if (bitmap == null && !and) {
+                    return null;
+                } else if (result == null) {
+                    result = bitmap;
+                } else if (bitmap != null) {
+                    result = and ? result.and(bitmap) : result.or(bitmap);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return true if the indexes of the table narrow this condition
+         *   down to a bitmap: a predicate on a field with a BitmapIndex,
+         *   or with a SecondaryIndex for the operators it can look up, an
+         *   AND with such an operand, or an OR of such operands
+         */
+        boolean indexed(int tableid) {
+            if (predicate != null) {
+                return bitmapIndex(tableid, predicate.getField()) != null
+                        || IndexPredicate.isIndexable(predicate.getOp())
+                        && secondaryIndex(tableid, predicate.getField()) != null;
+            }
+            for (Condition c : operands) {
+                if (c.indexed(tableid) == and) {
+                    return and;
+                }
+            }
+            return !and && operands.length > 0;
+        }
+
+        public String toString() {
+            if (predicate != null) {
+                return predicate.toString();
+            }
+            StringBuilder sb = new StringBuilder("(");
+            for (Condition c : operands) {
+                sb.append(sb.length() > 1 ? (and ? " AND " : " OR ") : "").append(c);
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    /** @return the bitmap index on the field of the table, or null */
+    static BitmapIndex bitmapIndex(int tableid, int field) {
+        for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableid)) {
+            if (index.getColumn() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /** @return the secondary index on the field of the table, or null */
+    private static SecondaryIndex secondaryIndex(int tableid, int field) {
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableid)) {
+            if (index.getColumn() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the positions of the tuples of the table that satisfy p, or
+     *   null if no index of the table can answer p
+     */
+    private static RoaringBitmap lookup(TransactionId tid, int tableid, Predicate p)
+            throws DbException, TransactionAbortedException {
+        BitmapIndex bitmapIndex = bitmapIndex(tableid, p.getField());
+        if (bitmapIndex != null) {
+            return bitmapIndex.lookup(p.getOp(), p.getOperand());
+        }
+        SecondaryIndex index = secondaryIndex(tableid, p.getField());
+        if (index == null || !IndexPredicate.isIndexable(p.getOp())) {
+            return null;
+        }
+        RoaringBitmap bitmap = new RoaringBitmap();
+        DbFileIterator it = index.entries(tid, new IndexPredicate(p.getOp(), p.getOperand()));
+        it.open();
+        while (it.hasNext()) {
+            bitmap.add(BitmapIndex.position(index.getRecordId(it.next())));
+        }
+        it.close();
+        return bitmap;
+    }
+
+    /**
+     * @return true if a BitmapHeapScan of the table can answer c, that is
+     *   if the indexes of the table narrow c down to a bitmap
+     */
+    public static boolean hasIndex(int tableid, Condition c) {
+        return c.indexed(tableid);
+    }
+
+    private final TransactionId tid;
+    private final int tableId;
+    private final String tableAlias;
+    private final Condition condition;
+    private final TupleDesc td;
+    private RoaringBitmap.LongIterator positions;
+    private long nextPosition = -1;  // read from positions but not yet used
+    private final LinkedList<Tuple> pageTuples = new LinkedList<>();  // of the current page
+
+    /**
+     * Creates a bitmap heap scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan; must be stored in a HeapFile with
+     *            indexes that answer condition, see {@link #hasIndex}
+     * @param tableAlias
+     *            the alias of this table, see {@link SeqScan#SeqScan}
+     * @param condition
+     *            the condition on the fields of the table
+     */
+    public BitmapHeapScan(TransactionId tid, int tableid, String tableAlias, Condition condition) {
+        this.tid = tid;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.condition = condition;
+        TupleDesc originalTD = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[originalTD.numFields()];
+        String[] fieldNames = new String[originalTD.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = originalTD.getFieldType(i);
+            fieldNames[i] = String.join(".", tableAlias, originalTD.getFieldName(i));
+        }
+        this.td = new TupleDesc(types, fieldNames);
+    }
+
+    /**
+     * @return the table name of the table the operator scans
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(this.tableId);
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return this.tableAlias;
+    }
+
+    /**
+     * @return the condition the tuples satisfy
+     */
+    public Condition getCondition() {
+        return this.condition;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        RoaringBitmap bitmap = this.condition.positions(this.tid, this.tableId);
+        if (bitmap == null) {
+            throw new DbException("table " + getTableName() + " has no index for " + this.condition);
+        }
+        this.positions = bitmap.iterator();
+        this.nextPosition = -1;
+        this.pageTuples.clear();
+    }
+
+    /**
+     * Returns the TupleDesc of the table with field names prefixed with the
+     * table alias, as for a SeqScan.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    // reads the tuples of the next page with positions that satisfy the condition
+    private void readPage() throws DbException, TransactionAbortedException {
+        while (this.pageTuples.isEmpty() && (this.nextPosition >= 0 || this.positions.hasNext())) {
+            long position = this.nextPosition >= 0 ? this.nextPosition : this.positions.next();
+            this.nextPosition = -1;
+            long pgNo = position >>> 16;
+            PageId pid = new HeapPageId(this.tableId, (int) pgNo);
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
+            try {
+                while (true) {
+                    Tuple t = page.getTuple((int) (position & 0xFFFF));
+                    if (t != null && this.condition.filter(t)) {
+                        this.pageTuples.add(t);
+                    }
+                    if (!this.positions.hasNext()) {
+                        break;
+                    }
+                    position = this.positions.next();
+                    if (position >>> 16 != pgNo) {
+                        this.nextPosition = position;
+                        break;
+                    }
+                }
+            } finally {
+                Database.getBufferPool().unpinPage(this.tid, pid);
+            }
+        }
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (this.positions == null) {
+            return false;
+        }
+        readPage();
+        return !this.pageTuples.isEmpty();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.pageTuples.removeFirst();
+    }
+
+    public void close() {
+        this.positions = null;
+        this.pageTuples.clear();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        close();
+        open();
+    }
+}
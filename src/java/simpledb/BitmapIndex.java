@@ -0,0 +1,214 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BitmapIndex is an index on a column of a heap table with few distinct
+ * values, such as a type or a year.  For each value it keeps a
+ * {@link RoaringBitmap} of the RecordIds of the tuples with the value,
+ * encoded by {@link #position}, so the tuples that satisfy several
+ * predicates, on the same or different columns, are found by combining
+ * bitmaps with AND and OR before any page of the table is read; see
+ * {@link BitmapHeapScan}.  Predicates with any operator are answered by
+ * combining the bitmaps of the values that satisfy them.
+ * <p>
+ * The bitmaps are kept in memory; they are built by one scan of the table
+ * when the index is added with {@link Catalog#addBitmapIndex}, and the
+ * BufferPool keeps them up to date.  A tuple inserted through
+ * {@link BufferPool#insertTuple} is added at once; a tuple deleted through
+ * {@link BufferPool#deleteTuple} is only removed when the transaction
+ * commits, and an aborted transaction's inserts are removed again.  So the
+ * bitmaps of a value always hold the tuples with the value that any
+ * transaction may see, and maybe a few more, which is why a
+ * BitmapHeapScan checks the predicates again on the tuples it reads: the
+ * uncommitted changes are on pages their transactions hold locks on.
+ *
+ * @Threadsafe
+ */
+public class BitmapIndex {
+
+    private final int tableid;
+    private final int column;
+    // the bitmap of each value, in value order
+    private final TreeMap<Field, RoaringBitmap> bitmaps = new TreeMap<>(BitmapIndex::compare);
+    // the changes of each running transaction, in order
+    private final Map<TransactionId, List<Change>> changes = new HashMap<>();
+
+    /** An insert or a delete of a transaction that hasn't completed. */
+    private static class Change {
+        final boolean insert;
+        final Field value;
+        final long position;
+        final boolean wasSet;  // for inserts, if the bit was set before
+
+        Change(boolean insert, Field value, long position, boolean wasSet) {
+            this.insert = insert;
+            this.value = value;
+            this.position = position;
+            this.wasSet = wasSet;
+        }
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param tableid the table that is indexed; must be stored in a HeapFile
+     * @param column the index of the indexed field of the table
+     */
+    public BitmapIndex(int tableid, int column) {
+        this.tableid = tableid;
+        this.column = column;
+    }
+
+    private static int compare(Field a, Field b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    /** @return the id of the indexed table */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /** @return the index of the indexed field of the table */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the position of the tuple with RecordId rid in the bitmaps:
+     *   its page number in the high bits, its slot in the low 16 bits
+     * @throws IllegalArgumentException if the slot takes more than 16 bits
+     */
+    public static long position(RecordId rid) {
+        if (rid.getTupleNumber() > 0xFFFF) {
+            throw new IllegalArgumentException("slot " + rid.getTupleNumber() + " out of range");
+        }
+        return (long) rid.getPageId().getPageNumber() << 16 | rid.getTupleNumber();
+    }
+
+    /** @return the RecordId of the tuple of the table at a position */
+    public RecordId getRecordId(long position) {
+        return new RecordId(new HeapPageId(tableid, (int) (position >>> 16)), (int) (position & 0xFFFF));
+    }
+
+    /** @return the number of distinct values in the index */
+    public synchronized int numValues() {
+        return bitmaps.size();
+    }
+
+    /** @return the number of bytes the bitmaps take */
+    public synchronized long sizeInBytes() {
+        long bytes = 0;
+        for (RoaringBitmap bitmap : bitmaps.values()) {
+            bytes += bitmap.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private boolean set(Field value, long position) {
+        return bitmaps.computeIfAbsent(value, k -> new RoaringBitmap()).add(position);
+    }
+
+    private void clear(Field value, long position) {
+        RoaringBitmap bitmap = bitmaps.get(value);
+        if (bitmap != null) {
+            bitmap.remove(position);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+    /**
+     * Adds t, a tuple already in the table, to the index outside of any
+     * transaction, as when the index is built.
+     */
+    synchronized void add(Tuple t) {
+        set(t.getField(column), position(t.getRecordId()));
+    }
+
+    /**
+     * Adds t, which tid has just inserted into the table; it is removed
+     * again if tid aborts.
+     */
+    public synchronized void insertEntry(TransactionId tid, Tuple t) {
+        Field value = t.getField(column);
+        long position = position(t.getRecordId());
+        boolean wasSet = !set(value, position);
+        changes.computeIfAbsent(tid, k -> new ArrayList<>()).add(new Change(true, value, position, wasSet));
+    }
+
+    /**
+     * Notes that tid deleted t, a tuple of the table; t is removed from the
+     * index when tid commits.
+     */
+    public synchronized void deleteEntry(TransactionId tid, Tuple t) {
+        changes.computeIfAbsent(tid, k -> new ArrayList<>())
+                .add(new Change(false, t.getField(column), position(t.getRecordId()), false));
+    }
+
+    /**
+     * Applies the deletes of tid if it committed, or removes its inserts if
+     * it aborted.
+     */
+    public synchronized void transactionComplete(TransactionId tid, boolean commit) {
+        List<Change> list = changes.remove(tid);
+        if (list == null) {
+            return;
+        }
+        if (commit) {
+            // in order, so that a tuple deleted and then inserted in the
+            // same slot stays
+            for (Change c : list) {
+                if (c.insert) {
+                    set(c.value, c.position);
+                } else {
+                    clear(c.value, c.position);
+                }
+            }
+        } else {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                Change c = list.get(i);
+                if (c.insert && !c.wasSet) {
+                    clear(c.value, c.position);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the positions of the tuples whose values of the column v
+     *   satisfy v op operand, and maybe of some tuples deleted by running
+     *   transactions; a new bitmap the caller may change
+     */
+    public synchronized RoaringBitmap lookup(Predicate.Op op, Field operand) {
+        if (op == Predicate.Op.EQUALS) {
+            RoaringBitmap bitmap = bitmaps.get(operand);
+            return bitmap == null ? new RoaringBitmap() : bitmap.or(new RoaringBitmap());
+        }
+        // the values that may satisfy the predicate
+        Map<Field, RoaringBitmap> candidates;
+        switch (op) {
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+                candidates = bitmaps.headMap(operand, true);
+                break;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                candidates = bitmaps.tailMap(operand, true);
+                break;
+            default:
+                candidates = bitmaps;
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Field, RoaringBitmap> e : candidates.entrySet()) {
+            if (e.getKey().compare(op, operand)) {
+                result = result.or(e.getValue());
+            }
+        }
+        return result;
+    }
+}
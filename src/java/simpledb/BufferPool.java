@@ -1,10 +1,16 @@
 package simpledb;
 
 import java.io.*;
+import java.lang.reflect.Constructor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -15,6 +21,12 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Cached pages live in frames in a concurrent page table.  A cache hit in
+ * {@link #getPage} only takes the latch (monitor) of the page's frame to
+ * pin it; misses, eviction and the other maintenance operations are
+ * serialized on the BufferPool itself and take the frame latch before
+ * removing a frame, so a frame is never evicted while it is pinned.
  * 
  * @Threadsafe, all fields are final
  */
@@ -29,9 +41,50 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
-    private Map<PageId, Page> pool;
-    private int numPages;
-    private LockManager lockManager;
+    /**
+     * A slot of the pool holding one cached page.  The frame's monitor is
+     * its latch and protects pinCount and evicted.
+     */
+    private static class Frame {
+        volatile Page page;
+        int pinCount;
+        // set once the frame has left the page table; a reader that found
+        // the frame before that has to look the page up again
+        boolean evicted;
+
+        Frame(Page page) {
+            this.page = page;
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, Frame> pool;
+    private final int numPages;
+    private final LockManager lockManager;
+    private PageCleaner pageCleaner;
+    // pins held by each transaction, so they can be dropped when it completes
+    private final ConcurrentHashMap<TransactionId, List<PageId>> pinsByTransaction;
+    // files keeping changes of each transaction off the pages, see enlist
+    private final ConcurrentHashMap<TransactionId, Set<TransactionListener>> listenersByTransaction;
+    private long dirtyEvictions;  // evictions that had to write the victim page
+
+    /** An evicted page kept in a frame of the off-heap arena. */
+    private static class ArenaSlot {
+        final int frame;
+        final Constructor<?> pageConst;  // the page's (id, data) constructor
+
+        ArenaSlot(int frame, Constructor<?> pageConst) {
+            this.frame = frame;
+            this.pageConst = pageConst;
+        }
+    }
+
+    // off-heap images of clean evicted pages, or null if there is no arena
+    private final FrameArena arena;
+    // the pages held in the arena, least recently evicted first
+    private final LinkedHashMap<PageId, ArenaSlot> arenaSlots;
+    private long arenaHits;  // misses served from the arena instead of disk
+    // by page class: its (id, data) constructor, or null if it has none
+    private final Map<Class<?>, Constructor<?>> pageConstructors = new HashMap<>();
 
 
     /**
@@ -40,9 +93,28 @@ public class BufferPool {
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
-        this.pool = new HashMap<>();
+        this(numPages, 0);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages on the heap and
+     * keeps the images of up to arenaPages more pages off the heap, in a
+     * {@link FrameArena}.  Pages are only materialized (as Page objects with
+     * their tuples) while they are among the numPages on the heap, so a
+     * small numPages with a large arena gives a large cache with little
+     * garbage collector load.
+     *
+     * @param numPages maximum number of pages on the heap
+     * @param arenaPages number of off-heap frames, or 0 for no arena
+     */
+    public BufferPool(int numPages, int arenaPages) {
+        this.pool = new ConcurrentHashMap<>();
+        this.pinsByTransaction = new ConcurrentHashMap<>();
+        this.listenersByTransaction = new ConcurrentHashMap<>();
         this.numPages = numPages;
         this.lockManager = new LockManager();
+        this.arena = arenaPages > 0 ? new FrameArena(arenaPages, pageSize) : null;
+        this.arenaSlots = new LinkedHashMap<>();
     }
     
     public static int getPageSize() {
@@ -69,6 +141,10 @@ public class BufferPool {
      * be added to the buffer pool and returned.  If there is insufficient
      * space in the buffer pool, a page should be evicted and the new page
      * should be added in its place.
+     * <p>
+     * The returned page is pinned on behalf of tid and will not be evicted
+     * until the caller releases it with {@link #unpinPage}, or until tid
+     * completes.
      *
      * @param tid the ID of the transaction requesting the page
      * @param pid the ID of the requested page
@@ -77,42 +153,46 @@ public class BufferPool {
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // TODO: i feel like we should double check this method, especially the evicting parts
-        boolean acquired = false;
-        while (!acquired) {
-            synchronized (this) {
-                if (perm == Permissions.READ_WRITE) {
-                    acquired = this.lockManager.acquireExclusiveLock(tid, pid);
-                } else {
-                    acquired = this.lockManager.acquireSharedLock(tid, pid);
-                }
-            }
-            // if lock wasn't acquired, pause the thread execution so we're not stuck forever
-            if (!acquired) {
-                try {
-                    Thread.sleep(2);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        lockPage(tid, pid, perm);
+
+        while (true) {
+            // cache hit: only the frame latch is taken
+            Frame frame = pool.get(pid);
+            if (frame != null) {
+                synchronized (frame) {
+                    if (!frame.evicted) {
+                        frame.pinCount++;
+                        recordPin(tid, pid);
+                        return frame.page;
+                    }
                 }
+                // lost a race with eviction, look again
+                continue;
             }
-        }
 
-        // for lab 1: if more than numPages requests are made for different pages,
-        // instead of implementing an eviction policy, throw a DbException
-        if (this.pool.size() >= numPages) {
-            evictPage();
-        }
-
-        if (!this.pool.containsKey(pid)) {
-            // if page not in buffer pool, get from disk
-            if(pool.size() > numPages) {  // if too many pages we want to evict
-                evictPage();
+            // cache miss: misses and evictions are serialized
+            synchronized (this) {
+                if (pool.containsKey(pid)) {
+                    continue;
+                }
+                // if page not in buffer pool, get from the arena or disk;
+                // take it out of the arena before the eviction needs a frame
+                Page page = readFromArena(pid);
+                if (pool.size() >= numPages) {  // if too many pages we want to evict
+                    evictPage();
+                }
+                if (page == null) {
+                    int tableId = pid.getTableId();
+                    DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
+                    page = dbFile.readPage(pid);
+                }
+                frame = new Frame(page);
+                frame.pinCount = 1;
+                recordPin(tid, pid);
+                pool.put(pid, frame);
+                return frame.page;
             }
-            int tableId = pid.getTableId();
-            DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
-            Page page = dbFile.readPage(pid);
-            this.pool.put(pid, page);
         }
-        return this.pool.get(pid);
 //        int lock = 1;
 //        if(perm == Permissions.READ_ONLY) {
 //            lock = 0;
@@ -131,6 +211,93 @@ public class BufferPool {
 //        return this.pool.get(pid);
     }
 
+    /**
+     * Acquires a lock on the specified page for tid without reading the
+     * page, blocking until it is granted.  Files without pages lock
+     * themselves through a page id of their own this way; the lock is
+     * released when tid completes.
+     *
+     * @param tid the ID of the transaction requesting the lock
+     * @param pid the ID of the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws TransactionAbortedException if waiting would deadlock
+     */
+    public void lockPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+        // the lock manager synchronizes itself, and a transaction that
+        // already holds a strong enough lock finds it without taking a latch
+        boolean acquired = lockManager.holdsLock(tid, pid, perm);
+        while (!acquired) {
+            if (perm == Permissions.READ_WRITE) {
+                acquired = this.lockManager.acquireExclusiveLock(tid, pid);
+            } else {
+                acquired = this.lockManager.acquireSharedLock(tid, pid);
+            }
+            // if lock wasn't acquired, pause the thread execution so we're not stuck forever
+            if (!acquired) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Has {@link #transactionComplete(TransactionId, boolean)} call
+     * listener when tid completes.  Files that keep a transaction's changes
+     * themselves, off the pages, enlist when tid first changes them.
+     *
+     * @param tid the transaction that changed the file
+     * @param listener the file to tell when tid commits or aborts
+     */
+    public void enlist(TransactionId tid, TransactionListener listener) {
+        listenersByTransaction.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    private void recordPin(TransactionId tid, PageId pid) {
+        pinsByTransaction.computeIfAbsent(tid, k -> Collections.synchronizedList(new ArrayList<>())).add(pid);
+    }
+
+    private void releasePin(PageId pid) {
+        Frame frame = pool.get(pid);
+        if (frame != null) {
+            synchronized (frame) {
+                if (frame.pinCount > 0) {
+                    frame.pinCount--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases one pin that tid holds on a page returned by
+     * {@link #getPage}, making the page a candidate for eviction again once
+     * nobody else has it pinned.  Does not release any locks.  Does nothing
+     * if tid does not have the page pinned.
+     *
+     * @param tid the ID of the transaction that pinned the page
+     * @param pid the ID of the page to unpin
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        List<PageId> pins = pinsByTransaction.get(tid);
+        if (pins != null && pins.remove(pid)) {
+            releasePin(pid);
+        }
+    }
+
+    /** @return true if some caller has the specified page pinned */
+    public boolean isPinned(PageId pid) {
+        Frame frame = pool.get(pid);
+        if (frame == null) {
+            return false;
+        }
+        synchronized (frame) {
+            return frame.pinCount > 0;
+        }
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -166,7 +333,9 @@ public class BufferPool {
 
     /**
      * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * the transaction.  The files tid enlisted with (see {@link #enlist})
+     * complete it before its locks are released; if tid committed and has
+     * a BEGIN record in the log, its COMMIT record is written first.
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
@@ -176,30 +345,55 @@ public class BufferPool {
         // Lab 4: NO FORCE: no longer need to force pages to disk at commit time
         //                  for each dirtied page, logWrite(tid, p.getBeforeImage(), p)
         //                  and then force the log to disk
+        // bitmap indexes apply or undo the changes while tid still holds
+        // its locks on the pages of the changed tuples
+        for (BitmapIndex index : Database.getCatalog().getBitmapIndexes()) {
+            index.transactionComplete(tid, commit);
+        }
+        // the files tid changed that keep their own changes, off the pages
+        Set<TransactionListener> listeners = listenersByTransaction.remove(tid);
         if(commit) {
-            for (PageId pageId : pool.keySet()) {
-                Page page = pool.get(pageId);
+            for (Map.Entry<PageId, Frame> entry : pool.entrySet()) {
+                Page page = entry.getValue().page;
 //                if (page.isDirty() == tid) {
 //                    flushPage(pageId);
 //                }
-                Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
-                Database.getLogFile().force();
-                // use current page contents as the before-image
-                // for the next transaction that modifies this page.
-                page.setBeforeImage();
-
+                // pages tid changed that are still dirty haven't been logged;
+                // ones flushed earlier were logged by flushPage
+                boolean dirtied = page.isDirty() == tid;
+                if (dirtied) {
+                    Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+                }
+                if (dirtied || lockManager.hasExclusiveLock(tid, entry.getKey())) {
+                    // use current page contents as the before-image
+                    // for the next transaction that modifies this page.
+                    page.setBeforeImage();
+                }
+            }
+            Database.getLogFile().force();
+            if (listeners != null && Database.getLogFile().isActive(tid)) {
+                // the files' own logs may only commit tid once the log has
+                // its COMMIT record, so they never keep changes recovery
+                // would undo on the pages
+                Database.getLogFile().logCommit(tid);
             }
         } else {
-            for (PageId pageId : pool.keySet()) {
-                Page page = pool.get(pageId);
-                if (page.isDirty() == tid) {
-                    int tableId = pageId.getTableId();
-                    DbFile file = Database.getCatalog().getDatabaseFile(tableId);
-                    Page pageDisk = file.readPage(pageId);
-                    pool.put(pageId, pageDisk);
+            for (Map.Entry<PageId, Frame> entry : pool.entrySet()) {
+                PageId pageId = entry.getKey();
+                Frame frame = entry.getValue();
+                if (frame.page.isDirty() == tid) {
+                    // roll back to the page as of the last commit; under
+                    // NO FORCE the disk may not have that version yet
+                    frame.page = frame.page.getBeforeImage();
                 }
             }
         }
+        if (listeners != null) {
+            // while tid still holds its locks
+            for (TransactionListener listener : listeners) {
+                listener.transactionComplete(tid, commit);
+            }
+        }
         for (PageId pageId : pool.keySet()) {
             if (holdsLock(tid, pageId)) {
                 releasePage(tid, pageId);
@@ -208,6 +402,16 @@ public class BufferPool {
         // clean up dependency graph and locks
         lockManager.removeDependency(tid);
         lockManager.finishTransaction(tid);
+
+        // pins can't outlive their transaction
+        List<PageId> pins = pinsByTransaction.remove(tid);
+        if (pins != null) {
+            synchronized (pins) {
+                for (PageId pid : pins) {
+                    releasePin(pid);
+                }
+            }
+        }
     }
 
     /**
@@ -220,6 +424,10 @@ public class BufferPool {
      * their markDirty bit, and adds versions of any pages that have 
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
+     * The tuple's entries are added to the table's secondary indexes
+     * (see {@link Catalog#getIndexes}) in the same way, and to its bitmap
+     * indexes.  A clustered table is no longer known to be in order
+     * afterwards; see {@link Catalog#cluster}.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -227,18 +435,30 @@ public class BufferPool {
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-        // get heap file (table)
-        HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        // get the table's file
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
         // insert tuple into table and get back list of modified pages
-        ArrayList<Page> pages = heapFile.insertTuple(tid, t);
-        // mark any pages that were dirtied
+        pagesUpdated(tid, file.insertTuple(tid, t));
+        // the table's secondary indexes change in the same transaction
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId)) {
+            pagesUpdated(tid, index.insertEntry(tid, t));
+        }
+        for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableId)) {
+            index.insertEntry(tid, t);
+        }
+        // the tuple goes on any page with room, out of order
+        Database.getCatalog().clearClusterField(tableId);
+    }
+
+    /**
+     * Marks the pages an update returned dirty, makes them the cached
+     * versions and releases the update's pins on them.
+     */
+    private void pagesUpdated(TransactionId tid, ArrayList<Page> pages) throws DbException {
         for (Page page : pages) {
             page.markDirty(true, tid);
-            // if too many pages, evict
-            if (pool.size() > numPages) {
-                evictPage();
-            }
-            pool.put(page.getId(), page);
+            cachePage(page);
+            unpinPage(tid, page.getId());
         }
     }
 
@@ -251,21 +471,41 @@ public class BufferPool {
      * their markDirty bit, and adds versions of any pages that have 
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
+     * The tuple's entries are removed from the table's secondary indexes,
+     * and from its bitmap indexes when tid commits.
      *
      * @param tid the transaction deleting the tuple.
      * @param t the tuple to delete
      */
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-        // get heap file (table)
-        HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
-        // insert tuple into table and get back list of modified pages
-        ArrayList<Page> pages = heapFile.deleteTuple(tid, t);
-        // mark any pages that were dirtied
-        for (Page page : pages) {
-            page.markDirty(true, tid);
-            pool.put(page.getId(), page);
+        // get the table's file
+        DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+        // delete tuple from table and get back list of modified pages
+        pagesUpdated(tid, file.deleteTuple(tid, t));
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(file.getId())) {
+            pagesUpdated(tid, index.deleteEntry(tid, t));
+        }
+        for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(file.getId())) {
+            index.deleteEntry(tid, t);
+        }
+    }
+
+    /**
+     * Makes page the cached version of its page id, replacing the page in
+     * an existing frame or adding a new, unpinned frame.
+     */
+    private synchronized void cachePage(Page page) throws DbException {
+        Frame frame = pool.get(page.getId());
+        if (frame != null) {
+            frame.page = page;
+            return;
         }
+        // if too many pages, evict
+        if (pool.size() >= numPages) {
+            evictPage();
+        }
+        pool.put(page.getId(), new Frame(page));
     }
 
     /**
@@ -274,10 +514,49 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        // some code goes here
-        // not necessary for lab1
-        for(Page current : pool.values()) {
-            flushPage(current.getId());
+        List<Page> pages = new ArrayList<>();
+        for (Frame frame : pool.values()) {
+            pages.add(frame.page);
+        }
+        flushPagesBatched(pages);
+    }
+
+    /**
+     * Flushes a set of pages with as little I/O as possible: all update
+     * records are appended to the log and the log is forced once, then the
+     * dirty pages are grouped by file and written in page order, with
+     * adjacent pages coalesced into single writes (see
+     * {@link HeapFile#writePages}).
+     *
+     * @param pages candidate pages; clean pages are skipped
+     */
+    private synchronized void flushPagesBatched(List<Page> pages) throws IOException {
+        Map<Integer, List<Page>> dirtyByTable = new HashMap<>();
+        for (Page page : pages) {
+            TransactionId dirtier = page.isDirty();
+            if (dirtier != null) {
+                Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
+                dirtyByTable.computeIfAbsent(page.getId().getTableId(), k -> new ArrayList<>()).add(page);
+            }
+        }
+        if (dirtyByTable.isEmpty()) {
+            return;
+        }
+        // write-ahead rule: every update record is on disk before any page
+        Database.getLogFile().force();
+
+        for (Map.Entry<Integer, List<Page>> entry : dirtyByTable.entrySet()) {
+            DbFile file = Database.getCatalog().getDatabaseFile(entry.getKey());
+            if (file instanceof HeapFile) {
+                ((HeapFile) file).writePages(entry.getValue());
+            } else {
+                for (Page page : entry.getValue()) {
+                    file.writePage(page);
+                }
+            }
+            for (Page page : entry.getValue()) {
+                page.markDirty(false, null);
+            }
         }
     }
 
@@ -290,7 +569,39 @@ public class BufferPool {
         are removed from the cache so they can be reused safely
     */
     public synchronized void discardPage(PageId pid) {
-        pool.remove(pid);
+        ArenaSlot slot = arenaSlots.remove(pid);
+        if (slot != null) {
+            arena.free(slot.frame);
+        }
+        Frame frame = pool.remove(pid);
+        if (frame != null) {
+            synchronized (frame) {
+                frame.evicted = true;
+            }
+        }
+    }
+
+    /**
+     * Removes all pages of a table from the buffer pool, as when the table
+     * is rewritten on disk, and from the arena, so a miss doesn't get an
+     * old image back.  Dirty pages are dropped, not written.
+     *
+     * @param tableid the id of the table
+     */
+    public synchronized void discardPages(int tableid) {
+        for (PageId pid : new ArrayList<>(pool.keySet())) {
+            if (pid.getTableId() == tableid) {
+                discardPage(pid);
+            }
+        }
+        Iterator<Map.Entry<PageId, ArenaSlot>> slots = arenaSlots.entrySet().iterator();
+        while (slots.hasNext()) {
+            Map.Entry<PageId, ArenaSlot> slot = slots.next();
+            if (slot.getKey().getTableId() == tableid) {
+                arena.free(slot.getValue().frame);
+                slots.remove();
+            }
+        }
     }
 
     /**
@@ -298,13 +609,17 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
-        if (pool.containsKey(pid)) {
-            Page current = pool.get(pid);
+        Frame frame = pool.get(pid);
+        if (frame != null) {
+            Page current = frame.page;
                 // append an update record to the log, with
                 // a before-image and after-image.
                 TransactionId dirtier = current.isDirty();
                 if (dirtier != null){
+                    // write-ahead rule: the update record must be on disk
+                    // before the page is
                     Database.getLogFile().logWrite(dirtier, current.getBeforeImage(), current);
+                    Database.getLogFile().force();
 
                     int tableid = pid.getTableId();
                     Database.getCatalog().getDatabaseFile(tableid).writePage(current);
@@ -313,6 +628,80 @@ public class BufferPool {
             }
         }
 
+    /**
+     * Starts a background {@link PageCleaner} that writes dirty pages out
+     * ahead of eviction.  Does nothing if a cleaner is already running.
+     *
+     * @param lowWaterRatio stop cleaning once at most this fraction of the pool is dirty
+     * @param highWaterRatio start cleaning once at least this fraction of the pool is dirty
+     * @param intervalMillis how long the cleaner sleeps between checks
+     * @return the running cleaner
+     */
+    public synchronized PageCleaner startPageCleaner(double lowWaterRatio, double highWaterRatio,
+                                                     long intervalMillis) {
+        if (pageCleaner == null) {
+            pageCleaner = new PageCleaner(this, lowWaterRatio, highWaterRatio, intervalMillis);
+            pageCleaner.start();
+        }
+        return pageCleaner;
+    }
+
+    public PageCleaner startPageCleaner() {
+        return startPageCleaner(PageCleaner.DEFAULT_LOW_WATER_RATIO,
+                PageCleaner.DEFAULT_HIGH_WATER_RATIO, PageCleaner.DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /** Stops the background page cleaner, if there is one. */
+    public void stopPageCleaner() {
+        PageCleaner cleaner;
+        synchronized (this) {
+            cleaner = pageCleaner;
+            pageCleaner = null;
+        }
+        // don't hold our lock while waiting, the cleaner may need it to finish
+        if (cleaner != null) {
+            cleaner.shutdown();
+        }
+    }
+
+    /** @return the background page cleaner, or null if none is running */
+    public synchronized PageCleaner getPageCleaner() {
+        return pageCleaner;
+    }
+
+    /** @return the fraction of the pool's capacity taken up by dirty pages */
+    synchronized double dirtyRatio() {
+        int dirty = 0;
+        for (Frame frame : pool.values()) {
+            if (frame.page.isDirty() != null) {
+                dirty++;
+            }
+        }
+        return (double) dirty / numPages;
+    }
+
+    /**
+     * Writes one dirty page to disk, leaving it cached and clean.  Used by
+     * the {@link PageCleaner}.
+     *
+     * @return true if a page was written, false if no unpinned page was dirty
+     */
+    synchronized boolean cleanPage() throws IOException {
+        for (Map.Entry<PageId, Frame> entry : pool.entrySet()) {
+            // a pinned page may be in the middle of being modified
+            if (entry.getValue().page.isDirty() != null && !isPinned(entry.getKey())) {
+                flushPage(entry.getKey());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the number of evictions that had to write a dirty page first */
+    public synchronized long getDirtyEvictions() {
+        return dirtyEvictions;
+    }
+
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
@@ -323,6 +712,9 @@ public class BufferPool {
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Pinned pages are never chosen.
+     *
+     * @throws DbException if every page in the pool is pinned
      */
     private synchronized  void evictPage() throws DbException {
         // Lab 3: NO-STEAL: cannot evict dirty page
@@ -342,17 +734,143 @@ public class BufferPool {
 //        }
 
         // Lab 4: STEAL: can flush any page to disk
-        //        choose a page randomly
-        int randomPageIndex = (int) ((pool.size() - 1) * Math.random());
-        ArrayList<PageId> pages = new ArrayList<>(pool.keySet());
-        PageId pageToEvict = pages.get(randomPageIndex);
+        //        choose an unpinned page randomly, preferring clean pages so
+        //        that a page fault doesn't have to wait on a write
+        //        a hit in getPage can pin a candidate concurrently, so the
+        //        pin count is checked again under the frame latch
+        ArrayList<PageId> pages = new ArrayList<>();
+        ArrayList<PageId> dirtyPages = new ArrayList<>();
+        for (Map.Entry<PageId, Frame> entry : pool.entrySet()) {
+            if (isPinned(entry.getKey())) {
+                continue;
+            }
+            if (entry.getValue().page.isDirty() == null) {
+                pages.add(entry.getKey());
+            } else {
+                dirtyPages.add(entry.getKey());
+            }
+        }
+        Collections.shuffle(pages);
+        Collections.shuffle(dirtyPages);
+        for (PageId pageToEvict : pages) {
+            if (tryEvict(pageToEvict)) {
+                return;
+            }
+        }
+        for (PageId pageToEvict : dirtyPages) {
+            if (tryEvict(pageToEvict)) {
+                dirtyEvictions++;
+                return;
+            }
+        }
+        throw new DbException("all pages are pinned; cannot evict any");
+    }
 
+    /**
+     * Flushes and removes the specified page, unless it has been pinned
+     * since it was chosen.  The frame latch is held from the pin check
+     * through the flush to the removal, so nobody can pin the page and
+     * change it while it is being written.
+     *
+     * @return true if the page was evicted
+     */
+    private synchronized boolean tryEvict(PageId pid) {
+        Frame frame = pool.get(pid);
+        if (frame == null) {
+            return false;
+        }
+        synchronized (frame) {
+            if (frame.pinCount > 0 || frame.evicted) {
+                return false;
+            }
+            try {
+                flushPage(pid);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+            frame.evicted = true;
+            pool.remove(pid);
+        }
+        // the page was just flushed, so the arena copy matches the disk
+        writeToArena(frame.page);
+        return true;
+    }
+
+    /**
+     * Keeps the image of a clean page in the arena, replacing the page
+     * that has been there longest if the arena is full.
+     */
+    private synchronized void writeToArena(Page page) {
+        if (arena == null) {
+            return;
+        }
+        Constructor<?> pageConst = pageConstructor(page);
+        if (pageConst == null) {
+            return;  // the page couldn't be rebuilt from its image
+        }
+        byte[] data = page.getPageData();
+        if (data.length != arena.getFrameSize()) {
+            return;  // the page size changed since the arena was made
+        }
+        int frame = arena.allocate();
+        if (frame < 0) {
+            Iterator<ArenaSlot> oldest = arenaSlots.values().iterator();
+            frame = oldest.next().frame;
+            oldest.remove();
+        }
+        arena.write(frame, data);
+        arenaSlots.put(page.getId(), new ArenaSlot(frame, pageConst));
+    }
+
+    /**
+     * @return the constructor that builds pages of the class of page from
+     *   their id and data, whose first parameter is the page's own kind of
+     *   PageId, or null if the class has none
+     */
+    private synchronized Constructor<?> pageConstructor(Page page) {
+        Class<?> pageClass = page.getClass();
+        if (!pageConstructors.containsKey(pageClass)) {
+            Constructor<?> pageConst = null;
+            try {
+                pageConst = pageClass.getDeclaredConstructor(page.getId().getClass(), byte[].class);
+            } catch (NoSuchMethodException e) {
+                // pages of this class aren't kept in the arena
+            }
+            pageConstructors.put(pageClass, pageConst);
+        }
+        return pageConstructors.get(pageClass);
+    }
+
+    /**
+     * Moves a page from the arena back onto the heap.
+     *
+     * @return the page, or null if the arena doesn't hold it
+     */
+    private synchronized Page readFromArena(PageId pid) {
+        ArenaSlot slot = arenaSlots.remove(pid);
+        if (slot == null) {
+            return null;
+        }
+        byte[] data = arena.read(slot.frame);
+        arena.free(slot.frame);
         try {
-            flushPage(pageToEvict);
-        } catch (IOException e) {
-            e.printStackTrace();
+            Page page = (Page) slot.pageConst.newInstance(pid, data);
+            arenaHits++;
+            return page;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;  // fall back to reading it from disk
         }
-        discardPage(pageToEvict);
+    }
+
+    /** @return the number of page misses that were served from the arena */
+    public synchronized long getArenaHits() {
+        return arenaHits;
+    }
+
+    /** @return the number of pages held in the off-heap arena */
+    public synchronized int getArenaPages() {
+        return arenaSlots.size();
     }
 
 }
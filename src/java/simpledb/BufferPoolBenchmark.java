@@ -0,0 +1,85 @@
+package simpledb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures page fetch throughput and garbage collector load of the
+ * BufferPool with and without the off-heap arena.  Usage:
+ * <pre>
+ * java -Xlog:gc -cp dist/simpledb.jar simpledb.BufferPoolBenchmark \
+ *     tablePages heapPages arenaPages fetches
+ * </pre>
+ * A table of tablePages pages of two int columns is written to a temporary
+ * file, then fetches random pages are read through a pool of heapPages
+ * pages on the heap and arenaPages frames off the heap.  Compare e.g. a
+ * run with a large heapPages and no arena against one with a small
+ * heapPages and a large arena; the GC log shows the pause times.
+ */
+public class BufferPoolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("usage: BufferPoolBenchmark tablePages heapPages arenaPages fetches");
+            System.exit(1);
+        }
+        int tablePages = Integer.parseInt(args[0]);
+        int heapPages = Integer.parseInt(args[1]);
+        int arenaPages = Integer.parseInt(args[2]);
+        long fetches = Long.parseLong(args[3]);
+
+        // every page holds the same full page of tuples
+        File f = File.createTempFile("bpbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        HeapPage full = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        for (int value = 0; full.getNumEmptySlots() > 0; value++) {
+            full.insertTuple(Utility.getHeapTuple(value, 2));
+        }
+        byte[] data = full.getPageData();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
+            for (int pgNo = 0; pgNo < tablePages; pgNo++) {
+                out.write(data);
+            }
+        }
+
+        BufferPool bp = Database.resetBufferPool(heapPages, arenaPages);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(0);
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long start = System.nanoTime();
+        for (long i = 0; i < fetches; i++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(tablePages));
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        bp.transactionComplete(tid);
+
+        System.out.printf("%d fetches in %.2f s (%.0f pages/s)%n", fetches, seconds, fetches / seconds);
+        System.out.printf("arena hits: %d, pages in arena: %d%n", bp.getArenaHits(), bp.getArenaPages());
+        System.out.printf("GC: %d collections, %d ms%n", gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Measures how BufferPool hit throughput scales with the number of
+ * threads.  Usage:
+ * <pre>
+ * java -cp dist/simpledb.jar simpledb.BufferPoolScalingBenchmark \
+ *     tablePages maxThreads fetchesPerThread
+ * </pre>
+ * A table of tablePages pages is written to a temporary file and read
+ * into a pool large enough to hold it all.  Then, for 1, 2, 4, ... up to
+ * maxThreads threads, each thread fetches fetchesPerThread random pages
+ * read-only, as a transaction of its own that already holds its locks,
+ * so every fetch is a hit.
+ */
+public class BufferPoolScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("usage: BufferPoolScalingBenchmark tablePages maxThreads fetchesPerThread");
+            System.exit(1);
+        }
+        int tablePages = Integer.parseInt(args[0]);
+        int maxThreads = Integer.parseInt(args[1]);
+        long fetches = Long.parseLong(args[2]);
+
+        File f = File.createTempFile("bpscale", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        byte[] data = HeapPage.createEmptyPageData();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
+            for (int pgNo = 0; pgNo < tablePages; pgNo++) {
+                out.write(data);
+            }
+        }
+        BufferPool bp = Database.resetBufferPool(tablePages);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Thread[] workers = new Thread[threads];
+            TransactionId[] tids = new TransactionId[threads];
+            for (int i = 0; i < threads; i++) {
+                TransactionId tid = new TransactionId();
+                tids[i] = tid;
+                // take the locks and load the pages before timing
+                for (int pgNo = 0; pgNo < tablePages; pgNo++) {
+                    HeapPageId pid = new HeapPageId(hf.getId(), pgNo);
+                    bp.getPage(tid, pid, Permissions.READ_ONLY);
+                    bp.unpinPage(tid, pid);
+                }
+                final int seed = i;
+                workers[i] = new Thread(() -> {
+                    Random r = new Random(seed);
+                    try {
+                        for (long n = 0; n < fetches; n++) {
+                            HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(tablePages));
+                            bp.getPage(tid, pid, Permissions.READ_ONLY);
+                            bp.unpinPage(tid, pid);
+                        }
+                    } catch (DbException | TransactionAbortedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread t : workers) {
+                t.start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (TransactionId tid : tids) {
+                bp.transactionComplete(tid);
+            }
+            long total = fetches * threads;
+            System.out.printf("%d threads: %d fetches in %.2f s (%.0f pages/s)%n",
+                    threads, total, seconds, total / seconds);
+        }
+    }
+}
@@ -22,6 +22,8 @@ public class Catalog {
         public final String name;
         public final String pKey;
         public final DbFile dbFile;
+        // the field the tuples are in order of, or -1; see cluster
+        public volatile int clusterField = -1;
 
         // table constructor
         public Table(String name, String pKey, DbFile dbFile) {
@@ -45,6 +47,10 @@ public class Catalog {
         }
     }
     private Map<Integer, Table> track;
+    // secondary indexes by the id of the indexed table
+    private final Map<Integer, List<SecondaryIndex>> indexes = new ConcurrentHashMap<>();
+    // bitmap indexes by the id of the indexed table
+    private final Map<Integer, List<BitmapIndex>> bitmapIndexes = new ConcurrentHashMap<>();
     /**
      * Constructor.
      * Creates a new, empty catalog.
@@ -73,7 +79,11 @@ public class Catalog {
             }
             if(removed != 0) {
                 track.remove(removed);
+                indexes.remove(removed);
+                bitmapIndexes.remove(removed);
             }
+            indexes.remove(identifier);
+            bitmapIndexes.remove(identifier);
             Table table = new Table(name, pkeyField, file);
             track.put(identifier, table);
         }
@@ -147,13 +157,281 @@ public class Catalog {
         return track.get(id).getName();
     }
     
+    /**
+     * Adds a secondary index on a field of a table; see
+     * {@link SecondaryIndex}.  The entries are stored in a BTreeFile in f,
+     * which is added to the catalog as the table
+     * <code>table_field_idx</code>.  If f is new, the index is built from
+     * the tuples already in the table with
+     * {@link BTreeFileEncoder#DEFAULT_FILL_FACTOR}.  The entries also store
+     * the values of the included fields, so that queries that only need
+     * them and the indexed field can be answered from the index alone.
+     *
+     * @param tableid the table to index; must be stored in a HeapFile
+     * @param fieldName the name of the field to index
+     * @param f the file that stores the index
+     * @param include the names of the fields to include, maybe none
+     * @return the new index
+     * @throws IllegalArgumentException if the table isn't a heap table
+     * @throws NoSuchElementException if the table or a field doesn't exist
+     */
+    public SecondaryIndex addIndex(int tableid, String fieldName, File f, String... include)
+            throws IOException, DbException, TransactionAbortedException {
+        return addIndex(tableid, fieldName, f, BTreeFileEncoder.DEFAULT_FILL_FACTOR, include);
+    }
+
+    /**
+     * Adds a secondary index on a field of a table, as
+     * {@link #addIndex(int, String, File, String...)} does.  A new index is built by
+     * scanning the table once, sorting the entries, on disk if need be, and
+     * writing the tree bottom up with {@link BTreeFileEncoder}, each page
+     * filled to fillFactor.
+     *
+     * @param fillFactor the fraction of each index page to fill, in (0, 1]
+     */
+    public SecondaryIndex addIndex(int tableid, String fieldName, File f, double fillFactor, String... include)
+            throws IOException, DbException, TransactionAbortedException {
+        DbFile table = getDatabaseFile(tableid);
+        if (!(table instanceof HeapFile)) {
+            throw new IllegalArgumentException("only heap tables can have secondary indexes");
+        }
+        TupleDesc td = table.getTupleDesc();
+        int column = td.fieldNameToIndex(fieldName);
+        int[] included = new int[include.length];
+        for (int i = 0; i < include.length; i++) {
+            included[i] = td.fieldNameToIndex(include[i]);
+        }
+        TupleDesc entryTd = SecondaryIndex.entryTupleDesc(td, column, included);
+        int[] keyFields = SecondaryIndex.keyFields(included.length);
+        if (f.length() == 0) {
+            TransactionId tid = new TransactionId();
+            try (ExternalSort sort = new ExternalSort(entryTd, keyFields, ExternalSort.DEFAULT_RUN_SIZE)) {
+                DbFileIterator it = table.iterator(tid);
+                it.open();
+                while (it.hasNext()) {
+                    sort.add(SecondaryIndex.entry(entryTd, column, included, it.next()));
+                }
+                it.close();
+                BTreeFileEncoder.bulkLoad(sort.sorted(), f, entryTd, keyFields, fillFactor);
+            } finally {
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }
+        BTreeFile file = new BTreeFile(f, keyFields, entryTd);
+        addTable(file, getTableName(tableid) + "_" + fieldName + "_idx");
+        SecondaryIndex index = new SecondaryIndex(tableid, column, included, file);
+        indexes.computeIfAbsent(tableid, k -> new java.util.concurrent.CopyOnWriteArrayList<>()).add(index);
+        return index;
+    }
+
+    /**
+     * @return the secondary indexes of the specified table, maybe none
+     */
+    public List<SecondaryIndex> getIndexes(int tableid) {
+        List<SecondaryIndex> list = indexes.get(tableid);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Adds a bitmap index on a field of a table; see {@link BitmapIndex}.
+     * The index is built from the tuples already in the table, in one scan.
+     *
+     * @param tableid the table to index; must be stored in a HeapFile
+     * @param fieldName the name of the field to index
+     * @return the new index
+     * @throws IllegalArgumentException if the table isn't a heap table
+     * @throws NoSuchElementException if the table or field doesn't exist
+     */
+    public BitmapIndex addBitmapIndex(int tableid, String fieldName)
+            throws DbException, TransactionAbortedException, IOException {
+        DbFile table = getDatabaseFile(tableid);
+        if (!(table instanceof HeapFile)) {
+            throw new IllegalArgumentException("only heap tables can have bitmap indexes");
+        }
+        BitmapIndex index = new BitmapIndex(tableid, table.getTupleDesc().fieldNameToIndex(fieldName));
+        TransactionId tid = new TransactionId();
+        try {
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                index.add(it.next());
+            }
+            it.close();
+        } finally {
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        bitmapIndexes.computeIfAbsent(tableid, k -> new java.util.concurrent.CopyOnWriteArrayList<>()).add(index);
+        return index;
+    }
+
+    /**
+     * @return the bitmap indexes of the specified table, maybe none
+     */
+    public List<BitmapIndex> getBitmapIndexes(int tableid) {
+        List<BitmapIndex> list = bitmapIndexes.get(tableid);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return the bitmap indexes of all tables
+     */
+    public List<BitmapIndex> getBitmapIndexes() {
+        List<BitmapIndex> all = new ArrayList<>();
+        for (List<BitmapIndex> list : bitmapIndexes.values()) {
+            all.addAll(list);
+        }
+        return all;
+    }
+
+    /**
+     * Physically reorders a heap table by a field, like the CLUSTER command
+     * of other databases.  The tuples are read in one scan, sorted with an
+     * {@link ExternalSort} and written back to full pages in order with
+     * {@link HeapFile#rewrite}, and the secondary and bitmap indexes of the
+     * table, whose RecordIds change, are built again.  The catalog then
+     * records that the table is clustered on the field, see
+     * {@link #getClusterField}, so that scans with range predicates on it
+     * read only the consecutive pages of the range, and ORDER BY on it
+     * needs no sort, until a tuple is inserted.  Deletes keep the order.
+     * <p>
+     * The table is rewritten outside of any transaction and without
+     * logging, so run it when no transaction uses the table.  A checkpoint
+     * is taken after the rewrite, so recovery doesn't apply records of the
+     * table from before it.
+     *
+     * @param tableid the table to cluster; must be stored in a HeapFile
+     * @param fieldName the name of the field to order the tuples by
+     * @throws IllegalArgumentException if the table isn't a heap table
+     * @throws NoSuchElementException if the table or field doesn't exist
+     */
+    public void cluster(int tableid, String fieldName)
+            throws IOException, DbException, TransactionAbortedException {
+        DbFile table = getDatabaseFile(tableid);
+        if (!(table instanceof HeapFile)) {
+            throw new IllegalArgumentException("only heap tables can be clustered");
+        }
+        HeapFile hf = (HeapFile) table;
+        TupleDesc td = hf.getTupleDesc();
+        int field = td.fieldNameToIndex(fieldName);
+        BufferPool pool = Database.getBufferPool();
+        pool.flushAllPages();
+        TransactionId tid = new TransactionId();
+        try (ExternalSort sort = new ExternalSort(td, field, ExternalSort.DEFAULT_RUN_SIZE)) {
+            try {
+                DbFileIterator it = hf.iterator(tid);
+                it.open();
+                while (it.hasNext()) {
+                    sort.add(it.next());
+                }
+                it.close();
+            } finally {
+                pool.transactionComplete(tid);
+            }
+            Iterator<Tuple> sorted = sort.sorted();
+            pool.discardPages(tableid);
+            hf.rewrite(sorted);
+        }
+        rebuildIndexes(tableid);
+        // the log holds images of the table's pages from before the
+        // rewrite, which recovery must not apply to the new file
+        pool.flushAllPages();
+        Database.getLogFile().logCheckpoint();
+        track.get(tableid).clusterField = field;
+    }
+
+    // builds the secondary and bitmap indexes of a table again from its tuples
+    private void rebuildIndexes(int tableid) throws IOException, DbException, TransactionAbortedException {
+        TupleDesc td = getTupleDesc(tableid);
+        List<SecondaryIndex> secondary = indexes.remove(tableid);
+        for (SecondaryIndex index : secondary == null ? Collections.<SecondaryIndex>emptyList() : secondary) {
+            String[] include = new String[index.getIncludedColumns().length];
+            for (int i = 0; i < include.length; i++) {
+                include[i] = td.getFieldName(index.getIncludedColumns()[i]);
+            }
+            File f = index.getFile().getFile();
+            Database.getBufferPool().discardPages(index.getFile().getId());
+            if (!f.delete()) {
+                throw new IOException("can't delete index file " + f);
+            }
+            addIndex(tableid, td.getFieldName(index.getColumn()), f, include);
+        }
+        List<BitmapIndex> bitmaps = bitmapIndexes.remove(tableid);
+        for (BitmapIndex index : bitmaps == null ? Collections.<BitmapIndex>emptyList() : bitmaps) {
+            addBitmapIndex(tableid, td.getFieldName(index.getColumn()));
+        }
+    }
+
+    /**
+     * @return the index of the field the specified table is clustered on,
+     *   see {@link #cluster}, or -1 if its tuples aren't known to be in
+     *   order or the table doesn't exist
+     */
+    public int getClusterField(int tableid) {
+        Table table = track.get(tableid);
+        return table == null ? -1 : table.clusterField;
+    }
+
+    /**
+     * Forgets that the specified table is clustered, as when a tuple is
+     * inserted out of order; see {@link #cluster}.
+     */
+    public void clearClusterField(int tableid) {
+        Table table = track.get(tableid);
+        if (table != null) {
+            table.clusterField = -1;
+        }
+    }
+
+    // returns true if the tuples of a heap table are in order of a field
+    private static boolean sortedOn(HeapFile hf, int field)
+            throws IOException, DbException, TransactionAbortedException {
+        Comparator<Tuple> order = ExternalSort.comparator(hf.getTupleDesc(), field);
+        TransactionId tid = new TransactionId();
+        try {
+            DbFileIterator it = hf.iterator(tid);
+            it.open();
+            Tuple prev = null;
+            boolean sorted = true;
+            while (sorted && it.hasNext()) {
+                Tuple t = it.next();
+                sorted = prev == null || order.compare(prev, t) <= 0;
+                prev = t;
+            }
+            it.close();
+            return sorted;
+        } finally {
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
         track.clear();
+        indexes.clear();
+        bitmapIndexes.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line is of the form <code>name (field type [pk] [dict] [bitmap] [clustered] [index [include field ...]], ...) [storage]</code>,
+     * where the optional storage keyword <code>slotted</code> makes the table a
+     * {@link SlottedHeapFile}, <code>pax</code> a {@link PaxFile},
+     * <code>column</code> a {@link ColumnFile}, <code>compressed</code> a
+     * {@link CompressedHeapFile}, <code>btree</code> a {@link BTreeFile},
+     * <code>hash</code> a {@link HashFile} and <code>lsm</code> an
+     * {@link LsmFile}, all keyed on the pk field,
+     * which they then require; <code>memory</code> makes it a
+     * {@link MemoryFile}, snapshotted to the .dat file; without
+     * it the table is a plain HeapFile, or a
+     * {@link DictionaryHeapFile} if some string fields are annotated with
+     * <code>dict</code>.  Fields annotated with <code>index</code> get a
+     * {@link SecondaryIndex}, stored in <code>name.field.idx</code>, whose
+     * entries also store the fields listed after <code>include</code>; see
+     * {@link #addIndex}.  Fields annotated with <code>bitmap</code> get a
+     * {@link BitmapIndex}; see {@link #addBitmapIndex}.  A heap table may
+     * have one field annotated with <code>clustered</code>: the table is
+     * recorded as clustered on it, see {@link #cluster}, and is first
+     * reordered if its tuples aren't in order of the field.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -171,6 +449,11 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Boolean> encoded = new ArrayList<Boolean>();
+                // indexed fields, each with its included fields
+                Map<String, List<String>> indexed = new LinkedHashMap<String, List<String>>();
+                ArrayList<String> bitmapped = new ArrayList<String>();
+                String clustered = null;
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -182,11 +465,24 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    encoded.add(false);
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("dict") && types.get(types.size() - 1) == Type.STRING_TYPE)
+                            encoded.set(encoded.size() - 1, true);
+                        else if (els2[i].trim().equals("bitmap"))
+                            bitmapped.add(els2[0].trim());
+                        else if (els2[i].trim().equals("clustered") && clustered == null)
+                            clustered = els2[0].trim();
+                        else if (els2[i].trim().equals("index"))
+                            indexed.put(els2[0].trim(), new ArrayList<String>());
+                        else if (els2[i].trim().equals("include") && indexed.containsKey(els2[0].trim())) {
+                            for (i++; i < els2.length; i++)
+                                indexed.get(els2[0].trim()).add(els2[i].trim());
+                        }
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -194,11 +490,77 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                // an optional keyword after the schema selects the storage
+                String storage = line.substring(line.indexOf(")") + 1).trim().toLowerCase();
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                boolean[] encodedAr = new boolean[encoded.size()];
+                for (int i = 0; i < encodedAr.length; i++)
+                    encodedAr[i] = encoded.get(i);
+                DbFile tabHf;
+                if (!storage.equals("") && encoded.contains(true)) {
+                    System.out.println("dict fields need the default storage, not " + storage);
+                    System.exit(0);
+                    return;
+                } else if (encoded.contains(true))
+                    tabHf = new DictionaryHeapFile(tabFile, t, encodedAr);
+                else if (storage.equals(""))
+                    tabHf = new HeapFile(tabFile, t);
+                else if (storage.equals("slotted"))
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                else if (storage.equals("pax"))
+                    tabHf = new PaxFile(tabFile, t);
+                else if (storage.equals("column"))
+                    tabHf = new ColumnFile(tabFile, t);
+                else if (storage.equals("compressed"))
+                    tabHf = new CompressedHeapFile(tabFile, t);
+                else if (storage.equals("btree") && !primaryKey.equals(""))
+                    tabHf = new BTreeFile(tabFile, names.indexOf(primaryKey), t);
+                else if (storage.equals("hash") && !primaryKey.equals(""))
+                    tabHf = new HashFile(tabFile, names.indexOf(primaryKey), t);
+                else if (storage.equals("lsm") && !primaryKey.equals(""))
+                    tabHf = new LsmFile(tabFile, names.indexOf(primaryKey), t);
+                else if (storage.equals("memory"))
+                    tabHf = new MemoryFile(tabFile, t);
+                else if (storage.equals("btree") || storage.equals("hash") || storage.equals("lsm")) {
+                    System.out.println(storage + " storage needs a pk field");
+                    System.exit(0);
+                    return;
+                }
+                else {
+                    System.out.println("Unknown storage " + storage);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                for (String field : indexed.keySet()) {
+                    if (!(tabHf instanceof HeapFile)) {
+                        System.out.println("index fields need heap storage, not " + storage);
+                        System.exit(0);
+                    }
+                    addIndex(tabHf.getId(), field, new File(baseFolder + "/" + name + "." + field + ".idx"),
+                            indexed.get(field).toArray(new String[0]));
+                }
+                for (String field : bitmapped) {
+                    if (!(tabHf instanceof HeapFile)) {
+                        System.out.println("bitmap fields need heap storage, not " + storage);
+                        System.exit(0);
+                    }
+                    addBitmapIndex(tabHf.getId(), field);
+                }
+                if (clustered != null) {
+                    if (!(tabHf instanceof HeapFile)) {
+                        System.out.println("clustered fields need heap storage, not " + storage);
+                        System.exit(0);
+                    }
+                    int field = names.indexOf(clustered);
+                    if (sortedOn((HeapFile) tabHf, field))
+                        track.get(tabHf.getId()).clusterField = field;
+                    else
+                        cluster(tabHf.getId(), clustered);
+                }
             }
-        } catch (IOException e) {
+        } catch (IOException | DbException | TransactionAbortedException e) {
             e.printStackTrace();
             System.exit(0);
         } catch (IndexOutOfBoundsException e) {
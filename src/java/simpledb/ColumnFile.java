@@ -0,0 +1,331 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ColumnFile is a DbFile that stores each column of a table in its own file
+ * of {@link ColumnPage}s.  Tuple number p of the table (its position) has
+ * its values at position p of every column file; a tuple is inserted by
+ * appending a value to every column, and deleted by clearing its live bit
+ * in every column, so positions never move.
+ * <p>
+ * A scan of some columns, {@link #iterator(TransactionId, int[], Predicate[])}
+ * or a {@link SeqScan} with a column list and filters, reads only the files
+ * of the columns it uses.  It evaluates the filters first, column by column,
+ * and reads the values of the other requested columns only for the
+ * positions that pass them (late materialization), so a column page none of
+ * whose positions pass is never read at all.
+ * <p>
+ * The file the table is created with only names it; column i is stored in
+ * {@link #columnFile}(f, i).  Declare a table as a column store in the
+ * catalog file by following its schema with the <code>column</code>
+ * keyword, and load it with {@link HeapFileEncoder#convertColumns}.
+ *
+ * @see ColumnPage
+ * @see Catalog#loadSchema
+ */
+public class ColumnFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+
+    /**
+     * Constructs a column file for the table named by f.
+     *
+     * @param f
+     *            the file naming the table; the columns are stored next to
+     *            it, see {@link #columnFile}
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+    }
+
+    /**
+     * @return the file that stores column i of the table named by f
+     */
+    public static File columnFile(File f, int i) {
+        return new File(f.getPath() + "." + i + ".col");
+    }
+
+    /**
+     * Returns the File naming this table.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this ColumnFile, the hash code of
+     * the absolute path of the file naming it.
+     */
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * Returns the number of pages in the file of the specified column.
+     */
+    public int numPages(int column) {
+        return (int) (columnFile(f, column).length() / BufferPool.getPageSize());
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof ColumnPageId)) {
+            throw new IllegalArgumentException();
+        }
+        ColumnPageId cpid = (ColumnPageId) pid;
+        if (cpid.getColumn() < 0 || cpid.getColumn() >= td.numFields()
+                || cpid.getPageNumber() < 0 || cpid.getPageNumber() >= numPages(cpid.getColumn())) {
+            throw new IllegalArgumentException();
+        }
+        try (RandomAccessFile r = new RandomAccessFile(columnFile(f, cpid.getColumn()), "r")) {
+            byte[] data = new byte[BufferPool.getPageSize()];
+            r.seek((long) cpid.getPageNumber() * BufferPool.getPageSize());
+            r.readFully(data);
+            return new ColumnPage(cpid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        throw new IllegalArgumentException();
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId cpid = (ColumnPageId) page.getId();
+        try (RandomAccessFile w = new RandomAccessFile(columnFile(f, cpid.getColumn()), "rw")) {
+            w.seek((long) cpid.getPageNumber() * BufferPool.getPageSize());
+            w.write(page.getPageData());
+        }
+    }
+
+    /**
+     * @return the RecordId of the tuple at the specified position: the page
+     *   of column 0 holding it, and its slot in that page
+     */
+    private RecordId recordId(int position) {
+        int perPage = ColumnPage.valuesPerPage(td.getFieldType(0));
+        return new RecordId(new ColumnPageId(getId(), 0, position / perPage), position % perPage);
+    }
+
+    /**
+     * @return the position of the tuple with the specified RecordId
+     * @throws DbException if rid is not a RecordId of this file
+     */
+    private int position(RecordId rid) throws DbException {
+        if (rid == null || !(rid.getPageId() instanceof ColumnPageId)) {
+            throw new DbException("tuple not in this file");
+        }
+        ColumnPageId cpid = (ColumnPageId) rid.getPageId();
+        if (cpid.getTableId() != getId() || cpid.getColumn() != 0) {
+            throw new DbException("tuple not in this file");
+        }
+        return cpid.getPageNumber() * ColumnPage.valuesPerPage(td.getFieldType(0)) + rid.getTupleNumber();
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        // the last page of column 0 decides the new tuple's position; our
+        // exclusive lock on it keeps other inserts from taking the same one
+        int position = 0;
+        int last = numPages(0) - 1;
+        if (last >= 0) {
+            ColumnPageId lastId = new ColumnPageId(getId(), 0, last);
+            ColumnPage page = (ColumnPage) Database.getBufferPool().getPage(tid, lastId, Permissions.READ_WRITE);
+            position = last * page.valuesPerPage + page.getNumValues();
+            Database.getBufferPool().unpinPage(tid, lastId);
+        }
+
+        ArrayList<Page> pages = new ArrayList<>();
+        for (int i = 0; i < td.numFields(); i++) {
+            int perPage = ColumnPage.valuesPerPage(td.getFieldType(i));
+            ColumnPageId pid = new ColumnPageId(getId(), i, position / perPage);
+            if (pid.getPageNumber() >= numPages(i)) {
+                // append an empty page to the column, then fetch it through
+                // the buffer pool like any other page
+                writePage(new ColumnPage(pid, ColumnPage.createEmptyPageData()));
+            }
+            ColumnPage page = (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            page.append(t.getField(i));
+            pages.add(page);
+        }
+        t.setRecordId(recordId(position));
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        int position = position(t.getRecordId());
+        ArrayList<Page> pages = new ArrayList<>();
+        for (int i = 0; i < td.numFields(); i++) {
+            int perPage = ColumnPage.valuesPerPage(td.getFieldType(i));
+            ColumnPageId pid = new ColumnPageId(getId(), i, position / perPage);
+            ColumnPage page = (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            pages.add(page);
+            page.delete(position % perPage);
+        }
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        int[] all = new int[td.numFields()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return iterator(tid, all, new Predicate[0]);
+    }
+
+    /**
+     * Returns an iterator over some columns of the tuples of this file that
+     * pass all of the specified predicates.  Only the files of the columns
+     * in columns and predicates are read.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param columns the indexes of the fields to return
+     * @param predicates predicates on fields of the table (not of the
+     *        returned tuples); a tuple is returned if it passes all of them
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] predicates) {
+        return new ColumnIterator(tid, columns.clone(), predicates.clone());
+    }
+
+    /**
+     * Reads the pages of one column as positions are asked for, keeping the
+     * current page pinned.
+     */
+    private class ColumnCursor {
+        private final TransactionId tid;
+        private final int column;
+        private final int perPage;
+        private ColumnPage page;
+
+        ColumnCursor(TransactionId tid, int column) {
+            this.tid = tid;
+            this.column = column;
+            this.perPage = ColumnPage.valuesPerPage(td.getFieldType(column));
+        }
+
+        /**
+         * @return the page holding the specified position, or null if the
+         *   column has no such page
+         */
+        ColumnPage page(int position) throws DbException, TransactionAbortedException {
+            int pageNo = position / perPage;
+            if (page != null && page.getId().getPageNumber() == pageNo) {
+                return page;
+            }
+            close();
+            if (pageNo >= numPages(column)) {
+                return null;
+            }
+            page = (ColumnPage) Database.getBufferPool().getPage(tid,
+                    new ColumnPageId(getId(), column, pageNo), Permissions.READ_ONLY);
+            return page;
+        }
+
+        Field get(int position) throws DbException, TransactionAbortedException {
+            return page(position).getField(position % perPage);
+        }
+
+        void close() {
+            if (page != null) {
+                Database.getBufferPool().unpinPage(tid, page.getId());
+                page = null;
+            }
+        }
+    }
+
+    private class ColumnIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final int[] columns;
+        private final Predicate[] predicates;
+        private final TupleDesc projected;
+        // the column whose pages say which positions exist and are live
+        private final int driver;
+        private ColumnCursor[] cursors;
+        private int position;
+
+        ColumnIterator(TransactionId tid, int[] columns, Predicate[] predicates) {
+            this.tid = tid;
+            this.columns = columns;
+            this.predicates = predicates;
+            this.projected = td.project(columns);
+            this.driver = predicates.length > 0 ? predicates[0].getField()
+                    : columns.length > 0 ? columns[0] : 0;
+        }
+
+        private ColumnCursor cursor(int column) {
+            if (cursors[column] == null) {
+                cursors[column] = new ColumnCursor(tid, column);
+            }
+            return cursors[column];
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            close();
+            cursors = new ColumnCursor[td.numFields()];
+            position = 0;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (cursors == null) {
+                return null;
+            }
+            ColumnCursor d = cursor(driver);
+            while (true) {
+                ColumnPage page = d.page(position);
+                int slot = position % d.perPage;
+                if (page == null || slot >= page.getNumValues()) {
+                    return null;
+                }
+                int current = position++;
+                if (!page.isLive(slot) || !passes(current)) {
+                    continue;
+                }
+                Tuple t = new Tuple(projected);
+                for (int i = 0; i < columns.length; i++) {
+                    t.setField(i, cursor(columns[i]).get(current));
+                }
+                t.setRecordId(recordId(current));
+                return t;
+            }
+        }
+
+        private boolean passes(int position) throws DbException, TransactionAbortedException {
+            for (Predicate p : predicates) {
+                if (!cursor(p.getField()).get(position).compare(p.getOp(), p.getOperand())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            super.close();
+            if (cursors != null) {
+                for (ColumnCursor c : cursors) {
+                    if (c != null) {
+                        c.close();
+                    }
+                }
+                cursors = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package simpledb;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * ColumnPage is a page of one column of a {@link ColumnFile}: the values of
+ * that column for a run of consecutive positions of the table, packed one
+ * after the other.
+ * <pre>
+ *   numValues   4 bytes, the number of positions this page has values for
+ *   header      ceiling(valuesPerPage / 8) bytes, bit i set if position i
+ *               of the page holds a live tuple (clear once it is deleted)
+ *   values      valuesPerPage values, Type.getLen() bytes each, in the
+ *               format of {@link Field#serialize}
+ *   padding
+ * </pre>
+ * Positions are only ever appended, so every page of a column but the last
+ * is full, and the value of position p is in page p / valuesPerPage at
+ * slot p % valuesPerPage.
+ *
+ * @see ColumnFile
+ */
+public class ColumnPage implements Page {
+
+    final ColumnPageId pid;
+    final Type type;
+    final int valuesPerPage;
+    final int headerSize;
+    // current contents; never written in place while it is also oldData
+    private byte[] data;
+    private TransactionId isDirty;  // stores the tid that dirtied this page. null if not dirty
+
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(); see HeapPage
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk, in the
+     * format described above.  The page keeps data as its before image, so
+     * the caller must not modify the array afterwards.
+     *
+     * @see BufferPool#getPageSize()
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.type = Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(id.getColumn());
+        this.valuesPerPage = valuesPerPage(type);
+        this.headerSize = (valuesPerPage + 7) / 8;
+        if (data.length < BufferPool.getPageSize()) {
+            throw new IOException("short page: " + data.length + " bytes");
+        }
+        this.data = data;
+        this.oldData = data;
+    }
+
+    /**
+     * @return the number of values of the specified type a page holds
+     */
+    public static int valuesPerPage(Type type) {
+        return valuesPerPage(type, BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the number of values of the specified type a page of
+     *   pageSize bytes holds
+     */
+    public static int valuesPerPage(Type type, int pageSize) {
+        return ((pageSize - 4) * 8) / (type.getLen() * 8 + 1);
+    }
+
+    /**
+     * Lays out a page holding the specified values, all live.  Used to load
+     * ColumnFiles with {@link HeapFileEncoder}.
+     *
+     * @param values the values, at most valuesPerPage of them
+     * @param type the type of the column
+     * @param pageSize the size of the page in bytes
+     * @return the bytes of the page
+     */
+    public static byte[] packValues(List<Field> values, Type type, int pageSize) throws IOException {
+        int perPage = valuesPerPage(type, pageSize);
+        if (values.size() > perPage) {
+            throw new IllegalArgumentException("too many values for one page");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(pageSize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(values.size());
+        byte[] header = new byte[(perPage + 7) / 8];
+        for (int i = 0; i < values.size(); i++) {
+            header[i / 8] |= (byte) (1 << (i % 8));
+        }
+        dos.write(header);
+        for (Field f : values) {
+            f.serialize(dos);
+        }
+        dos.write(new byte[pageSize - dos.size()]);
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public ColumnPage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+                if (oldDataRef == null) {
+                    oldDataRef = data;
+                }
+            }
+            return new ColumnPage(pid,oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        oldData = null;
+        }
+    }
+
+    // see PaxPage.beginWrite()
+    private void beginWrite() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null) {
+            oldData = data;
+        }
+        if (oldData == data) {
+            data = data.clone();
+        }
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public ColumnPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * @return A byte array correspond to the bytes of this page, in the
+     *   format described above.
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void writePageData(byte[] dst) {
+        System.arraycopy(data, 0, dst, 0, data.length);
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * ColumnPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()]; //all 0
+    }
+
+    /**
+     * @return the number of positions, live or deleted, this page has
+     *   values for
+     */
+    public int getNumValues() {
+        return ((data[0] & 0xff) << 24) | ((data[1] & 0xff) << 16)
+                | ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+    }
+
+    private void setNumValues(int n) {
+        data[0] = (byte) (n >>> 24);
+        data[1] = (byte) (n >>> 16);
+        data[2] = (byte) (n >>> 8);
+        data[3] = (byte) n;
+    }
+
+    /**
+     * @return true if there is no room for another value on this page
+     */
+    public boolean isFull() {
+        return getNumValues() >= valuesPerPage;
+    }
+
+    /**
+     * Returns true if slot i of this page holds the value of a live tuple.
+     */
+    public boolean isLive(int i) {
+        return i >= 0 && i < valuesPerPage && ((data[4 + i / 8] >> (i % 8)) & 1) == 1;
+    }
+
+    /**
+     * Decodes the value in slot i of this page, in the format of
+     * {@link Type#parse}.
+     */
+    public Field getField(int i) {
+        int offset = 4 + headerSize + i * type.getLen();
+        int value = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+        if (type == Type.INT_TYPE) {
+            return new IntField(value);
+        }
+        return new StringField(new String(data, offset + 4, value), Type.STRING_LEN);
+    }
+
+    /**
+     * Appends a live value to this page.
+     *
+     * @return the slot the value was stored in
+     * @throws DbException if the page is full or f has the wrong type
+     */
+    public int append(Field f) throws DbException {
+        if (f.getType() != type) {
+            throw new DbException("field type does not match column");
+        }
+        int slot = getNumValues();
+        if (slot >= valuesPerPage) {
+            throw new DbException("page is full");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(type.getLen());
+        try {
+            f.serialize(new DataOutputStream(baos));
+        } catch (IOException e) {
+            // writing to a byte array can't fail
+            throw new RuntimeException(e);
+        }
+        beginWrite();
+        System.arraycopy(baos.toByteArray(), 0, data, 4 + headerSize + slot * type.getLen(), type.getLen());
+        data[4 + slot / 8] |= (byte) (1 << (slot % 8));
+        setNumValues(slot + 1);
+        return slot;
+    }
+
+    /**
+     * Marks the value in slot i as belonging to a deleted tuple.  The slot
+     * is not reused.
+     *
+     * @throws DbException if slot i is not live
+     */
+    public void delete(int i) throws DbException {
+        if (!isLive(i)) {
+            throw new DbException("tuple slot already empty");
+        }
+        beginWrite();
+        data[4 + i / 8] &= (byte) ~(1 << (i % 8));
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        isDirty = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return isDirty;
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects. */
+public class ColumnPageId implements PageId {
+
+    private int tableId;
+    private int column;
+    private int pgNo;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of one
+     * column of a specific table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column The index of the column in the table's TupleDesc
+     * @param pgNo The page number in that column's file.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        this.tableId = tableId;
+        this.column = column;
+        this.pgNo = pgNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /** @return the column of the table this page stores values of */
+    public int getColumn() {
+        return this.column;
+    }
+
+    /**
+     * @return the page number in the file of column getColumn() associated
+     *   with this PageId
+     */
+    public int getPageNumber() {
+        return this.pgNo;
+    }
+
+    /**
+     * @return a hash code for this page, represented by the concatenation of
+     *   the table number, the column and the page number
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return (this.tableId + "").hashCode() + 31 * this.column + (this.pgNo + "").hashCode();
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., page numbers, columns and
+     *   table ids are the same)
+     */
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ColumnPageId)) {
+            return false;
+        }
+        ColumnPageId other = (ColumnPageId) o;
+        return this.pgNo == other.pgNo && this.column == other.column && this.tableId == other.tableId;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+
+        data[0] = getTableId();
+        data[1] = getColumn();
+        data[2] = getPageNumber();
+
+        return data;
+    }
+
+}
@@ -0,0 +1,178 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are compressed on disk with
+ * {@link PageCompressor}.  Pages are decompressed by {@link #readPage}, so
+ * the BufferPool and the operators above it see ordinary HeapPages; the
+ * trade is CPU time for fewer bytes read, which pays off for large tables
+ * that are scanned but rarely cached or updated.
+ * <p>
+ * Compressed pages have different sizes, so the file is a heap of
+ * variable-length page images, and a page map in {@link #mapFile}(f) gives
+ * the location of each page: an entry of
+ * <pre>
+ *   offset    8 bytes, where the page image starts in f
+ *   capacity  4 bytes, the space reserved for the image
+ *   length    4 bytes, the length of the image; BufferPool.getPageSize()
+ *             if the page is stored uncompressed
+ * </pre>
+ * per page, in page order.  A page whose new image doesn't fit in its
+ * space is written at the end of the file, and its old space is not
+ * reused.  Images are written before the map entries that point to them.
+ * <p>
+ * Declare a table as compressed in the catalog file by following its
+ * schema with the <code>compressed</code> keyword, and load it with
+ * {@link HeapFileEncoder#convertCompressed}.
+ *
+ * @see PageCompressor
+ * @see Catalog#loadSchema
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    private static final int ENTRY_SIZE = 16;
+
+    private final File map;
+    private long[] offsets = new long[16];
+    private int[] capacities = new int[16];
+    private int[] lengths = new int[16];
+    private int numPages;
+    private long end;  // end of the last page image in the file
+
+    /**
+     * Constructs a compressed heap file backed by the specified file and
+     * its page map.
+     *
+     * @param f
+     *            the file that stores the page images
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.map = mapFile(f);
+        if (!map.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(map)))) {
+            int n = (int) (map.length() / ENTRY_SIZE);
+            for (int i = 0; i < n; i++) {
+                setEntry(i, in.readLong(), in.readInt(), in.readInt());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't read page map " + map, e);
+        }
+    }
+
+    /**
+     * @return the file that stores the page map of the table stored in f
+     */
+    public static File mapFile(File f) {
+        return new File(f.getPath() + ".map");
+    }
+
+    private void setEntry(int pgNo, long offset, int capacity, int length) {
+        if (pgNo >= offsets.length) {
+            int size = Math.max(pgNo + 1, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, size);
+            capacities = Arrays.copyOf(capacities, size);
+            lengths = Arrays.copyOf(lengths, size);
+        }
+        offsets[pgNo] = offset;
+        capacities[pgNo] = capacity;
+        lengths[pgNo] = length;
+        numPages = Math.max(numPages, pgNo + 1);
+        end = Math.max(end, offset + capacity);
+    }
+
+    /**
+     * Returns the number of pages in this file.
+     */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the number of bytes this table takes on disk, page images and
+     *   page map
+     */
+    public synchronized long getStoredBytes() {
+        return getFile().length() + map.length();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pgNo = pid.getPageNumber();
+        byte[] image;
+        synchronized (this) {
+            if (pgNo < 0 || pgNo >= numPages) {
+                throw new IllegalArgumentException();
+            }
+            image = new byte[lengths[pgNo]];
+            try (RandomAccessFile r = new RandomAccessFile(getFile(), "r")) {
+                r.seek(offsets[pgNo]);
+                r.readFully(image);
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new IllegalArgumentException();
+            }
+        }
+        byte[] data = image;
+        if (image.length < BufferPool.getPageSize()) {
+            data = new byte[BufferPool.getPageSize()];
+            PageCompressor.decompress(image, image.length, data);
+        }
+        try {
+            return createPage(new HeapPageId(pid.getTableId(), pgNo), data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        byte[] data = page.getPageData();
+        byte[] image = PageCompressor.compress(data);
+        if (image.length >= data.length) {
+            image = data;
+        }
+        int pgNo = page.getId().getPageNumber();
+        synchronized (this) {
+            if (pgNo < 0 || pgNo > numPages) {
+                throw new IOException("can't write page " + pgNo + " of a " + numPages + " page file");
+            }
+            long offset;
+            int capacity;
+            if (pgNo < numPages && image.length <= capacities[pgNo]) {
+                offset = offsets[pgNo];
+                capacity = capacities[pgNo];
+            } else {
+                offset = end;
+                capacity = image.length;
+            }
+            try (RandomAccessFile w = new RandomAccessFile(getFile(), "rw")) {
+                w.seek(offset);
+                w.write(image);
+            }
+            try (RandomAccessFile w = new RandomAccessFile(map, "rw")) {
+                w.seek((long) pgNo * ENTRY_SIZE);
+                w.writeLong(offset);
+                w.writeInt(capacity);
+                w.writeInt(image.length);
+            }
+            setEntry(pgNo, offset, capacity, image.length);
+        }
+        pageWritten(page);
+    }
+
+    /**
+     * Writes a batch of pages to disk, one at a time; compressed pages
+     * can't be written with one gathering write.
+     */
+    public void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares the disk bytes and scan cost of a table stored as a HeapFile
+ * and as a {@link CompressedHeapFile}.  Usage:
+ * <pre>
+ * java -cp dist/simpledb.jar simpledb.CompressionBenchmark \
+ *     dblp_simpledb.schema paperauths [scans]
+ * </pre>
+ * The table is loaded from the schema file, its pages are compressed into
+ * a temporary file, and both versions are scanned scans times (default 5),
+ * each time through a new, empty BufferPool so every page is read and
+ * decoded again.  Since the operating system caches both files, the times
+ * show the CPU cost of decompression rather than the I/O saved; the bytes
+ * show the I/O saved.
+ */
+public class CompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: CompressionBenchmark schemaFile table [scans]");
+            System.exit(1);
+        }
+        int scans = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Database.getCatalog().loadSchema(args[0]);
+        int tableId = Database.getCatalog().getTableId(args[1]);
+        HeapFile heap = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+
+        File compressedFile = File.createTempFile(args[1], ".dat");
+        compressedFile.deleteOnExit();
+        CompressedHeapFile.mapFile(compressedFile).deleteOnExit();
+        long start = System.nanoTime();
+        HeapFileEncoder.compressPages(heap.getFile(), compressedFile, BufferPool.getPageSize());
+        double compressSeconds = (System.nanoTime() - start) / 1e9;
+        CompressedHeapFile compressed = new CompressedHeapFile(compressedFile, heap.getTupleDesc());
+        Database.getCatalog().addTable(compressed, args[1] + "_compressed");
+
+        long heapBytes = heap.getFile().length();
+        long compressedBytes = compressed.getStoredBytes();
+        System.out.printf("%d pages compressed in %.2f s%n", heap.numPages(), compressSeconds);
+        System.out.printf("heap:       %10d bytes%n", heapBytes);
+        System.out.printf("compressed: %10d bytes (%.1f%%)%n", compressedBytes, 100.0 * compressedBytes / heapBytes);
+
+        for (HeapFile file : new HeapFile[]{heap, compressed, heap, compressed}) {
+            scan(file, scans);
+        }
+    }
+
+    private static void scan(HeapFile file, int scans) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long tuples = 0;
+        long cpu = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = file.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                tuples++;
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double cpuSeconds = (threads.getCurrentThreadCpuTime() - cpu) / 1e9;
+        System.out.printf("%-20s %d scans, %d tuples in %.2f s (%.2f s CPU), %.0f tuples/s%n",
+                file.getClass().getSimpleName(), scans, tuples, seconds, cpuSeconds, tuples / seconds);
+    }
+}
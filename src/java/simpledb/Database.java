@@ -55,11 +55,21 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, 0);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * with an off-heap arena of arenaPages frames and return it
+     *
+     * @see BufferPool#BufferPool(int, int)
+     */
+    public static BufferPool resetBufferPool(int pages, int arenaPages) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), new BufferPool(pages, arenaPages));
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -36,7 +36,9 @@ public interface DbFile {
      * @param tid The transaction performing the update
      * @param t The tuple to add.  This tuple should be updated to reflect that
      *          it is now stored in this file.
-     * @return An ArrayList contain the pages that were modified
+     * @return An ArrayList contain the pages that were modified.  They are
+     *         returned still pinned by tid (see {@link BufferPool#getPage});
+     *         the BufferPool unpins them once it has marked them dirty.
      * @throws DbException if the tuple cannot be added
      * @throws IOException if the needed file can't be read/written
      */
@@ -52,7 +54,8 @@ public interface DbFile {
      * @param tid The transaction performing the update
      * @param t The tuple to delete.  This tuple should be updated to reflect that
      *          it is no longer stored on any page.
-     * @return An ArrayList contain the pages that were modified
+     * @return An ArrayList contain the pages that were modified, still
+     *         pinned by tid
      * @throws DbException if the tuple cannot be deleted or is not a member
      *   of the file
      */
@@ -62,7 +65,8 @@ public interface DbFile {
     /**
      * Returns an iterator over all the tuples stored in this DbFile. The
      * iterator must use {@link BufferPool#getPage}, rather than
-     * {@link #readPage} to iterate through the pages.
+     * {@link #readPage} to iterate through the pages, and should
+     * {@link BufferPool#unpinPage unpin} each page once it has moved past it.
      *
      * @return an iterator over all the tuples stored in this DbFile.
      */
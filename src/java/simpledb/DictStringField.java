@@ -0,0 +1,78 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary-encoded column (see
+ * {@link DictionaryHeapFile}).  Besides its string value it keeps the
+ * value's code in the column's {@link StringDictionary}, so equality
+ * tests against fields of the same dictionary, and against a constant
+ * that is being compared with every value of the column, are int
+ * comparisons.  Hash-based grouping and joins use the same equals.
+ * <p>
+ * Ordering comparisons (&lt;, &gt;, LIKE, ...) still compare the strings;
+ * codes are assigned in insertion order, not sorted order.
+ */
+public class DictStringField extends StringField {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient StringDictionary dict;
+	private final int code;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dict
+	 *            The dictionary of the column the field comes from
+	 * @param code
+	 *            The code of the field's value in dict
+	 */
+	public DictStringField(StringDictionary dict, int code) {
+		super(dict.decode(code), Type.STRING_LEN);
+		this.dict = dict;
+		this.code = code;
+	}
+
+	/** @return the dictionary this field's code refers to */
+	public StringDictionary getDictionary() {
+		return dict;
+	}
+
+	/** @return the code of this field's value in its dictionary */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the code of f in this field's dictionary, or -1 if f isn't in
+	 *         it
+	 */
+	private int codeOf(StringField f) {
+		if (f instanceof DictStringField && ((DictStringField) f).dict == dict) {
+			return ((DictStringField) f).code;
+		}
+		return dict.codeOf(f);
+	}
+
+	public boolean equals(Object field) {
+		if (field instanceof DictStringField && ((DictStringField) field).dict == dict) {
+			return ((DictStringField) field).code == code;
+		}
+		return super.equals(field);
+	}
+
+	public int hashCode() {
+		// must agree with StringField for fields of other dictionaries
+		return super.hashCode();
+	}
+
+	public boolean compare(Predicate.Op op, Field val) {
+		switch (op) {
+		case EQUALS:
+			return codeOf((StringField) val) == code;
+		case NOT_EQUALS:
+			return codeOf((StringField) val) != code;
+		default:
+			return super.compare(op, val);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * DictionaryHeapFile is a HeapFile in which some string columns are
+ * dictionary encoded: each column has a {@link StringDictionary}, and its
+ * pages ({@link DictionaryHeapPage}s) store the 4-byte code of a value
+ * instead of the Type.STRING_LEN + 4 bytes of a StringField.  Columns
+ * with many repeated values take much less space, and the fields read
+ * from them are {@link DictStringField}s, which test equality on codes.
+ * <p>
+ * The dictionary of column i is stored next to the table's file, in
+ * {@link #dictionaryFile}.  Mark a column as encoded in the catalog file
+ * with the <code>dict</code> annotation, e.g.
+ * <code>venues (id int pk, name string dict)</code>, and load the table
+ * with {@link HeapFileEncoder#convertDictionary}.
+ *
+ * @see DictionaryHeapPage
+ * @see Catalog#loadSchema
+ */
+public class DictionaryHeapFile extends HeapFile {
+
+    private final StringDictionary[] dicts;
+    private final int storedTupleSize;
+
+    /**
+     * Constructs a dictionary-encoded heap file backed by the specified
+     * file, opening (or creating) the dictionaries of the encoded columns.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     * @param td the schema of the table
+     * @param encoded encoded[i] is true if column i is dictionary encoded;
+     *          it must be a string column
+     */
+    public DictionaryHeapFile(File f, TupleDesc td, boolean[] encoded) {
+        super(f, td);
+        if (encoded.length != td.numFields()) {
+            throw new IllegalArgumentException("need one flag per column");
+        }
+        dicts = new StringDictionary[encoded.length];
+        int size = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            if (!encoded[i]) {
+                size += td.getFieldType(i).getLen();
+                continue;
+            }
+            if (td.getFieldType(i) != Type.STRING_TYPE) {
+                throw new IllegalArgumentException("column " + i + " is not a string column");
+            }
+            try {
+                dicts[i] = new StringDictionary(dictionaryFile(f, i));
+            } catch (IOException e) {
+                throw new RuntimeException("can't read dictionary of column " + i, e);
+            }
+            size += Type.INT_TYPE.getLen();
+        }
+        storedTupleSize = size;
+    }
+
+    /**
+     * @return the file holding the dictionary of column i of the table
+     *   stored in f
+     */
+    public static File dictionaryFile(File f, int i) {
+        return new File(f.getPath() + "." + i + ".dict");
+    }
+
+    /**
+     * @return the dictionary of column i, or null if it isn't encoded
+     */
+    public StringDictionary getDictionary(int i) {
+        return dicts[i];
+    }
+
+    /**
+     * Forces the strings added to the dictionaries of the table to disk.
+     *
+     * @throws IOException if they can't be written
+     */
+    public void forceDictionaries() throws IOException {
+        for (StringDictionary dict : dicts) {
+            if (dict != null) {
+                dict.force();
+            }
+        }
+    }
+
+    /**
+     * @return the bytes a tuple takes on a page of this file
+     */
+    public int getStoredTupleSize() {
+        return storedTupleSize;
+    }
+
+    protected TuplePage createPage(HeapPageId id, byte[] data) throws IOException {
+        return new DictionaryHeapPage(id, data);
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * DictionaryHeapPage is a page of a {@link DictionaryHeapFile}.  It has
+ * the layout of a {@link HeapPage}, except that a dictionary-encoded
+ * column takes 4 bytes per tuple: the code of the value in the column's
+ * {@link StringDictionary}.  Values of encoded columns are read back as
+ * {@link DictStringField}s.
+ *
+ * @see DictionaryHeapFile
+ */
+public class DictionaryHeapPage extends HeapPage {
+
+    // set on first use; the HeapPage constructor already needs it, before
+    // fields of this class could be initialized, so it has no initializer
+    private DictionaryHeapFile file;
+
+    /**
+     * Create a DictionaryHeapPage from a set of bytes of data read from
+     * disk.  The table must be a DictionaryHeapFile in the catalog.
+     *
+     * @see HeapPage#HeapPage
+     */
+    public DictionaryHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+    }
+
+    private DictionaryHeapFile file() {
+        if (file == null) {
+            file = (DictionaryHeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+        }
+        return file;
+    }
+
+    /**
+     * Adds the specified tuple to the page, first replacing the values of
+     * encoded columns by DictStringFields, so the tuple compares on codes
+     * while it is cached as well.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        for (int i = 0; i < td.numFields(); i++) {
+            StringDictionary dict = file().getDictionary(i);
+            Field f = t.getField(i);
+            if (dict != null && !(f instanceof DictStringField && ((DictStringField) f).getDictionary() == dict)) {
+                try {
+                    t.setField(i, new DictStringField(dict, dict.encode(((StringField) f).getValue())));
+                } catch (IOException e) {
+                    throw new DbException("can't add to the dictionary of column " + i + ": " + e.getMessage());
+                }
+            }
+        }
+        super.insertTuple(t);
+    }
+
+    protected int getStoredTupleSize() {
+        return file().getStoredTupleSize();
+    }
+
+    protected Field readField(int fieldNo, DataInputStream dis) throws java.text.ParseException {
+        StringDictionary dict = file().getDictionary(fieldNo);
+        if (dict == null) {
+            return super.readField(fieldNo, dis);
+        }
+        try {
+            return new DictStringField(dict, dis.readInt());
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new java.text.ParseException("bad dictionary code", 0);
+        }
+    }
+
+    protected int writeField(int fieldNo, Field f, byte[] data, int offset) {
+        StringDictionary dict = file().getDictionary(fieldNo);
+        if (dict == null) {
+            return super.writeField(fieldNo, f, data, offset);
+        }
+        int code;
+        if (f instanceof DictStringField && ((DictStringField) f).getDictionary() == dict) {
+            code = ((DictStringField) f).getCode();
+        } else {
+            try {
+                code = dict.encode(((StringField) f).getValue());
+            } catch (IOException e) {
+                throw new RuntimeException("can't add to the dictionary of column " + fieldNo, e);
+            }
+        }
+        data[offset] = (byte) (code >>> 24);
+        data[offset + 1] = (byte) (code >>> 16);
+        data[offset + 2] = (byte) (code >>> 8);
+        data[offset + 3] = (byte) code;
+        return 4;
+    }
+
+    /**
+     * Serializes the page, then forces the dictionaries of the table, so
+     * the strings of the codes on the page are on disk before the page is
+     * written to its file or to the log.
+     */
+    public void writePageData(byte[] data) {
+        super.writePageData(data);  // may add strings to the dictionaries
+        try {
+            file().forceDictionaries();
+        } catch (IOException e) {
+            throw new RuntimeException("can't force the dictionaries of table " + pid.getTableId(), e);
+        }
+    }
+
+    protected HeapPage newPage(byte[] data) throws IOException {
+        return new DictionaryHeapPage(pid, data);
+    }
+}
@@ -0,0 +1,223 @@
+package simpledb;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * ExternalSort sorts more tuples than fit in memory.  Tuples are added one
+ * at a time and kept in memory until there are runSize of them; then they
+ * are sorted and written to a temporary file as a run.  {@link #sorted}
+ * merges the runs, reading one buffered stream per run, so sorting n
+ * tuples takes about two sequential passes over n tuples on disk and
+ * runSize tuples of memory.
+ * <p>
+ * Tuples are ordered by one field, then by the other fields from first to
+ * last, so tuples with equal keys come out in a fixed order; index entries
+ * with equal keys, for instance, come out in page order.  The returned
+ * tuples have no RecordId.  Close the sort to delete its runs.
+ */
+public class ExternalSort implements Closeable {
+
+    /** The default number of tuples sorted in memory per run. */
+    public static final int DEFAULT_RUN_SIZE = 200000;
+
+    private final TupleDesc td;
+    private final Comparator<Tuple> order;
+    private final int runSize;
+    private final List<Tuple> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private long numTuples;
+
+    /**
+     * @param td the TupleDesc of the tuples to sort
+     * @param field the index of the field to sort on
+     * @param runSize the number of tuples to sort in memory at a time
+     */
+    public ExternalSort(TupleDesc td, int field, int runSize) {
+        this(td, new int[]{field}, runSize);
+    }
+
+    /**
+     * @param td the TupleDesc of the tuples to sort
+     * @param fields the indexes of the fields to sort on, in order
+     * @param runSize the number of tuples to sort in memory at a time
+     */
+    public ExternalSort(TupleDesc td, int[] fields, int runSize) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("runSize must be positive");
+        }
+        this.td = td;
+        this.order = comparator(td, fields);
+        this.runSize = runSize;
+    }
+
+    /**
+     * @return a comparator of tuples with the specified TupleDesc that
+     *   orders them by field, then by the other fields in order
+     */
+    public static Comparator<Tuple> comparator(TupleDesc td, int field) {
+        return comparator(td, new int[]{field});
+    }
+
+    /**
+     * @return a comparator of tuples with the specified TupleDesc that
+     *   orders them by fields in order, then by the other fields in order
+     */
+    public static Comparator<Tuple> comparator(TupleDesc td, int[] fields) {
+        return (a, b) -> {
+            int c = 0;
+            for (int i = 0; c == 0 && i < fields.length; i++) {
+                c = compare(a.getField(fields[i]), b.getField(fields[i]));
+            }
+            for (int i = 0; c == 0 && i < td.numFields(); i++) {
+                c = compare(a.getField(i), b.getField(i));
+            }
+            return c;
+        };
+    }
+
+    private static int compare(Field a, Field b) {
+        if (a.compare(Predicate.Op.LESS_THAN, b)) {
+            return -1;
+        }
+        return a.compare(Predicate.Op.GREATER_THAN, b) ? 1 : 0;
+    }
+
+    /**
+     * Adds a tuple to the sort.
+     *
+     * @throws IOException if a run can't be written
+     */
+    public void add(Tuple t) throws IOException {
+        buffer.add(t);
+        numTuples++;
+        if (buffer.size() >= runSize) {
+            writeRun();
+        }
+    }
+
+    /** @return the number of tuples added */
+    public long numTuples() {
+        return numTuples;
+    }
+
+    /** @return the number of runs written to disk so far */
+    public int numRuns() {
+        return runs.size();
+    }
+
+    private void writeRun() throws IOException {
+        buffer.sort(order);
+        File run = File.createTempFile("sortrun", ".dat");
+        run.deleteOnExit();
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (Tuple t : buffer) {
+                for (int i = 0; i < td.numFields(); i++) {
+                    t.getField(i).serialize(out);
+                }
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the tuples added so far in order.  No tuples can be added
+     * afterwards.  If everything fit in one run, nothing is written to
+     * disk.  The iterator throws an UncheckedIOException if a run can't be
+     * read.
+     *
+     * @throws IOException if the last run can't be written or the runs
+     *   can't be opened
+     */
+    public Iterator<Tuple> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            return Collections.unmodifiableList(buffer).iterator();
+        }
+        if (!buffer.isEmpty()) {
+            writeRun();
+        }
+        List<RunReader> readers = new ArrayList<>();
+        for (File run : runs) {
+            readers.add(new RunReader(run));
+        }
+        return new MergeIterator(readers);
+    }
+
+    /** Deletes the runs. */
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    /** Reads the tuples of one run in order. */
+    private class RunReader {
+        private final DataInputStream in;
+        private long remaining;
+        Tuple head;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.remaining = run.length() / td.getSize();
+            advance();
+        }
+
+        void advance() {
+            if (remaining == 0) {
+                head = null;
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            remaining--;
+            Tuple t = new Tuple(td);
+            try {
+                for (int i = 0; i < td.numFields(); i++) {
+                    t.setField(i, td.getFieldType(i).parse(in));
+                }
+            } catch (ParseException e) {
+                throw new UncheckedIOException(new IOException("can't read sort run", e));
+            }
+            head = t;
+        }
+    }
+
+    /** Merges the runs with a heap of their next tuples. */
+    private class MergeIterator implements Iterator<Tuple> {
+        private final PriorityQueue<RunReader> heads;
+
+        MergeIterator(List<RunReader> readers) {
+            heads = new PriorityQueue<>(Math.max(1, readers.size()), (a, b) -> order.compare(a.head, b.head));
+            for (RunReader r : readers) {
+                if (r.head != null) {
+                    heads.add(r);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        public Tuple next() {
+            RunReader r = heads.poll();
+            if (r == null) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = r.head;
+            r.advance();
+            if (r.head != null) {
+                heads.add(r);
+            }
+            return t;
+        }
+    }
+}
@@ -14,6 +14,15 @@ public interface Field extends Serializable{
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field, in the same format as
+     * {@link #serialize(DataOutputStream)}, to data starting at offset.
+     * @param data The array to write to.
+     * @param offset Where in data to start.
+     * @return the number of bytes written.
+     */
+    int serialize(byte[] data, int offset);
+
     /**
      * Compare the value of this field object to the passed in value.
      * @param op The operator
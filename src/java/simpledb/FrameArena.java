@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * FrameArena is a fixed number of page-sized frames allocated off the Java
+ * heap, in direct ByteBuffers.  The BufferPool uses it to keep the images
+ * of pages it has evicted, so a large cache costs the garbage collector
+ * nothing: the bytes are only turned back into a Page object (with its
+ * tuples) when the page is fetched again.
+ * <p>
+ * Frames are numbered 0 to numFrames - 1.  A direct buffer cannot hold
+ * more than 2GB, so the frames are spread over as many chunks as needed.
+ * <p>
+ * FrameArena is not thread safe; the BufferPool only uses it while holding
+ * its own lock.
+ */
+public class FrameArena {
+
+    /** Largest chunk allocated in one direct buffer. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int frameSize;
+    private final int numFrames;
+    private final int framesPerChunk;
+    private final ByteBuffer[] chunks;
+    private final ArrayDeque<Integer> freeFrames;
+
+    /**
+     * Allocates an arena.
+     *
+     * @param numFrames the number of frames
+     * @param frameSize the size of a frame in bytes, usually
+     *   {@link BufferPool#getPageSize()}
+     */
+    public FrameArena(int numFrames, int frameSize) {
+        if (numFrames < 0 || frameSize <= 0 || frameSize > MAX_CHUNK_BYTES) {
+            throw new IllegalArgumentException("bad arena size: " + numFrames + " frames of " + frameSize + " bytes");
+        }
+        this.frameSize = frameSize;
+        this.numFrames = numFrames;
+        this.framesPerChunk = MAX_CHUNK_BYTES / frameSize;
+        int numChunks = (numFrames + framesPerChunk - 1) / framesPerChunk;
+        this.chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int frames = Math.min(framesPerChunk, numFrames - i * framesPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(frames * frameSize);
+        }
+        this.freeFrames = new ArrayDeque<>(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            freeFrames.add(i);
+        }
+    }
+
+    /**
+     * Takes a free frame.
+     *
+     * @return the number of the frame, or -1 if every frame is in use
+     */
+    public int allocate() {
+        Integer frame = freeFrames.poll();
+        return frame == null ? -1 : frame;
+    }
+
+    /** Returns a frame obtained from {@link #allocate} to the arena. */
+    public void free(int frame) {
+        checkFrame(frame);
+        freeFrames.add(frame);
+    }
+
+    /**
+     * Copies data into a frame.
+     *
+     * @param frame the frame to write
+     * @param data at most frameSize bytes
+     */
+    public void write(int frame, byte[] data) {
+        checkFrame(frame);
+        if (data.length > frameSize) {
+            throw new IllegalArgumentException("page of " + data.length + " bytes does not fit a frame of " + frameSize);
+        }
+        ByteBuffer buf = chunks[frame / framesPerChunk].duplicate();
+        buf.position((frame % framesPerChunk) * frameSize);
+        buf.put(data);
+    }
+
+    /**
+     * Copies the contents of a frame onto the heap.
+     *
+     * @param frame the frame to read
+     * @return a new array of frameSize bytes
+     */
+    public byte[] read(int frame) {
+        checkFrame(frame);
+        byte[] data = new byte[frameSize];
+        ByteBuffer buf = chunks[frame / framesPerChunk].duplicate();
+        buf.position((frame % framesPerChunk) * frameSize);
+        buf.get(data);
+        return data;
+    }
+
+    /** @return the total number of frames */
+    public int numFrames() {
+        return numFrames;
+    }
+
+    /** @return the number of frames not in use */
+    public int numFreeFrames() {
+        return freeFrames.size();
+    }
+
+    /** @return the size of a frame in bytes */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= numFrames) {
+            throw new IllegalArgumentException("no frame " + frame);
+        }
+    }
+}
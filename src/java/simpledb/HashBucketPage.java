@@ -0,0 +1,186 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * HashBucketPage is a page of a bucket of a {@link HashFile}: the first
+ * page of the bucket, or one of the overflow pages chained after it.  It
+ * holds whole tuples in slots, like a {@link HeapPage}, in no particular
+ * order.  The format is
+ * <pre>
+ *   next    4 bytes, page number of the next page of the bucket, or 0
+ *   header  ceiling(numSlots / 8) bytes, bit i set if slot i is used
+ *   slots   numSlots tuples, TupleDesc.getSize() bytes each
+ * </pre>
+ * where numSlots is floor((BufferPool.getPageSize() - 4) * 8 / (tuple size
+ * * 8 + 1)).
+ *
+ * @see HashFile
+ */
+public class HashBucketPage extends HashPage {
+
+    private static final int HEADER_OFFSET = 4;
+
+    private final TupleDesc td;
+    private final int numSlots;
+    private final byte[] header;
+    private final Tuple[] tuples;
+    private int nextPage;
+
+    /**
+     * Create a HashBucketPage from a set of bytes of data read from disk.
+     * The table must be in the catalog.
+     */
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = getMaxTuples(td);
+        this.nextPage = BTreePage.readInt(data, 0);
+        this.header = Arrays.copyOfRange(data, HEADER_OFFSET, HEADER_OFFSET + (numSlots + 7) / 8);
+        this.tuples = new Tuple[numSlots];
+        int offset = HEADER_OFFSET + header.length;
+        for (int i = 0; i < numSlots; i++, offset += td.getSize()) {
+            if (isSlotUsed(i)) {
+                Tuple t = new Tuple(td);
+                int fieldOffset = offset;
+                for (int j = 0; j < td.numFields(); j++) {
+                    t.setField(j, BTreePage.readField(td.getFieldType(j), data, fieldOffset));
+                    fieldOffset += td.getFieldType(j).getLen();
+                }
+                t.setRecordId(new RecordId(pid, i));
+                tuples[i] = t;
+            }
+        }
+    }
+
+    /** @return the number of tuples a bucket page of a table with schema td holds */
+    public static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.getPageSize() - HEADER_OFFSET) * 8 / (td.getSize() * 8 + 1);
+    }
+
+    public HashBucketPage getBeforeImage() {
+        try {
+            return new HashBucketPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        BTreePage.writeInt(data, 0, nextPage);
+        System.arraycopy(header, 0, data, HEADER_OFFSET, header.length);
+        int offset = HEADER_OFFSET + header.length;
+        for (int i = 0; i < numSlots; i++, offset += td.getSize()) {
+            if (tuples[i] != null) {
+                int fieldOffset = offset;
+                for (int j = 0; j < td.numFields(); j++) {
+                    fieldOffset += tuples[i].getField(j).serialize(data, fieldOffset);
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return the id of the next page of the bucket, or null if this is the
+     *   last one
+     */
+    public HashPageId getNextPageId() {
+        return nextPage == NO_PAGE ? null : new HashPageId(pid.getTableId(), nextPage, HashPageId.BUCKET);
+    }
+
+    public void setNextPageId(HashPageId id) {
+        beginWrite();
+        this.nextPage = id == null ? NO_PAGE : id.getPageNumber();
+    }
+
+    /** @return the number of empty slots on this page */
+    public int getNumEmptySlots() {
+        int empty = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                empty++;
+            }
+        }
+        return empty;
+    }
+
+    /** @return true if slot i of this page is used */
+    public boolean isSlotUsed(int i) {
+        return (header[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean used) {
+        if (used) {
+            header[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            header[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * Adds the specified tuple to the first empty slot; the tuple is
+     * updated to reflect that it is now stored on this page.
+     *
+     * @throws DbException if the page is full or the TupleDesc doesn't match
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                beginWrite();
+                t.setRecordId(new RecordId(pid, i));
+                tuples[i] = t;
+                markSlotUsed(i, true);
+                return;
+            }
+        }
+        throw new DbException("page is full (no empty slots)");
+    }
+
+    /**
+     * Delete the specified tuple from the page; its slot becomes empty.
+     * Splits move tuples between buckets, so the slot must hold a tuple
+     * with the same fields, not just any tuple.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple not on this page");
+        }
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("tuple slot already empty");
+        }
+        for (int j = 0; j < td.numFields(); j++) {
+            if (!tuples[slot].getField(j).equals(t.getField(j))) {
+                throw new DbException("tuple not on this page");
+            }
+        }
+        beginWrite();
+        markSlotUsed(slot, false);
+        tuples[slot] = null;
+    }
+
+    /**
+     * @return the tuples on this page (calling remove on this iterator
+     *   throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        List<Tuple> list = new ArrayList<>(numSlots);
+        for (int i = 0; i < numSlots; i++) {
+            if (tuples[i] != null) {
+                list.add(tuples[i]);
+            }
+        }
+        return Collections.unmodifiableList(list).iterator();
+    }
+}
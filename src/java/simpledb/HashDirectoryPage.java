@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * HashDirectoryPage is a page of the table from the buckets of a
+ * {@link HashFile} to their first pages.  Directory page i, as listed in
+ * the {@link HashMetaPage}, holds the page numbers of buckets
+ * i * getNumEntries() to (i + 1) * getNumEntries() - 1, 4 bytes each; 0
+ * marks a bucket that doesn't exist yet.
+ */
+public class HashDirectoryPage extends HashPage {
+
+    private final int[] entries;
+
+    /**
+     * Create a HashDirectoryPage from a set of bytes of data read from disk.
+     */
+    public HashDirectoryPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.entries = new int[getNumEntries()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = BTreePage.readInt(data, i * 4);
+        }
+    }
+
+    /** @return the number of buckets a directory page covers */
+    public static int getNumEntries() {
+        return BufferPool.getPageSize() / 4;
+    }
+
+    /**
+     * Static method to generate the data of a directory page whose first
+     * bucket starts at page pgNo.
+     */
+    public static byte[] createPageData(int pgNo) {
+        byte[] data = createEmptyPageData();
+        BTreePage.writeInt(data, 0, pgNo);
+        return data;
+    }
+
+    public HashDirectoryPage getBeforeImage() {
+        try {
+            return new HashDirectoryPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        for (int i = 0; i < entries.length; i++) {
+            BTreePage.writeInt(data, i * 4, entries[i]);
+        }
+        return data;
+    }
+
+    /** @return the id of the first page of entry i, or null if unset */
+    public HashPageId getBucketId(int i) {
+        return entries[i] == NO_PAGE ? null : new HashPageId(pid.getTableId(), entries[i], HashPageId.BUCKET);
+    }
+
+    public void setBucketId(int i, HashPageId id) {
+        beginWrite();
+        entries[i] = id.getPageNumber();
+    }
+}
@@ -0,0 +1,411 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * HashFile is a DbFile that stores the tuples of a table in a linear hash
+ * table on one of its fields, the key.  The tuples with the same key are
+ * always in the same bucket, so a lookup of one key reads only the pages
+ * of one bucket, usually just one, plus the meta and directory pages,
+ * which stay in the BufferPool; see {@link #indexIterator} and
+ * {@link IndexScan}.  Keys need not be unique.  Unlike a {@link BTreeFile}
+ * it can't answer range predicates without reading every bucket.
+ * <p>
+ * Page 0 of the file is a {@link HashMetaPage} that holds the state of the
+ * hash table and lists the {@link HashDirectoryPage}s, which map each
+ * bucket to its first {@link HashBucketPage}.  Pages are only ever
+ * appended.  A new file starts out with one bucket.  When an insert finds
+ * the bucket of its key full it adds an overflow page to the bucket and
+ * splits the next bucket in turn (not necessarily the full one): half of
+ * its tuples, by one more bit of their hash, move to a new bucket at the
+ * end of the table.  The number of buckets thus grows by one at a time
+ * with the table, and no split rehashes more than one bucket.
+ * <p>
+ * All pages are read and written through the BufferPool, so the file is
+ * locked and logged like a HeapFile: a lookup takes shared locks on the
+ * meta page, a directory page and the pages of one bucket, and an insert
+ * takes exclusive locks on the pages of the bucket it changes and, if it
+ * splits a bucket, on the meta page.
+ *
+ * @see IndexScan
+ */
+public class HashFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableid;
+
+    /**
+     * Constructs a hash file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this
+     *            hash file; it is created if it doesn't exist yet
+     * @param key
+     *            the field the tuples are hashed on
+     * @param td
+     *            the tuple descriptor of tuples in the file
+     */
+    public HashFile(File f, int key, TupleDesc td) {
+        if (key < 0 || key >= td.numFields()) {
+            throw new IllegalArgumentException("no field " + key + " in " + td);
+        }
+        this.f = f;
+        this.td = td;
+        this.keyField = key;
+        this.tableid = f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the File backing this HashFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this HashFile, the hash code of
+     * the absolute file name, as for a HeapFile.
+     */
+    public int getId() {
+        return tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the index of the field the tuples are hashed on
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    /**
+     * Returns the number of pages in this file, not counting the meta page.
+     */
+    public int numPages() {
+        return (int) Math.max(0, f.length() / BufferPool.getPageSize() - 1);
+    }
+
+    // writes the meta page, a directory page and an empty bucket if the
+    // file is new
+    private synchronized void init() throws IOException {
+        if (f.length() > 0) {
+            return;
+        }
+        try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+            w.write(HashMetaPage.createPageData(1));
+            w.write(HashDirectoryPage.createPageData(2));
+            w.write(HashPage.createEmptyPageData());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        HashPageId id = (HashPageId) pid;
+        byte[] data = new byte[BufferPool.getPageSize()];
+        synchronized (this) {
+            try {
+                init();
+                if (id.getPageNumber() < 0 || id.getPageNumber() > numPages()) {
+                    throw new IllegalArgumentException("no page " + id.getPageNumber() + " in " + f);
+                }
+                try (RandomAccessFile r = new RandomAccessFile(f, "r")) {
+                    r.seek((long) id.getPageNumber() * BufferPool.getPageSize());
+                    r.readFully(data);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new IllegalArgumentException();
+            }
+        }
+        try {
+            switch (id.pgcateg()) {
+                case HashPageId.META:
+                    return new HashMetaPage(id, data);
+                case HashPageId.DIRECTORY:
+                    return new HashDirectoryPage(id, data);
+                default:
+                    return new HashBucketPage(id, data);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        byte[] data = page.getPageData();
+        synchronized (this) {
+            try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+                w.seek((long) page.getId().getPageNumber() * BufferPool.getPageSize());
+                w.write(data);
+            }
+        }
+    }
+
+    /**
+     * @return the hash of a key; the buckets use its low bits, so they are
+     *   mixed with the high ones first
+     */
+    static int hash(Field key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Fetches a page through the BufferPool, unless this operation has
+     * already fetched it for writing, as in BTreeFile.  Pages fetched for
+     * writing are added to dirtypages and stay pinned until the operation
+     * returns them.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, HashPageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        Page p = dirtypages.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    // unpins a page fetched read-only by getPage
+    private void unpin(TransactionId tid, Map<PageId, Page> dirtypages, HashPageId pid) {
+        if (!dirtypages.containsKey(pid)) {
+            Database.getBufferPool().unpinPage(tid, pid);
+        }
+    }
+
+    private HashMetaPage getMetaPage(TransactionId tid, Map<PageId, Page> dirtypages, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (HashMetaPage) getPage(tid, dirtypages, HashMetaPage.getId(tableid), perm);
+    }
+
+    /** @return the bucket the tuples with the specified key are in */
+    private int bucketOf(TransactionId tid, Map<PageId, Page> dirtypages, Field key)
+            throws DbException, TransactionAbortedException {
+        HashMetaPage meta = getMetaPage(tid, dirtypages, Permissions.READ_ONLY);
+        int bucket = meta.bucketOf(hash(key));
+        unpin(tid, dirtypages, meta.getId());
+        return bucket;
+    }
+
+    /** @return the id of the first page of the specified bucket */
+    private HashPageId firstPageId(TransactionId tid, Map<PageId, Page> dirtypages, int bucket)
+            throws DbException, TransactionAbortedException {
+        HashMetaPage meta = getMetaPage(tid, dirtypages, Permissions.READ_ONLY);
+        HashPageId dirId = meta.getDirectoryId(bucket / HashDirectoryPage.getNumEntries());
+        unpin(tid, dirtypages, meta.getId());
+        HashDirectoryPage dir = (HashDirectoryPage) getPage(tid, dirtypages, dirId, Permissions.READ_ONLY);
+        HashPageId id = dir.getBucketId(bucket % HashDirectoryPage.getNumEntries());
+        unpin(tid, dirtypages, dirId);
+        return id;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        int bucket = bucketOf(tid, dirtypages, t.getField(keyField));
+        if (insertIntoBucket(tid, dirtypages, firstPageId(tid, dirtypages, bucket), t)) {
+            splitNextBucket(tid, dirtypages);
+        }
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * Inserts t into the first page of a bucket with an empty slot, adding
+     * an overflow page at the end of the bucket if all of them are full.
+     *
+     * @return true if an overflow page was added
+     */
+    private boolean insertIntoBucket(TransactionId tid, Map<PageId, Page> dirtypages, HashPageId first, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        HashBucketPage page = null;
+        for (HashPageId id = first; id != null; id = page.getNextPageId()) {
+            page = (HashBucketPage) getPage(tid, dirtypages, id, Permissions.READ_WRITE);
+            if (page.getNumEmptySlots() > 0) {
+                page.insertTuple(t);
+                return false;
+            }
+        }
+        HashBucketPage overflow = (HashBucketPage) getEmptyPage(tid, dirtypages, HashPageId.BUCKET);
+        page.setNextPageId(overflow.getId());
+        overflow.insertTuple(t);
+        return true;
+    }
+
+    /**
+     * Splits the next bucket: a new bucket is added at the end of the
+     * table, and the tuples of the next bucket that hash to it by one more
+     * bit move there.  The pages the moved tuples leave empty stay in the
+     * old bucket for later inserts.
+     */
+    private void splitNextBucket(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, IOException, TransactionAbortedException {
+        HashMetaPage meta = getMetaPage(tid, dirtypages, Permissions.READ_WRITE);
+        HashPageId oldId = firstPageId(tid, dirtypages, meta.getNext());
+        int image = meta.getSplitImage();
+        HashPage imagePage = getEmptyPage(tid, dirtypages, HashPageId.BUCKET);
+        int dirIndex = image / HashDirectoryPage.getNumEntries();
+        HashDirectoryPage dir;
+        if (meta.getDirectoryId(dirIndex) == null) {
+            dir = (HashDirectoryPage) getEmptyPage(tid, dirtypages, HashPageId.DIRECTORY);
+            meta.addDirectoryPage(dir.getId());
+        } else {
+            dir = (HashDirectoryPage) getPage(tid, dirtypages, meta.getDirectoryId(dirIndex),
+                    Permissions.READ_WRITE);
+        }
+        dir.setBucketId(image % HashDirectoryPage.getNumEntries(), imagePage.getId());
+        meta.advance();
+
+        HashBucketPage page = null;
+        for (HashPageId id = oldId; id != null; id = page.getNextPageId()) {
+            page = (HashBucketPage) getPage(tid, dirtypages, id, Permissions.READ_WRITE);
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (meta.bucketOf(hash(t.getField(keyField))) == image) {
+                    page.deleteTuple(t);
+                    insertIntoBucket(tid, dirtypages, imagePage.getId(), t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a new, empty page of the specified category appended to the
+     * file, locked and pinned for writing.  If the transaction aborts the
+     * page stays in the file, unused.
+     */
+    private HashPage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int pgcateg)
+            throws DbException, IOException, TransactionAbortedException {
+        int pgNo;
+        synchronized (this) {
+            pgNo = numPages() + 1;
+            try (RandomAccessFile w = new RandomAccessFile(f, "rw")) {
+                w.seek((long) pgNo * BufferPool.getPageSize());
+                w.write(HashPage.createEmptyPageData());
+            }
+        }
+        return (HashPage) getPage(tid, dirtypages, new HashPageId(tableid, pgNo, pgcateg), Permissions.READ_WRITE);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableid) {
+            throw new DbException("tuple is not in this table");
+        }
+        HashPageId id = new HashPageId(tableid, rid.getPageId().getPageNumber(), HashPageId.BUCKET);
+        HashBucketPage page = (HashBucketPage) Database.getBufferPool().getPage(tid, id, Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        ArrayList<Page> pages = new ArrayList<>();
+        pages.add(page);
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples whose keys satisfy ipred, in no
+     * particular order.  An equality predicate reads only the bucket of
+     * its key; any other predicate reads every bucket.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param ipred the predicate on the key, or null for all tuples
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new HashFileIterator(tid, ipred);
+    }
+
+    /**
+     * Iterates over the pages of a range of buckets.  Each page's tuples
+     * are copied when it is reached and the page is unpinned right away,
+     * so the iterator can run below Delete, which never moves tuples; an
+     * insert into the file during the scan may split a bucket and move
+     * tuples the scan has or hasn't reached.
+     */
+    private class HashFileIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final IndexPredicate ipred;  // null for all tuples
+        private Iterator<Tuple> tuples;  // of the current page, null if closed
+        private HashPageId nextPage;
+        private int bucket;
+        private int endBucket;
+
+        HashFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            Map<PageId, Page> none = Collections.emptyMap();
+            HashMetaPage meta = getMetaPage(tid, none, Permissions.READ_ONLY);
+            if (ipred != null && ipred.getOp() == Predicate.Op.EQUALS) {
+                bucket = meta.bucketOf(hash(ipred.getField()));
+                endBucket = bucket + 1;
+            } else {
+                bucket = 0;
+                endBucket = meta.getNumBuckets();
+            }
+            Database.getBufferPool().unpinPage(tid, meta.getId());
+            nextPage = firstPageId(tid, none, bucket);
+            tuples = Collections.emptyIterator();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (tuples != null) {
+                while (tuples.hasNext()) {
+                    Tuple t = tuples.next();
+                    if (ipred == null || ipred.matches(t.getField(keyField))) {
+                        return t;
+                    }
+                }
+                if (nextPage == null) {
+                    if (++bucket >= endBucket) {
+                        tuples = null;
+                        return null;
+                    }
+                    nextPage = firstPageId(tid, Collections.emptyMap(), bucket);
+                }
+                HashBucketPage page = (HashBucketPage) Database.getBufferPool().getPage(tid, nextPage,
+                        Permissions.READ_ONLY);
+                List<Tuple> copy = new ArrayList<>();
+                page.iterator().forEachRemaining(copy::add);
+                tuples = copy.iterator();
+                nextPage = page.getNextPageId();
+                Database.getBufferPool().unpinPage(tid, page.getId());
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            tuples = null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * HashMetaPage is page 0 of a {@link HashFile}.  It holds the state of
+ * linear hashing: the file has 2^level + next buckets, and buckets 0 to
+ * next - 1 have already been split in this round.  It also lists the
+ * {@link HashDirectoryPage}s that map buckets to their first pages.  The
+ * format is
+ * <pre>
+ *   level     4 bytes
+ *   next      4 bytes, the next bucket to split
+ *   n         4 bytes, the number of directory pages
+ *   pages     n page numbers of directory pages, 4 bytes each
+ * </pre>
+ * followed by zeroes to the page size.
+ */
+public class HashMetaPage extends HashPage {
+
+    private static final int PAGES_OFFSET = 12;
+
+    private int level;
+    private int next;
+    private final int[] directory;
+    private int numDirectoryPages;
+
+    /**
+     * Create a HashMetaPage from a set of bytes of data read from disk.
+     */
+    public HashMetaPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.level = BTreePage.readInt(data, 0);
+        this.next = BTreePage.readInt(data, 4);
+        this.numDirectoryPages = BTreePage.readInt(data, 8);
+        this.directory = new int[getMaxDirectoryPages()];
+        for (int i = 0; i < numDirectoryPages; i++) {
+            directory[i] = BTreePage.readInt(data, PAGES_OFFSET + i * 4);
+        }
+    }
+
+    /** @return the id of the meta page of the specified table */
+    public static HashPageId getId(int tableid) {
+        return new HashPageId(tableid, 0, HashPageId.META);
+    }
+
+    /** @return the number of directory pages the meta page can list */
+    public static int getMaxDirectoryPages() {
+        return (BufferPool.getPageSize() - PAGES_OFFSET) / 4;
+    }
+
+    /**
+     * Static method to generate the data of the meta page of a new file,
+     * with one bucket and one directory page, pgNo.
+     */
+    public static byte[] createPageData(int pgNo) {
+        byte[] data = createEmptyPageData();
+        BTreePage.writeInt(data, 8, 1);
+        BTreePage.writeInt(data, PAGES_OFFSET, pgNo);
+        return data;
+    }
+
+    public HashMetaPage getBeforeImage() {
+        try {
+            return new HashMetaPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // should never happen -- we parsed it OK before!
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getPageData() {
+        byte[] data = createEmptyPageData();
+        BTreePage.writeInt(data, 0, level);
+        BTreePage.writeInt(data, 4, next);
+        BTreePage.writeInt(data, 8, numDirectoryPages);
+        for (int i = 0; i < numDirectoryPages; i++) {
+            BTreePage.writeInt(data, PAGES_OFFSET + i * 4, directory[i]);
+        }
+        return data;
+    }
+
+    /** @return the number of buckets */
+    public int getNumBuckets() {
+        return (1 << level) + next;
+    }
+
+    /**
+     * @return the bucket of a key with the specified hash code: the hash
+     *   modulo 2^level, or modulo 2^(level + 1) if that bucket has been
+     *   split in this round
+     */
+    public int bucketOf(int hash) {
+        int b = hash & ((1 << level) - 1);
+        return b < next ? hash & ((1 << (level + 1)) - 1) : b;
+    }
+
+    /** @return the next bucket to split */
+    public int getNext() {
+        return next;
+    }
+
+    /** @return the bucket a split of the next bucket creates */
+    public int getSplitImage() {
+        return next + (1 << level);
+    }
+
+    /**
+     * Records that the next bucket has been split; after the last bucket of
+     * a round, the next round starts with twice as many buckets.
+     */
+    public void advance() {
+        beginWrite();
+        next++;
+        if (next == 1 << level) {
+            level++;
+            next = 0;
+        }
+    }
+
+    /**
+     * @return the id of directory page i, or null if there are only i
+     *   directory pages
+     */
+    public HashPageId getDirectoryId(int i) {
+        return i < numDirectoryPages ? new HashPageId(pid.getTableId(), directory[i], HashPageId.DIRECTORY) : null;
+    }
+
+    /**
+     * Appends a directory page to the list.
+     *
+     * @throws DbException if the list is full
+     */
+    public void addDirectoryPage(HashPageId id) throws DbException {
+        if (numDirectoryPages == directory.length) {
+            throw new DbException("hash file has the maximum number of buckets");
+        }
+        beginWrite();
+        directory[numDirectoryPages++] = id.getPageNumber();
+    }
+}
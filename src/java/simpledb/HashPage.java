@@ -0,0 +1,83 @@
+package simpledb;
+
+/**
+ * HashPage holds what all the pages of a {@link HashFile} have in common:
+ * the page id, the dirty flag and the copy-on-write before image, as in
+ * {@link BTreePage}, whose helpers encode numbers and fields at offsets.
+ * <p>
+ * Like every page, each subclass must have a single constructor of the
+ * form Page(PageId id, byte[] data); bucket pages get the schema of their
+ * table from the Catalog.
+ *
+ * @see HashFile
+ */
+public abstract class HashPage implements Page {
+
+    /** The page number stored in a page pointer that points nowhere. */
+    public static final int NO_PAGE = 0;
+
+    protected final HashPageId pid;
+    private volatile TransactionId isDirty;  // null if not dirty
+
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(); see HeapPage
+    private byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * The page keeps data as its before image, so the caller must not
+     * modify the array afterwards.
+     */
+    protected HashPage(HashPageId id, byte[] data) {
+        this.pid = id;
+        this.oldData = data;
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HashPageId getId() {
+        return this.pid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.isDirty = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return this.isDirty;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Called by subclasses before the page is modified: if the before image
+     * is still the current contents, copy them now.
+     */
+    protected void beginWrite() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    /** @return the bytes of the before image of this page */
+    protected byte[] getBeforeImageData() {
+        synchronized (oldDataLock) {
+            return oldData != null ? oldData : getPageData();
+        }
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * page of any category.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+}
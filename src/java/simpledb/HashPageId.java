@@ -0,0 +1,95 @@
+package simpledb;
+
+/** Unique identifier for the pages of a {@link HashFile}. */
+public class HashPageId implements PageId {
+
+    /** The page at the start of the file that holds the hashing state. */
+    public final static int META = 0;
+    /** A page of the table from buckets to their first pages. */
+    public final static int DIRECTORY = 1;
+    /** A page of a bucket, holding tuples. */
+    public final static int BUCKET = 2;
+
+    private int tableId;
+    private int pgNo;
+    private int pgcateg;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific hash file.
+     *
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table; the meta page is page 0
+     * @param pgcateg which kind of page it is, META, DIRECTORY or BUCKET
+     */
+    public HashPageId(int tableId, int pgNo, int pgcateg) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.pgcateg = pgcateg;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the page number in the table getTableId() associated with
+     *   this PageId
+     */
+    public int getPageNumber() {
+        return this.pgNo;
+    }
+
+    /**
+     * @return the category of this page: META, DIRECTORY or BUCKET
+     */
+    public int pgcateg() {
+        return this.pgcateg;
+    }
+
+    /**
+     * @return a hash code for this page, represented by the concatenation of
+     *   the table number and the page number
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return (this.tableId + "").hashCode() + (this.pgNo + "").hashCode();
+    }
+
+    /**
+     * Compares one PageId to another.  As for a BTreePageId, the category
+     * is not compared.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., page numbers and table
+     *   ids are the same)
+     */
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashPageId)) {
+            return false;
+        }
+        HashPageId other = (HashPageId) o;
+        return this.pgNo == other.pgNo && this.tableId == other.tableId;
+    }
+
+    public String toString() {
+        String[] categories = {"META", "DIRECTORY", "BUCKET"};
+        return "(" + tableId + ", " + pgNo + ", " + categories[pgcateg] + ")";
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+        data[0] = getTableId();
+        data[1] = getPageNumber();
+        data[2] = pgcateg();
+        return data;
+    }
+}
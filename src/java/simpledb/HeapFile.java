@@ -1,6 +1,8 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -8,7 +10,8 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor.  Subclasses can store a different page layout by overriding
+ * {@link #createPage} and {@link #createEmptyPageData}.
  *
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
@@ -17,8 +20,16 @@ public class HeapFile implements DbFile {
 
     private File f;
     private TupleDesc td;
+    private volatile ZoneMap zoneMap;  // null if the table has none
+    private final Object writeLock = new Object();
+    private byte[] writeBuffer;  // reused by writePage, guarded by writeLock
+    // Bloom filters by column, null for columns without one
+    private final PageBloomFilter[] bloomFilters;
+
     /**
-     * Constructs a heap file backed by the specified file.
+     * Constructs a heap file backed by the specified file.  If the table
+     * has a zone map or Bloom filters, see {@link #createZoneMap} and
+     * {@link #createBloomFilter}, they are opened too.
      *
      * @param f
      *            the file that stores the on-disk backing store for this heap
@@ -27,6 +38,23 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
         this.f = f;
         this.td = td;
+        if (ZoneMap.zoneFile(f).exists()) {
+            try {
+                this.zoneMap = new ZoneMap(ZoneMap.zoneFile(f), td);
+            } catch (IOException e) {
+                throw new RuntimeException("can't read zone map of " + f, e);
+            }
+        }
+        this.bloomFilters = new PageBloomFilter[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (PageBloomFilter.bloomFile(f, i).exists()) {
+                try {
+                    this.bloomFilters[i] = new PageBloomFilter(PageBloomFilter.bloomFile(f, i));
+                } catch (IOException e) {
+                    throw new RuntimeException("can't read Bloom filters of " + f, e);
+                }
+            }
+        }
     }
 
     /**
@@ -60,9 +88,116 @@ public class HeapFile implements DbFile {
         return this.td;
     }
 
+    /**
+     * @return the zone map of this table, or null if it has none
+     */
+    public ZoneMap getZoneMap() {
+        return this.zoneMap;
+    }
+
+    /**
+     * Builds a zone map of this table from the pages on disk, replacing any
+     * existing one, and keeps it up to date from now on.  Call it after
+     * loading the table, when the BufferPool holds no modified pages of it.
+     *
+     * @return the new zone map
+     * @throws IOException if the zone map can't be written
+     */
+    public ZoneMap createZoneMap() throws IOException {
+        File zf = ZoneMap.zoneFile(f);
+        zf.delete();
+        ZoneMap zm = new ZoneMap(zf, td);
+        for (int i = 0; i < numPages(); i++) {
+            zm.update(i, ((TuplePage) readPage(new HeapPageId(getId(), i))).iterator());
+        }
+        this.zoneMap = zm;
+        return zm;
+    }
+
+    /**
+     * @return the Bloom filters of column i of this table, or null if it
+     *   has none
+     */
+    public PageBloomFilter getBloomFilter(int i) {
+        return this.bloomFilters[i];
+    }
+
+    /**
+     * Builds Bloom filters of column i of this table from the pages on
+     * disk, replacing any existing ones, and keeps them up to date from now
+     * on.  Call it when the BufferPool holds no modified pages of the
+     * table.  Tables loaded by {@link HeapFileEncoder} can get their
+     * filters while they are converted instead.
+     *
+     * @return the new filters
+     * @throws IOException if the filters can't be written
+     */
+    public PageBloomFilter createBloomFilter(int i) throws IOException {
+        File bf = PageBloomFilter.bloomFile(f, i);
+        bf.delete();
+        PageBloomFilter filter = new PageBloomFilter(bf);
+        for (int pgNo = 0; pgNo < numPages(); pgNo++) {
+            filter.update(pgNo, ((TuplePage) readPage(new HeapPageId(getId(), pgNo))).iterator(), i);
+        }
+        this.bloomFilters[i] = filter;
+        return filter;
+    }
+
+    /**
+     * Called after page has been written to disk; updates the zone map and
+     * the Bloom filters.
+     */
+    protected void pageWritten(Page page) throws IOException {
+        int pgNo = page.getId().getPageNumber();
+        ZoneMap zm = this.zoneMap;
+        if (zm != null) {
+            zm.update(pgNo, ((TuplePage) page).iterator());
+        }
+        for (int i = 0; i < bloomFilters.length; i++) {
+            PageBloomFilter filter = bloomFilters[i];
+            if (filter != null) {
+                filter.update(pgNo, ((TuplePage) page).iterator(), i);
+            }
+        }
+    }
+
+    /**
+     * Returns false if the zone map or the Bloom filters show that no tuple
+     * of page pgNo can pass all of the predicates.
+     */
+    private boolean mayMatch(int pgNo, Predicate[] predicates) {
+        ZoneMap zm = this.zoneMap;
+        if (zm != null && !zm.mayMatch(pgNo, predicates)) {
+            return false;
+        }
+        for (Predicate p : predicates) {
+            PageBloomFilter filter = bloomFilters[p.getField()];
+            if (filter != null && p.getOp() == Predicate.Op.EQUALS
+                    && p.getOperand().getType() == td.getFieldType(p.getField())
+                    && !filter.mightContain(pgNo, p.getOperand())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a page of this file from its bytes on disk.
+     */
+    protected TuplePage createPage(HeapPageId id, byte[] data) throws IOException {
+        return new HeapPage(id, data);
+    }
+
+    /**
+     * @return the bytes of an empty page of this file
+     */
+    protected byte[] createEmptyPageData() {
+        return HeapPage.createEmptyPageData();
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
-        if(pid.getPageNumber() >= BufferPool.getPageSize()) {
+        if(pid.getPageNumber() < 0 || pid.getPageNumber() >= numPages()) {
             throw new IllegalArgumentException();
         }
         try {
@@ -73,7 +208,7 @@ public class HeapFile implements DbFile {
             r.seek(offset);
             r.read(arb);
             HeapPageId pageId = new HeapPageId(pid.getTableId(), pageNum);
-            return new HeapPage(pageId, arb);
+            return createPage(pageId, arb);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -85,8 +220,100 @@ public class HeapFile implements DbFile {
         RandomAccessFile w = new RandomAccessFile(this.f, "rw");
         int writeLoc = BufferPool.getPageSize() * page.getId().getPageNumber(); // offset into file where page should be written
         w.seek(writeLoc);
-        w.write(page.getPageData());  // throws IOException if write fails
+        synchronized (writeLock) {
+            // serialize into one reused array rather than a new one per write
+            if (writeBuffer == null || writeBuffer.length != BufferPool.getPageSize()) {
+                writeBuffer = new byte[BufferPool.getPageSize()];
+            }
+            page.writePageData(writeBuffer);
+            w.write(writeBuffer);  // throws IOException if write fails
+        }
         w.close();
+        pageWritten(page);
+    }
+
+    /**
+     * Writes a batch of pages to disk through a single FileChannel.  The
+     * pages are sorted by page number and each run of consecutive pages
+     * is written with one gathering write, so flushing many pages turns
+     * into a few large sequential writes.
+     *
+     * @param pages the pages to write; all must belong to this file
+     * @throws IOException if the write fails
+     */
+    public void writePages(List<Page> pages) throws IOException {
+        List<Page> sorted = new ArrayList<>(pages);
+        sorted.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+        int pageSize = BufferPool.getPageSize();
+
+        try (RandomAccessFile w = new RandomAccessFile(this.f, "rw")) {
+            FileChannel channel = w.getChannel();
+            int runStart = 0;
+            while (runStart < sorted.size()) {
+                // extend the run while page numbers are consecutive
+                int runEnd = runStart + 1;
+                while (runEnd < sorted.size()
+                        && sorted.get(runEnd).getId().getPageNumber()
+                           == sorted.get(runEnd - 1).getId().getPageNumber() + 1) {
+                    runEnd++;
+                }
+
+                ByteBuffer[] buffers = new ByteBuffer[runEnd - runStart];
+                long remaining = 0;
+                for (int i = runStart; i < runEnd; i++) {
+                    buffers[i - runStart] = ByteBuffer.wrap(sorted.get(i).getPageData());
+                    remaining += pageSize;
+                }
+                channel.position((long) pageSize * sorted.get(runStart).getId().getPageNumber());
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                runStart = runEnd;
+            }
+        }
+        for (Page p : sorted) {
+            pageWritten(p);
+        }
+    }
+
+    /**
+     * Replaces the tuples of this file with the specified ones, written in
+     * order to full pages from page 0 on, as {@link Catalog#cluster} does.
+     * Pages past the last one written are left empty, so the file keeps
+     * its page numbers.  The pages are written straight to disk, outside
+     * of any transaction and without logging, so call it only when the
+     * BufferPool holds no pages of this file; the zone map and Bloom
+     * filters are kept up to date.
+     *
+     * @param tuples the new tuples of the file, with this file's TupleDesc
+     * @return the number of pages the tuples take
+     * @throws IOException if a page can't be written
+     */
+    public int rewrite(Iterator<Tuple> tuples) throws IOException, DbException {
+        int oldPages = numPages();
+        int pgNo = 0;
+        TuplePage page = null;
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            if (page != null && !page.hasRoomFor(t)) {
+                writePage(page);
+                page = null;
+                pgNo++;
+            }
+            if (page == null) {
+                page = createPage(new HeapPageId(getId(), pgNo), createEmptyPageData());
+            }
+            page.insertTuple(t);
+        }
+        if (page != null) {
+            writePage(page);
+            pgNo++;
+        }
+        int used = pgNo;
+        for (; pgNo < oldPages; pgNo++) {
+            writePage(createPage(new HeapPageId(getId(), pgNo), createEmptyPageData()));
+        }
+        return used;
     }
 
     /**
@@ -106,24 +333,28 @@ public class HeapFile implements DbFile {
         // go through each page to find one with space for new tuple
         for (int i = 0; i < this.numPages(); i++) {
             // get current page
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_WRITE);
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_WRITE);
             // if page has space, insert tuple
-            if (page.getNumEmptySlots() > 0) {
+            if (page.hasRoomFor(t)) {
                 page.insertTuple(t);
+                tupleInserted(i, t);
                 pages.add(page);
                 break;
             }
+            // the page stays pinned only if we modified it
+            Database.getBufferPool().unpinPage(tid, page.getId());
         }
 
         // if there were no pages with space, create a new page and append it to the physical file on disk.
         if (pages.size() == 0) {
-            // create new page
+            // append an empty page to the file on disk, then fetch it
+            // through the buffer pool so it is locked and pinned like
+            // any other page
             HeapPageId newId = new HeapPageId(this.getId(), this.numPages());
-            byte[] data = new byte[BufferPool.getPageSize()];
-            HeapPage page = new HeapPage(newId, data);
+            this.writePage(createPage(newId, createEmptyPageData()));
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, newId, Permissions.READ_WRITE);
             page.insertTuple(t);
-            // append to file on disk
-            this.writePage(page);
+            tupleInserted(newId.getPageNumber(), t);
 
             pages.add(page);
         }
@@ -131,12 +362,26 @@ public class HeapFile implements DbFile {
         return pages;
     }
 
+    // keeps the zone map and Bloom filters covering the page in the BufferPool
+    private void tupleInserted(int pgNo, Tuple t) {
+        ZoneMap zm = this.zoneMap;
+        if (zm != null) {
+            zm.widen(pgNo, t);
+        }
+        for (int i = 0; i < bloomFilters.length; i++) {
+            PageBloomFilter filter = bloomFilters[i];
+            if (filter != null) {
+                filter.add(pgNo, t.getField(i));
+            }
+        }
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // must use BufferPool.getPage()
         ArrayList<Page> pages = new ArrayList<>();  // modified pages
-        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
+        TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
         page.deleteTuple(t);
         pages.add(page);
         return pages;
@@ -145,35 +390,202 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
-        return new HeapIterator(tid);
+        return new HeapIterator(tid, null, null);
+    }
+
+    /**
+     * Returns an iterator over some columns of the tuples of this file; see
+     * {@link TuplePage#iterator(int[])}.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param columns the indexes of the fields to return
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return new HeapIterator(tid, columns, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that pass all of the
+     * specified predicates.  Pages the table's zone map or Bloom filters
+     * rule out are not read.  If the table is clustered on a field, see
+     * {@link Catalog#cluster}, the tuples with values of the field in the
+     * range the predicates on it allow are on consecutive pages, so the
+     * scan starts at the first of them, found by binary search, and stops
+     * after the last.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param predicates predicates on fields of the table
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate[] predicates) {
+        return new HeapIterator(tid, null, predicates.clone());
+    }
+
+    /** Returns the tuples of an iterator that pass all of some predicates. */
+    private static class PassingIterator implements Iterator<Tuple> {
+        private final Iterator<Tuple> child;
+        private final Predicate[] predicates;
+        private Tuple next;
+
+        PassingIterator(Iterator<Tuple> child, Predicate[] predicates) {
+            this.child = child;
+            this.predicates = predicates;
+        }
+
+        public boolean hasNext() {
+            while (next == null && child.hasNext()) {
+                Tuple t = child.next();
+                boolean passes = true;
+                for (Predicate p : predicates) {
+                    passes = passes && p.filter(t);
+                }
+                if (passes) {
+                    next = t;
+                }
+            }
+            return next != null;
+        }
+
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
     }
 
     private class HeapIterator implements DbFileIterator {
         private TransactionId transactionId;
-        private HeapPage heapFile;
+        private TuplePage heapFile;
         private Iterator<Tuple> tupleIterator;
         private int currentNum;
+        private final int[] columns;  // null for all columns
+        private final Predicate[] predicates;  // null for none
+        private int clusterField;  // of the table, if it bounds the pages to read; else -1
 
-        public HeapIterator(TransactionId tid) {
+        public HeapIterator(TransactionId tid, int[] columns, Predicate[] predicates) {
             this.transactionId = tid;
-//            this.heapFile = hp;
-//            this.currentNum = 0;
-//            this.tupleIterator = null;
+            this.columns = columns;
+            this.predicates = predicates;
+        }
+
+        // releases our pin on the page we are done iterating over
+        private void unpinCurrent() {
+            if (heapFile != null) {
+                Database.getBufferPool().unpinPage(transactionId, heapFile.getId());
+                heapFile = null;
+            }
+        }
+
+        /**
+         * Moves on to the next page that the predicates don't rule out.
+         *
+         * @return false if there are no more pages
+         */
+        private boolean nextPage() throws DbException, TransactionAbortedException {
+            if (heapFile != null && clusterField >= 0 && !satisfies(lastTuple(heapFile), false)) {
+                // the tuples of the following pages are past the range too
+                currentNum = numPages();
+            }
+            unpinCurrent();
+            do {
+                currentNum++;
+            } while (currentNum < numPages() && predicates != null
+                    && !mayMatch(currentNum, predicates));
+            if (currentNum >= numPages()) {
+                return false;
+            }
+            HeapPageId hpId = new HeapPageId(getId(), currentNum);
+            heapFile = (TuplePage)
+                    Database.getBufferPool().getPage(transactionId, hpId,
+                            Permissions.READ_ONLY);
+            if (columns != null) {
+                this.tupleIterator = heapFile.iterator(columns);
+            } else if (predicates != null) {
+                this.tupleIterator = new PassingIterator(heapFile.iterator(), predicates);
+            } else {
+                this.tupleIterator = heapFile.iterator();
+            }
+            return true;
         }
 
         @Override
         public void open()
                 throws DbException, TransactionAbortedException {
-            currentNum = 0;
-            if (currentNum < numPages()) {
-                HeapPageId hpId = new HeapPageId(getId(), currentNum);
-                heapFile = (HeapPage)
-                        Database.getBufferPool().getPage(transactionId, hpId,
-                                Permissions.READ_ONLY);
-                this.tupleIterator = heapFile.iterator();
-            } else {
-                this.tupleIterator = null;
+            currentNum = -1;
+            clusterField = predicates == null ? -1 : Database.getCatalog().getClusterField(getId());
+            if (clusterField >= 0) {
+                currentNum = firstClusteredPage() - 1;
+            }
+            this.tupleIterator = Collections.emptyIterator();
+            nextPage();
+        }
+
+        /**
+         * @return true if t is null or passes the predicates on the
+         *   clustered field that bound its values from below, if lower, or
+         *   from above.  An equality bounds from both sides: it is checked
+         *   as &gt;= from below and as &lt;= from above.
+         */
+        private boolean satisfies(Tuple t, boolean lower) {
+            if (t == null) {
+                return true;
             }
+            for (Predicate p : predicates) {
+                if (p.getField() != clusterField) {
+                    continue;
+                }
+                Predicate.Op op = p.getOp();
+                if (op == Predicate.Op.EQUALS) {
+                    op = lower ? Predicate.Op.GREATER_THAN_OR_EQ : Predicate.Op.LESS_THAN_OR_EQ;
+                }
+                boolean bound = lower
+                        ? op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ
+                        : op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+                if (bound && !t.getField(clusterField).compare(op, p.getOperand())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** @return the last tuple of page, or null if it is empty */
+        private Tuple lastTuple(TuplePage page) {
+            Tuple last = null;
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext()) {
+                last = it.next();
+            }
+            return last;
+        }
+
+        /**
+         * @return the first page whose last tuple passes the lower bounds
+         *   on the clustered field; the pages before it hold no tuple in
+         *   range.  Empty pages are taken to pass, which may only start the
+         *   scan early.
+         */
+        private int firstClusteredPage() throws DbException, TransactionAbortedException {
+            int lo = 0;
+            int hi = numPages();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                HeapPageId pid = new HeapPageId(getId(), mid);
+                TuplePage page = (TuplePage) Database.getBufferPool().getPage(transactionId, pid, Permissions.READ_ONLY);
+                boolean passes;
+                try {
+                    passes = satisfies(lastTuple(page), true);
+                } finally {
+                    Database.getBufferPool().unpinPage(transactionId, pid);
+                }
+                if (passes) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
         }
 
         @Override
@@ -182,28 +594,19 @@ public class HeapFile implements DbFile {
             if (this.tupleIterator == null) {
                 return false;
             }
-            if (this.tupleIterator.hasNext()) {
-                return true;
-            } else {
-                while (currentNum >= 0 && currentNum < (numPages() - 1)) {
-                    currentNum++;
-                    HeapPageId hpId = new HeapPageId(getId(), currentNum);
-                    heapFile = (HeapPage)
-                            Database.getBufferPool().getPage(transactionId, hpId,
-                                    Permissions.READ_ONLY);
-                    this.tupleIterator = heapFile.iterator();
-                    if(this.tupleIterator.hasNext()) {
-                        return true;
-                    }
+            while (!this.tupleIterator.hasNext()) {
+                if (!nextPage()) {
+                    this.tupleIterator = Collections.emptyIterator();
+                    return false;
                 }
-                return false;
             }
+            return true;
         }
 
         @Override
         public Tuple next()
                 throws DbException, TransactionAbortedException, NoSuchElementException {
-            if(tupleIterator == null || !tupleIterator.hasNext()) {
+            if(!hasNext()) {
                 throw new NoSuchElementException();
             }
             return this.tupleIterator.next();
@@ -217,9 +620,8 @@ public class HeapFile implements DbFile {
 
         @Override
         public void close() {
+            unpinCurrent();
             this.tupleIterator = null;
         }
     }
 }
-
-
@@ -90,6 +90,20 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, null);
+  }
+
+  /** Convert the specified input text file into a binary page file, as
+   * above, and build the {@link PageBloomFilter}s of the specified columns
+   * while the pages are written, in PageBloomFilter.bloomFile(outFile, i).
+   *
+   * @param bloomColumns the columns to build Bloom filters of, or null
+   * @throws IOException if the input/output file can't be opened or a
+   *   malformed input line is encountered
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, int[] bloomColumns)
+      throws IOException {
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
@@ -120,6 +134,17 @@ public class HeapFileEncoder {
     ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
     DataOutputStream pageStream = new DataOutputStream(pageBAOS);
 
+    // the filter of the current page, per field; null for fields without
+    byte[][] blooms = new byte[numFields][];
+    OutputStream[] bloomStreams = new OutputStream[numFields];
+    if (bloomColumns != null) {
+        for (int col : bloomColumns) {
+            blooms[col] = new byte[PageBloomFilter.BYTES_PER_PAGE];
+            bloomStreams[col] = new BufferedOutputStream(
+                    new FileOutputStream(PageBloomFilter.bloomFile(outFile, col)));
+        }
+    }
+
     boolean done = false;
     boolean first = true;
     while (!done) {
@@ -140,7 +165,10 @@ public class HeapFileEncoder {
             String s = new String(buf, 0, curpos);
             if (typeAr[fieldNo] == Type.INT_TYPE) {
                 try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
+                    int v = Integer.parseInt(s.trim());
+                    pageStream.writeInt(v);
+                    if (blooms[fieldNo] != null)
+                        PageBloomFilter.add(blooms[fieldNo], 0, new IntField(v));
                 } catch (NumberFormatException e) {
                     System.out.println ("BAD LINE : " + s);
                 }
@@ -154,6 +182,8 @@ public class HeapFileEncoder {
                 }
                 pageStream.writeInt(s.length());
                 pageStream.writeBytes(s);
+                if (blooms[fieldNo] != null)
+                    PageBloomFilter.add(blooms[fieldNo], 0, new StringField(s, Type.STRING_LEN));
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
@@ -209,6 +239,12 @@ public class HeapFileEncoder {
             headerBAOS.writeTo(os);
             pageStream.flush();
             pageBAOS.writeTo(os);
+            for (int col = 0; col < numFields; col++) {
+                if (blooms[col] != null) {
+                    bloomStreams[col].write(blooms[col]);
+                    java.util.Arrays.fill(blooms[col], (byte) 0);
+                }
+            }
             
             // reset header and body for next page
             headerBAOS = new ByteArrayOutputStream(nheaderbytes);
@@ -222,5 +258,285 @@ public class HeapFileEncoder {
     }
     br.close();
     os.close();
+    for (OutputStream bs : bloomStreams) {
+        if (bs != null)
+            bs.close();
+    }
+  }
+  /** Convert the specified input text file into a page file of
+   * {@link SlottedHeapPage}s, for a {@link SlottedHeapFile}.  The input
+   * format is the same as for {@link #convert(File, File, int, int, Type[], char)};
+   * strings are stored with their actual length instead of being padded
+   * to Type.STRING_LEN, and pages are filled until the next record does
+   * not fit.
+   *
+   * @see SlottedHeapPage
+   * @see SlottedHeapFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      TupleDesc td = new TupleDesc(typeAr);
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+
+      ArrayList<byte[]> records = new ArrayList<byte[]>();
+      int used = SlottedHeapPage.HEADER_SIZE;
+      int npages = 0;
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.trim().isEmpty())
+              continue;
+          String[] values = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+          Tuple t = new Tuple(td);
+          for (int i = 0; i < numFields; i++) {
+              String v = i < values.length ? values[i].trim() : "";
+              if (typeAr[i] == Type.INT_TYPE) {
+                  try {
+                      t.setField(i, new IntField(Integer.parseInt(v)));
+                  } catch (NumberFormatException e) {
+                      System.out.println ("BAD LINE : " + line);
+                      t.setField(i, new IntField(0));
+                  }
+              } else {
+                  t.setField(i, new StringField(v, Type.STRING_LEN));
+              }
+          }
+          byte[] record = SlottedHeapPage.serializeRecord(t);
+
+          // start a new page if this record and its slot don't fit
+          if (used + record.length + SlottedHeapPage.SLOT_SIZE > npagebytes) {
+              os.write(SlottedHeapPage.packRecords(records, npagebytes));
+              npages++;
+              records.clear();
+              used = SlottedHeapPage.HEADER_SIZE;
+          }
+          records.add(record);
+          used += record.length + SlottedHeapPage.SLOT_SIZE;
+      }
+      // the last page; an empty file still gets one empty page
+      if (!records.isEmpty() || npages == 0)
+          os.write(SlottedHeapPage.packRecords(records, npagebytes));
+      br.close();
+      os.close();
+  }
+  /** Convert the specified input text file into a page file for a
+   * {@link DictionaryHeapFile}: the values of the encoded columns are
+   * replaced by their codes, assigned in order of first appearance, and
+   * the dictionaries are written to {@link DictionaryHeapFile#dictionaryFile}.
+   * Any existing dictionaries of outFile are replaced.
+   *
+   * @see DictionaryHeapFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param encoded encoded[i] is true if field i is a dictionary encoded
+   *        string field
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void convertDictionary(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, boolean[] encoded, char fieldSeparator)
+      throws IOException {
+      Type[] storedTypes = new Type[numFields];
+      StringDictionary[] dicts = new StringDictionary[numFields];
+      for (int i = 0; i < numFields; i++) {
+          storedTypes[i] = encoded[i] ? Type.INT_TYPE : typeAr[i];
+          if (encoded[i]) {
+              File dictFile = DictionaryHeapFile.dictionaryFile(outFile, i);
+              dictFile.delete();
+              dicts[i] = new StringDictionary(dictFile);
+          }
+      }
+
+      // rewrite the input with codes, then lay out pages as usual
+      File tempInput = File.createTempFile("tempTable", ".txt");
+      tempInput.deleteOnExit();
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
+      String separator = String.valueOf(fieldSeparator);
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.trim().isEmpty())
+              continue;
+          String[] values = line.split(java.util.regex.Pattern.quote(separator), -1);
+          for (int i = 0; i < numFields; i++) {
+              String v = i < values.length ? values[i] : "";
+              if (encoded[i]) {
+                  v = v.trim();
+                  if (v.length() > Type.STRING_LEN)
+                      v = v.substring(0, Type.STRING_LEN);
+                  v = String.valueOf(dicts[i].encode(v));
+              }
+              bw.write(v);
+              bw.write(i < numFields - 1 ? fieldSeparator : '\n');
+          }
+      }
+      br.close();
+      bw.close();
+      for (StringDictionary dict : dicts) {
+          if (dict != null)
+              dict.close();
+      }
+      convert(tempInput, outFile, npagebytes, numFields, storedTypes, fieldSeparator);
+  }
+  /** Convert the specified input text file into a page file of
+   * {@link PaxPage}s, for a {@link PaxFile}.  The input format is the same
+   * as for {@link #convert(File, File, int, int, Type[], char)}; the pages
+   * are laid out as usual and then rearranged column by column.
+   *
+   * @see PaxPage
+   * @see PaxFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void convertPax(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      File rowFile = File.createTempFile("tempTable", ".dat");
+      rowFile.deleteOnExit();
+      convert(inFile, rowFile, npagebytes, numFields, typeAr, fieldSeparator);
+
+      TupleDesc td = new TupleDesc(typeAr);
+      byte[] page = new byte[npagebytes];
+      DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(rowFile)));
+      FileOutputStream os = new FileOutputStream(outFile);
+      long npages = rowFile.length() / npagebytes;
+      for (long i = 0; i < npages; i++) {
+          is.readFully(page);
+          os.write(PaxPage.fromRowPage(page, td));
+      }
+      is.close();
+      os.close();
+      rowFile.delete();
+  }
+  /** Convert the specified input text file into the column files of a
+   * {@link ColumnFile} named by outFile, one file of {@link ColumnPage}s per
+   * field, see {@link ColumnFile#columnFile}.  The input format is the same
+   * as for {@link #convert(File, File, int, int, Type[], char)}.
+   *
+   * @see ColumnFile
+   * @param inFile The input file to read data from
+   * @param outFile The file naming the table
+   * @param npagebytes The number of bytes per page in the output files
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output files can't be opened
+   */
+  public static void convertColumns(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream[] os = new FileOutputStream[numFields];
+      ArrayList<ArrayList<Field>> values = new ArrayList<ArrayList<Field>>();
+      int[] perPage = new int[numFields];
+      for (int i = 0; i < numFields; i++) {
+          os[i] = new FileOutputStream(ColumnFile.columnFile(outFile, i));
+          values.add(new ArrayList<Field>());
+          perPage[i] = ColumnPage.valuesPerPage(typeAr[i], npagebytes);
+      }
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.trim().isEmpty())
+              continue;
+          String[] fields = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+          for (int i = 0; i < numFields; i++) {
+              String v = i < fields.length ? fields[i].trim() : "";
+              Field f;
+              if (typeAr[i] == Type.INT_TYPE) {
+                  try {
+                      f = new IntField(Integer.parseInt(v));
+                  } catch (NumberFormatException e) {
+                      System.out.println ("BAD LINE : " + line);
+                      f = new IntField(0);
+                  }
+              } else {
+                  f = new StringField(v, Type.STRING_LEN);
+              }
+              values.get(i).add(f);
+              if (values.get(i).size() == perPage[i]) {
+                  os[i].write(ColumnPage.packValues(values.get(i), typeAr[i], npagebytes));
+                  values.get(i).clear();
+              }
+          }
+      }
+      for (int i = 0; i < numFields; i++) {
+          if (!values.get(i).isEmpty())
+              os[i].write(ColumnPage.packValues(values.get(i), typeAr[i], npagebytes));
+          os[i].close();
+      }
+      br.close();
+  }
+  /** Convert the specified input text file into the page images and page
+   * map of a {@link CompressedHeapFile}.  The input format is the same as
+   * for {@link #convert(File, File, int, int, Type[], char)}; the pages are
+   * laid out as usual and then compressed, see {@link #compressPages}.
+   *
+   * @see CompressedHeapFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void convertCompressed(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      File rowFile = File.createTempFile("tempTable", ".dat");
+      rowFile.deleteOnExit();
+      convert(inFile, rowFile, npagebytes, numFields, typeAr, fieldSeparator);
+      compressPages(rowFile, outFile, npagebytes);
+      rowFile.delete();
+  }
+  /** Compress the pages of a HeapFile (e.g. one of the DBLP tables) into
+   * the page images and page map of a {@link CompressedHeapFile}.
+   *
+   * @see CompressedHeapFile
+   * @param rowFile The HeapFile to read pages from
+   * @param outFile The output file to write page images to; the page map
+   *        is written to {@link CompressedHeapFile#mapFile}(outFile)
+   * @param npagebytes The number of bytes per page in rowFile
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void compressPages(File rowFile, File outFile, int npagebytes)
+      throws IOException {
+      byte[] page = new byte[npagebytes];
+      DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(rowFile)));
+      BufferedOutputStream os = new BufferedOutputStream(new FileOutputStream(outFile));
+      DataOutputStream ms = new DataOutputStream(new BufferedOutputStream(
+              new FileOutputStream(CompressedHeapFile.mapFile(outFile))));
+      long npages = rowFile.length() / npagebytes;
+      long offset = 0;
+      for (long i = 0; i < npages; i++) {
+          is.readFully(page);
+          byte[] image = PageCompressor.compress(page);
+          if (image.length >= npagebytes)
+              image = page;
+          os.write(image);
+          ms.writeLong(offset);
+          ms.writeInt(image.length);
+          ms.writeInt(image.length);
+          offset += image.length;
+      }
+      is.close();
+      os.close();
+      ms.close();
   }
 }
@@ -11,7 +11,7 @@ import java.io.*;
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
@@ -20,8 +20,11 @@ public class HeapPage implements Page {
     final int numSlots;
     private TransactionId isDirty;  // stores the tid that dirtied this page. null if not dirty
 
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(), in which case the current contents are the before
+    // image and are only copied once the page is about to change
     byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    private final Object oldDataLock = new Object();
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -35,6 +38,10 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * <p>
+     * The page keeps data as its before image, so the caller must not
+     * modify the array afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
@@ -60,7 +67,8 @@ public class HeapPage implements Page {
         }
         dis.close();
 
-        setBeforeImage();
+        // the bytes we were built from are the before image; no copy needed
+        oldData = data;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -68,7 +76,42 @@ public class HeapPage implements Page {
     */
     private int getNumTuples() {        
         // tupsPerPage = floor((BufferPool.PAGE_SIZE * 8) / (_tuple size_ * 8 + 1))
-        return (int) Math.floor((BufferPool.getPageSize() * 8.0) / (this.td.getSize() * 8 + 1));
+        return (int) Math.floor((BufferPool.getPageSize() * 8.0) / (getStoredTupleSize() * 8 + 1));
+    }
+
+    /**
+     * @return the bytes one tuple takes on the page.  Subclasses that store
+     *   fields in a different form than {@link Type#getLen} override this,
+     *   {@link #readField} and {@link #writeField}; note that these are
+     *   called from the HeapPage constructor, before the subclass's own
+     *   constructor has run.
+     */
+    protected int getStoredTupleSize() {
+        return td.getSize();
+    }
+
+    /**
+     * Reads field number fieldNo of a tuple from the page.
+     */
+    protected Field readField(int fieldNo, DataInputStream dis) throws java.text.ParseException {
+        return td.getFieldType(fieldNo).parse(dis);
+    }
+
+    /**
+     * Writes field number fieldNo of a tuple to data at offset.
+     *
+     * @return the number of bytes written
+     */
+    protected int writeField(int fieldNo, Field f, byte[] data, int offset) {
+        return f.serialize(data, offset);
+    }
+
+    /**
+     * @return a page of the same class as this one, with the same id, built
+     *   from data
+     */
+    protected HeapPage newPage(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
     }
 
     /**
@@ -89,7 +132,11 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            if (oldDataRef == null) {
+                // not modified since the before image was set
+                oldDataRef = getPageData();
+            }
+            return newPage(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -101,7 +148,22 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        // copy-on-write: the current contents are only serialized if the
+        // page is modified again, see preserveBeforeImage()
+        oldData = null;
+        }
+    }
+
+    /**
+     * Called before the page is modified: if the before image is still the
+     * current contents, copy them now.
+     */
+    private void preserveBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null) {
+            oldData = getPageData();
+        }
         }
     }
 
@@ -119,7 +181,7 @@ public class HeapPage implements Page {
         // if associated bit is not set, read forward to the next tuple, and
         // return null.
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
+            for (int i=0; i<getStoredTupleSize(); i++) {
                 try {
                     dis.readByte();
                 } catch (IOException e) {
@@ -135,7 +197,7 @@ public class HeapPage implements Page {
         t.setRecordId(rid);
         try {
             for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
+                Field f = readField(j, dis);
                 t.setField(j, f);
             }
         } catch (java.text.ParseException e) {
@@ -158,64 +220,39 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        writePageData(data);
+        return data;
+    }
 
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+    /**
+     * Serializes this page directly into data at computed offsets, without
+     * intermediate streams.
+     *
+     * @see #getPageData
+     */
+    public void writePageData(byte[] data) {
+        int tupleSize = getStoredTupleSize();
 
-                }
-                continue;
-            }
+        // the header of the page
+        System.arraycopy(header, 0, data, 0, header.length);
 
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
+        // the tuples; empty slots are zeroed, as data may be reused
+        int offset = header.length;
+        for (int i=0; i<tuples.length; i++) {
+            if (!isSlotUsed(i)) {
+                Arrays.fill(data, offset, offset + tupleSize, (byte) 0);
+            } else {
+                int fieldOffset = offset;
+                for (int j=0; j<td.numFields(); j++) {
+                    fieldOffset += writeField(j, tuples[i].getField(j), data, fieldOffset);
                 }
             }
+            offset += tupleSize;
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        Arrays.fill(data, offset, BufferPool.getPageSize(), (byte) 0);
     }
 
     /**
@@ -250,6 +287,7 @@ public class HeapPage implements Page {
             // tuple on page but tuple slot already empty
             throw new DbException("tuple slot already empty");
         }
+        preserveBeforeImage();
         markSlotUsed(tupleSlotNum, false);
         tuples[tupleSlotNum] = null;
     }
@@ -268,6 +306,7 @@ public class HeapPage implements Page {
         if (getNumEmptySlots() == 0) {
             throw new DbException("page is full (no empty slots)");
         }
+        preserveBeforeImage();
         // find a page with an empty slot
         for (int i = 0; i < numSlots; i++) {
             if (!isSlotUsed(i)) {
@@ -303,6 +342,14 @@ public class HeapPage implements Page {
         return null;
     }
 
+    /**
+     * Every tuple of the table takes the same space, so there is room for t
+     * as long as there is an empty slot.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
     /**
      * Returns the number of empty slots on this page.
      */
@@ -346,6 +393,10 @@ public class HeapPage implements Page {
         }
     }
 
+    public Tuple getTuple(int slot) {
+        return slot >= 0 && slot < numSlots && isSlotUsed(slot) ? tuples[slot] : null;
+    }
+
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
@@ -353,19 +404,25 @@ public class HeapPage implements Page {
     public Iterator<Tuple> iterator() {
         return new Iterator<Tuple>() {
             private int currentIndex = 0;
-            private int numFilledSlots = getNumTuples() - getNumEmptySlots();
+            // count the tuples left rather than compare the slot index to
+            // the number of tuples, which stops short when slots are empty
+            private int remaining = getNumTuples() - getNumEmptySlots();
             @Override
             public boolean hasNext() {
-                return currentIndex < numFilledSlots;
+                return remaining > 0;
             }
 
             @Override
             public Tuple next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
                 while (!isSlotUsed(currentIndex)) {
                     currentIndex++;
                 }
                 Tuple nextItem = tuples[currentIndex];
                 currentIndex++;
+                remaining--;
                 return nextItem;
             }
         };
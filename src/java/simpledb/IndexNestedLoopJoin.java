@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins its child, the outer relation, with a table
+ * that has an index on the join field: for each outer tuple it looks up
+ * the matching tuples of the table in the index instead of scanning the
+ * whole table, as {@link Join} does.  The index is the key of a
+ * {@link BTreeFile} or a {@link HashFile}, or a {@link SecondaryIndex} of
+ * a heap table; a HashFile only answers equality joins.
+ * <p>
+ * The result is the same as that of a Join of the child with a SeqScan of
+ * the table: the concatenation of each outer tuple with each matching
+ * table tuple, in the order of the outer relation.
+ *
+ * @see JoinOptimizer#instantiateJoin
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final JoinPredicate joinPredicate;
+    private OpIterator child;
+    private final int tableId;
+    private final String tableAlias;
+    private Tuple outer;
+    private DbFileIterator matches;  // of the current outer tuple
+
+    /**
+     * Constructor.
+     *
+     * @param tid
+     *            The transaction the lookups run as a part of
+     * @param p
+     *            The predicate to join on; field2 is a field of the table
+     * @param child
+     *            Iterator for the left (outer) relation to join
+     * @param tableid
+     *            The right (inner) table; it must have an index on field2
+     *            for the operator of p, see {@link #hasIndex}
+     * @param tableAlias
+     *            The alias of the table, see {@link SeqScan#SeqScan}
+     */
+    public IndexNestedLoopJoin(TransactionId tid, JoinPredicate p, OpIterator child, int tableid,
+            String tableAlias) {
+        this.tid = tid;
+        this.joinPredicate = p;
+        this.child = child;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.joinPredicate;
+    }
+
+    /**
+     * @return the id of the inner table
+     */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return true if the specified field of the table has an index that
+     *   can look up the keys that compare to a value with op
+     */
+    public static boolean hasIndex(int tableid, int field, Predicate.Op op) {
+        if (!IndexPredicate.isIndexable(op)) {
+            return false;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof BTreeFile && ((BTreeFile) file).keyField() == field) {
+            return true;
+        }
+        if (file instanceof HashFile && ((HashFile) file).keyField() == field) {
+            return op == Predicate.Op.EQUALS;
+        }
+        return secondaryIndex(tableid, field) != null;
+    }
+
+    // the secondary index on the specified field of the table, or null
+    static SecondaryIndex secondaryIndex(int tableid, int field) {
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableid)) {
+            if (index.getColumn() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the operator op' such that a op b is b op' a
+     */
+    static Predicate.Op reverse(Predicate.Op op) {
+        switch (op) {
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    // looks up the tuples of the table whose join field satisfies ipred
+    private DbFileIterator lookup(IndexPredicate ipred) {
+        DbFile file = Database.getCatalog().getDatabaseFile(this.tableId);
+        int field = this.joinPredicate.getField2();
+        if (file instanceof BTreeFile && ((BTreeFile) file).keyField() == field) {
+            return ((BTreeFile) file).indexIterator(this.tid, ipred);
+        }
+        if (file instanceof HashFile && ((HashFile) file).keyField() == field) {
+            return ((HashFile) file).indexIterator(this.tid, ipred);
+        }
+        return secondaryIndex(this.tableId, field).tuples(this.tid, ipred);
+    }
+
+    /**
+     * Returns the TupleDesc of the child followed by that of the table,
+     * with field names prefixed with the table alias, as for a Join with a
+     * SeqScan of the table.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc originalTD = Database.getCatalog().getDatabaseFile(this.tableId).getTupleDesc();
+        int numFields = originalTD.numFields();
+        Type[] types = new Type[numFields];
+        String[] fieldNames = new String[numFields];
+        for (int i = 0; i < numFields; i++) {
+            types[i] = originalTD.getFieldType(i);
+            fieldNames[i] = String.join(".", this.tableAlias, originalTD.getFieldName(i));
+        }
+        return TupleDesc.merge(this.child.getTupleDesc(), new TupleDesc(types, fieldNames));
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        if (!hasIndex(this.tableId, this.joinPredicate.getField2(), this.joinPredicate.getOperator())) {
+            throw new DbException("table " + Database.getCatalog().getTableName(this.tableId)
+                    + " has no index for " + this.joinPredicate.getOperator() + " on field "
+                    + this.joinPredicate.getField2());
+        }
+        super.open();
+        this.child.open();
+    }
+
+    public void close() {
+        super.close();
+        this.child.close();
+        closeMatches();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child.rewind();
+        closeMatches();
+    }
+
+    private void closeMatches() {
+        if (this.matches != null) {
+            this.matches.close();
+            this.matches = null;
+        }
+        this.outer = null;
+    }
+
+    /**
+     * Returns the next outer tuple joined with a matching tuple of the
+     * table, looking up the matches of each outer tuple in the index when
+     * it is reached.
+     *
+     * @return The next matching tuple, or null if there are no more.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            while (this.matches != null && this.matches.hasNext()) {
+                Tuple inner = this.matches.next();
+                if (this.joinPredicate.filter(this.outer, inner)) {
+                    Tuple merged = new Tuple(getTupleDesc());
+                    int numFieldsOuter = this.outer.getTupleDesc().numFields();
+                    for (int i = 0; i < numFieldsOuter; i++) {
+                        merged.setField(i, this.outer.getField(i));
+                    }
+                    for (int i = 0; i < inner.getTupleDesc().numFields(); i++) {
+                        merged.setField(i + numFieldsOuter, inner.getField(i));
+                    }
+                    merged.setRecordId(this.outer.getRecordId());
+                    return merged;
+                }
+            }
+            closeMatches();
+            if (!this.child.hasNext()) {
+                return null;
+            }
+            this.outer = this.child.next();
+            Field key = this.outer.getField(this.joinPredicate.getField1());
+            this.matches = lookup(new IndexPredicate(reverse(this.joinPredicate.getOperator()), key));
+            this.matches.open();
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
@@ -0,0 +1,154 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexOnlyScan is an access method that answers a scan of a heap table
+ * from the entries of one of its {@link SecondaryIndex}es alone, without
+ * reading the table: it returns the fields the index stores, its key and
+ * included columns, of the tuples whose keys satisfy an
+ * {@link IndexPredicate}, in key order.  Unlike
+ * {@link SecondaryIndex#tuples}, it reads no table pages, so it only reads
+ * the index pages on the path to the first match and the leaves that hold
+ * the matches.
+ * <p>
+ * The tuples have the stored fields in the order of the table, with the
+ * RecordIds of the tuples of the table they come from.
+ */
+public class IndexOnlyScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private TransactionId tid;
+    private SecondaryIndex index;
+    private String tableAlias;
+    private IndexPredicate ipred;  // null for all entries
+    private int[] columns;  // the fields of the table the scan returns
+    private TupleDesc td;
+    private DbFileIterator entries;
+
+    /**
+     * Creates an index-only scan over the specified index as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to read
+     * @param tableAlias
+     *            the alias of the indexed table, see {@link SeqScan#SeqScan}
+     * @param ipred
+     *            the predicate on the key of the index, or null to scan
+     *            all entries in key order
+     */
+    public IndexOnlyScan(TransactionId tid, SecondaryIndex index, String tableAlias, IndexPredicate ipred) {
+        this.tid = tid;
+        this.index = index;
+        this.tableAlias = tableAlias;
+        this.ipred = ipred;
+        TupleDesc originalTD = Database.getCatalog().getTupleDesc(index.getTableId());
+        int numFields = originalTD.numFields();
+        List<Integer> stored = new ArrayList<Integer>();
+        for (int i = 0; i < numFields; i++) {
+            if (index.entryField(i) >= 0) {
+                stored.add(i);
+            }
+        }
+        this.columns = new int[stored.size()];
+        for (int i = 0; i < this.columns.length; i++) {
+            this.columns[i] = stored.get(i);
+        }
+        Type[] types = new Type[this.columns.length];
+        String[] fieldNames = new String[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            types[i] = originalTD.getFieldType(this.columns[i]);
+            fieldNames[i] = String.join(".", tableAlias, originalTD.getFieldName(this.columns[i]));
+        }
+        this.td = new TupleDesc(types, fieldNames);
+    }
+
+    /**
+     * @return the table name of the table the operator scans
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(this.index.getTableId());
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return this.tableAlias;
+    }
+
+    /**
+     * @return the index this operator reads
+     */
+    public SecondaryIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the predicate on the key, or null if the scan returns all
+     *   entries
+     */
+    public IndexPredicate getIndexPredicate() {
+        return this.ipred;
+    }
+
+    /**
+     * @return true if the index stores all the specified fields of the
+     *   table
+     */
+    public static boolean covers(SecondaryIndex index, Collection<Integer> fields) {
+        for (int field : fields) {
+            if (index.entryField(field) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.entries = this.index.entries(this.tid, this.ipred);
+        this.entries.open();
+    }
+
+    /**
+     * Returns the TupleDesc of the fields of the table the index stores,
+     * in table order, with field names prefixed with the table alias, as
+     * for a SeqScan.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return this.entries != null && this.entries.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (this.entries == null) {
+            throw new NoSuchElementException();
+        }
+        Tuple entry = this.entries.next();
+        Tuple t = new Tuple(this.td);
+        for (int i = 0; i < this.columns.length; i++) {
+            t.setField(i, entry.getField(this.index.entryField(this.columns[i])));
+        }
+        t.setRecordId(this.index.getRecordId(entry));
+        return t;
+    }
+
+    public void close() {
+        if (this.entries != null) {
+            this.entries.close();
+        }
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        this.entries.rewind();
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * IndexPredicate compares the key of an index to a constant; it is the
+ * predicate of an {@link IndexScan}.
+ */
+public class IndexPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate.Op op;
+    private final Field fieldvalue;
+
+    /**
+     * Constructor.
+     *
+     * @param op the operation to apply, key op fvalue
+     * @param fvalue the value to compare keys to
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldvalue = fvalue;
+    }
+
+    public Field getField() {
+        return fieldvalue;
+    }
+
+    public Predicate.Op getOp() {
+        return op;
+    }
+
+    /**
+     * @return true if key op getField() holds
+     */
+    public boolean matches(Field key) {
+        return key.compare(op, fieldvalue);
+    }
+
+    /**
+     * @return true if an index can look up keys with op: equality and the
+     *   range comparisons
+     */
+    public static boolean isIndexable(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexPredicate)) {
+            return false;
+        }
+        IndexPredicate other = (IndexPredicate) o;
+        return op == other.op && fieldvalue.equals(other.fieldvalue);
+    }
+
+    public int hashCode() {
+        return op.hashCode() * 31 + fieldvalue.hashCode();
+    }
+
+    public String toString() {
+        return "key " + op + " " + fieldvalue;
+    }
+}
@@ -0,0 +1,131 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table stored in
+ * a {@link BTreeFile} or a {@link HashFile} whose keys satisfy an
+ * {@link IndexPredicate}.  Unlike a SeqScan it only reads the pages on the
+ * path to the first matching tuple and the leaves that hold the matches,
+ * in key order, or, for a point lookup in a HashFile, the pages of the
+ * key's bucket.
+ */
+public class IndexScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private TransactionId tid;
+    private int tableId;
+    private String tableAlias;
+    private IndexPredicate ipred;  // null for all tuples
+    private DbFileIterator tableIterator;
+
+    /**
+     * Creates an index scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan; must be stored in a BTreeFile, or in
+     *            a HashFile if ipred is an equality predicate
+     * @param tableAlias
+     *            the alias of this table, see {@link SeqScan#SeqScan}
+     * @param ipred
+     *            the predicate on the key of the table, or null to scan
+     *            the whole table in key order
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred) {
+        this.tid = tid;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.ipred = ipred;
+    }
+
+    /**
+     * @return the table name of the table the operator scans
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(this.tableId);
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return this.tableAlias;
+    }
+
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the transaction this scan runs as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.tid;
+    }
+
+    /**
+     * @return the predicate on the key, or null if the scan returns all
+     *   tuples
+     */
+    public IndexPredicate getIndexPredicate() {
+        return this.ipred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDatabaseFile(this.tableId);
+        if (file instanceof BTreeFile) {
+            this.tableIterator = ((BTreeFile) file).indexIterator(this.tid, this.ipred);
+        } else if (file instanceof HashFile && this.ipred != null && this.ipred.getOp() == Predicate.Op.EQUALS) {
+            this.tableIterator = ((HashFile) file).indexIterator(this.tid, this.ipred);
+        } else {
+            throw new DbException("table " + getTableName() + " has no index for " + this.ipred);
+        }
+        this.tableIterator.open();
+    }
+
+    /**
+     * Returns the TupleDesc of the table with field names prefixed with the
+     * table alias, as for a SeqScan.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc originalTD = Database.getCatalog().getDatabaseFile(this.tableId).getTupleDesc();
+        int numFields = originalTD.numFields();
+        Type[] types = new Type[numFields];
+        String[] fieldNames = new String[numFields];
+        for (int i = 0; i < numFields; i++) {
+            types[i] = originalTD.getFieldType(i);
+            fieldNames[i] = String.join(".", this.tableAlias, originalTD.getFieldName(i));
+        }
+        return new TupleDesc(types, fieldNames);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return this.tableIterator != null && this.tableIterator.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (this.tableIterator == null) {
+            throw new NoSuchElementException();
+        }
+        return this.tableIterator.next();
+    }
+
+    public void close() {
+        if (this.tableIterator != null) {
+            this.tableIterator.close();
+        }
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        this.tableIterator.rewind();
+    }
+}
@@ -34,7 +34,11 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
-     * 
+     * <p>
+     * When plan2 scans a table with an index on the join field, the join is
+     * an {@link IndexNestedLoopJoin} if probing the index is cheaper than
+     * scanning the table; see {@link #estimateIndexProbeCost}.
+     *
      * @param lj
      *            The join being considered
      * @param plan1
@@ -68,12 +72,117 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
+        if (!(lj instanceof LogicalSubplanJoinNode)) {
+            j = instantiateIndexJoin(p, plan1, plan2);
+            if (j != null)
+                return j;
+        }
+
         j = new Join(p,plan1,plan2);
 
         return j;
 
     }
 
+    /**
+     * Returns an {@link IndexNestedLoopJoin} of plan1 with the table plan2
+     * scans, or null if plan2 isn't a scan of a table with an index on the
+     * join field, possibly below some Filters, or if probing the index once
+     * per outer tuple isn't cheaper than scanning the table once per outer
+     * tuple, as a nested loops Join does.  The filters of plan2 are applied
+     * above the join.
+     */
+    private static OpIterator instantiateIndexJoin(JoinPredicate p, OpIterator plan1, OpIterator plan2) {
+        List<Predicate> filters = new ArrayList<Predicate>();
+        OpIterator scan = plan2;
+        while (scan instanceof Filter) {
+            filters.add(((Filter) scan).getPredicate());
+            scan = ((Filter) scan).getChildren()[0];
+        }
+        int tableid;
+        TransactionId tid;
+        String alias;
+        if (scan instanceof SeqScan && ((SeqScan) scan).getColumns() == null) {
+            SeqScan ss = (SeqScan) scan;
+            tableid = ss.getTableId();
+            tid = ss.getTransactionId();
+            alias = ss.getAlias();
+            if (ss.getFilters() != null)
+                filters.addAll(Arrays.asList(ss.getFilters()));
+        } else if (scan instanceof IndexScan) {
+            IndexScan is = (IndexScan) scan;
+            tableid = is.getTableId();
+            tid = is.getTransactionId();
+            alias = is.getAlias();
+            IndexPredicate ipred = is.getIndexPredicate();
+            if (ipred != null) {
+                DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+                int key = file instanceof BTreeFile ? ((BTreeFile) file).keyField() : ((HashFile) file).keyField();
+                filters.add(new Predicate(key, ipred.getOp(), ipred.getField()));
+            }
+        } else {
+            return null;
+        }
+        if (!IndexNestedLoopJoin.hasIndex(tableid, p.getField2(), p.getOperator()))
+            return null;
+        if (estimateIndexProbeCost(tableid, p.getField2()) >= estimateTableScanCost(tableid))
+            return null;
+
+        OpIterator j = new IndexNestedLoopJoin(tid, p, plan1, tableid, alias);
+        int offset = plan1.getTupleDesc().numFields();
+        for (Predicate f : filters)
+            j = new Filter(new Predicate(f.getField() + offset, f.getOp(), f.getOperand()), j);
+        return j;
+    }
+
+    /**
+     * Estimate the number of pages one scan of a table reads.
+     */
+    public static double estimateTableScanCost(int tableid) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).numPages();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).numPages();
+        if (file instanceof HashFile)
+            return ((HashFile) file).numPages();
+        return Double.MAX_VALUE;
+    }
+
+    /**
+     * Estimate the number of pages one lookup of a key in the index on the
+     * specified field of a table reads, as an {@link IndexNestedLoopJoin}
+     * does for each outer tuple: the path from the root of a B+ tree to a
+     * leaf, the first page of a hash bucket, or the path through a
+     * secondary index plus the table page of the match.  Keys are assumed
+     * to have one match; TableStats has no statistics of the values of a
+     * field to do better yet.
+     *
+     * @return the cost, or Double.MAX_VALUE if the field has no index
+     */
+    public static double estimateIndexProbeCost(int tableid, int field) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof BTreeFile && ((BTreeFile) file).keyField() == field)
+            return treeHeight((BTreeFile) file);
+        if (file instanceof HashFile && ((HashFile) file).keyField() == field)
+            return 1;
+        SecondaryIndex index = IndexNestedLoopJoin.secondaryIndex(tableid, field);
+        if (index != null)
+            return treeHeight(index.getFile()) + 1;
+        return Double.MAX_VALUE;
+    }
+
+    // the number of levels of a B+ tree, leaves included, if its pages
+    // were all leaves under full internal pages
+    private static int treeHeight(BTreeFile file) {
+        TupleDesc td = file.getTupleDesc();
+        int fanout = BTreeInternalPage.getMaxEntries(td.getFieldType(file.keyField())) + 1;
+        int height = 1;
+        for (int pages = file.numPages(); pages > 1; pages = (pages + fanout - 1) / fanout)
+            height++;
+        return height;
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -12,11 +12,40 @@ public class LockManager {
     private Map<PageId, TransactionId> exclusive;  // for writes
     private Map<PageId, Set<TransactionId>> shared;  // for reads
     private Map<TransactionId, Set<TransactionId>> dependencyGraph;  // for deadlock detection
+    // the locks each transaction holds, by page: READ_WRITE for an exclusive
+    // lock, READ_ONLY for a shared one.  Only changed under the monitor, but
+    // read without it by holdsLock
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, Permissions>> held;
 
     public LockManager() {
         exclusive = new ConcurrentHashMap<>();
         shared = new ConcurrentHashMap<>();
         dependencyGraph = new ConcurrentHashMap<>();
+        held = new ConcurrentHashMap<>();
+    }
+
+    // Returns true if the transaction holds a lock on the page at least as
+    // strong as perm.  Takes no latch, so a transaction checking a lock it
+    // already has doesn't wait on other transactions' lock requests
+    public boolean holdsLock(TransactionId tid, PageId page, Permissions perm) {
+        Map<PageId, Permissions> locks = held.get(tid);
+        Permissions p = locks == null ? null : locks.get(page);
+        return p == Permissions.READ_WRITE || (p != null && perm == Permissions.READ_ONLY);
+    }
+
+    // Records in held the strongest lock tid now holds on the page
+    private void updateHeld(TransactionId tid, PageId page) {
+        Permissions p = null;
+        if (tid.equals(exclusive.get(page))) {
+            p = Permissions.READ_WRITE;
+        } else if (shared.containsKey(page) && shared.get(page).contains(tid)) {
+            p = Permissions.READ_ONLY;
+        }
+        if (p != null) {
+            held.computeIfAbsent(tid, k -> new ConcurrentHashMap<>()).put(page, p);
+        } else if (held.containsKey(tid)) {
+            held.get(tid).remove(page);
+        }
     }
 
     // Returns true if the transaction currently has an exclusive lock on the page.
@@ -44,6 +73,7 @@ public class LockManager {
             transactionIds.add(tid);
             shared.put(page, transactionIds);
         }
+        updateHeld(tid, page);
     }
 
     // Gets an exclusive lock if the transaction is doing a write, or a shared lock if doing a read.
@@ -114,16 +144,19 @@ public class LockManager {
         // if no shared locks at all (aka no locks)
         if (!shared.containsKey(page)) {
             exclusive.put(page, tid);
+            updateHeld(tid, page);
             return true;
         } else {
             // if page exists in shared map but its mapped to an empty set, that means there's no shared locks
             if (shared.get(page).isEmpty()) {
                 exclusive.put(page, tid);
+                updateHeld(tid, page);
                 return true;
                 // only one shared lock on it held by tid -> upgrade to exclusive lock
             } else if (shared.get(page).size() == 1 && shared.get(page).contains(tid)) {
                 exclusive.put(page, tid);
                 shared.get(page).remove(tid);
+                updateHeld(tid, page);
                 return true;
                 // else set must not be empty aka already multiple shared locks on it held by others (ex T2, T3, T4)
             } else {
@@ -146,7 +179,9 @@ public class LockManager {
     public synchronized boolean releaseSharedLock(TransactionId tid, PageId page) {
         // release shared lock on tid by removing the tid from the set of transactionIDs
         if (shared.containsKey(page)) {
-            return shared.get(page).remove(tid);
+            boolean released = shared.get(page).remove(tid);
+            updateHeld(tid, page);
+            return released;
         }
         return false;
     }
@@ -156,6 +191,7 @@ public class LockManager {
         if (exclusive.containsKey(page)) {
             if (exclusive.get(page).equals(tid)) {
                 exclusive.remove(page);
+                updateHeld(tid, page);
                 return true;
             } else {
                 return false;
@@ -217,5 +253,6 @@ public class LockManager {
         for (PageId page: locksToRemove) {
             exclusive.remove(page);
         }
+        held.remove(tid);
     }
 }
\ No newline at end of file
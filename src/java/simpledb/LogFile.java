@@ -56,16 +56,25 @@ CHECKPOINT
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
-<li>UPDATE RECORDS consist of two entries, a before image and an
-after image.  These images are serialized Page objects, and can be
-accessed with the LogFile.readPageData() and LogFile.writePageData()
-methods.  See LogFile.print() for an example.
+<li>UPDATE RECORDS consist of three entries: a long integer offset of
+the previous UPDATE (or BEGIN) record of the same transaction, a before
+image and an after image.  The previous-record offset chains together
+the updates of one transaction so that rollback can walk them backwards
+without scanning the records of other transactions; it is
+NO_PREV_RECORD if the previous record was truncated away.  The images
+are serialized Page objects, and can be accessed with the
+LogFile.readPageData() and LogFile.writePageData() methods.  See
+LogFile.print() for an example.
+
+<li> CL (compensation) records contain the long integer offset of the
+UPDATE record that was undone.
 
 <li> CHECKPOINT records consist of active transactions at the time
-the checkpoint was taken and their first log record on disk.  The format
-of the record is an integer count of the number of transactions, as well
-as a long integer transaction id and a long integer first record offset
-for each active transaction.
+the checkpoint was taken, their first log record on disk and the tail
+of their undo chain.  The format of the record is an integer count of
+the number of transactions, as well as a long integer transaction id,
+a long integer first record offset and a long integer last record
+offset for each active transaction.
 
 </ul>
 
@@ -84,6 +93,7 @@ public class LogFile {
     static final int CHECKPOINT_RECORD = 5;
     static final int CL_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
+    static final long NO_PREV_RECORD = -1;
 
     final static int INT_SIZE = 4;
     final static int LONG_SIZE = 8;
@@ -91,9 +101,14 @@ public class LogFile {
     long currentOffset = -1;//protected by this
 //    int pageSize;
     int totalRecords = 0; // for PatchTest //protected by this
+    byte[] pageBuffer; // page images are serialized here //protected by this
 
     HashMap<Long,Long> tidToFirstLogRecord = new HashMap<Long,Long>();
 
+    // tail of each live transaction's undo chain: the offset of its most
+    // recent UPDATE record, or of its BEGIN record if it has none yet
+    HashMap<Long,Long> tidToLastLogRecord = new HashMap<Long,Long>();
+
     /** Constructor.
         Initialize and back the log file with the specified file.
         We're not sure yet whether the caller is creating a brand new DB,
@@ -139,6 +154,11 @@ public class LogFile {
     public synchronized int getTotalRecords() {
         return totalRecords;
     }
+
+    /** @return true if tid has a BEGIN record and no COMMIT or ABORT record yet */
+    public synchronized boolean isActive(TransactionId tid) {
+        return tidToFirstLogRecord.containsKey(tid.getId());
+    }
     
     /** Write an abort record to the log for the specified tid, force
         the log to disk, and perform a rollback
@@ -165,6 +185,7 @@ public class LogFile {
                 currentOffset = raf.getFilePointer();
                 force();
                 tidToFirstLogRecord.remove(tid.getId());
+                tidToLastLogRecord.remove(tid.getId());
             }
         }
     }
@@ -185,6 +206,7 @@ public class LogFile {
         currentOffset = raf.getFilePointer();
         force();
         tidToFirstLogRecord.remove(tid.getId());
+        tidToLastLogRecord.remove(tid.getId());
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
@@ -204,16 +226,20 @@ public class LogFile {
 
            record type
            transaction id
+           offset of the transaction's previous record
            before page data (see writePageData)
            after page data
            start offset
         */
+        Long prev = tidToLastLogRecord.get(tid.getId());
         raf.writeInt(UPDATE_RECORD);
         raf.writeLong(tid.getId());
+        raf.writeLong(prev == null ? NO_PREV_RECORD : prev);
 
         writePageData(raf,before);
         writePageData(raf,after);
         raf.writeLong(currentOffset);
+        tidToLastLogRecord.put(tid.getId(), currentOffset);
         currentOffset = raf.getFilePointer();
 
         Debug.log("WRITE OFFSET = " + currentOffset);
@@ -241,9 +267,12 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        if (pageBuffer == null || pageBuffer.length != BufferPool.getPageSize()) {
+            pageBuffer = new byte[BufferPool.getPageSize()];
+        }
+        p.writePageData(pageBuffer);
+        raf.writeInt(pageBuffer.length);
+        raf.write(pageBuffer);
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -312,6 +341,7 @@ public class LogFile {
         raf.writeLong(tid.getId());
         raf.writeLong(currentOffset);
         tidToFirstLogRecord.put(tid.getId(), currentOffset);
+        tidToLastLogRecord.put(tid.getId(), currentOffset);
         currentOffset = raf.getFilePointer();
 
         Debug.log("BEGIN OFFSET = " + currentOffset);
@@ -329,6 +359,13 @@ public class LogFile {
                 Iterator<Long> els = keys.iterator();
                 force();
                 Database.getBufferPool().flushAllPages();
+                // memory tables are only durable as of their last snapshot
+                for (Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext(); ) {
+                    DbFile file = Database.getCatalog().getDatabaseFile(it.next());
+                    if (file instanceof MemoryFile) {
+                        ((MemoryFile) file).checkpoint();
+                    }
+                }
                 startCpOffset = raf.getFilePointer();
                 raf.writeInt(CHECKPOINT_RECORD);
                 raf.writeLong(-1); //no tid , but leave space for convenience
@@ -341,6 +378,7 @@ public class LogFile {
                     raf.writeLong(key);
                     //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + tidToFirstLogRecord.get(key));
                     raf.writeLong(tidToFirstLogRecord.get(key));
+                    raf.writeLong(tidToLastLogRecord.get(key));
                 }
 
                 //once the CP is written, make sure the CP location at the
@@ -383,6 +421,7 @@ public class LogFile {
                 @SuppressWarnings("unused")
                 long tid = raf.readLong();
                 long firstLogRecord = raf.readLong();
+                raf.readLong(); // last log record
                 if (firstLogRecord < minLogRecord) {
                     minLogRecord = firstLogRecord;
                 }
@@ -411,20 +450,27 @@ public class LogFile {
 
                 switch (type) {
                 case UPDATE_RECORD:
+                    long prev = raf.readLong();
                     Page before = readPageData(raf);
                     Page after = readPageData(raf);
 
+                    logNew.writeLong(truncatedOffset(prev, minLogRecord));
                     writePageData(logNew, before);
                     writePageData(logNew, after);
                     break;
+                case CL_RECORD:
+                    logNew.writeLong(truncatedOffset(raf.readLong(), minLogRecord));
+                    break;
                 case CHECKPOINT_RECORD:
                     int numXactions = raf.readInt();
                     logNew.writeInt(numXactions);
                     while (numXactions-- > 0) {
                         long xid = raf.readLong();
                         long xoffset = raf.readLong();
+                        long xlast = raf.readLong();
                         logNew.writeLong(xid);
                         logNew.writeLong((xoffset - minLogRecord) + LONG_SIZE);
+                        logNew.writeLong(truncatedOffset(xlast, minLogRecord));
                     }
                     break;
                 case BEGIN_RECORD:
@@ -451,9 +497,24 @@ public class LogFile {
         newFile.delete();
 
         currentOffset = raf.getFilePointer();
+
+        for (Map.Entry<Long,Long> e : tidToLastLogRecord.entrySet()) {
+            e.setValue(truncatedOffset(e.getValue(), minLogRecord));
+        }
         //print();
     }
 
+    /** Translate an offset in the log into the corresponding offset after
+        everything before minLogRecord has been truncated away.  Offsets
+        of records that did not survive the truncation become
+        NO_PREV_RECORD. */
+    private static long truncatedOffset(long offset, long minLogRecord) {
+        if (offset < minLogRecord) {
+            return NO_PREV_RECORD;
+        }
+        return (offset - minLogRecord) + LONG_SIZE;
+    }
+
     /** Rollback the specified transaction, setting the state of any
         of pages it updated to their pre-updated state.  To preserve
         transaction semantics, this should not be called on
@@ -466,73 +527,64 @@ public class LogFile {
         throws NoSuchElementException, IOException {
         synchronized (Database.getBufferPool()) {
             synchronized(this) {
-                HashSet<Long> loserTransactions = new HashSet<>();
-                loserTransactions.add(tid.getId());
-
                 preAppend();
-                Stack<CLRecord> clRecords = new Stack<>();
-                long first = tidToFirstLogRecord.get(tid.getId());
-                raf.seek(first);
-
-                while(true) {
-                    try {
-                        long offset = raf.getFilePointer();
-                        int type = raf.readInt();
-                        long recordTid = raf.readLong();
-                        switch (type) {
-                            case UPDATE_RECORD:
-                                // read our before and after images
-                                Page before = readPageData(raf);
-                                Page after = readPageData(raf);
-                                if (loserTransactions.contains(recordTid)) {
-                                    CLRecord clr = new CLRecord(before, after, recordTid, offset);
-                                    clRecords.push(clr);
-                                }
-//                                // write our before image back
-//                                Database.getCatalog().getDatabaseFile(before.getId().getTableId()).writePage(before);
-//                                Database.getBufferPool().discardPage(before.getId());
-//                                // move back to beginning
-//                                raf.seek(raf.getFilePointer() - LONG_SIZE);
-                                break; //exit loop
-                            case CHECKPOINT_RECORD:
-                                raf.skipBytes(raf.readInt() * LONG_SIZE * 2);
-                                break;
-                            case ABORT_RECORD:
-                                break;
-                            case COMMIT_RECORD:
-                                break;
-                            case BEGIN_RECORD:
-                                break;
-                        }
-                        // move back to beginning
-//                        raf.seek(raf.getFilePointer() - LONG_SIZE);
-                        raf.skipBytes(LONG_SIZE);
-                    } catch (EOFException e) {
-                        break;
-                    }
+                Long last = tidToLastLogRecord.get(tid.getId());
+                if (last == null) {
+                    throw new NoSuchElementException("no live transaction " + tid.getId());
                 }
+                undo(tid.getId(), last);
+            }
+        }
+    }
 
-                // do the actual undo-ing of all updates we gathered
-                while (!clRecords.isEmpty()) {
-                    CLRecord clr = clRecords.pop();
-                    Page before = clr.before;
-                    Page after = clr.after;
-                    long txnId = clr.transactionId;
-                    long offset = clr.offset;
-
-                    // revert it to before image
-                    HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(before.getId().getTableId());
-                    Database.getBufferPool().discardPage(before.getId());
-                    heapFile.writePage(before);
-
-                    // write log record into log
-                    preAppend();
-                    raf.writeInt(CL_RECORD);       // type of log record
-                    raf.writeLong(txnId);          // transaction id
-                    raf.writeLong(offset);         // data part of CL_RECORD stores the offset of the log that needs to be undone
-                    raf.writeLong(currentOffset);  // each log record stores file offset to where this record began
-                }
+    /** Undo the updates of a transaction by walking its undo chain
+        backwards from the specified record, restoring the before image
+        of every UPDATE record and appending a CL record for it.  Only the
+        transaction's own records are read.
+
+        Caller must hold the buffer pool and log file locks.
+
+        @param tid The transaction to undo
+        @param last Offset of the transaction's most recent record
+    */
+    private void undo(long tid, long last) throws IOException {
+        // the chain yields updates newest first, which is the order
+        // they have to be undone in
+        List<CLRecord> clRecords = new ArrayList<>();
+        long offset = last;
+        while (offset != NO_PREV_RECORD) {
+            raf.seek(offset);
+            int type = raf.readInt();
+            long recordTid = raf.readLong();
+            if (type != UPDATE_RECORD) {
+                // reached the BEGIN record
+                break;
             }
+            if (recordTid != tid) {
+                throw new RuntimeException("Undo chain of transaction " + tid + " is corrupt at offset " + offset);
+            }
+            long prev = raf.readLong();
+            Page before = readPageData(raf);
+            Page after = readPageData(raf);
+            clRecords.add(new CLRecord(before, after, recordTid, offset));
+            offset = prev;
+        }
+
+        raf.seek(currentOffset);
+        for (CLRecord clr : clRecords) {
+            // revert it to before image
+            Page before = clr.before;
+            DbFile file = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
+            Database.getBufferPool().discardPage(before.getId());
+            file.writePage(before);
+
+            // write log record into log
+            preAppend();
+            raf.writeInt(CL_RECORD);            // type of log record
+            raf.writeLong(clr.transactionId);   // transaction id
+            raf.writeLong(clr.offset);          // data part of CL_RECORD stores the offset of the log that needs to be undone
+            raf.writeLong(currentOffset);       // each log record stores file offset to where this record began
+            currentOffset = raf.getFilePointer();
         }
     }
 
@@ -572,8 +624,10 @@ public class LogFile {
                     for (int i = 0; i < numTransactions; i++) {
                         long tid = raf.readLong();
                         long recordOffset = raf.readLong();
+                        long lastOffset = raf.readLong();
                         loserTransactions.add(tid);
                         tidToFirstLogRecord.put(tid, recordOffset);
+                        tidToLastLogRecord.put(tid, lastOffset);
                     }
                     raf.skipBytes(LONG_SIZE);  // skip the long file offset at end of log record
                 }
@@ -597,15 +651,18 @@ public class LogFile {
                                 // start transaction
                                 loserTransactions.add(recordTid);
                                 tidToFirstLogRecord.put(recordTid, currLogRecOffset);
+                                tidToLastLogRecord.put(recordTid, currLogRecOffset);
                                 break;
                             case UPDATE_RECORD:
                                 // update record has a before and after image
+                                raf.readLong();  // previous record of this transaction
+                                tidToLastLogRecord.put(recordTid, currLogRecOffset);
                                 Page before = readPageData(raf);
                                 Page after = readPageData(raf);
 
-                                HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(before.getId().getTableId());
+                                DbFile dbFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
                                 Database.getBufferPool().discardPage(before.getId());
-                                heapFile.writePage(after);
+                                dbFile.writePage(after);
                                 break;
                             case CL_RECORD:
                                 // represents that something was undone so we need to redo the undo
@@ -617,12 +674,13 @@ public class LogFile {
                                 long recordTypeOfUndo = raf.readInt();
                                 long tidOfUndo = raf.readLong();
                                 if (UPDATE_RECORD == recordTypeOfUndo) {
+                                    raf.readLong();  // previous record of this transaction
                                     before = readPageData(raf);
                                     after = readPageData(raf);
 
-                                    heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(before.getId().getTableId());
+                                    dbFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
                                     Database.getBufferPool().discardPage(before.getId());
-                                    heapFile.writePage(after);
+                                    dbFile.writePage(before);
                                 }
                                 // finished undoing, return file pointer to prepare for next log record
                                 raf.seek(nextLogRecordOffset);
@@ -636,73 +694,14 @@ public class LogFile {
                     }
                 }
 
-                // 3. Undo the updates of loser transactions.
-                // first find where to start undoing from
-                long startUndoOffset = logFile.length();
-                for (long transaction: loserTransactions){
-                    long tidOffset = tidToFirstLogRecord.get(transaction);
-                    if (tidOffset < startUndoOffset) {
-                        startUndoOffset = tidOffset;
-                    }
-                    tidToFirstLogRecord.remove(tidOffset);
-                }
-
+                // 3. Undo the updates of loser transactions by walking each
+                // one's undo chain back from its last record.
+                currentOffset = raf.length();
                 preAppend();
-                raf.seek(startUndoOffset);
-                Stack<CLRecord> clRecords = new Stack<>();
-
-                while (true) {
-                    try {
-                        long currLogRecOffset = raf.getFilePointer();
-                        int recordType = raf.readInt();
-                        long recordTid = raf.readLong();
-                        switch (recordType) {
-                            case ABORT_RECORD:
-                                break;
-                            case COMMIT_RECORD:
-                                break;
-                            case BEGIN_RECORD:
-                                break;
-                            case CHECKPOINT_RECORD:
-                                int countActiveTxns = raf.readInt();
-                                raf.skipBytes(countActiveTxns * LONG_SIZE * 2);
-                                break;
-                            case UPDATE_RECORD:
-                                Page before = readPageData(raf);
-                                Page after = readPageData(raf);
-                                // keep track of the transactions that are being undone but are uncommitted
-                                // this is so we can write CLRecords for each and undo in reverse order
-                                if (loserTransactions.contains(recordTid)) {
-                                    CLRecord clr = new CLRecord(before, after, recordTid, currLogRecOffset);
-                                    clRecords.push(clr);
-                                }
-                        }
-                        raf.skipBytes(LONG_SIZE);
-                    } catch (EOFException e) {
-                        break;
-                    }
-                }
-
-                // do the actual undo-ing of all updates we gathered
-                while (!clRecords.isEmpty()) {
-                    CLRecord clr = clRecords.pop();
-                    Page before = clr.before;
-                    Page after = clr.after;
-                    long tid = clr.transactionId;
-                    long offset = clr.offset;
-
-                    // revert it to before image
-                    HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(before.getId().getTableId());
-                    Database.getBufferPool().discardPage(before.getId());
-                    heapFile.writePage(before);
-
-                    // write log record into log
-                    preAppend();
-                    raf.writeInt(CL_RECORD);  // type of log record
-                    raf.writeLong(tid);       // transaction id
-                    raf.writeLong(offset);    // data part of CL_RECORD stores the offset of the log that needs to be undone
-                    raf.writeLong(currentOffset);  // each log record stores file offset to where this record began
-
+                for (long transaction : loserTransactions) {
+                    undo(transaction, tidToLastLogRecord.get(transaction));
+                    tidToFirstLogRecord.remove(transaction);
+                    tidToLastLogRecord.remove(transaction);
                 }
 
                 force();
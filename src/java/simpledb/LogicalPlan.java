@@ -5,7 +5,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -271,6 +273,183 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * Returns an IndexScan of a table stored in a BTreeFile or a HashFile
+     * that reads only the tuples one of the filters on the key field can
+     * pass, preferring an equality filter, or null if the table has no
+     * index or no such filter; a HashFile only takes equality filters.
+     * The filter itself is still applied above the scan.
+     */
+    private IndexScan indexScan(TransactionId t, DbFile file, String alias) throws ParsingException {
+        int keyField;
+        if (file instanceof BTreeFile)
+            keyField = ((BTreeFile) file).keyField();
+        else if (file instanceof HashFile)
+            keyField = ((HashFile) file).keyField();
+        else
+            return null;
+        IndexPredicate best = keyPredicate(file.getTupleDesc(), keyField, alias, file instanceof HashFile);
+        return best == null ? null : new IndexScan(t, file.getId(), alias, best);
+    }
+
+    /**
+     * Returns the IndexPredicate of one of the filters on the specified
+     * field of the table with the alias, preferring an equality filter, or
+     * null if there is no such filter.
+     *
+     * @param equalsOnly true to only consider equality filters
+     */
+    private IndexPredicate keyPredicate(TupleDesc td, int keyField, String alias, boolean equalsOnly)
+            throws ParsingException {
+        String key = td.getFieldName(keyField);
+        IndexPredicate best = null;
+        for (LogicalFilterNode lf : filters) {
+            if (!lf.tableAlias.equals(alias) || !lf.fieldPureName.equals(key) || !IndexPredicate.isIndexable(lf.p))
+                continue;
+            if (equalsOnly && lf.p != Predicate.Op.EQUALS)
+                continue;
+            if (best == null || lf.p == Predicate.Op.EQUALS)
+                best = new IndexPredicate(lf.p, constant(td.getFieldType(keyField), lf.c));
+        }
+        return best;
+    }
+
+    /** @return the constant c of a filter on a field of type t */
+    private static Field constant(Type t, String c) throws ParsingException {
+        try {
+            if (t == Type.INT_TYPE)
+                return new IntField(Integer.parseInt(c));
+            return new StringField(c, Type.STRING_LEN);
+        } catch (NumberFormatException e) {
+            throw new ParsingException("Invalid constant in filter expression " + c);
+        }
+    }
+
+    /**
+     * Returns a BitmapHeapScan of a heap table that reads only the tuples
+     * the AND of the filters on the table may pass, or null if no filter is
+     * on a field with a {@link BitmapIndex}.  The filters themselves are
+     * still applied above the scan.
+     */
+    private BitmapHeapScan bitmapScan(TransactionId t, DbFile file, String alias) throws ParsingException {
+        if (!(file instanceof HeapFile))
+            return null;
+        TupleDesc td = file.getTupleDesc();
+        ArrayList<BitmapHeapScan.Condition> conjuncts = new ArrayList<BitmapHeapScan.Condition>();
+        boolean bitmap = false;
+        for (LogicalFilterNode lf : filters) {
+            if (!lf.tableAlias.equals(alias))
+                continue;
+            int field = td.fieldNameToIndex(lf.fieldPureName);
+            conjuncts.add(BitmapHeapScan.Condition.of(
+                    new Predicate(field, lf.p, constant(td.getFieldType(field), lf.c))));
+            bitmap |= BitmapHeapScan.bitmapIndex(file.getId(), field) != null;
+        }
+        if (!bitmap)
+            return null;
+        BitmapHeapScan.Condition c = BitmapHeapScan.Condition.and(
+                conjuncts.toArray(new BitmapHeapScan.Condition[0]));
+        return new BitmapHeapScan(t, file.getId(), alias, c);
+    }
+
+    /**
+     * Returns an IndexOnlyScan of a heap table that reads one of its
+     * secondary indexes instead of the table, or null if no index stores
+     * all the fields of the table the query refers to.  An index is used
+     * if a filter on its key limits the entries to read, or if it has
+     * fewer pages than the table; an equality filter is preferred.
+     */
+    private IndexOnlyScan indexOnlyScan(TransactionId t, DbFile file, String alias) throws ParsingException {
+        Set<Integer> fields = referencedFields(file.getTupleDesc(), alias);
+        if (!(file instanceof HeapFile) || fields == null)
+            return null;
+        IndexOnlyScan best = null;
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(file.getId())) {
+            if (!IndexOnlyScan.covers(index, fields))
+                continue;
+            IndexPredicate ipred = keyPredicate(file.getTupleDesc(), index.getColumn(), alias, false);
+            if (ipred == null && index.getFile().numPages() >= ((HeapFile) file).numPages())
+                continue;
+            if (best == null || (ipred != null && (best.getIndexPredicate() == null
+                    || (ipred.getOp() == Predicate.Op.EQUALS && best.getIndexPredicate().getOp() != Predicate.Op.EQUALS))))
+                best = new IndexOnlyScan(t, index, alias, ipred);
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the table with the alias is clustered on a field,
+     *   see {@link Catalog#cluster}, and a filter bounds that field, so a
+     *   SeqScan reads only the consecutive pages of the range
+     */
+    private boolean clusteredRange(DbFile file, String alias) {
+        int clusterField = Database.getCatalog().getClusterField(file.getId());
+        if (clusterField < 0)
+            return false;
+        String key = file.getTupleDesc().getFieldName(clusterField);
+        for (LogicalFilterNode lf : filters) {
+            if (lf.tableAlias.equals(alias) && lf.fieldPureName.equals(key) && IndexPredicate.isIndexable(lf.p))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if plan returns its tuples in ascending order of the
+     *   ORDER BY field already: it scans a table clustered on that field in
+     *   page order, maybe through filters
+     */
+    private boolean inClusterOrder(OpIterator plan) {
+        if (!oByAsc || hasAgg)
+            return false;
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        if (!(plan instanceof SeqScan))
+            return false;
+        SeqScan scan = (SeqScan) plan;
+        int clusterField = Database.getCatalog().getClusterField(scan.getTableId());
+        return clusterField >= 0 && oByField.equals(scan.getAlias() + "."
+                + Database.getCatalog().getTupleDesc(scan.getTableId()).getFieldName(clusterField));
+    }
+
+    /**
+     * @return the indexes of the fields of the table with the alias that
+     *   the filters, joins, select list, aggregate and order by of the
+     *   query refer to, or null if the query needs all of them
+     */
+    private Set<Integer> referencedFields(TupleDesc td, String alias) {
+        Set<Integer> fields = new HashSet<Integer>();
+        for (LogicalFilterNode lf : filters) {
+            if (lf.tableAlias.equals(alias))
+                fields.add(td.fieldNameToIndex(lf.fieldPureName));
+        }
+        for (LogicalJoinNode lj : joins) {
+            if (lj.t1Alias.equals(alias))
+                fields.add(td.fieldNameToIndex(lj.f1PureName));
+            if (!(lj instanceof LogicalSubplanJoinNode) && lj.t2Alias.equals(alias))
+                fields.add(td.fieldNameToIndex(lj.f2PureName));
+        }
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList)
+            names.add(si.fname);
+        names.add(aggField);
+        names.add(groupByField);
+        names.add(oByField);
+        for (String name : names) {
+            if (name == null)
+                continue;
+            String[] parts = name.split("[.]");
+            if (parts.length != 2 || parts[0].equals("null"))
+                return null;
+            if (!parts[0].equals(alias))
+                continue;
+            if (parts[1].equals("*"))
+                return null;
+            fields.add(td.fieldNameToIndex(parts[1]));
+        }
+        return fields;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -292,9 +471,24 @@ public class LogicalPlan {
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
-            SeqScan ss = null;
+            OpIterator ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 DbFile file = Database.getCatalog().getDatabaseFile(table.t);
+                 ss = indexScan(t, file, table.alias);
+                 // an index-only scan that reads part of an index, then a
+                 // scan of the pages of a range of a clustered table, then
+                 // a bitmap heap scan, then one that reads a whole index
+                 IndexOnlyScan ios = ss == null ? indexOnlyScan(t, file, table.alias) : null;
+                 if (ios != null && ios.getIndexPredicate() != null)
+                     ss = ios;
+                 if (ss == null && clusteredRange(file, table.alias))
+                     ss = new SeqScan(t, file.getId(), table.alias);
+                 if (ss == null)
+                     ss = bitmapScan(t, file, table.alias);
+                 if (ss == null)
+                     ss = ios;
+                 if (ss == null)
+                     ss = new SeqScan(t, file.getId(), table.alias);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -334,11 +528,21 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
+            // the scan itself can skip pages with p, see SeqScan.addFilter
+            OpIterator scan = subplan;
+            while (scan instanceof Filter) {
+                scan = ((Filter) scan).getChildren()[0];
+            }
+            if (scan instanceof SeqScan) {
+                ((SeqScan) scan).addFilter(p);
+            }
             subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
-            double sel= s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
+            // the stats are of the whole table, whose fields an IndexOnlyScan may not all return
+            TupleDesc tableTd = Database.getCatalog().getTupleDesc(this.getTableId(lf.tableAlias));
+            double sel= s.estimateSelectivity(tableTd.fieldNameToIndex(lf.fieldPureName), lf.p, f);
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
@@ -474,7 +678,7 @@ public class LogicalPlan {
             node = aggNode;
         }
 
-        if (hasOrderBy) {
+        if (hasOrderBy && !inClusterOrder(node)) {
             node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
         }
 
@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Compares the insert throughput of a HeapFile and an {@link LsmFile}.
+ * Usage:
+ * <pre>
+ * java -cp dist/simpledb.jar simpledb.LsmBenchmark tuples [tuplesPerTransaction]
+ * </pre>
+ * tuples tuples of two int columns with random keys are inserted into an
+ * empty table of each kind through {@link BufferPool#insertTuple}, in
+ * transactions of tuplesPerTransaction tuples (default 1000), each
+ * started and committed like the Parser does, so each commit pays for its
+ * log records and the force.
+ */
+public class LsmBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: LsmBenchmark tuples [tuplesPerTransaction]");
+            System.exit(1);
+        }
+        int tuples = Integer.parseInt(args[0]);
+        int perTransaction = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        TupleDesc td = Utility.getTupleDesc(2);
+
+        File heapFile = File.createTempFile("lsmbench", ".dat");
+        heapFile.deleteOnExit();
+        HeapFile heap = new HeapFile(heapFile, td);
+        Database.getCatalog().addTable(heap, "heap");
+        report("HeapFile", tuples, insert(heap.getId(), tuples, perTransaction));
+
+        File lsmFile = File.createTempFile("lsmbench", ".lsm");
+        lsmFile.deleteOnExit();
+        LsmFile lsm = new LsmFile(lsmFile, 0, td);
+        Database.getCatalog().addTable(lsm, "lsm");
+        report("LsmFile", tuples, insert(lsm.getId(), tuples, perTransaction));
+        lsm.awaitCompaction();
+        System.out.printf("LsmFile: %d runs, %d tuples in the memtable%n", lsm.numRuns(), lsm.memtableSize());
+        for (File f : lsmFile.getParentFile().listFiles()) {
+            if (f.getName().startsWith(lsmFile.getName())) {
+                f.deleteOnExit();
+            }
+        }
+    }
+
+    /** @return the seconds it takes to insert the tuples */
+    private static double insert(int tableId, int tuples, int perTransaction) throws Exception {
+        Random r = new Random(0);
+        long start = System.nanoTime();
+        for (int done = 0; done < tuples; ) {
+            Transaction t = new Transaction();
+            t.start();
+            for (int i = 0; i < perTransaction && done < tuples; i++, done++) {
+                Tuple tuple = Utility.getHeapTuple(new int[]{r.nextInt(), done});
+                Database.getBufferPool().insertTuple(t.getId(), tableId, tuple);
+            }
+            t.commit();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static void report(String name, int tuples, double seconds) {
+        System.out.printf("%s: %d inserts in %.2f s (%.0f tuples/s)%n", name, tuples, seconds, tuples / seconds);
+    }
+}
@@ -0,0 +1,800 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LsmFile is a log-structured merge tree: a table for write-heavy,
+ * append-mostly ingestion.  Inserts and deletes never touch a page.  A
+ * transaction's changes are kept in memory until it commits; then they
+ * are appended to the table's write-ahead log, which is forced once per
+ * commit, and added to the memtable, a sorted map from tuples to the net
+ * number of copies inserted (negative for deletes of older copies).  When
+ * the memtable holds <code>memtableSize</code> tuples it is flushed to an
+ * immutable sorted run file with one sequential write and the log is
+ * started afresh.  Once there are more than {@link #MAX_RUNS} runs, a
+ * background thread merges them all into one, dropping deleted tuples.
+ * <p>
+ * Tuples are ordered by the key field, then by the other fields, as by
+ * {@link ExternalSort#comparator}, and a scan merges the memtable, the
+ * runs and the scanning transaction's own changes, adding up the counts
+ * of each tuple, so it returns the tuples in that order.  The table is
+ * locked as a whole through the BufferPool's lock manager, on page 0 of
+ * its id: a scan takes a shared lock and a change an exclusive one, both
+ * held until the transaction completes.
+ * <p>
+ * A transaction enlists the table with the BufferPool (see
+ * {@link BufferPool#enlist}) when it first changes it.  Its changes are
+ * only appended to the table's log once its COMMIT record is in the
+ * database's log, so recovery never finds the table holding changes of a
+ * transaction whose pages it undid; a crash between the two loses the
+ * table's share of the commit.  Changes are durable once the commit
+ * returns.
+ * <p>
+ * On disk, the table file f is a manifest of text lines
+ * <pre>
+ *   wal gen   the log holds the changes not yet in a run
+ *   run seq   a run, one line per run, oldest first
+ * </pre>
+ * replaced atomically whenever the runs or the log change.  Run seq is
+ * stored in <code>f.seq.run</code> and the log in <code>f.gen.wal</code>.
+ * A run is a sequence of entries, a 4-byte count followed by the fields of
+ * the tuple in their compact form (see {@link Type#serializeCompact}); a
+ * sparse index of every {@value #INDEX_INTERVAL}th entry is kept in memory
+ * for the lookups deletes need.  The log is a sequence of commit records,
+ * a 4-byte length and then a 4-byte number of entries and the entries; a
+ * torn record at its end is dropped when the table is opened.
+ * <p>
+ * Declare a table as an LSM tree in the catalog file by following its
+ * schema with the <code>lsm</code> keyword; the pk field is the key.
+ *
+ * @see Catalog#loadSchema
+ * @Threadsafe
+ */
+public class LsmFile implements DbFile, TransactionListener {
+
+    /** The default number of distinct tuples the memtable holds before it is flushed. */
+    public static final int DEFAULT_MEMTABLE_SIZE = 50000;
+    /** The number of runs above which they are compacted into one. */
+    public static final int MAX_RUNS = 4;
+    // entries of a run per entry of its sparse index
+    private static final int INDEX_INTERVAL = 64;
+
+    private final File f;
+    private final int keyField;
+    private final TupleDesc td;
+    private final int memtableSize;
+    private final Comparator<Tuple> order;
+    // the page id the table is locked through, and its scans' tuples carry
+    private final PageId tablePage;
+
+    // the committed changes that aren't in a run yet
+    private TreeMap<Tuple, Integer> memtable;
+    // oldest first; replaced as a whole, never changed, so it can be shared
+    private List<Run> runs = new ArrayList<>();
+    private long walGen;
+    private long nextRun;
+    private FileOutputStream wal;
+    // the changes of each running transaction
+    private final Map<TransactionId, TreeMap<Tuple, Integer>> pending = new ConcurrentHashMap<>();
+    private final Object compactionLock = new Object();
+    private volatile Thread compactor;
+
+    /**
+     * Opens the LSM tree whose manifest is f, with a memtable of
+     * {@link #DEFAULT_MEMTABLE_SIZE} tuples.  If f is missing or empty the
+     * table is empty.
+     *
+     * @param f the manifest of the table
+     * @param keyField the index of the field the tuples are sorted on
+     * @param td the TupleDesc of the table
+     */
+    public LsmFile(File f, int keyField, TupleDesc td) {
+        this(f, keyField, td, DEFAULT_MEMTABLE_SIZE);
+    }
+
+    /**
+     * Opens the LSM tree whose manifest is f, replaying the committed
+     * changes in its log into the memtable.
+     *
+     * @param memtableSize the number of distinct tuples the memtable holds
+     *   before it is flushed to a run
+     */
+    public LsmFile(File f, int keyField, TupleDesc td, int memtableSize) {
+        if (memtableSize < 1) {
+            throw new IllegalArgumentException("memtableSize must be positive");
+        }
+        this.f = f;
+        this.keyField = keyField;
+        this.td = td;
+        this.memtableSize = memtableSize;
+        this.order = ExternalSort.comparator(td, keyField);
+        this.tablePage = new HeapPageId(getId(), 0);
+        this.memtable = new TreeMap<>(order);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("can't open LSM table " + f, e);
+        }
+    }
+
+    private File runFile(long seq) {
+        return new File(f.getPath() + "." + seq + ".run");
+    }
+
+    private File walFile(long gen) {
+        return new File(f.getPath() + "." + gen + ".wal");
+    }
+
+    // reads the manifest and the runs and replays the log
+    private void open() throws IOException {
+        if (f.length() > 0) {
+            try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.trim().split(" ");
+                    if (words[0].equals("wal")) {
+                        walGen = Long.parseLong(words[1]);
+                    } else if (words[0].equals("run")) {
+                        long seq = Long.parseLong(words[1]);
+                        runs.add(new Run(seq));
+                        nextRun = Math.max(nextRun, seq + 1);
+                    }
+                }
+            }
+        } else {
+            writeManifest(runs, walGen);
+        }
+        File log = walFile(walGen);
+        long end = 0;  // of the last whole record
+        if (log.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+                while (true) {
+                    int length;
+                    byte[] record;
+                    try {
+                        length = in.readInt();
+                        if (length < 0 || length > log.length() - end - 4) {
+                            break;
+                        }
+                        record = new byte[length];
+                        in.readFully(record);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    DataInputStream rin = new DataInputStream(new ByteArrayInputStream(record));
+                    for (int n = rin.readInt(); n > 0; n--) {
+                        Map.Entry<Tuple, Integer> entry = readEntry(rin);
+                        apply(memtable, entry.getKey(), entry.getValue());
+                    }
+                    end += 4 + length;
+                }
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(end);
+        }
+        wal = new FileOutputStream(log, true);
+    }
+
+    // replaces the manifest
+    private void writeManifest(List<Run> runs, long gen) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            StringBuilder sb = new StringBuilder("wal " + gen + "\n");
+            for (Run run : runs) {
+                sb.append("run ").append(run.seq).append("\n");
+            }
+            out.write(sb.toString().getBytes("UTF-8"));
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // adds count copies of t to a map of counts, dropping it at 0
+    private static void apply(Map<Tuple, Integer> counts, Tuple t, int count) {
+        counts.merge(t, count, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private void writeEntry(DataOutputStream out, Tuple t, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < td.numFields(); i++) {
+            td.getFieldType(i).serializeCompact(t.getField(i), out);
+        }
+    }
+
+    /** @return the next entry of in, or null at its end */
+    private Map.Entry<Tuple, Integer> readEntry(DataInputStream in) throws IOException {
+        int count;
+        try {
+            count = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        Tuple t = new Tuple(td);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                t.setField(i, td.getFieldType(i).parseCompact(in));
+            }
+        } catch (ParseException e) {
+            throw new IOException("can't read entry of " + f, e);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(t, count);
+    }
+
+    /** Counts the bytes read through it. */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /** An immutable sorted run, with its sparse index. */
+    private class Run {
+        final long seq;
+        final File file;
+        final List<Tuple> indexTuples = new ArrayList<>();
+        final List<Long> indexOffsets = new ArrayList<>();
+
+        /** Opens an existing run, reading it once to build its index. */
+        Run(long seq) throws IOException {
+            this.seq = seq;
+            this.file = runFile(seq);
+            CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try (DataInputStream in = new DataInputStream(counter)) {
+                long offset = 0;
+                for (long n = 0; ; n++) {
+                    Map.Entry<Tuple, Integer> entry = readEntry(in);
+                    if (entry == null) {
+                        break;
+                    }
+                    if (n % INDEX_INTERVAL == 0) {
+                        indexTuples.add(entry.getKey());
+                        indexOffsets.add(offset);
+                    }
+                    offset = counter.count;
+                }
+            }
+        }
+
+        /**
+         * Writes a new run of the entries, which must be in order, and
+         * syncs it to disk.
+         *
+         * @param live true to leave out entries with counts of 0 or less
+         */
+        Run(long seq, Iterator<Map.Entry<Tuple, Integer>> entries, boolean live) throws IOException {
+            this.seq = seq;
+            this.file = runFile(seq);
+            FileOutputStream fos = new FileOutputStream(file);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                for (long n = 0; entries.hasNext(); ) {
+                    Map.Entry<Tuple, Integer> entry = entries.next();
+                    if (entry.getValue() == 0 || (live && entry.getValue() < 0)) {
+                        continue;
+                    }
+                    if (n++ % INDEX_INTERVAL == 0) {
+                        indexTuples.add(entry.getKey());
+                        indexOffsets.add((long) out.size());
+                    }
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+        }
+
+        /** @return the count of t in this run, 0 if it has no entry for t */
+        int count(Tuple t) throws IOException {
+            // the last indexed entry at or before t
+            int lo = 0;
+            int hi = indexTuples.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (order.compare(indexTuples.get(mid), t) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == 0) {
+                return 0;
+            }
+            try (FileInputStream fin = new FileInputStream(file)) {
+                fin.getChannel().position(indexOffsets.get(lo - 1));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(fin));
+                for (int n = 0; n < INDEX_INTERVAL; n++) {
+                    Map.Entry<Tuple, Integer> entry = readEntry(in);
+                    if (entry == null) {
+                        return 0;
+                    }
+                    int c = order.compare(entry.getKey(), t);
+                    if (c >= 0) {
+                        return c == 0 ? entry.getValue() : 0;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /** @return the entries of this run in order, read sequentially */
+        RunIterator iterator() throws IOException {
+            return new RunIterator(file);
+        }
+    }
+
+    /** Reads the entries of a run in order; closes the run at its end. */
+    private class RunIterator implements Iterator<Map.Entry<Tuple, Integer>>, Closeable {
+        private final DataInputStream in;
+        private Map.Entry<Tuple, Integer> next;
+
+        RunIterator(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.next = read();
+        }
+
+        private Map.Entry<Tuple, Integer> read() {
+            try {
+                Map.Entry<Tuple, Integer> entry = readEntry(in);
+                if (entry == null) {
+                    in.close();
+                }
+                return entry;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<Tuple, Integer> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Tuple, Integer> entry = next;
+            next = read();
+            return entry;
+        }
+
+        public void close() throws IOException {
+            next = null;
+            in.close();
+        }
+    }
+
+    /**
+     * Merges sorted sources of entries into one, adding up the counts of
+     * equal tuples; the sum may be 0 or less.
+     */
+    private class Merge implements Iterator<Map.Entry<Tuple, Integer>> {
+        private class Source {
+            final Iterator<Map.Entry<Tuple, Integer>> it;
+            Map.Entry<Tuple, Integer> head;
+
+            Source(Iterator<Map.Entry<Tuple, Integer>> it) {
+                this.it = it;
+                this.head = it.next();
+            }
+        }
+
+        private final PriorityQueue<Source> heads;
+
+        Merge(List<? extends Iterator<Map.Entry<Tuple, Integer>>> sources) {
+            heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                    (a, b) -> order.compare(a.head.getKey(), b.head.getKey()));
+            for (Iterator<Map.Entry<Tuple, Integer>> it : sources) {
+                if (it.hasNext()) {
+                    heads.add(new Source(it));
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        public Map.Entry<Tuple, Integer> next() {
+            if (heads.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = heads.peek().head.getKey();
+            int count = 0;
+            while (!heads.isEmpty() && order.compare(heads.peek().head.getKey(), t) == 0) {
+                Source s = heads.poll();
+                count += s.head.getValue();
+                if (s.it.hasNext()) {
+                    s.head = s.it.next();
+                    heads.add(s);
+                }
+            }
+            return new AbstractMap.SimpleImmutableEntry<>(t, count);
+        }
+    }
+
+    /**
+     * Returns the File backing this table on disk, its manifest.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /** @return the index of the field the tuples are sorted on */
+    public int keyField() {
+        return keyField;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * LsmFiles have no pages.
+     *
+     * @throws IllegalArgumentException always
+     */
+    public Page readPage(PageId pid) {
+        throw new IllegalArgumentException("LSM table " + f + " has no pages");
+    }
+
+    /**
+     * LsmFiles have no pages.
+     *
+     * @throws IOException always
+     */
+    public void writePage(Page p) throws IOException {
+        throw new IOException("LSM table " + f + " has no pages");
+    }
+
+    /** @return the number of runs on disk */
+    public synchronized int numRuns() {
+        return runs.size();
+    }
+
+    /** @return the number of distinct tuples in the memtable */
+    public synchronized int memtableSize() {
+        return memtable.size();
+    }
+
+    /** @return a copy of t without a RecordId, so later changes to t don't reach the table */
+    private Tuple copy(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tuple doesn't match the TupleDesc of " + f);
+        }
+        Tuple copy = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Adds t to the changes of tid; no page is modified.  The tuple gets no
+     * RecordId; a scan gives it one, see {@link #iterator}.
+     *
+     * @return an empty list
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        apply(changes(tid), copy(t), 1);
+        t.setRecordId(null);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Adds a delete of one copy of t, a tuple with the same field values,
+     * to the changes of tid; no page is modified.
+     *
+     * @return an empty list
+     * @throws DbException if tid can't see such a tuple
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Tuple key = copy(t);
+        TreeMap<Tuple, Integer> changes = changes(tid);
+        if (committedCount(key) + changes.getOrDefault(key, 0) <= 0) {
+            throw new DbException("tuple " + t + " is not in " + f);
+        }
+        apply(changes, key, -1);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Locks the table exclusively for tid and enlists it with the
+     * BufferPool, so tid's completion reaches {@link #transactionComplete}.
+     *
+     * @return the changes of tid
+     */
+    private TreeMap<Tuple, Integer> changes(TransactionId tid) throws TransactionAbortedException {
+        Database.getBufferPool().lockPage(tid, tablePage, Permissions.READ_WRITE);
+        Database.getBufferPool().enlist(tid, this);
+        return pending.computeIfAbsent(tid, k -> new TreeMap<>(order));
+    }
+
+    /** @return the number of copies of t committed transactions left */
+    private synchronized int committedCount(Tuple t) throws IOException {
+        int count = memtable.getOrDefault(t, 0);
+        for (Run run : runs) {
+            count += run.count(t);
+        }
+        return count;
+    }
+
+    /**
+     * Makes the changes of tid durable and visible if it committed, or
+     * drops them if it aborted.  Called by
+     * {@link BufferPool#transactionComplete(TransactionId, boolean)} after
+     * the COMMIT record of tid is in the database's log.
+     */
+    public void transactionComplete(TransactionId tid, boolean commit) throws IOException {
+        TreeMap<Tuple, Integer> changes = pending.remove(tid);
+        if (!commit || changes == null || changes.isEmpty()) {
+            return;
+        }
+        boolean compact;
+        synchronized (this) {
+            // don't delete more copies than there are left
+            for (Iterator<Map.Entry<Tuple, Integer>> it = changes.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Tuple, Integer> e = it.next();
+                if (e.getValue() < 0) {
+                    int left = committedCount(e.getKey());
+                    if (left + e.getValue() < 0) {
+                        e.setValue(-left);
+                    }
+                    if (e.getValue() == 0) {
+                        it.remove();
+                    }
+                }
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeInt(0);
+            out.writeInt(changes.size());
+            for (Map.Entry<Tuple, Integer> e : changes.entrySet()) {
+                writeEntry(out, e.getKey(), e.getValue());
+            }
+            byte[] bytes = record.toByteArray();
+            int length = bytes.length - 4;
+            bytes[0] = (byte) (length >>> 24);
+            bytes[1] = (byte) (length >>> 16);
+            bytes[2] = (byte) (length >>> 8);
+            bytes[3] = (byte) length;
+            wal.write(bytes);
+            wal.getChannel().force(false);
+            for (Map.Entry<Tuple, Integer> e : changes.entrySet()) {
+                apply(memtable, e.getKey(), e.getValue());
+            }
+            if (memtable.size() >= memtableSize) {
+                flush();
+            }
+            compact = runs.size() > MAX_RUNS;
+        }
+        if (compact) {
+            startCompaction();
+        }
+    }
+
+    /**
+     * Writes the memtable to a new run and starts a new, empty log.  Does
+     * nothing if the memtable is empty.
+     *
+     * @throws IOException if the run or log can't be written
+     */
+    public synchronized void flush() throws IOException {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        Run run = new Run(nextRun++, memtable.entrySet().iterator(), false);
+        List<Run> newRuns = new ArrayList<>(runs);
+        newRuns.add(run);
+        long gen = walGen + 1;
+        FileOutputStream newWal = new FileOutputStream(walFile(gen));
+        writeManifest(newRuns, gen);
+        wal.close();
+        walFile(walGen).delete();
+        wal = newWal;
+        walGen = gen;
+        runs = newRuns;
+        memtable = new TreeMap<>(order);
+    }
+
+    /**
+     * Merges all runs into one, leaving out deleted tuples.  Runs flushed
+     * meanwhile are kept after it.  Scans and inserts go on during the
+     * merge.
+     *
+     * @throws IOException if a run can't be read or written
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Run> merged;
+            long seq;
+            List<RunIterator> sources = new ArrayList<>();
+            synchronized (this) {
+                merged = runs;
+                if (merged.size() < 2) {
+                    return;
+                }
+                seq = nextRun++;
+                for (Run run : merged) {
+                    sources.add(run.iterator());
+                }
+            }
+            Run run;
+            try {
+                run = new Run(seq, new Merge(sources), true);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                closeAll(sources);
+            }
+            synchronized (this) {
+                List<Run> newRuns = new ArrayList<>();
+                newRuns.add(run);
+                newRuns.addAll(runs.subList(merged.size(), runs.size()));
+                writeManifest(newRuns, walGen);
+                runs = newRuns;
+            }
+            // scans already reading them keep their open streams
+            for (Run old : merged) {
+                old.file.delete();
+            }
+        }
+    }
+
+    private static void closeAll(List<RunIterator> iterators) {
+        for (RunIterator it : iterators) {
+            try {
+                it.close();
+            } catch (IOException e) {
+                // nothing left to read from it anyway
+            }
+        }
+    }
+
+    // compacts the runs in a background thread, unless one is running
+    private void startCompaction() {
+        Thread t = compactor;
+        if (t != null && t.isAlive()) {
+            return;
+        }
+        t = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        t.setName("simpledb-lsm-compactor");
+        t.setDaemon(true);
+        compactor = t;
+        t.start();
+    }
+
+    /** Waits for the background compaction, if one is running, to finish. */
+    public void awaitCompaction() throws InterruptedException {
+        Thread t = compactor;
+        if (t != null) {
+            t.join();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new LsmIterator(tid);
+    }
+
+    /**
+     * Returns the tuples the committed transactions and tid left, in order,
+     * as of when it is opened, which takes a shared lock on the table for
+     * tid.  Each tuple gets a RecordId on page 0 of the
+     * table, numbered by its position in the scan; it only tells
+     * {@link BufferPool#deleteTuple} the table, since deletes go by the
+     * field values.
+     */
+    private class LsmIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private Merge merge;
+        private final List<RunIterator> runIterators = new ArrayList<>();
+        private Tuple current;
+        private int copies;  // of current still to return
+        private int position;  // of the next tuple in the scan
+
+        LsmIterator(TransactionId tid) {
+            this.tid = tid;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            Database.getBufferPool().lockPage(tid, tablePage, Permissions.READ_ONLY);
+            List<Iterator<Map.Entry<Tuple, Integer>>> sources = new ArrayList<>();
+            TreeMap<Tuple, Integer> changes = pending.get(tid);
+            if (changes != null) {
+                sources.add(new TreeMap<>(changes).entrySet().iterator());
+            }
+            synchronized (LsmFile.this) {
+                sources.add(new TreeMap<>(memtable).entrySet().iterator());
+                try {
+                    for (Run run : runs) {
+                        runIterators.add(run.iterator());
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    close();
+                    throw new DbException("can't read the runs of " + f + ": " + e);
+                }
+            }
+            sources.addAll(runIterators);
+            merge = new Merge(sources);
+            copies = 0;
+            position = 0;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            try {
+                while (copies <= 0) {
+                    if (merge == null || !merge.hasNext()) {
+                        return null;
+                    }
+                    Map.Entry<Tuple, Integer> entry = merge.next();
+                    current = entry.getKey();
+                    copies = entry.getValue();
+                }
+            } catch (UncheckedIOException e) {
+                throw new DbException("can't read the runs of " + f + ": " + e.getCause());
+            }
+            copies--;
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < td.numFields(); i++) {
+                t.setField(i, current.getField(i));
+            }
+            t.setRecordId(new RecordId(tablePage, position++));
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            merge = null;
+            closeAll(runIterators);
+            runIterators.clear();
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MemoryFile is a table kept entirely in memory, for temporary tables and
+ * small, hot dimension tables.  Its tuples are stored by column in
+ * primitive arrays, an int[] per int field and a String[] per string
+ * field, one slot per tuple, and never go through the BufferPool: scans
+ * read the arrays directly and take no locks.  Predicates pushed into a
+ * scan (see {@link #iterator(TransactionId, Predicate[])}) are checked on
+ * the arrays, so only matching tuples are built.
+ * <p>
+ * A transaction's inserts and deletes are kept aside until it commits,
+ * and it enlists the table with the BufferPool (see
+ * {@link BufferPool#enlist}) to be told; then, under the table's monitor, inserted tuples are appended to the
+ * arrays and deleted slots are marked dead.  Once more than half of the
+ * slots are dead, and at every checkpoint, the live tuples are copied
+ * into new, compact arrays.  Each tuple keeps a row id, increasing in slot
+ * order, that its RecordId carries and that survives compaction; a slot
+ * is found from its row id by binary search.  A scan keeps the arrays,
+ * slots and live tuples as of when it was opened, plus its transaction's
+ * own changes.  Only one running transaction may delete a tuple: a
+ * delete of a tuple another transaction has deleted but not committed
+ * yet aborts, and one it has committed fails.
+ * <p>
+ * A MemoryFile may have a snapshot file.  The table is loaded from it when
+ * it is opened and written to it, committed tuples only, by
+ * {@link #checkpoint}, which {@link LogFile#logCheckpoint} calls.  Changes
+ * made since the last checkpoint are lost in a crash.  The snapshot holds
+ * the number of tuples, then each column in order: 4-byte ints, or strings
+ * in their compact form (see {@link Type#serializeCompact}).
+ * <p>
+ * Declare a table as in memory in the catalog file by following its
+ * schema with the <code>memory</code> keyword; its snapshot is the
+ * table's .dat file.
+ *
+ * @see Catalog#loadSchema
+ * @Threadsafe
+ */
+public class MemoryFile implements DbFile, TransactionListener {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final File snapshot;  // null for a temporary table
+    private final int id;
+    private final TupleDesc td;
+
+    // by column: the values of the int fields, null for string fields
+    private final int[][] ints;
+    // by column: the values of the string fields, null for int fields
+    private final String[][] strings;
+    // by slot: the row id of the tuple
+    private int[] rowIds;
+    private int rows;  // slots in use
+    private BitSet live = new BitSet();
+    private int nextRowId;
+
+    /** The changes of a running transaction. */
+    private static class Changes {
+        final List<Tuple> inserts = new ArrayList<>();  // null once deleted again
+        final Set<Integer> deletes = new HashSet<>();  // row ids
+    }
+
+    private final Map<TransactionId, Changes> pending = new ConcurrentHashMap<>();
+    // by row id: the transaction with a delete of the row pending; under the monitor
+    private final Map<Integer, TransactionId> deleting = new HashMap<>();
+
+    /**
+     * Creates an empty temporary table, with no snapshot.
+     *
+     * @param td the TupleDesc of the table
+     */
+    public MemoryFile(TupleDesc td) {
+        this(null, td);
+    }
+
+    /**
+     * Opens a table with a snapshot file, loading its tuples from the
+     * snapshot if there is one.
+     *
+     * @param snapshot the file the table is checkpointed to, or null for a
+     *   temporary table
+     * @param td the TupleDesc of the table
+     */
+    public MemoryFile(File snapshot, TupleDesc td) {
+        this.snapshot = snapshot;
+        this.id = snapshot != null ? snapshot.getAbsoluteFile().hashCode() : UUID.randomUUID().hashCode();
+        this.td = td;
+        this.ints = new int[td.numFields()][];
+        this.strings = new String[td.numFields()][];
+        this.rowIds = new int[INITIAL_CAPACITY];
+        for (int c = 0; c < td.numFields(); c++) {
+            if (td.getFieldType(c) == Type.INT_TYPE) {
+                ints[c] = new int[INITIAL_CAPACITY];
+            } else {
+                strings[c] = new String[INITIAL_CAPACITY];
+            }
+        }
+        if (snapshot != null && snapshot.length() > 0) {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new RuntimeException("can't read snapshot " + snapshot, e);
+            }
+        }
+    }
+
+    // reads the tuples of the snapshot into the arrays
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            int n = in.readInt();
+            ensureCapacity(n);
+            for (int c = 0; c < td.numFields(); c++) {
+                for (int slot = 0; slot < n; slot++) {
+                    if (ints[c] != null) {
+                        ints[c][slot] = in.readInt();
+                    } else {
+                        try {
+                            strings[c][slot] = ((StringField) Type.STRING_TYPE.parseCompact(in)).getValue();
+                        } catch (ParseException e) {
+                            throw new IOException("can't read snapshot " + snapshot, e);
+                        }
+                    }
+                }
+            }
+            for (int slot = 0; slot < n; slot++) {
+                rowIds[slot] = slot;
+            }
+            rows = n;
+            nextRowId = n;
+            live.set(0, n);
+        }
+    }
+
+    /**
+     * Compacts the arrays, then writes the committed tuples of the table to
+     * its snapshot, replacing the old one atomically.  A temporary table is
+     * only compacted.
+     *
+     * @throws IOException if the snapshot can't be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (live.cardinality() < rows) {
+            compact();
+        }
+        if (snapshot == null) {
+            return;
+        }
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(rows);
+            for (int c = 0; c < td.numFields(); c++) {
+                for (int slot = 0; slot < rows; slot++) {
+                    if (ints[c] != null) {
+                        out.writeInt(ints[c][slot]);
+                    } else {
+                        Type.STRING_TYPE.serializeCompact(new StringField(strings[c][slot], Type.STRING_LEN), out);
+                    }
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // grows the arrays to hold n slots, copying them so scans keep theirs
+    private void ensureCapacity(int n) {
+        if (rowIds.length < n) {
+            rowIds = Arrays.copyOf(rowIds, Math.max(n, rowIds.length * 2));
+        }
+        for (int c = 0; c < td.numFields(); c++) {
+            int capacity = ints[c] != null ? ints[c].length : strings[c].length;
+            if (capacity >= n) {
+                continue;
+            }
+            int size = Math.max(n, capacity * 2);
+            if (ints[c] != null) {
+                ints[c] = Arrays.copyOf(ints[c], size);
+            } else {
+                strings[c] = Arrays.copyOf(strings[c], size);
+            }
+        }
+    }
+
+    // copies the live tuples into new arrays, with room to grow; scans
+    // keep the old ones
+    private void compact() {
+        int n = live.cardinality();
+        int size = Math.max(INITIAL_CAPACITY, n * 2);
+        int[] newRowIds = new int[size];
+        for (int c = 0; c < td.numFields(); c++) {
+            if (ints[c] != null) {
+                int[] column = new int[size];
+                for (int slot = live.nextSetBit(0), to = 0; slot >= 0; slot = live.nextSetBit(slot + 1), to++) {
+                    column[to] = ints[c][slot];
+                }
+                ints[c] = column;
+            } else {
+                String[] column = new String[size];
+                for (int slot = live.nextSetBit(0), to = 0; slot >= 0; slot = live.nextSetBit(slot + 1), to++) {
+                    column[to] = strings[c][slot];
+                }
+                strings[c] = column;
+            }
+        }
+        for (int slot = live.nextSetBit(0), to = 0; slot >= 0; slot = live.nextSetBit(slot + 1), to++) {
+            newRowIds[to] = rowIds[slot];
+        }
+        rowIds = newRowIds;
+        rows = n;
+        live = new BitSet();
+        live.set(0, n);
+    }
+
+    // returns the slot of the live tuple with the row id, or -1
+    private int slotOf(int rowId) {
+        int slot = Arrays.binarySearch(rowIds, 0, rows, rowId);
+        return slot >= 0 && live.get(slot) ? slot : -1;
+    }
+
+    /**
+     * Returns the snapshot file of this table, or null for a temporary
+     * table.
+     */
+    public File getFile() {
+        return snapshot;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return id;
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of committed tuples in the table */
+    public synchronized int numTuples() {
+        return live.cardinality();
+    }
+
+    /** @return the number of slots in use, for live and deleted tuples */
+    public synchronized int numSlots() {
+        return rows;
+    }
+
+    /**
+     * MemoryFiles have no pages.
+     *
+     * @throws IllegalArgumentException always
+     */
+    public Page readPage(PageId pid) {
+        throw new IllegalArgumentException("memory table " + id + " has no pages");
+    }
+
+    /**
+     * MemoryFiles have no pages.
+     *
+     * @throws IOException always
+     */
+    public void writePage(Page p) throws IOException {
+        throw new IOException("memory table " + id + " has no pages");
+    }
+
+    private RecordId recordId(int rowId) {
+        return new RecordId(new HeapPageId(id, 0), rowId);
+    }
+
+    /**
+     * Adds t to the changes of tid; no page is modified.  Until tid
+     * commits, t has a negative RecordId that only tid's scans return.
+     *
+     * @return an empty list
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tuple doesn't match the TupleDesc of memory table " + id);
+        }
+        Tuple copy = new Tuple(td);
+        for (int c = 0; c < td.numFields(); c++) {
+            copy.setField(c, t.getField(c));
+        }
+        Changes changes = changes(tid);
+        changes.inserts.add(copy);
+        t.setRecordId(recordId(-changes.inserts.size()));
+        copy.setRecordId(t.getRecordId());
+        return new ArrayList<>();
+    }
+
+    /**
+     * Adds a delete of t, by its RecordId, to the changes of tid; no page is
+     * modified.
+     *
+     * @return an empty list
+     * @throws DbException if t isn't a tuple of this table that tid sees
+     * @throws TransactionAbortedException if another running transaction
+     *   has deleted t; tid should abort
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != id) {
+            throw new DbException("tuple is not in memory table " + id);
+        }
+        Changes changes = changes(tid);
+        int rowId = rid.getTupleNumber();
+        if (rowId < 0) {
+            int i = -rowId - 1;
+            if (i >= changes.inserts.size() || changes.inserts.get(i) == null) {
+                throw new DbException("tuple is not in memory table " + id);
+            }
+            changes.inserts.set(i, null);
+        } else {
+            synchronized (this) {
+                if (slotOf(rowId) < 0 || changes.deletes.contains(rowId)) {
+                    throw new DbException("tuple is not in memory table " + id);
+                }
+                if (deleting.putIfAbsent(rowId, tid) != null) {
+                    // another transaction deletes it: a write-write conflict
+                    throw new TransactionAbortedException();
+                }
+                changes.deletes.add(rowId);
+            }
+        }
+        t.setRecordId(null);
+        return new ArrayList<>();
+    }
+
+    // enlists the table with the BufferPool, so tid's completion reaches transactionComplete
+    private Changes changes(TransactionId tid) {
+        Database.getBufferPool().enlist(tid, this);
+        return pending.computeIfAbsent(tid, k -> new Changes());
+    }
+
+    /**
+     * Applies the changes of tid if it committed, or drops them if it
+     * aborted.  Called by
+     * {@link BufferPool#transactionComplete(TransactionId, boolean)}.
+     */
+    public void transactionComplete(TransactionId tid, boolean commit) {
+        Changes changes = pending.remove(tid);
+        if (changes == null) {
+            return;
+        }
+        synchronized (this) {
+            deleting.keySet().removeAll(changes.deletes);
+            if (!commit) {
+                return;
+            }
+            for (int rowId : changes.deletes) {
+                int slot = slotOf(rowId);
+                if (slot >= 0) {
+                    live.clear(slot);
+                }
+            }
+            ensureCapacity(rows + changes.inserts.size());
+            for (Tuple t : changes.inserts) {
+                if (t == null) {
+                    continue;
+                }
+                for (int c = 0; c < td.numFields(); c++) {
+                    if (ints[c] != null) {
+                        ints[c][rows] = ((IntField) t.getField(c)).getValue();
+                    } else {
+                        strings[c][rows] = ((StringField) t.getField(c)).getValue();
+                    }
+                }
+                rowIds[rows] = nextRowId++;
+                live.set(rows);
+                rows++;
+            }
+            if (rows > INITIAL_CAPACITY && live.cardinality() < rows / 2) {
+                compact();
+            }
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new MemoryIterator(tid, new Predicate[0]);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this table that pass all of
+     * the specified predicates.  The predicates are checked on the arrays
+     * before a tuple is built.
+     *
+     * @param tid the transaction the scan runs as part of
+     * @param predicates predicates on fields of the table
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate[] predicates) {
+        return new MemoryIterator(tid, predicates.clone());
+    }
+
+    /**
+     * Returns the live tuples in slot order, as of when it is opened, then
+     * the tuples tid inserted, leaving out the ones tid deleted.
+     */
+    private class MemoryIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final Predicate[] predicates;
+        // the table as of open
+        private int[][] ints;
+        private String[][] strings;
+        private int[] rowIds;
+        private int rows;
+        private BitSet live;
+        private List<Tuple> inserts;
+        private int slot;  // next slot, or rows + the next insert
+
+        MemoryIterator(TransactionId tid, Predicate[] predicates) {
+            this.tid = tid;
+            this.predicates = predicates;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            Changes changes = pending.get(tid);
+            synchronized (MemoryFile.this) {
+                ints = MemoryFile.this.ints.clone();
+                strings = MemoryFile.this.strings.clone();
+                rowIds = MemoryFile.this.rowIds;
+                rows = MemoryFile.this.rows;
+                live = (BitSet) MemoryFile.this.live.clone();
+                if (changes != null) {
+                    for (int deleted : changes.deletes) {
+                        int slot = slotOf(deleted);
+                        if (slot >= 0) {
+                            live.clear(slot);
+                        }
+                    }
+                }
+            }
+            inserts = changes != null ? new ArrayList<>(changes.inserts) : Collections.<Tuple>emptyList();
+            slot = 0;
+        }
+
+        private Field field(int c, int slot) {
+            return ints[c] != null ? new IntField(ints[c][slot]) : new StringField(strings[c][slot], Type.STRING_LEN);
+        }
+
+        private boolean passes(int slot) {
+            for (Predicate p : predicates) {
+                if (!field(p.getField(), slot).compare(p.getOp(), p.getOperand())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (live == null) {
+                return null;
+            }
+            for (; slot < rows; slot++) {
+                slot = live.nextSetBit(slot);
+                if (slot < 0 || slot >= rows) {
+                    slot = rows;
+                    break;
+                }
+                if (passes(slot)) {
+                    Tuple t = new Tuple(td);
+                    for (int c = 0; c < td.numFields(); c++) {
+                        t.setField(c, field(c, slot));
+                    }
+                    t.setRecordId(recordId(rowIds[slot++]));
+                    return t;
+                }
+            }
+            for (; slot - rows < inserts.size(); slot++) {
+                Tuple t = inserts.get(slot - rows);
+                boolean passes = t != null;
+                for (int i = 0; passes && i < predicates.length; i++) {
+                    passes = predicates[i].filter(t);
+                }
+                if (passes) {
+                    slot++;
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            live = null;
+            ints = null;
+            strings = null;
+            rowIds = null;
+            inserts = null;
+        }
+    }
+}
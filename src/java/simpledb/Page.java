@@ -46,6 +46,17 @@ public interface Page {
 
     public byte[] getPageData();
 
+  /**
+   * Writes the bytes returned by getPageData to the start of data, which
+   * must hold at least BufferPool.getPageSize() bytes, so callers that
+   * don't keep the bytes can reuse one array.  Pages that can serialize
+   * themselves in place override this; the default copies getPageData().
+   */
+    public default void writePageData(byte[] data) {
+        byte[] pageData = getPageData();
+        System.arraycopy(pageData, 0, data, 0, pageData.length);
+    }
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
@@ -53,7 +64,8 @@ public interface Page {
 
     /*
      * a transaction that wrote this page just committed it.
-     * copy current content to the before image.
+     * copy current content to the before image.  implementations may
+     * defer the copy until the page is next modified.
      */
     public void setBeforeImage();
 }
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * PageBloomFilter keeps a Bloom filter of the values of one column of each
+ * page of a {@link HeapFile}, so a scan for column = value can skip the
+ * pages that certainly don't hold the value.  Unlike a {@link ZoneMap} it
+ * works for columns whose values are spread over the whole table, such as
+ * ids, and for string columns.
+ * <p>
+ * The filter of a page is {@link #BYTES_PER_PAGE} bytes with
+ * {@link #NUM_HASHES} hash functions of the value's hashCode(), which gives
+ * about 2% false positives for a full page of two int columns.  The filters
+ * of column i of the table stored in f are kept, in page order, in
+ * {@link #bloomFile}(f, i).  Values are added to the in-memory filter when
+ * a tuple is inserted into a page in the BufferPool, and the filter of a
+ * page is rebuilt from its tuples, dropping deleted values, and written
+ * when the HeapFile writes the page.  Pages with no filter are never
+ * skipped.
+ *
+ * @see HeapFileEncoder#convert(File, File, int, int, Type[], char, int[])
+ * @Threadsafe
+ */
+public class PageBloomFilter {
+
+    /** The size of the filter of one page, in bytes. */
+    public static final int BYTES_PER_PAGE = 512;
+    /** The number of bits set per value. */
+    public static final int NUM_HASHES = 5;
+
+    private final File file;
+    private byte[] bits = new byte[0];
+    private int numPages;
+
+    /**
+     * Opens the filters stored in f, or an empty set of filters if f does
+     * not exist.
+     *
+     * @throws IOException if f can't be read
+     */
+    public PageBloomFilter(File f) throws IOException {
+        this.file = f;
+        if (f.exists()) {
+            numPages = (int) (f.length() / BYTES_PER_PAGE);
+            bits = new byte[numPages * BYTES_PER_PAGE];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+                in.readFully(bits);
+            }
+        }
+    }
+
+    /**
+     * @return the file that stores the filters of column i of the table
+     *   stored in f
+     */
+    public static File bloomFile(File f, int i) {
+        return new File(f.getPath() + "." + i + ".bloom");
+    }
+
+    /** @return the number of pages with a filter */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    // the murmur3 finalizer, so nearby hashCodes set unrelated bits
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Sets the bits of v in a filter of BYTES_PER_PAGE bytes starting at
+     * offset of filter.  Used by {@link HeapFileEncoder} to build filters.
+     */
+    public static void add(byte[] filter, int offset, Field v) {
+        int h1 = mix(v.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BYTES_PER_PAGE * 8 - 1);
+            filter[offset + bit / 8] |= (byte) (1 << (bit % 8));
+        }
+    }
+
+    private static boolean contains(byte[] filter, int offset, Field v) {
+        int h1 = mix(v.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BYTES_PER_PAGE * 8 - 1);
+            if ((filter[offset + bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds filters up to and including page pgNo that match every value, so
+     * the pages are never skipped.
+     */
+    private void extendTo(int pgNo) {
+        if (pgNo >= numPages) {
+            if ((pgNo + 1) * BYTES_PER_PAGE > bits.length) {
+                bits = Arrays.copyOf(bits, Math.max((pgNo + 1) * BYTES_PER_PAGE, bits.length * 2));
+            }
+            Arrays.fill(bits, numPages * BYTES_PER_PAGE, (pgNo + 1) * BYTES_PER_PAGE, (byte) 0xff);
+            numPages = pgNo + 1;
+        }
+    }
+
+    /**
+     * Adds v, which has just been inserted into page pgNo, to the page's
+     * filter.
+     */
+    public synchronized void add(int pgNo, Field v) {
+        if (pgNo < numPages) {
+            add(bits, pgNo * BYTES_PER_PAGE, v);
+        }
+        // else the page has no filter and is never skipped
+    }
+
+    /**
+     * Rebuilds the filter of page pgNo from the values of the specified
+     * column of its tuples and writes it to the file; called when the page
+     * is written.
+     *
+     * @throws IOException if the filter can't be written
+     */
+    public synchronized void update(int pgNo, Iterator<Tuple> tuples, int column) throws IOException {
+        int from = Math.min(numPages, pgNo);
+        extendTo(pgNo);
+        Arrays.fill(bits, pgNo * BYTES_PER_PAGE, (pgNo + 1) * BYTES_PER_PAGE, (byte) 0);
+        while (tuples.hasNext()) {
+            add(bits, pgNo * BYTES_PER_PAGE, tuples.next().getField(column));
+        }
+        try (RandomAccessFile w = new RandomAccessFile(file, "rw")) {
+            w.seek((long) from * BYTES_PER_PAGE);
+            w.write(bits, from * BYTES_PER_PAGE, (pgNo + 1 - from) * BYTES_PER_PAGE);
+        }
+    }
+
+    /**
+     * Returns false if page pgNo certainly has no tuple whose value in this
+     * column equals v.
+     */
+    public synchronized boolean mightContain(int pgNo, Field v) {
+        return pgNo >= numPages || contains(bits, pgNo * BYTES_PER_PAGE, v);
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * PageCleaner is a background thread that writes dirty pages out of the
+ * BufferPool ahead of time, so that pages chosen by
+ * {@link BufferPool#evictPage} are usually clean and a page fault in
+ * {@link BufferPool#getPage} does not have to wait for a log force and a
+ * page write.
+ * <p>
+ * The cleaner wakes up every <code>intervalMillis</code>.  Once the
+ * fraction of dirty pages in the pool reaches <code>highWaterRatio</code>
+ * it writes dirty pages one at a time (see {@link BufferPool#cleanPage})
+ * until the fraction drops to <code>lowWaterRatio</code>.  Writing a page
+ * follows the write-ahead rule: the update record is logged and the log is
+ * forced before the page goes to disk.
+ *
+ * @see BufferPool#startPageCleaner
+ */
+public class PageCleaner extends Thread {
+
+    /** Default fraction of dirty pages at which cleaning starts. */
+    public static final double DEFAULT_HIGH_WATER_RATIO = 0.5;
+    /** Default fraction of dirty pages at which cleaning stops. */
+    public static final double DEFAULT_LOW_WATER_RATIO = 0.25;
+    /** Default time between checks of the dirty ratio. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 10;
+
+    private final BufferPool bufferPool;
+    private final double lowWaterRatio;
+    private final double highWaterRatio;
+    private final long intervalMillis;
+
+    private volatile boolean running = true;
+    private volatile long pagesWritten = 0;
+    private volatile long writeNanos = 0;
+    private final long startTime;
+
+    /**
+     * Creates a cleaner for the specified buffer pool.  The thread is not
+     * started.
+     *
+     * @param bufferPool the pool to clean
+     * @param lowWaterRatio stop cleaning once at most this fraction of the
+     *   pool is dirty
+     * @param highWaterRatio start cleaning once at least this fraction of
+     *   the pool is dirty
+     * @param intervalMillis how long to sleep between checks
+     */
+    public PageCleaner(BufferPool bufferPool, double lowWaterRatio,
+                       double highWaterRatio, long intervalMillis) {
+        if (lowWaterRatio < 0 || lowWaterRatio > highWaterRatio || highWaterRatio > 1) {
+            throw new IllegalArgumentException("need 0 <= lowWaterRatio <= highWaterRatio <= 1");
+        }
+        this.bufferPool = bufferPool;
+        this.lowWaterRatio = lowWaterRatio;
+        this.highWaterRatio = highWaterRatio;
+        this.intervalMillis = intervalMillis;
+        this.startTime = System.nanoTime();
+        setName("simpledb-page-cleaner");
+        setDaemon(true);
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                if (bufferPool.dirtyRatio() >= highWaterRatio) {
+                    // clean down to the low water mark, one page at a time
+                    // so foreground threads can get at the pool in between
+                    while (running && bufferPool.dirtyRatio() > lowWaterRatio) {
+                        long start = System.nanoTime();
+                        if (!bufferPool.cleanPage()) {
+                            break;
+                        }
+                        writeNanos += System.nanoTime() - start;
+                        pagesWritten++;
+                    }
+                }
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                // shutdown() interrupts us; the loop condition decides
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the cleaner and waits for it to finish the page it is writing.
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return the number of pages this cleaner has written */
+    public long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    /** @return pages written per second since the cleaner was created */
+    public double getPagesPerSecond() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds > 0 ? pagesWritten / seconds : 0;
+    }
+
+    /** @return average time spent writing one page (including the log force), in milliseconds */
+    public double getAvgWriteMillis() {
+        long written = pagesWritten;
+        return written > 0 ? writeNanos / 1e6 / written : 0;
+    }
+
+    public String toString() {
+        return String.format("PageCleaner: %d pages written, %.1f pages/s, %.3f ms/page",
+                getPagesWritten(), getPagesPerSecond(), getAvgWriteMillis());
+    }
+}
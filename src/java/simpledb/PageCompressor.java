@@ -0,0 +1,201 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * PageCompressor compresses page images with a simple LZ77 scheme in the
+ * style of LZ4.  Pages of small ints compress much better if their bytes
+ * are first shuffled into four planes, byte 0 of every 4-byte word, then
+ * byte 1, and so on, so the high zero bytes of the ints end up next to
+ * each other; pages of strings compress better unshuffled.  So both are
+ * tried, and the compressed image starts with a byte saying which one it
+ * is (1 if shuffled), followed by a sequence of
+ * <pre>
+ *   token        1 byte, literal count in the high 4 bits, match length - 4
+ *                in the low 4 bits (15 means more bytes follow)
+ *   [count]      if the literal count is &gt;= 15: count - 15, as bytes of 255
+ *                and a last byte &lt; 255
+ *   literals
+ *   offset       2 bytes, little-endian, distance back to the match
+ *   [length]     if the match length - 4 is &gt;= 15, as for the count
+ * </pre>
+ * except that the last sequence ends after its literals.  Pages compress
+ * well because they are mostly padding: zero bytes of empty slots and
+ * short strings, and the high zero bytes of small ints.
+ * <p>
+ * Compression keeps a 4096-entry hash table of the last position of each
+ * 4-byte sequence, and takes the first match it finds, so it is fast rather
+ * than thorough.  Both methods are thread-safe.
+ */
+public class PageCompressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 65535;
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int v) {
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Moves byte j of each 4-byte word of src to plane j of the result (or
+     * back, if unshuffle); a tail of fewer than 4 bytes stays in place.
+     */
+    private static byte[] shuffle(byte[] src, boolean unshuffle) {
+        byte[] dst = new byte[src.length];
+        int words = src.length / 4;
+        for (int k = 0; k < words; k++) {
+            for (int j = 0; j < 4; j++) {
+                if (unshuffle) {
+                    dst[4 * k + j] = src[j * words + k];
+                } else {
+                    dst[j * words + k] = src[4 * k + j];
+                }
+            }
+        }
+        System.arraycopy(src, 4 * words, dst, 4 * words, src.length - 4 * words);
+        return dst;
+    }
+
+    /**
+     * Compresses the specified bytes.
+     *
+     * @return the compressed bytes; may be longer than src if src doesn't
+     *   compress
+     */
+    public static byte[] compress(byte[] src) {
+        byte[] plain = lzCompress(src, 0);
+        byte[] shuffled = lzCompress(shuffle(src, false), 1);
+        return shuffled.length < plain.length ? shuffled : plain;
+    }
+
+    /** Compresses src into an image starting with the specified flag. */
+    private static byte[] lzCompress(byte[] src, int flag) {
+        // worst case: one token and a length byte for every 255 literals
+        byte[] out = new byte[src.length + src.length / 255 + 16];
+        out[0] = (byte) flag;
+        int outPos = 1;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int anchor = 0;
+        int i = 0;
+        while (i <= src.length - MIN_MATCH) {
+            int v = readInt(src, i);
+            int h = hash(v);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != v) {
+                i++;
+                continue;
+            }
+            int matchLen = MIN_MATCH;
+            while (i + matchLen < src.length && src[ref + matchLen] == src[i + matchLen]) {
+                matchLen++;
+            }
+            outPos = writeLiterals(out, outPos, src, anchor, i - anchor, matchLen - MIN_MATCH);
+            out[outPos++] = (byte) (i - ref);
+            out[outPos++] = (byte) ((i - ref) >>> 8);
+            if (matchLen - MIN_MATCH >= 15) {
+                outPos = writeLength(out, outPos, matchLen - MIN_MATCH - 15);
+            }
+            i += matchLen;
+            anchor = i;
+        }
+        outPos = writeLiterals(out, outPos, src, anchor, src.length - anchor, 0);
+        return Arrays.copyOf(out, outPos);
+    }
+
+    /** Writes a token with the specified match nibble, and the literals. */
+    private static int writeLiterals(byte[] out, int outPos, byte[] src, int from, int count, int matchCode) {
+        out[outPos++] = (byte) (Math.min(count, 15) << 4 | Math.min(matchCode, 15));
+        if (count >= 15) {
+            outPos = writeLength(out, outPos, count - 15);
+        }
+        System.arraycopy(src, from, out, outPos, count);
+        return outPos + count;
+    }
+
+    private static int writeLength(byte[] out, int outPos, int len) {
+        while (len >= 255) {
+            out[outPos++] = (byte) 255;
+            len -= 255;
+        }
+        out[outPos++] = (byte) len;
+        return outPos;
+    }
+
+    /**
+     * Decompresses bytes produced by {@link #compress}.
+     *
+     * @param src the compressed bytes
+     * @param srcLen the number of bytes of src to decompress
+     * @param dst the array to decompress into; must be exactly as long as
+     *   the original bytes
+     * @throws IllegalArgumentException if src is not a valid compressed
+     *   image of dst.length bytes
+     */
+    public static void decompress(byte[] src, int srcLen, byte[] dst) {
+        if (srcLen < 1 || src[0] > 1) {
+            throw new IllegalArgumentException("corrupt compressed page");
+        }
+        if (src[0] == 0) {
+            lzDecompress(src, srcLen, dst);
+            return;
+        }
+        byte[] shuffled = new byte[dst.length];
+        lzDecompress(src, srcLen, shuffled);
+        System.arraycopy(shuffle(shuffled, true), 0, dst, 0, dst.length);
+    }
+
+    private static void lzDecompress(byte[] src, int srcLen, byte[] dst) {
+        int srcPos = 1;
+        int dstPos = 0;
+        try {
+            while (srcPos < srcLen) {
+                int token = src[srcPos++] & 0xff;
+                int count = token >>> 4;
+                if (count == 15) {
+                    int b;
+                    do {
+                        b = src[srcPos++] & 0xff;
+                        count += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, srcPos, dst, dstPos, count);
+                srcPos += count;
+                dstPos += count;
+                if (srcPos >= srcLen) {
+                    break;
+                }
+                int offset = (src[srcPos] & 0xff) | (src[srcPos + 1] & 0xff) << 8;
+                srcPos += 2;
+                int matchLen = token & 0xf;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[srcPos++] & 0xff;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                if (offset == 0 || offset > dstPos) {
+                    throw new IllegalArgumentException("bad match offset " + offset);
+                }
+                // byte by byte: the match may overlap the bytes it produces
+                for (int k = 0; k < matchLen; k++, dstPos++) {
+                    dst[dstPos] = dst[dstPos - offset];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("corrupt compressed page", e);
+        }
+        if (dstPos != dst.length) {
+            throw new IllegalArgumentException("decompressed " + dstPos + " bytes, expected " + dst.length);
+        }
+    }
+}
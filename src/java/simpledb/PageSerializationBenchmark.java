@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the cost of serializing full HeapPages, the work done on every
+ * page flush, log write and before image.  Usage:
+ * <pre>
+ * java -cp dist/simpledb.jar simpledb.PageSerializationBenchmark [iterations]
+ * </pre>
+ * A full page of two int columns and a full page of an int and a string
+ * column are each serialized iterations times (default 200000) three ways:
+ * through a DataOutputStream, one Field.serialize call per field, as pages
+ * used to be written; with {@link HeapPage#getPageData}, which allocates
+ * only the returned array; and with {@link HeapPage#writePageData} into one
+ * reused array.  Each run is repeated after a warm-up run; the report
+ * gives the time and the bytes allocated per page.
+ */
+public class PageSerializationBenchmark {
+
+    private interface Serializer {
+        void serialize(HeapPage page) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1) {
+            System.err.println("usage: PageSerializationBenchmark [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        HeapPage ints = fullPage(new Type[]{Type.INT_TYPE, Type.INT_TYPE});
+        HeapPage strings = fullPage(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        byte[] buffer = new byte[BufferPool.getPageSize()];
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "warm-up" : "measured");
+            for (HeapPage page : new HeapPage[]{ints, strings}) {
+                String name = page.td.getFieldType(1) == Type.INT_TYPE ? "int page" : "string page";
+                run(name + ", streams", page, iterations, PageSerializationBenchmark::streams);
+                run(name + ", getPageData", page, iterations, HeapPage::getPageData);
+                run(name + ", writePageData", page, iterations, p -> p.writePageData(buffer));
+            }
+        }
+    }
+
+    /** @return a page of a new table with the specified types, full of tuples */
+    private static HeapPage fullPage(Type[] types) throws IOException, DbException {
+        TupleDesc td = new TupleDesc(types);
+        File f = File.createTempFile("serbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, f.getName());
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        for (int value = 0; page.getNumEmptySlots() > 0; value++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(value));
+            t.setField(1, types[1] == Type.INT_TYPE ? new IntField(-value)
+                    : new StringField("author" + value, Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        return page;
+    }
+
+    /** Serializes page the way HeapPage.getPageData used to. */
+    private static void streams(HeapPage page) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.write(page.header);
+        for (int i = 0; i < page.numSlots; i++) {
+            if (!page.isSlotUsed(i)) {
+                for (int j = 0; j < page.td.getSize(); j++) {
+                    dos.writeByte(0);
+                }
+                continue;
+            }
+            for (int j = 0; j < page.td.numFields(); j++) {
+                page.tuples[i].getField(j).serialize(dos);
+            }
+        }
+        dos.write(new byte[BufferPool.getPageSize() - baos.size()]);
+        dos.flush();
+        baos.toByteArray();
+    }
+
+    private static void run(String name, HeapPage page, int iterations, Serializer serializer) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.serialize(page);
+        }
+        double nanos = (double) (System.nanoTime() - start) / iterations;
+        double bytes = (double) (threads.getThreadAllocatedBytes(thread) - allocated) / iterations;
+        System.out.printf("  %-28s %8.0f ns/page %10.0f bytes allocated/page%n", name, nanos, bytes);
+    }
+}
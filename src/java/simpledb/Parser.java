@@ -463,6 +463,33 @@ public class Parser {
         }
     }
 
+    /**
+     * Handles <code>CLUSTER table ON field;</code>, which Zql can't parse:
+     * reorders the table by the field, see {@link Catalog#cluster}.  It
+     * runs outside of any transaction, so not inside one the user started.
+     */
+    public void handleClusterStatement(String s) {
+        String[] words = s.trim().replaceAll(";$", "").trim().split("\\s+");
+        if (words.length != 4 || !words[2].equalsIgnoreCase("ON")) {
+            System.out.println("Invalid SQL expression: \n \t Usage: CLUSTER table ON field;");
+            return;
+        }
+        if (inUserTrans) {
+            System.out.println("Can't cluster a table until current transaction has been committed or rolledback.");
+            return;
+        }
+        try {
+            Database.getCatalog().cluster(Database.getCatalog().getTableId(words[1]), words[3]);
+            System.out.println("Clustered table " + words[1] + " on " + words[3] + ".");
+        } catch (NoSuchElementException e) {
+            System.out.println("Unknown table or field in " + s.trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException | DbException | TransactionAbortedException e) {
+            e.printStackTrace();
+        }
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
         ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
@@ -493,6 +520,10 @@ public class Parser {
     }
 
     public void processNextStatement(String s) {
+        if (s.trim().toUpperCase().startsWith("CLUSTER ")) {
+            handleClusterStatement(s);
+            return;
+        }
         try {
             processNextStatement(new ByteArrayInputStream(s.getBytes("UTF-8")));
         } catch (UnsupportedEncodingException e) {
@@ -581,7 +612,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "cluster" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -674,7 +705,6 @@ public class Parser {
                     buffer.append(line.substring(0, split + 1));
                     String cmd = buffer.toString().trim();
                     cmd = cmd.substring(0, cmd.length() - 1).trim() + ";";
-                    byte[] statementBytes = cmd.getBytes("UTF-8");
                     if (cmd.equalsIgnoreCase("quit;")
                             || cmd.equalsIgnoreCase("exit;")) {
                         shutdown();
@@ -683,8 +713,7 @@ public class Parser {
                     }
 
                     long startTime = System.currentTimeMillis();
-                    processNextStatement(new ByteArrayInputStream(
-                            statementBytes));
+                    processNextStatement(cmd);
                     long time = System.currentTimeMillis() - startTime;
                     System.out.printf("----------------\n%.2f seconds\n\n",
                             ((double) time / 1000.0));
@@ -0,0 +1,41 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxFile is a HeapFile whose pages are {@link PaxPage}s, which store each
+ * column of the page's tuples in its own minipage.  It reads and writes
+ * the same pages as a HeapFile with the same schema would, but a scan of
+ * a few columns, {@link #iterator(TransactionId, int[])} or a
+ * {@link SeqScan} with a column list, only decodes those columns.  It is
+ * meant for wide tables that queries mostly aggregate one or two columns
+ * of.
+ * <p>
+ * Declare a table as PAX in the catalog file by following its schema with
+ * the <code>pax</code> keyword, and load it with
+ * {@link HeapFileEncoder#convertPax}.
+ *
+ * @see PaxPage
+ * @see Catalog#loadSchema
+ */
+public class PaxFile extends HeapFile {
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public PaxFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected TuplePage createPage(HeapPageId id, byte[] data) throws IOException {
+        return new PaxPage(id, data);
+    }
+
+    protected byte[] createEmptyPageData() {
+        return PaxPage.createEmptyPageData();
+    }
+}
@@ -0,0 +1,355 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * PaxPage is a page of a {@link PaxFile}, stored in the PAX layout: the
+ * page holds as many tuples as a {@link HeapPage}, with the same header
+ * bitmap of used slots, but instead of storing each tuple's fields next
+ * to each other it stores each column in its own minipage:
+ * <pre>
+ *   header      ceiling(numSlots / 8) bytes, bit i set if slot i is used
+ *   minipage 0  numSlots values of field 0, Type.getLen() bytes each
+ *   minipage 1  numSlots values of field 1
+ *   ...
+ *   padding
+ * </pre>
+ * numSlots is floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1)),
+ * as for a HeapPage, so a HeapPage can be turned into a PaxPage by moving
+ * its bytes around, see {@link #fromRowPage}.
+ * <p>
+ * The page keeps its contents as bytes and decodes fields only when a
+ * tuple is asked for, so {@link #iterator(int[])} reads only the
+ * minipages of the requested columns.
+ *
+ * @see PaxFile
+ */
+public class PaxPage implements TuplePage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int numSlots;
+    final int headerSize;
+    // offset of each column's minipage
+    final int[] columnOffsets;
+    // current contents; never written in place while it is also oldData
+    private byte[] data;
+    private TransactionId isDirty;  // stores the tid that dirtied this page. null if not dirty
+
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(); see HeapPage
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk, in the
+     * format described above.  The page keeps data as its before image, so
+     * the caller must not modify the array afterwards.
+     *
+     * @see BufferPool#getPageSize()
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = getNumSlots(td.getSize(), BufferPool.getPageSize());
+        this.headerSize = (numSlots + 7) / 8;
+        this.columnOffsets = columnOffsets(td, numSlots);
+        if (data.length < BufferPool.getPageSize()) {
+            throw new IOException("short page: " + data.length + " bytes");
+        }
+        this.data = data;
+        // the bytes we were built from are the before image; no copy needed
+        this.oldData = data;
+    }
+
+    private static int getNumSlots(int tupleSize, int pageSize) {
+        return (pageSize * 8) / (tupleSize * 8 + 1);
+    }
+
+    private static int[] columnOffsets(TupleDesc td, int numSlots) {
+        int[] offsets = new int[td.numFields()];
+        int offset = (numSlots + 7) / 8;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = offset;
+            offset += numSlots * td.getFieldType(i).getLen();
+        }
+        return offsets;
+    }
+
+    /**
+     * Rearranges the bytes of a page in the HeapPage format into the PAX
+     * format.  Used to load PaxFiles with {@link HeapFileEncoder}.
+     *
+     * @param rowPage a page in the HeapPage format
+     * @param td the schema of the table
+     * @return the same tuples, in the same slots, as a PaxPage
+     */
+    public static byte[] fromRowPage(byte[] rowPage, TupleDesc td) {
+        int pageSize = rowPage.length;
+        int tupleSize = td.getSize();
+        int numSlots = getNumSlots(tupleSize, pageSize);
+        int headerSize = (numSlots + 7) / 8;
+        int[] offsets = columnOffsets(td, numSlots);
+        byte[] pax = new byte[pageSize];
+        System.arraycopy(rowPage, 0, pax, 0, headerSize);
+        for (int slot = 0; slot < numSlots; slot++) {
+            int rowOffset = headerSize + slot * tupleSize;
+            for (int i = 0; i < td.numFields(); i++) {
+                int len = td.getFieldType(i).getLen();
+                System.arraycopy(rowPage, rowOffset, pax, offsets[i] + slot * len, len);
+                rowOffset += len;
+            }
+        }
+        return pax;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public PaxPage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+                if (oldDataRef == null) {
+                    // not modified since the before image was set; sharing
+                    // the array is safe, see beginWrite()
+                    oldDataRef = data;
+                }
+            }
+            return new PaxPage(pid,oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        oldData = null;
+        }
+    }
+
+    /**
+     * Called before the page is modified.  The current contents become the
+     * before image if there is none, and the bytes are copied if they are
+     * the before image (or might be shared with one), so that modifications
+     * never write into an array another page or the before image uses.
+     */
+    private void beginWrite() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null) {
+            oldData = data;
+        }
+        if (oldData == data) {
+            data = data.clone();
+        }
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * @return A byte array correspond to the bytes of this page, in the
+     *   format described above.
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void writePageData(byte[] dst) {
+        System.arraycopy(data, 0, dst, 0, data.length);
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * PaxPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()]; //all 0
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots && ((data[i / 8] >> (i % 8)) & 1) == 1;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        if (value) {
+            data[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            data[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int empty = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                empty++;
+            }
+        }
+        return empty;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
+    /**
+     * Decodes field i of the tuple in the specified slot, in the format of
+     * {@link Type#parse}.
+     */
+    private Field readField(int i, int slot) {
+        Type type = td.getFieldType(i);
+        int offset = columnOffsets[i] + slot * type.getLen();
+        int value = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+        if (type == Type.INT_TYPE) {
+            return new IntField(value);
+        }
+        return new StringField(new String(data, offset + 4, value), Type.STRING_LEN);
+    }
+
+    /**
+     * Encodes f as field i of the tuple in the specified slot, in the
+     * format of {@link Field#serialize}.
+     */
+    private void writeField(int i, int slot, Field f) {
+        int len = td.getFieldType(i).getLen();
+        int offset = columnOffsets[i] + slot * len;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
+        try {
+            f.serialize(new DataOutputStream(baos));
+        } catch (IOException e) {
+            // writing to a byte array can't fail
+            throw new RuntimeException(e);
+        }
+        System.arraycopy(baos.toByteArray(), 0, data, offset, len);
+    }
+
+    /**
+     * Delete the specified tuple from the page; the corresponding header bit
+     * is cleared.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple not on this page");
+        }
+        if (!isSlotUsed(rid.getTupleNumber())) {
+            throw new DbException("tuple slot already empty");
+        }
+        beginWrite();
+        markSlotUsed(rid.getTupleNumber(), false);
+    }
+
+    /**
+     * Adds the specified tuple to the page, writing each field into its
+     * column's minipage; the tuple should be updated to reflect that it is
+     * now stored on this page.
+     * @throws DbException if the page is full (no empty slots) or tupledesc
+     *         is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (!isSlotUsed(slot)) {
+                beginWrite();
+                for (int i = 0; i < td.numFields(); i++) {
+                    writeField(i, slot, t.getField(i));
+                }
+                markSlotUsed(slot, true);
+                t.setRecordId(new RecordId(pid, slot));
+                return;
+            }
+        }
+        throw new DbException("page is full (no empty slots)");
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        isDirty = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return isDirty;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     * (note that this iterator shouldn't return tuples in empty slots!)
+     */
+    public Iterator<Tuple> iterator() {
+        int[] all = new int[td.numFields()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return iterator(all, td);
+    }
+
+    /**
+     * Returns an iterator over some columns of the tuples on this page,
+     * decoding only the minipages of those columns.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        return iterator(columns.clone(), td.project(columns));
+    }
+
+    private Iterator<Tuple> iterator(final int[] columns, final TupleDesc desc) {
+        return new Iterator<Tuple>() {
+            private int slot = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while (from < numSlots && !isSlotUsed(from)) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return slot < numSlots;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new Tuple(desc);
+                for (int i = 0; i < columns.length; i++) {
+                    t.setField(i, readField(columns[i], slot));
+                }
+                t.setRecordId(new RecordId(pid, slot));
+                slot = nextUsed(slot + 1);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,485 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * RoaringBitmap is a compressed set of non-negative longs, after the
+ * Roaring bitmaps of Chambi, Lemire et al.  A value is split into its high
+ * bits, value &gt;&gt;&gt; 16, and its low 16 bits; the values with the same
+ * high bits are kept in one container, in order of the high bits.  A
+ * container with at most {@link #ARRAY_MAX} values is a sorted array of
+ * their low bits, 2 bytes per value; a fuller one is a bitmap of 2^16
+ * bits, 8 KB.  So sparse and dense sets are both small, and AND, OR and
+ * AND NOT work a container at a time, on words for bitmap containers.
+ * <p>
+ * A {@link BitmapIndex} uses a RoaringBitmap per value to store the
+ * RecordIds of the tuples with the value, with the page number as the high
+ * bits and the slot as the low bits, so the values iterate in page order.
+ * <p>
+ * RoaringBitmaps are not thread-safe; {@link #and}, {@link #or} and
+ * {@link #andNot} return new bitmaps.
+ */
+public class RoaringBitmap {
+
+    /** The most values an array container holds. */
+    public static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+    // the high bits of the containers, in increasing order
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size;  // the number of containers
+
+    /** A set of 16-bit values. */
+    private static abstract class Container {
+        int cardinality;
+
+        abstract boolean contains(int low);
+
+        /** @return the container with low added, this one or a new one */
+        abstract Container add(int low);
+
+        /** @return the container with low removed, or null if empty */
+        abstract Container remove(int low);
+
+        /** @return the values, in increasing order */
+        abstract char[] values();
+
+        abstract Container copy();
+
+        long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            for (char v : values()) {
+                words[v >>> 6] |= 1L << v;
+            }
+            return words;
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        char[] values;
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        boolean contains(int low) {
+            return Arrays.binarySearch(values, 0, cardinality, (char) low) >= 0;
+        }
+
+        Container add(int low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return new BitmapContainer(words(), cardinality).add(low);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, values.length * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = (char) low;
+            cardinality++;
+            return this;
+        }
+
+        Container remove(int low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return cardinality == 0 ? null : this;
+        }
+
+        char[] values() {
+            return Arrays.copyOf(values, cardinality);
+        }
+
+        Container copy() {
+            return new ArrayContainer(values.clone(), cardinality);
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        final long[] words;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        boolean contains(int low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(int low) {
+            if (!contains(low)) {
+                words[low >>> 6] |= 1L << low;
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(int low) {
+            if (contains(low)) {
+                words[low >>> 6] &= ~(1L << low);
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? fromWords(words) : this;
+        }
+
+        char[] values() {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return values;
+        }
+
+        long[] words() {
+            return words.clone();
+        }
+
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+    }
+
+    /** @return the smallest container for the set bits, or null if none */
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX) {
+            return new BitmapContainer(words, cardinality);
+        }
+        char[] values = new BitmapContainer(words, cardinality).values();
+        return new ArrayContainer(values, cardinality);
+    }
+
+    /** @return the container of the values of array a and array b */
+    private static Container mergeArrays(ArrayContainer a, ArrayContainer b, boolean union, boolean andNot) {
+        char[] values = new char[union ? a.cardinality + b.cardinality : a.cardinality];
+        int i = 0, j = 0, n = 0;
+        while (i < a.cardinality && j < b.cardinality) {
+            char x = a.values[i], y = b.values[j];
+            if (x < y) {
+                if (union || andNot) {
+                    values[n++] = x;
+                }
+                i++;
+            } else if (x > y) {
+                if (union) {
+                    values[n++] = y;
+                }
+                j++;
+            } else {
+                if (!andNot) {
+                    values[n++] = x;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (union || andNot) {
+            while (i < a.cardinality) {
+                values[n++] = a.values[i++];
+            }
+        }
+        if (union) {
+            while (j < b.cardinality) {
+                values[n++] = b.values[j++];
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+        if (n > ARRAY_MAX) {
+            return fromWords(new ArrayContainer(values, n).words());
+        }
+        return new ArrayContainer(values, n);
+    }
+
+    /** The operations on two containers with the same high bits. */
+    private enum Op { AND, OR, AND_NOT }
+
+    private static Container combine(Container a, Container b, Op op) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            return mergeArrays((ArrayContainer) a, (ArrayContainer) b, op == Op.OR, op == Op.AND_NOT);
+        }
+        if (op != Op.OR && a instanceof ArrayContainer || op == Op.AND && b instanceof ArrayContainer) {
+            // the result is part of the array; probe the other container
+            ArrayContainer array = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+            Container other = array == a ? b : a;
+            char[] values = new char[array.cardinality];
+            int n = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (other.contains(array.values[i]) == (op == Op.AND)) {
+                    values[n++] = array.values[i];
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(values, n);
+        }
+        long[] words = a.words();
+        long[] other = b instanceof BitmapContainer ? ((BitmapContainer) b).words : b.words();
+        for (int w = 0; w < words.length; w++) {
+            switch (op) {
+                case AND:
+                    words[w] &= other[w];
+                    break;
+                case OR:
+                    words[w] |= other[w];
+                    break;
+                default:
+                    words[w] &= ~other[w];
+            }
+        }
+        return fromWords(words);
+    }
+
+    /** @return the index of the container with the high bits, or -(insertion point) - 1 */
+    private int find(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(long key, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = c;
+        size++;
+    }
+
+    private static void checkValue(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value " + value);
+        }
+    }
+
+    /**
+     * Adds value to the set.
+     *
+     * @return true if the set didn't contain value
+     */
+    public boolean add(long value) {
+        checkValue(value);
+        long key = value >>> 16;
+        int low = (int) (value & 0xFFFF);
+        int i = find(key);
+        if (i >= 0) {
+            int before = containers[i].cardinality;
+            containers[i] = containers[i].add(low);
+            return containers[i].cardinality != before;
+        }
+        i = -i - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = new ArrayContainer(new char[]{(char) low}, 1);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes value from the set.
+     *
+     * @return true if the set contained value
+     */
+    public boolean remove(long value) {
+        checkValue(value);
+        int i = find(value >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        int before = containers[i].cardinality;
+        Container c = containers[i].remove((int) (value & 0xFFFF));
+        if (c == null) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            size--;
+            containers[size] = null;
+            return true;
+        }
+        containers[i] = c;
+        return c.cardinality != before;
+    }
+
+    /** @return true if the set contains value */
+    public boolean contains(long value) {
+        if (value < 0) {
+            return false;
+        }
+        int i = find(value >>> 16);
+        return i >= 0 && containers[i].contains((int) (value & 0xFFFF));
+    }
+
+    /** @return the number of values in the set */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of bytes the containers take, 2 per value of an
+     *   array container and 8 KB per bitmap container
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            bytes += 8 + (containers[i] instanceof BitmapContainer ? BITMAP_WORDS * 8 : containers[i].cardinality * 2);
+        }
+        return bytes;
+    }
+
+    /** @return the values of this set or other */
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], combine(containers[i], other.containers[j], Op.OR));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /** @return the values of this set and other */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = combine(containers[i], other.containers[j], Op.AND);
+                if (c != null) {
+                    result.append(keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /** @return the values of this set that are not in other */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container c = j < other.size && other.keys[j] == keys[i]
+                    ? combine(containers[i], other.containers[j], Op.AND_NOT) : containers[i].copy();
+            if (c != null) {
+                result.append(keys[i], c);
+            }
+        }
+        return result;
+    }
+
+    /** A cursor over the values of a set, in increasing order. */
+    public interface LongIterator {
+        boolean hasNext();
+
+        long next();
+    }
+
+    /**
+     * @return the values, in increasing order; the set must not change
+     *   while the iterator is used
+     */
+    public LongIterator iterator() {
+        return new LongIterator() {
+            private int container = 0;
+            private char[] values = size == 0 ? new char[0] : containers[0].values();
+            private int next = 0;
+
+            public boolean hasNext() {
+                while (next == values.length && container + 1 < size) {
+                    container++;
+                    values = containers[container].values();
+                    next = 0;
+                }
+                return next < values.length;
+            }
+
+            public long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[container] << 16 | values[next++];
+            }
+        };
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof RoaringBitmap)) {
+            return false;
+        }
+        RoaringBitmap other = (RoaringBitmap) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != other.keys[i] || !Arrays.equals(containers[i].values(), other.containers[i].values())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < size; i++) {
+            h = h * 31 + Long.hashCode(keys[i]) * 17 + Arrays.hashCode(containers[i].values());
+        }
+        return h;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        LongIterator it = iterator();
+        while (it.hasNext()) {
+            sb.append(sb.length() > 1 ? ", " : "").append(it.next());
+        }
+        return sb.append("}").toString();
+    }
+}
@@ -0,0 +1,239 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * SecondaryIndex is an index on one column of a heap table.  The index is a
+ * {@link BTreeFile} of entries
+ * <pre>
+ *   key       the value of the column
+ *   included  the values of the included columns, if any
+ *   page      the page number of the tuple in the table
+ *   slot      the slot of the tuple on its page
+ * </pre>
+ * keyed on key, page and slot, so the tuples with a value, or a range of
+ * values, can be found without reading the whole table, and every entry
+ * has a key of its own, which a delete finds in one descent.  A query that only needs the
+ * columns an index stores, its key and included columns, can be answered
+ * from the entries alone with an {@link IndexOnlyScan}.  Indexes are created with
+ * {@link Catalog#addIndex}, and the BufferPool keeps them up to date:
+ * every tuple inserted into or deleted from the table through
+ * {@link BufferPool#insertTuple} or {@link BufferPool#deleteTuple} has its
+ * entry inserted or deleted in the same transaction.
+ * <p>
+ * Tuples of a heap table never move, so a page and a slot identify a tuple
+ * for as long as it exists; tables stored in a BTreeFile or ColumnFile
+ * can't have secondary indexes.
+ */
+public class SecondaryIndex {
+
+    private final int tableid;
+    private final int column;
+    private final int[] included;
+    private final BTreeFile file;
+
+    /**
+     * @param tableid the table that is indexed; must be stored in a HeapFile
+     * @param column the index of the indexed field of the table
+     * @param file the entries, with the TupleDesc of
+     *   {@link #entryTupleDesc}, keyed on {@link #keyFields}
+     */
+    public SecondaryIndex(int tableid, int column, BTreeFile file) {
+        this(tableid, column, new int[0], file);
+    }
+
+    /**
+     * @param tableid the table that is indexed; must be stored in a HeapFile
+     * @param column the index of the indexed field of the table
+     * @param included the indexes of the fields of the table whose values
+     *   the entries also store, in entry order
+     * @param file the entries, with the TupleDesc of
+     *   {@link #entryTupleDesc(TupleDesc, int, int[])}, keyed on
+     *   {@link #keyFields}
+     */
+    public SecondaryIndex(int tableid, int column, int[] included, BTreeFile file) {
+        this.tableid = tableid;
+        this.column = column;
+        this.included = included.clone();
+        this.file = file;
+    }
+
+    /**
+     * @return the fields of the entries of an index with the specified
+     *   number of included columns that the BTreeFile is keyed on: the
+     *   key, the page and the slot
+     */
+    public static int[] keyFields(int numIncluded) {
+        return new int[]{0, numIncluded + 1, numIncluded + 2};
+    }
+
+    /**
+     * @return the TupleDesc of the entries of an index on a column with the
+     *   specified type and name
+     */
+    public static TupleDesc entryTupleDesc(Type keyType, String keyName) {
+        return new TupleDesc(new Type[]{keyType, Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{keyName, "page", "slot"});
+    }
+
+    /**
+     * @return the TupleDesc of the entries of an index on the specified
+     *   column of a table with schema td that includes the specified
+     *   columns
+     */
+    public static TupleDesc entryTupleDesc(TupleDesc td, int column, int[] included) {
+        Type[] types = new Type[included.length + 3];
+        String[] names = new String[included.length + 3];
+        types[0] = td.getFieldType(column);
+        names[0] = td.getFieldName(column);
+        for (int i = 0; i < included.length; i++) {
+            types[i + 1] = td.getFieldType(included[i]);
+            names[i + 1] = td.getFieldName(included[i]);
+        }
+        types[included.length + 1] = Type.INT_TYPE;
+        names[included.length + 1] = "page";
+        types[included.length + 2] = Type.INT_TYPE;
+        names[included.length + 2] = "slot";
+        return new TupleDesc(types, names);
+    }
+
+    /** @return the id of the indexed table */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /** @return the index of the indexed field of the table */
+    public int getColumn() {
+        return column;
+    }
+
+    /** @return the indexes of the included fields of the table, maybe none */
+    public int[] getIncludedColumns() {
+        return included.clone();
+    }
+
+    /**
+     * @return the field of the entries that stores the specified field of
+     *   the table, or -1 if the entries don't store it
+     */
+    public int entryField(int column) {
+        if (column == this.column) {
+            return 0;
+        }
+        for (int i = 0; i < included.length; i++) {
+            if (included[i] == column) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** @return the BTreeFile that stores the entries */
+    public BTreeFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the entry of t, a tuple stored in a table, in an index on the
+     *   column that includes the included columns, with entries of
+     *   TupleDesc entryTd
+     */
+    static Tuple entry(TupleDesc entryTd, int column, int[] included, Tuple t) {
+        RecordId rid = t.getRecordId();
+        Tuple e = new Tuple(entryTd);
+        e.setField(0, t.getField(column));
+        for (int i = 0; i < included.length; i++) {
+            e.setField(i + 1, t.getField(included[i]));
+        }
+        e.setField(included.length + 1, new IntField(rid.getPageId().getPageNumber()));
+        e.setField(included.length + 2, new IntField(rid.getTupleNumber()));
+        return e;
+    }
+
+    /**
+     * @return the RecordId of the tuple of the table an entry points to
+     */
+    public RecordId getRecordId(Tuple entry) {
+        int pgNo = ((IntField) entry.getField(included.length + 1)).getValue();
+        int slot = ((IntField) entry.getField(included.length + 2)).getValue();
+        return new RecordId(new HeapPageId(tableid, pgNo), slot);
+    }
+
+    /**
+     * Inserts the entry of t, which has just been inserted into the table.
+     *
+     * @return the index pages that were modified, see
+     *   {@link DbFile#insertTuple}
+     */
+    public ArrayList<Page> insertEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return file.insertTuple(tid, entry(file.getTupleDesc(), column, included, t));
+    }
+
+    /**
+     * Deletes the entry of t, a tuple of the table that is being deleted.
+     *
+     * @return the index pages that were modified, see
+     *   {@link DbFile#deleteTuple}
+     * @throws DbException if the index has no entry for t
+     */
+    public ArrayList<Page> deleteEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        Field[] key = {t.getField(column), new IntField(rid.getPageId().getPageNumber()),
+                new IntField(rid.getTupleNumber())};
+        return file.deleteKey(tid, key);
+    }
+
+    /**
+     * Returns an iterator over the entries whose keys satisfy ipred, in key
+     * order; {@link #getRecordId} gives the tuple each one points to.
+     *
+     * @param ipred the predicate on the key, or null for all entries
+     */
+    public DbFileIterator entries(TransactionId tid, IndexPredicate ipred) {
+        return file.indexIterator(tid, ipred);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table whose values of the
+     * column satisfy ipred, in order of the column.  Each tuple is read
+     * from its page through the BufferPool, so a lookup reads one path of
+     * the index and one table page per match.
+     *
+     * @param ipred the predicate on the column, or null for all tuples
+     */
+    public DbFileIterator tuples(TransactionId tid, IndexPredicate ipred) {
+        DbFileIterator entries = entries(tid, ipred);
+        return new AbstractDbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                entries.open();
+            }
+
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                while (entries.hasNext()) {
+                    RecordId rid = getRecordId(entries.next());
+                    TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, rid.getPageId(),
+                            Permissions.READ_ONLY);
+                    Tuple t = page.getTuple(rid.getTupleNumber());
+                    Database.getBufferPool().unpinPage(tid, rid.getPageId());
+                    if (t != null) {
+                        return t;
+                    }
+                }
+                return null;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                entries.close();
+            }
+        };
+    }
+}
@@ -15,6 +15,8 @@ public class SeqScan implements OpIterator {
     private int tableId;
     private String tableAlias;
     private DbFileIterator tableIterator;
+    private int[] columns;  // projected columns, or null for all
+    private Predicate[] filters;  // on fields of the table, or null for none
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -38,6 +40,69 @@ public class SeqScan implements OpIterator {
         this.tableAlias = tableAlias;
     }
 
+    /**
+     * Creates a sequential scan that returns only some columns of the
+     * specified table.  Tuples have the fields columns[0], columns[1], ...
+     * of the table, in that order.  Tables whose pages can decode single
+     * columns (e.g. {@link PaxFile}) don't decode the other columns at all.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table, see above
+     * @param columns
+     *            indexes of the fields of the table to return
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
+        this(tid, tableid, tableAlias);
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Creates a sequential scan that returns some columns of the tuples of
+     * the specified table that pass all of the specified predicates.  The
+     * predicates refer to fields of the table, which need not be among the
+     * returned columns.  A {@link ColumnFile} evaluates them before reading
+     * the other columns; for other tables this is the same as a Filter
+     * below a projected scan.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table, see above
+     * @param columns
+     *            indexes of the fields of the table to return
+     * @param filters
+     *            predicates on fields of the table
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns, Predicate[] filters) {
+        this(tid, tableid, tableAlias, columns);
+        this.filters = filters.clone();
+    }
+
+    /**
+     * Adds a predicate the scan should only return tuples that pass.  The
+     * predicate refers to a field of the table, not of the returned tuples.
+     * Must be called before the scan is opened.  Tables with zone maps
+     * (see {@link HeapFile#createZoneMap}) or column stores use it to read
+     * fewer pages; a Filter above the scan with the same predicate is
+     * still correct, just redundant.
+     *
+     * @param p a predicate on a field of the table
+     */
+    public void addFilter(Predicate p) {
+        if (this.filters == null) {
+            this.filters = new Predicate[]{p};
+        } else {
+            this.filters = Arrays.copyOf(this.filters, this.filters.length + 1);
+            this.filters[this.filters.length - 1] = p;
+        }
+    }
+
     /**
      * @return
      *       return the table name of the table the operator scans. This should
@@ -54,6 +119,36 @@ public class SeqScan implements OpIterator {
         return this.tableAlias;
     }
 
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the transaction this scan runs as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.tid;
+    }
+
+    /**
+     * @return the indexes of the fields of the table the scan returns, or
+     *   null if it returns all of them
+     */
+    public int[] getColumns() {
+        return this.columns == null ? null : this.columns.clone();
+    }
+
+    /**
+     * @return the predicates on fields of the table the scan applies, or
+     *   null if there are none
+     */
+    public Predicate[] getFilters() {
+        return this.filters == null ? null : this.filters.clone();
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -76,10 +171,93 @@ public class SeqScan implements OpIterator {
     }
 
     public void open() throws DbException, TransactionAbortedException {
-        this.tableIterator = Database.getCatalog().getDatabaseFile(this.tableId).iterator(this.tid);
+        DbFile file = Database.getCatalog().getDatabaseFile(this.tableId);
+        if (this.columns == null && this.filters == null) {
+            this.tableIterator = file.iterator(this.tid);
+        } else if (file instanceof ColumnFile) {
+            int[] cols = this.columns != null ? this.columns : allColumns(file.getTupleDesc());
+            Predicate[] preds = this.filters != null ? this.filters : new Predicate[0];
+            this.tableIterator = ((ColumnFile) file).iterator(this.tid, cols, preds);
+        } else if (this.filters == null && file instanceof HeapFile) {
+            this.tableIterator = ((HeapFile) file).iterator(this.tid, this.columns);
+        } else if (file instanceof HeapFile) {
+            // the HeapFile filters, skipping pages its zone map rules out
+            DbFileIterator it = ((HeapFile) file).iterator(this.tid, this.filters);
+            this.tableIterator = this.columns == null ? it : new ProjectingIterator(it, this.columns, null);
+        } else if (this.filters != null && file instanceof MemoryFile) {
+            // the MemoryFile filters on its arrays, before building tuples
+            DbFileIterator it = ((MemoryFile) file).iterator(this.tid, this.filters);
+            this.tableIterator = this.columns == null ? it : new ProjectingIterator(it, this.columns, null);
+        } else {
+            this.tableIterator = new ProjectingIterator(file.iterator(this.tid), this.columns, this.filters);
+        }
         this.tableIterator.open();
     }
 
+    private static int[] allColumns(TupleDesc td) {
+        int[] all = new int[td.numFields()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    /**
+     * Filters and projects the tuples of a DbFileIterator that returns whole
+     * tuples.
+     */
+    private static class ProjectingIterator extends AbstractDbFileIterator {
+        private final DbFileIterator child;
+        private final int[] columns;  // null for all
+        private final Predicate[] filters;  // null for none
+        private TupleDesc projected;
+
+        ProjectingIterator(DbFileIterator child, int[] columns, Predicate[] filters) {
+            this.child = child;
+            this.columns = columns;
+            this.filters = filters;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            Tuple t = null;
+            while (t == null && child.hasNext()) {
+                t = child.next();
+                for (int i = 0; filters != null && i < filters.length; i++) {
+                    if (!filters[i].filter(t)) {
+                        t = null;
+                        break;
+                    }
+                }
+            }
+            if (t == null || columns == null) {
+                return t;
+            }
+            if (projected == null) {
+                projected = t.getTupleDesc().project(columns);
+            }
+            Tuple p = new Tuple(projected);
+            for (int i = 0; i < columns.length; i++) {
+                p.setField(i, t.getField(columns[i]));
+            }
+            p.setRecordId(t.getRecordId());
+            return p;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            super.close();
+            child.rewind();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+    }
+
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
      * prefixed with the tableAlias string from the constructor. This prefix
@@ -92,6 +270,9 @@ public class SeqScan implements OpIterator {
      */
     public TupleDesc getTupleDesc() {
         TupleDesc originalTD = Database.getCatalog().getDatabaseFile(this.tableId).getTupleDesc();
+        if (this.columns != null) {
+            originalTD = originalTD.project(this.columns);
+        }
         int numFields = originalTD.numFields();
 
         Type[] types = new Type[numFields];
@@ -0,0 +1,39 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are {@link SlottedHeapPage}s,
+ * which store variable-length records.  It is meant for tables with string
+ * columns, whose values are usually much shorter than
+ * {@link Type#STRING_LEN}: a HeapPage reserves the full length for every
+ * string, a SlottedHeapPage only what the string needs.
+ * <p>
+ * Declare a table as slotted in the catalog file by following its schema
+ * with the <code>slotted</code> keyword, and load it with
+ * {@link HeapFileEncoder#convertSlotted}.
+ *
+ * @see SlottedHeapPage
+ * @see Catalog#loadSchema
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected TuplePage createPage(HeapPageId id, byte[] data) throws IOException {
+        return new SlottedHeapPage(id, data);
+    }
+
+    protected byte[] createEmptyPageData() {
+        return SlottedHeapPage.createEmptyPageData();
+    }
+}
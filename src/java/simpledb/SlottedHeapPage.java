@@ -0,0 +1,342 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+import java.text.ParseException;
+
+/**
+ * SlottedHeapPage is a page of a {@link SlottedHeapFile}.  Unlike
+ * {@link HeapPage}, whose slots all take the fixed size of the table's
+ * TupleDesc, it stores variable-length records: strings take only as many
+ * bytes as they have characters (see {@link Type#serializeCompact}), so a
+ * table of short strings fits many more tuples per page.
+ * <p>
+ * The format of a page is a header, a slot directory and the records:
+ * <pre>
+ *   unsigned short   number of slots
+ *   unsigned short   offset of the first byte of record data
+ *   per slot:        unsigned short record offset, unsigned short record length
+ *                    (offset 0 means the slot is empty)
+ *   free space
+ *   records, packed at the end of the page, slot 0's record last
+ * </pre>
+ * A tuple keeps its slot number, and thus its RecordId, for as long as it
+ * is on the page; the slot of a deleted tuple is reused by later inserts.
+ * The records themselves are repacked whenever the page is serialized, so
+ * deletes never leave holes on disk.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    /** Bytes of the page header. */
+    static final int HEADER_SIZE = 4;
+    /** Bytes of one entry of the slot directory. */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    // tuples by slot number; null for an empty slot
+    final ArrayList<Tuple> slots;
+    private int recordBytes;  // total bytes of the records on this page
+    private TransactionId isDirty;  // stores the tid that dirtied this page. null if not dirty
+
+    // the before image, or null while the page is unchanged since the last
+    // setBeforeImage(); see HeapPage
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk,
+     * in the format described above.  The page keeps data as its before
+     * image, so the caller must not modify the array afterwards.
+     *
+     * @see BufferPool#getPageSize()
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+        int numSlots = header.readUnsignedShort();
+        header.readUnsignedShort();  // data start, implied by the slots
+
+        slots = new ArrayList<>(numSlots);
+        for (int i = 0; i < numSlots; i++) {
+            int offset = header.readUnsignedShort();
+            int length = header.readUnsignedShort();
+            if (offset == 0) {
+                slots.add(null);
+                continue;
+            }
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+            Tuple t = new Tuple(td);
+            try {
+                for (int j = 0; j < td.numFields(); j++) {
+                    t.setField(j, td.getFieldType(j).parseCompact(dis));
+                }
+            } catch (ParseException e) {
+                throw new IOException("corrupt record in slot " + i + " of " + id, e);
+            }
+            t.setRecordId(new RecordId(pid, i));
+            slots.add(t);
+            recordBytes += length;
+        }
+        header.close();
+
+        // the bytes we were built from are the before image; no copy needed
+        oldData = data;
+    }
+
+    /**
+     * @return the bytes of an empty page: no slots, record data starting
+     *   at the end of the page
+     */
+    public static byte[] createEmptyPageData() {
+        return packRecords(new ArrayList<byte[]>(), BufferPool.getPageSize());
+    }
+
+    /**
+     * Lays out a page in the format described above.  records.get(i) is the
+     * record of slot i, or null for an empty slot.
+     *
+     * @param records the records of the page
+     * @param pageSize the size of the page
+     * @return the page, pageSize bytes
+     * @throws IllegalArgumentException if the records don't fit
+     */
+    public static byte[] packRecords(List<byte[]> records, int pageSize) {
+        byte[] data = new byte[pageSize];
+        int numSlots = records.size();
+        int end = pageSize;
+        int dir = HEADER_SIZE;
+        for (byte[] record : records) {
+            int offset = 0;
+            int length = 0;
+            if (record != null) {
+                end -= record.length;
+                length = record.length;
+                offset = end;
+                if (end < HEADER_SIZE + numSlots * SLOT_SIZE) {
+                    throw new IllegalArgumentException("records do not fit a page of " + pageSize + " bytes");
+                }
+                System.arraycopy(record, 0, data, end, length);
+            }
+            putShort(data, dir, offset);
+            putShort(data, dir + 2, length);
+            dir += SLOT_SIZE;
+        }
+        putShort(data, 0, numSlots);
+        putShort(data, 2, end);
+        return data;
+    }
+
+    /**
+     * @return the bytes t takes as a record of a SlottedHeapPage
+     */
+    public static int recordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            size += td.getFieldType(i).getCompactLen(t.getField(i));
+        }
+        return size;
+    }
+
+    /**
+     * @return t serialized as a record of a SlottedHeapPage
+     */
+    public static byte[] serializeRecord(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(recordSize(t));
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                td.getFieldType(i).serializeCompact(t.getField(i), dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // writing to a byte array can't fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static void putShort(byte[] data, int pos, int value) {
+        data[pos] = (byte) (value >>> 8);
+        data[pos + 1] = (byte) value;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+            }
+            if (oldDataRef == null) {
+                // not modified since the before image was set
+                oldDataRef = getPageData();
+            }
+            return new SlottedHeapPage(pid,oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        // copy-on-write, as in HeapPage
+        oldData = null;
+        }
+    }
+
+    private void preserveBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null) {
+            oldData = getPageData();
+        }
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page, in
+     * the format described above.
+     *
+     * @see #SlottedHeapPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        List<byte[]> records = new ArrayList<>(slots.size());
+        for (Tuple t : slots) {
+            records.add(t == null ? null : serializeRecord(t));
+        }
+        return packRecords(records, BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the number of bytes not used by the header, the slot
+     *   directory or records
+     */
+    public int getFreeSpace() {
+        return BufferPool.getPageSize() - HEADER_SIZE - slots.size() * SLOT_SIZE - recordBytes;
+    }
+
+    /**
+     * There is room for t if its record fits, plus a new slot if no slot
+     * is empty.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        int needed = recordSize(t);
+        if (!slots.contains(null)) {
+            needed += SLOT_SIZE;
+        }
+        return needed <= getFreeSpace();
+    }
+
+    /**
+     * Delete the specified tuple from the page; its slot becomes empty.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple not on this page");
+        }
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= slots.size() || slots.get(slot) == null) {
+            throw new DbException("tuple slot already empty");
+        }
+        preserveBeforeImage();
+        recordBytes -= recordSize(slots.get(slot));
+        slots.set(slot, null);
+        // empty slots at the end of the directory can go
+        while (!slots.isEmpty() && slots.get(slots.size() - 1) == null) {
+            slots.remove(slots.size() - 1);
+        }
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the first empty slot or a
+     * new one; the tuple should be updated to reflect that it is now
+     * stored on this page.
+     * @throws DbException if the page has no room for the tuple or tupledesc
+     *         is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDesc does not match");
+        }
+        if (!hasRoomFor(t)) {
+            throw new DbException("page is full (no room for tuple)");
+        }
+        preserveBeforeImage();
+        int slot = slots.indexOf(null);
+        if (slot < 0) {
+            slot = slots.size();
+            slots.add(t);
+        } else {
+            slots.set(slot, t);
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        recordBytes += recordSize(t);
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        isDirty = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return isDirty;
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        int n = 0;
+        for (Tuple t : slots) {
+            if (t != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     * (note that this iterator shouldn't return tuples in empty slots!)
+     */
+    public Iterator<Tuple> iterator() {
+        ArrayList<Tuple> used = new ArrayList<>();
+        for (Tuple t : slots) {
+            if (t != null) {
+                used.add(t);
+            }
+        }
+        return Collections.unmodifiableList(used).iterator();
+    }
+}
@@ -0,0 +1,166 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * StringDictionary maps the distinct strings of one column to small
+ * integer codes, 0, 1, 2, ... in the order the strings were first seen.
+ * A {@link DictionaryHeapFile} stores the codes on its pages instead of
+ * the strings.
+ * <p>
+ * The dictionary is kept in memory and backed by an append-only file of
+ * strings (written with {@link DataOutputStream#writeUTF}); the code of a
+ * string is its position in the file.  New strings are appended through
+ * one buffered stream, kept open, and only reach disk on {@link #force};
+ * a page holding codes must not reach disk, or the log, before the
+ * dictionary is forced (see {@link DictionaryHeapPage#writePageData}).
+ * Codes are never reused, even if no tuple refers to them any more.
+ *
+ * @Threadsafe
+ */
+public class StringDictionary {
+
+    private final File file;
+    private final ArrayList<String> values = new ArrayList<>();
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private FileOutputStream fos;  // opened on the first new string
+    private DataOutputStream out;
+    private boolean unforced;  // strings appended since the last force
+
+    /** The last StringField looked up by {@link #codeOf} and its code. */
+    private static class Probe {
+        final StringField field;
+        final int code;
+        final int size;  // dictionary size at the lookup; a miss may not last
+
+        Probe(StringField field, int code, int size) {
+            this.field = field;
+            this.code = code;
+            this.size = size;
+        }
+    }
+
+    private volatile Probe lastProbe;
+    private volatile int size;
+
+    /**
+     * Opens the dictionary stored in f, creating an empty one if f does not
+     * exist.
+     *
+     * @throws IOException if f can't be read
+     */
+    public StringDictionary(File f) throws IOException {
+        this.file = f;
+        if (f.exists()) {
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+                while (true) {
+                    String s;
+                    try {
+                        s = dis.readUTF();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    codes.put(s, values.size());
+                    values.add(s);
+                }
+            }
+        }
+        size = values.size();
+    }
+
+    /** @return the file backing this dictionary */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the code of s, adding s to the dictionary if it isn't there
+     * @throws IOException if a new string can't be appended to the file
+     */
+    public synchronized int encode(String s) throws IOException {
+        Integer code = codes.get(s);
+        if (code != null) {
+            return code;
+        }
+        if (out == null) {
+            fos = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fos));
+        }
+        out.writeUTF(s);
+        unforced = true;
+        code = values.size();
+        codes.put(s, code);
+        values.add(s);
+        size = values.size();
+        return code;
+    }
+
+    /**
+     * Writes the strings added since the last call through to the disk.
+     *
+     * @throws IOException if they can't be written
+     */
+    public synchronized void force() throws IOException {
+        if (!unforced) {
+            return;
+        }
+        out.flush();
+        fos.getFD().sync();
+        unforced = false;
+    }
+
+    /**
+     * Forces the dictionary and closes its file; new strings open it again.
+     *
+     * @throws IOException if the strings can't be written
+     */
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            force();
+            out.close();
+            out = null;
+            fos = null;
+        }
+    }
+
+    /**
+     * @return the string with the specified code
+     * @throws IndexOutOfBoundsException if there is no such code
+     */
+    public synchronized String decode(int code) {
+        return values.get(code);
+    }
+
+    /**
+     * @return the code of s, or -1 if s is not in the dictionary
+     */
+    public synchronized int lookup(String s) {
+        Integer code = codes.get(s);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Like {@link #lookup}, but remembers the last field it was asked about,
+     * so comparing every value of a column against the same predicate
+     * constant costs a hash lookup only once.
+     *
+     * @return the code of f's value, or -1 if it is not in the dictionary
+     */
+    public int codeOf(StringField f) {
+        Probe probe = lastProbe;
+        if (probe != null && probe.field == f && (probe.code >= 0 || probe.size == size)) {
+            return probe.code;
+        }
+        int currentSize = size;
+        int code = lookup(f.getValue());
+        lastProbe = new Probe(f, code, currentSize);
+        return code;
+    }
+
+    /** @return the number of strings in the dictionary */
+    public int size() {
+        return size;
+    }
+}
@@ -66,6 +66,38 @@ public class StringField implements Field {
 			dos.write((byte) 0);
 	}
 
+	/**
+	 * Write this string to data at offset, in the format of
+	 * {@link #serialize(DataOutputStream)}: always writes maxSize + 4 bytes.
+	 */
+	public int serialize(byte[] data, int offset) {
+		int len = Math.min(value.length(), maxSize);
+		data[offset] = (byte) (len >>> 24);
+		data[offset + 1] = (byte) (len >>> 16);
+		data[offset + 2] = (byte) (len >>> 8);
+		data[offset + 3] = (byte) len;
+		// like DataOutputStream.writeBytes, keep the low byte of each char
+		for (int i = 0; i < len; i++) {
+			data[offset + 4 + i] = (byte) value.charAt(i);
+		}
+		java.util.Arrays.fill(data, offset + 4 + len, offset + 4 + maxSize, (byte) 0);
+		return 4 + maxSize;
+	}
+
+	/**
+	 * Write this string to dos using only as many bytes as it needs: two
+	 * bytes of string length followed by the string, with no padding. Used
+	 * by pages that store variable-length records.
+	 * 
+	 * @param dos
+	 *            Where the string is written
+	 * @see Type#parseCompact
+	 */
+	public void serializeCompact(DataOutputStream dos) throws IOException {
+		dos.writeShort(value.length());
+		dos.writeBytes(value);
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
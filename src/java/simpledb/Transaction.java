@@ -55,8 +55,9 @@ public class Transaction {
                 e.printStackTrace();
             }
             
-            // write commit log record
-            if (!abort) {
+            // write commit log record, unless the BufferPool had to write
+            // it already, see BufferPool.transactionComplete
+            if (!abort && Database.getLogFile().isActive(tid)) {
             	Database.getLogFile().logCommit(tid);
             }
 
@@ -0,0 +1,22 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * A file that keeps the changes of a running transaction itself, off the
+ * pages, and has to be told when the transaction completes.  It enlists
+ * with {@link BufferPool#enlist} when a transaction first changes it.
+ */
+public interface TransactionListener {
+
+    /**
+     * Makes the changes of tid durable and visible if it committed, or
+     * drops them if it aborted.  Called by
+     * {@link BufferPool#transactionComplete(TransactionId, boolean)} while
+     * tid still holds its locks, and after its COMMIT record is in the log.
+     *
+     * @param tid the transaction that completed
+     * @param commit true if tid committed, false if it aborted
+     */
+    void transactionComplete(TransactionId tid, boolean commit) throws IOException;
+}
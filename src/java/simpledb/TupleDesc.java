@@ -166,6 +166,27 @@ public class TupleDesc implements Serializable {
         return size;
     }
 
+    /**
+     * Project this TupleDesc onto some of its fields.
+     *
+     * @param fields
+     *            indexes of the fields to keep, in the order they should
+     *            appear in the result
+     * @return a TupleDesc with fields.length fields, field i being field
+     *         fields[i] of this TupleDesc
+     * @throws NoSuchElementException
+     *             if an index is not a valid field reference.
+     */
+    public TupleDesc project(int[] fields) throws NoSuchElementException {
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = getFieldType(fields[i]);
+            names[i] = getFieldName(fields[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,91 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is a Page that stores the tuples of a single table, in slots
+ * addressed by the tuple number of a RecordId.  It is what a HeapFile
+ * needs from its pages, so HeapFile can work with different page layouts.
+ *
+ * @see HeapPage
+ * @see SlottedHeapPage
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * @return true if t can be added to this page with
+     *   {@link #insertTuple}
+     */
+    public boolean hasRoomFor(Tuple t);
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     *
+     * @throws DbException if the page has no room for t or its TupleDesc
+     *   does not match
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over the tuples on this page (calling remove on
+     *   it throws UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * Returns the tuple in the specified slot, or null if the slot is
+     * empty.  Pages that can address a slot directly override this instead
+     * of searching their tuples.
+     *
+     * @param slot the tuple number of a RecordId on this page
+     */
+    default Tuple getTuple(int slot) {
+        Iterator<Tuple> it = iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getTupleNumber() == slot) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an iterator over some columns of the tuples on this page.
+     * The tuples returned have only the requested fields, as described by
+     * {@link TupleDesc#project}, and the RecordId of the full tuple.  Pages
+     * that can decode single columns override this to skip the others.
+     *
+     * @param columns the indexes of the fields to return
+     */
+    default Iterator<Tuple> iterator(final int[] columns) {
+        final Iterator<Tuple> it = iterator();
+        return new Iterator<Tuple>() {
+            private TupleDesc projected;
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public Tuple next() {
+                Tuple t = it.next();
+                if (projected == null) {
+                    projected = t.getTupleDesc().project(columns);
+                }
+                Tuple p = new Tuple(projected);
+                for (int i = 0; i < columns.length; i++) {
+                    p.setField(i, t.getField(columns[i]));
+                }
+                p.setRecordId(t.getRecordId());
+                return p;
+            }
+        };
+    }
+}
@@ -42,6 +42,27 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public int getCompactLen(Field f) {
+            return 2 + ((StringField) f).getValue().length();
+        }
+
+        @Override
+        public void serializeCompact(Field f, DataOutputStream dos) throws IOException {
+            ((StringField) f).serializeCompact(dos);
+        }
+
+        @Override
+        public Field parseCompact(DataInputStream dis) throws ParseException {
+            try {
+                byte bs[] = new byte[dis.readUnsignedShort()];
+                dis.readFully(bs);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +81,30 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return the number of bytes f takes in the compact, variable-length
+   *   encoding used by {@link SlottedHeapPage}.  Same as getLen() for
+   *   fixed-length types.
+   */
+    public int getCompactLen(Field f) {
+        return getLen();
+    }
+
+  /**
+   * Writes f in the compact, variable-length encoding.
+   * @see #getCompactLen
+   */
+    public void serializeCompact(Field f, DataOutputStream dos) throws IOException {
+        f.serialize(dos);
+    }
+
+  /**
+   * @return a Field of this type read from the compact, variable-length
+   *   encoding.
+   * @see #getCompactLen
+   */
+    public Field parseCompact(DataInputStream dis) throws ParseException {
+        return parse(dis);
+    }
+
 }
@@ -0,0 +1,218 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ZoneMap keeps the smallest and largest value of every int column of every
+ * page of a {@link HeapFile}, so a scan with a range or equality predicate
+ * on an int column can skip the pages that can't hold a matching tuple.
+ * For data loaded in order of the column (e.g. the year of a venue) most
+ * pages are skipped.
+ * <p>
+ * The zone map of the table stored in f is kept in {@link #zoneFile}(f), an
+ * entry per page, in page order, of a min and a max (4 bytes each) per int
+ * column.  A page with no tuples has min &gt; max.  The entry of a page is
+ * recomputed from the page whenever the HeapFile writes it, and the
+ * in-memory entry is widened whenever a tuple is inserted into the page in
+ * the BufferPool, so it always covers both the page on disk and the page
+ * in memory.  Deletes only narrow an entry once the page is written.
+ * Pages with no entry (e.g. pages added to the file by something other
+ * than the HeapFile) are never skipped.
+ *
+ * @see HeapFile#createZoneMap
+ * @Threadsafe
+ */
+public class ZoneMap {
+
+    private final File file;
+    private final int[] intColumns;  // indexes of the int fields
+    private final int entrySize;
+    // mins and maxs of page p are at [p * intColumns.length + i]
+    private int[] mins = new int[0];
+    private int[] maxs = new int[0];
+    private int numPages;
+
+    /**
+     * Opens the zone map stored in f for a table with the specified schema,
+     * or an empty one if f does not exist.
+     *
+     * @throws IOException if f can't be read
+     */
+    public ZoneMap(File f, TupleDesc td) throws IOException {
+        this.file = f;
+        int n = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                n++;
+            }
+        }
+        intColumns = new int[n];
+        for (int i = 0, j = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                intColumns[j++] = i;
+            }
+        }
+        entrySize = 8 * n;
+        if (f.exists() && entrySize > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+                int pages = (int) (f.length() / entrySize);
+                ensureCapacity(pages);
+                for (int p = 0; p < pages; p++) {
+                    for (int i = 0; i < n; i++) {
+                        mins[p * n + i] = in.readInt();
+                        maxs[p * n + i] = in.readInt();
+                    }
+                }
+                numPages = pages;
+            }
+        }
+    }
+
+    /**
+     * @return the file that stores the zone map of the table stored in f
+     */
+    public static File zoneFile(File f) {
+        return new File(f.getPath() + ".zones");
+    }
+
+    /** @return the number of pages this zone map has entries for */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    private void ensureCapacity(int pages) {
+        int n = intColumns.length;
+        if (pages * n > mins.length) {
+            int size = Math.max(pages * n, mins.length * 2);
+            mins = Arrays.copyOf(mins, size);
+            maxs = Arrays.copyOf(maxs, size);
+        }
+    }
+
+    /**
+     * Adds entries up to and including page pgNo that cover every value, so
+     * the pages are never skipped.
+     */
+    private void extendTo(int pgNo) {
+        ensureCapacity(pgNo + 1);
+        int n = intColumns.length;
+        for (int p = numPages; p <= pgNo; p++) {
+            for (int i = 0; i < n; i++) {
+                mins[p * n + i] = Integer.MIN_VALUE;
+                maxs[p * n + i] = Integer.MAX_VALUE;
+            }
+        }
+        numPages = Math.max(numPages, pgNo + 1);
+    }
+
+    /**
+     * Widens the entry of page pgNo to include the values of t, which has
+     * just been inserted into the page.
+     */
+    public synchronized void widen(int pgNo, Tuple t) {
+        if (pgNo >= numPages) {
+            return;  // no entry; the page is never skipped
+        }
+        int n = intColumns.length;
+        for (int i = 0; i < n; i++) {
+            int v = ((IntField) t.getField(intColumns[i])).getValue();
+            mins[pgNo * n + i] = Math.min(mins[pgNo * n + i], v);
+            maxs[pgNo * n + i] = Math.max(maxs[pgNo * n + i], v);
+        }
+    }
+
+    /**
+     * Recomputes the entry of page pgNo from its tuples and writes it to the
+     * zone map file; called when the page is written.
+     *
+     * @throws IOException if the entry can't be written
+     */
+    public synchronized void update(int pgNo, Iterator<Tuple> tuples) throws IOException {
+        if (intColumns.length == 0) {
+            return;
+        }
+        int n = intColumns.length;
+        int[] lo = new int[n];
+        int[] hi = new int[n];
+        Arrays.fill(lo, Integer.MAX_VALUE);
+        Arrays.fill(hi, Integer.MIN_VALUE);
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            for (int i = 0; i < n; i++) {
+                int v = ((IntField) t.getField(intColumns[i])).getValue();
+                lo[i] = Math.min(lo[i], v);
+                hi[i] = Math.max(hi[i], v);
+            }
+        }
+        extendTo(pgNo);
+        // entries before pgNo that were only in memory must reach the file
+        // too, or their positions would be wrong
+        long onDisk = file.length() / entrySize;
+        try (RandomAccessFile w = new RandomAccessFile(file, "rw")) {
+            w.seek(Math.min(onDisk, pgNo) * entrySize);
+            for (long p = Math.min(onDisk, pgNo); p < pgNo; p++) {
+                for (int i = 0; i < n; i++) {
+                    w.writeInt(mins[(int) p * n + i]);
+                    w.writeInt(maxs[(int) p * n + i]);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                mins[pgNo * n + i] = lo[i];
+                maxs[pgNo * n + i] = hi[i];
+                w.writeInt(lo[i]);
+                w.writeInt(hi[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns false if no tuple of page pgNo can pass p, true if some tuple
+     * might.
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate p) {
+        if (pgNo >= numPages || !(p.getOperand() instanceof IntField)) {
+            return true;
+        }
+        int n = intColumns.length;
+        int i = Arrays.binarySearch(intColumns, p.getField());
+        if (i < 0) {
+            return true;
+        }
+        int min = mins[pgNo * n + i];
+        int max = maxs[pgNo * n + i];
+        if (min > max) {
+            return false;  // no tuples
+        }
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns false if no tuple of page pgNo can pass all of the predicates.
+     */
+    public boolean mayMatch(int pgNo, Predicate[] predicates) {
+        for (Predicate p : predicates) {
+            if (!mayMatch(pgNo, p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileEncoderTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+
+    private TupleDesc td;
+    private File dat;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"id", "year"});
+        dat = File.createTempFile("venues", ".dat");
+        dat.deleteOnExit();
+    }
+
+    private Tuple tuple(int id, int year) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new IntField(year));
+        return t;
+    }
+
+    /** @return tuples with ids 0 to n - 1, in a shuffled order */
+    private List<Tuple> shuffled(int n) {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(tuple(i, 1900 + i % 100));
+        }
+        Collections.shuffle(tuples, new Random(43));
+        return tuples;
+    }
+
+    private BTreeFile open(int keyField) {
+        BTreeFile bf = new BTreeFile(dat, keyField, td);
+        Database.getCatalog().addTable(bf, "venues");
+        return bf;
+    }
+
+    private List<Integer> keys(BTreeFile bf, IndexPredicate ipred) throws Exception {
+        List<Integer> keys = new ArrayList<>();
+        TransactionId tid = new TransactionId();
+        OpIterator it = new IndexScan(tid, bf.getId(), "v", ipred);
+        it.open();
+        while (it.hasNext()) {
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return keys;
+    }
+
+    /**
+     * Unit test for the external sort: runs spilled to disk merge back in
+     * order.
+     */
+    @Test public void externalSort() throws Exception {
+        try (ExternalSort sort = new ExternalSort(td, 1, 1000)) {
+            for (Tuple t : shuffled(ROWS)) {
+                sort.add(t);
+            }
+            Iterator<Tuple> it = sort.sorted();
+            assertEquals(ROWS / 1000, sort.numRuns());
+            Tuple last = null;
+            int n = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (last != null) {
+                    assertTrue(ExternalSort.comparator(td, 1).compare(last, t) < 0);
+                }
+                last = t;
+                n++;
+            }
+            assertEquals(ROWS, n);
+        }
+    }
+
+    /**
+     * Unit test for bulk loading: the tree holds every tuple in key order,
+     * its leaves are filled to the fill factor, and lookups work.
+     */
+    @Test public void bulkLoad() throws Exception {
+        BTreeFileEncoder.convert(shuffled(ROWS).iterator(), dat, td, 0, 0.5);
+        BTreeFile bf = open(0);
+        int perLeaf = BTreeLeafPage.getMaxTuples(td) / 2;
+        int leaves = (ROWS + perLeaf - 1) / perLeaf;
+        // one internal page holds every leaf, so the tree has two levels
+        assertEquals(leaves + 1, bf.numPages());
+
+        List<Integer> keys = keys(bf, null);
+        assertEquals(ROWS, keys.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(i, (int) keys.get(i));
+        }
+        assertEquals(Collections.singletonList(12345),
+                keys(bf, new IndexPredicate(Predicate.Op.EQUALS, new IntField(12345))));
+        assertEquals(100, keys(bf, new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100))).size());
+    }
+
+    /**
+     * Unit test for the levels above the leaves: a full tree of three levels
+     * is built with every key findable, including duplicates spanning
+     * several leaves.
+     */
+    @Test public void internalLevels() throws Exception {
+        int rows = 300000;
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            tuples.add(tuple(i, 1990 + i / 1000));
+        }
+        BTreeFileEncoder.bulkLoad(tuples.iterator(), dat, td, 1, 1.0);
+        BTreeFile bf = open(1);
+        assertTrue(bf.numPages() > rows / BTreeLeafPage.getMaxTuples(td) + 2);
+        TransactionId tid = new TransactionId();
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+                BTreeRootPtrPage.getId(bf.getId()), Permissions.READ_ONLY);
+        assertEquals(BTreePageId.INTERNAL, rootPtr.getRootId().pgcateg());
+        Database.getBufferPool().transactionComplete(tid);
+        for (int year : new int[]{1990, 2035, 2289}) {
+            List<Integer> ids = keys(bf, new IndexPredicate(Predicate.Op.EQUALS, new IntField(year)));
+            assertEquals(1000, ids.size());
+            assertEquals((year - 1990) * 1000, (int) ids.get(0));
+        }
+    }
+
+    /**
+     * Unit test for updates after a load: inserts split the full pages and
+     * deletes still find their tuples.
+     */
+    @Test public void updateAfterLoad() throws Exception {
+        List<Tuple> even = new ArrayList<>();
+        for (int i = 0; i < ROWS; i += 2) {
+            even.add(tuple(i, 2000));
+        }
+        BTreeFileEncoder.bulkLoad(even.iterator(), dat, td, 0, 1.0);
+        BTreeFile bf = open(0);
+        TransactionId tid = new TransactionId();
+        for (int i = 1; i < ROWS; i += 2) {
+            Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(i, 2001));
+        }
+        IndexPredicate range = new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(ROWS / 2));
+        Delete delete = new Delete(tid, new IndexScan(tid, bf.getId(), "v", range));
+        delete.open();
+        assertEquals(ROWS / 2, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+        List<Integer> keys = keys(bf, null);
+        assertEquals(ROWS / 2, keys.size());
+        for (int i = 0; i < ROWS / 2; i++) {
+            assertEquals(ROWS / 2 + i, (int) keys.get(i));
+        }
+    }
+
+    /**
+     * Unit test for an empty load: the tree is empty and takes inserts.
+     */
+    @Test public void empty() throws Exception {
+        BTreeFileEncoder.bulkLoad(Collections.<Tuple>emptyIterator(), dat, td, 0, 0.9);
+        BTreeFile bf = open(0);
+        assertTrue(keys(bf, null).isEmpty());
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(7, 2000));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(Collections.singletonList(7), keys(bf, null));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileEncoderTest.class);
+    }
+}
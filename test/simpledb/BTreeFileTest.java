@@ -0,0 +1,227 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingBTreeFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+
+    private TupleDesc td;
+    private File dat;
+    private CountingBTreeFile bf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"id", "year"});
+        dat = File.createTempFile("venues", ".dat");
+        dat.delete();
+        dat.deleteOnExit();
+        bf = new CountingBTreeFile(dat, 0, td);
+        Database.getCatalog().addTable(bf, "venues");
+    }
+
+    private Tuple tuple(int id, int year) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new IntField(year));
+        return t;
+    }
+
+    /** Inserts ids 0 to ROWS - 1 in a shuffled order, then commits. */
+    private void load() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(41));
+        TransactionId tid = new TransactionId();
+        for (int id : ids) {
+            Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(id, 1900 + id % 100));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private List<Integer> keys(OpIterator it) throws Exception {
+        List<Integer> keys = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return keys;
+    }
+
+    /**
+     * Unit test for inserts: splits leave every tuple in the tree, in key
+     * order.
+     */
+    @Test public void insertAndScan() throws Exception {
+        load();
+        assertTrue(bf.numPages() > ROWS / BTreeLeafPage.getMaxTuples(td));
+        TransactionId tid = new TransactionId();
+        List<Integer> keys = keys(new IndexScan(tid, bf.getId(), "v", null));
+        assertEquals(ROWS, keys.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(i, (int) keys.get(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for lookups: an equality predicate reads one path from the
+     * root, and range predicates return exactly the range.
+     */
+    @Test public void lookupAndRange() throws Exception {
+        load();
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bf.reads = 0;
+        TransactionId tid = new TransactionId();
+        IndexPredicate eq = new IndexPredicate(Predicate.Op.EQUALS, new IntField(12345));
+        assertEquals(Collections.singletonList(12345), keys(new IndexScan(tid, bf.getId(), "v", eq)));
+        assertTrue("read " + bf.reads + " pages", bf.reads <= 4);
+
+        IndexPredicate lt = new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100));
+        assertEquals(100, keys(new IndexScan(tid, bf.getId(), "v", lt)).size());
+        IndexPredicate gte = new IndexPredicate(Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - 300));
+        List<Integer> keys = keys(new IndexScan(tid, bf.getId(), "v", gte));
+        assertEquals(300, keys.size());
+        assertEquals(ROWS - 300, (int) keys.get(0));
+        IndexPredicate none = new IndexPredicate(Predicate.Op.GREATER_THAN, new IntField(ROWS));
+        assertTrue(keys(new IndexScan(tid, bf.getId(), "v", none)).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for deletes: deleting most of the tuples through an index
+     * scan merges pages, and the freed pages are reused by later inserts.
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        load();
+        TransactionId tid = new TransactionId();
+        IndexPredicate range = new IndexPredicate(Predicate.Op.GREATER_THAN_OR_EQ, new IntField(1000));
+        Delete delete = new Delete(tid, new IndexScan(tid, bf.getId(), "v", range));
+        delete.open();
+        assertEquals(ROWS - 1000, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        List<Integer> keys = keys(new IndexScan(tid, bf.getId(), "v", null));
+        assertEquals(1000, keys.size());
+        assertEquals(999, (int) keys.get(999));
+        Database.getBufferPool().transactionComplete(tid);
+
+        int pages = bf.numPages();
+        tid = new TransactionId();
+        for (int i = 1000; i < 5000; i++) {
+            Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(i, 2000));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, bf.numPages());
+    }
+
+    /**
+     * Unit test for duplicate keys: a key that fills several leaves is
+     * found in full.
+     */
+    @Test public void duplicateKeys() throws Exception {
+        BTreeFile years = new BTreeFile(File.createTempFile("years", ".dat"), 1, td);
+        years.getFile().delete();
+        years.getFile().deleteOnExit();
+        Database.getCatalog().addTable(years, "years");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            Database.getBufferPool().insertTuple(tid, years.getId(), tuple(i, 1990 + i % 3));
+        }
+        IndexPredicate eq = new IndexPredicate(Predicate.Op.EQUALS, new IntField(1991));
+        Set<Integer> ids = new HashSet<>(keys(new IndexScan(tid, years.getId(), "y", eq)));
+        assertEquals(1000, ids.size());
+        for (int id : ids) {
+            assertEquals(1, id % 3);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for scans below updates: a scan of a key that fills
+     * several leaves returns each tuple once while the tree changes under
+     * it, even when its leaves are evicted and read again, and a Delete
+     * deletes every one of a run of identical tuples.
+     */
+    @Test public void duplicateKeysWhileUpdating() throws Exception {
+        BTreeFile years = new BTreeFile(File.createTempFile("years", ".dat"), 1, td);
+        years.getFile().delete();
+        years.getFile().deleteOnExit();
+        Database.getCatalog().addTable(years, "years");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            Database.getBufferPool().insertTuple(tid, years.getId(), tuple(i, 1990 + i % 3));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(6);
+
+        tid = new TransactionId();
+        IndexPredicate eq = new IndexPredicate(Predicate.Op.EQUALS, new IntField(1991));
+        DbFileIterator it = years.indexIterator(tid, eq);
+        List<Integer> ids = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(0)).getValue());
+            if (ids.size() % 100 == 0) {
+                Database.getBufferPool().insertTuple(tid, years.getId(), tuple(ids.size(), 2050));
+            }
+        }
+        it.close();
+        assertEquals(1000, ids.size());
+        assertEquals(1000, new HashSet<>(ids).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        for (int i = 0; i < 600; i++) {
+            Database.getBufferPool().insertTuple(tid, years.getId(), tuple(7, 2000));
+        }
+        IndexPredicate same = new IndexPredicate(Predicate.Op.EQUALS, new IntField(2000));
+        Delete delete = new Delete(tid, new IndexScan(tid, years.getId(), "y", same));
+        delete.open();
+        assertEquals(600, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        assertTrue(keys(new IndexScan(tid, years.getId(), "y", same)).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for reopening: the tree is found again in the file.
+     */
+    @Test public void reopen() throws Exception {
+        load();
+        Database.getBufferPool().flushAllPages();
+        Database.reset();
+        BTreeFile reopened = new BTreeFile(dat, 0, td);
+        Database.getCatalog().addTable(reopened, "venues");
+        TransactionId tid = new TransactionId();
+        IndexPredicate lte = new IndexPredicate(Predicate.Op.LESS_THAN_OR_EQ, new IntField(9));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                keys(new IndexScan(tid, reopened.getId(), "v", lte)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
@@ -0,0 +1,248 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BitmapHeapScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File dir;
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "type", "block"});
+        dir = File.createTempFile("venues", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File txt = new File(dir, "venues.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + "," + (i % 4) + "," + (i / 1000) + "\n");
+            }
+        }
+        File dat = new File(dir, "venues.dat");
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), 3, TYPES, ',');
+        hf = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "venues");
+        for (String name : new String[]{"venues.txt", "venues.dat", "catalog.txt"}) {
+            new File(dir, name).deleteOnExit();
+        }
+    }
+
+    private void addIndexes() throws Exception {
+        Database.getCatalog().addBitmapIndex(hf.getId(), "type");
+        Database.getCatalog().addBitmapIndex(hf.getId(), "block");
+    }
+
+    private static BitmapHeapScan.Condition cond(int field, Predicate.Op op, int value) {
+        return BitmapHeapScan.Condition.of(new Predicate(field, op, new IntField(value)));
+    }
+
+    /** @return the ids of the tuples of the iterator, in iteration order */
+    private static List<Integer> ids(OpIterator it) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return ids;
+    }
+
+    /** @return the ids of the tuples of the table that satisfy c, in table order */
+    private List<Integer> expected(TransactionId tid, BitmapHeapScan.Condition c) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (c.filter(t)) {
+                ids.add(((IntField) t.getField(0)).getValue());
+            }
+        }
+        it.close();
+        return ids;
+    }
+
+    /**
+     * Unit test for building the indexes from the tuples in the table.
+     */
+    @Test public void build() throws Exception {
+        addIndexes();
+        List<BitmapIndex> indexes = Database.getCatalog().getBitmapIndexes(hf.getId());
+        assertEquals(2, indexes.size());
+        assertEquals(4, indexes.get(0).numValues());
+        assertEquals(ROWS / 1000, indexes.get(1).numValues());
+        assertEquals(ROWS / 4, indexes.get(0).lookup(Predicate.Op.EQUALS, new IntField(3)).cardinality());
+        assertEquals(ROWS / 2, indexes.get(0).lookup(Predicate.Op.LESS_THAN, new IntField(2)).cardinality());
+        assertEquals(3 * ROWS / 4, indexes.get(0).lookup(Predicate.Op.NOT_EQUALS, new IntField(2)).cardinality());
+        assertTrue(indexes.get(0).lookup(Predicate.Op.EQUALS, new IntField(4)).isEmpty());
+        // a few bytes per tuple at most
+        assertTrue(indexes.get(0).sizeInBytes() < ROWS * 3);
+    }
+
+    /**
+     * Unit test for AND and OR: the scan returns the tuples that satisfy
+     * the condition, in table order.
+     */
+    @Test public void andOr() throws Exception {
+        addIndexes();
+        TransactionId tid = new TransactionId();
+        BitmapHeapScan.Condition[] conditions = {
+            BitmapHeapScan.Condition.and(cond(1, Predicate.Op.EQUALS, 2), cond(2, Predicate.Op.GREATER_THAN_OR_EQ, 15)),
+            BitmapHeapScan.Condition.or(cond(1, Predicate.Op.EQUALS, 1), cond(2, Predicate.Op.EQUALS, 7)),
+            BitmapHeapScan.Condition.and(
+                    BitmapHeapScan.Condition.or(cond(1, Predicate.Op.EQUALS, 0), cond(1, Predicate.Op.EQUALS, 3)),
+                    cond(2, Predicate.Op.LESS_THAN, 2), cond(2, Predicate.Op.NOT_EQUALS, 0)),
+            // id has no index; the AND checks it on the tuples read
+            BitmapHeapScan.Condition.and(cond(2, Predicate.Op.EQUALS, 4), cond(0, Predicate.Op.GREATER_THAN, 4500)),
+        };
+        for (BitmapHeapScan.Condition c : conditions) {
+            assertTrue(c.toString(), BitmapHeapScan.hasIndex(hf.getId(), c));
+            List<Integer> expected = expected(tid, c);
+            assertFalse(expected.isEmpty());
+            assertEquals(c.toString(), expected, ids(new BitmapHeapScan(tid, hf.getId(), "v", c)));
+        }
+        BitmapHeapScan.Condition unindexed = BitmapHeapScan.Condition.or(cond(1, Predicate.Op.EQUALS, 1),
+                cond(0, Predicate.Op.EQUALS, 7));
+        assertFalse(BitmapHeapScan.hasIndex(hf.getId(), unindexed));
+        try {
+            ids(new BitmapHeapScan(tid, hf.getId(), "v", unindexed));
+            fail("an OR with an unindexed predicate can't be answered from the indexes");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for reading: the scan reads only the pages with tuples
+     * that may satisfy the condition, each once.
+     */
+    @Test public void readsFewPages() throws Exception {
+        addIndexes();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads = 0;
+        TransactionId tid = new TransactionId();
+        BitmapHeapScan.Condition c = BitmapHeapScan.Condition.and(cond(1, Predicate.Op.EQUALS, 1),
+                cond(2, Predicate.Op.EQUALS, 3));
+        assertEquals(1000 / 4, ids(new BitmapHeapScan(tid, hf.getId(), "v", c)).size());
+        int tuplesPerPage = ROWS / hf.numPages();
+        assertTrue(hf.reads + " reads", hf.reads <= 1000 / tuplesPerPage + 2);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for keeping the indexes up to date: inserts are seen at
+     * once and removed on abort, deletes are removed on commit.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        addIndexes();
+        BitmapIndex types = Database.getCatalog().getBitmapIndexes(hf.getId()).get(0);
+        BitmapHeapScan.Condition type9 = cond(1, Predicate.Op.EQUALS, 9);
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(9));
+        t.setField(2, new IntField(0));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(Collections.singletonList(ROWS), ids(new BitmapHeapScan(tid, hf.getId(), "v", type9)));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(4, types.numValues());
+
+        tid = new TransactionId();
+        assertTrue(ids(new BitmapHeapScan(tid, hf.getId(), "v", type9)).isEmpty());
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5, types.numValues());
+
+        tid = new TransactionId();
+        Delete delete = new Delete(tid, new BitmapHeapScan(tid, hf.getId(), "v", type9));
+        delete.open();
+        assertEquals(1, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        assertTrue(ids(new BitmapHeapScan(tid, hf.getId(), "v", type9)).isEmpty());
+        assertEquals(5, types.numValues());
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(4, types.numValues());
+    }
+
+    /** @return the BitmapHeapScan in the plan, or null */
+    private static BitmapHeapScan findScan(OpIterator plan) {
+        if (plan instanceof BitmapHeapScan) {
+            return (BitmapHeapScan) plan;
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                BitmapHeapScan scan = findScan(child);
+                if (scan != null) {
+                    return scan;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Unit test for the planner: filters on fields with bitmap indexes are
+     * answered by a BitmapHeapScan.
+     */
+    @Test public void physicalPlan() throws Exception {
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "v");
+        lp.addFilter("v.type", Predicate.Op.EQUALS, "2");
+        lp.addFilter("v.block", Predicate.Op.LESS_THAN, "3");
+        lp.addProjectField("v.id", null);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("venues", new TableStats(hf.getId(), 1));
+        assertNull(findScan(lp.physicalPlan(tid, stats, false)));
+
+        addIndexes();
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        assertNotNull(findScan(plan));
+        BitmapHeapScan.Condition c = BitmapHeapScan.Condition.and(cond(1, Predicate.Op.EQUALS, 2),
+                cond(2, Predicate.Op.LESS_THAN, 3));
+        assertEquals(expected(tid, c), ids(plan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for declaring a bitmap index in the catalog file.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("venues (id int pk, type int bitmap, block int)\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        int tableid = Database.getCatalog().getTableId("venues");
+        List<BitmapIndex> indexes = Database.getCatalog().getBitmapIndexes(tableid);
+        assertEquals(1, indexes.size());
+        assertEquals(1, indexes.get(0).getColumn());
+        assertEquals(4, indexes.get(0).numValues());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BitmapHeapScanTest.class);
+    }
+}
@@ -0,0 +1,201 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolArenaTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 504 tuples per page of two int columns, so 8 pages
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, tuples);
+        tid = new TransactionId();
+    }
+
+    private HeapPageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    private void touch(BufferPool bp, int pgNo) throws Exception {
+        bp.getPage(tid, pid(pgNo), Permissions.READ_ONLY);
+        bp.unpinPage(tid, pid(pgNo));
+    }
+
+    /**
+     * Unit test for FrameArena frames keeping their contents separately.
+     */
+    @Test public void arenaFrames() {
+        FrameArena arena = new FrameArena(3, 16);
+        int a = arena.allocate();
+        int b = arena.allocate();
+        arena.write(a, new byte[]{1, 2, 3});
+        arena.write(b, new byte[]{4, 5});
+        assertEquals(1, arena.numFreeFrames());
+        assertEquals(3, arena.read(a)[2]);
+        assertEquals(5, arena.read(b)[1]);
+        assertEquals(0, arena.read(b)[2]);
+
+        assertTrue(arena.allocate() >= 0);
+        assertEquals(-1, arena.allocate());
+        arena.free(a);
+        assertEquals(a, arena.allocate());
+    }
+
+    /**
+     * Unit test for evicted pages coming back from the arena instead of
+     * the disk, with the same contents.
+     */
+    @Test public void missesServedFromArena() throws Exception {
+        BufferPool bp = Database.resetBufferPool(2, 8);
+        for (int i = 0; i < 8; i++) {
+            touch(bp, i);
+        }
+        assertEquals(6, bp.getArenaPages());
+        assertEquals(0, bp.getArenaHits());
+
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertTrue(bp.getArenaHits() >= 6);
+    }
+
+    /**
+     * Unit test for a full arena dropping the page that has been there
+     * longest.
+     */
+    @Test public void fullArenaDropsOldest() throws Exception {
+        BufferPool bp = Database.resetBufferPool(1, 2);
+        for (int i = 0; i < 4; i++) {
+            touch(bp, i);
+        }
+        // pages 0, 1 and 2 were evicted, and page 0 pushed out of the arena
+        assertEquals(2, bp.getArenaPages());
+        touch(bp, 0);
+        assertEquals(0, bp.getArenaHits());
+        touch(bp, 2);
+        assertEquals(1, bp.getArenaHits());
+    }
+
+    /**
+     * Unit test for discardPage() and discardPages() also dropping the
+     * arena copies, so a page rewritten underneath the pool isn't served
+     * stale.
+     */
+    @Test public void discardDropsArenaCopy() throws Exception {
+        BufferPool bp = Database.resetBufferPool(1, 4);
+        touch(bp, 0);
+        touch(bp, 1);
+        assertEquals(1, bp.getArenaPages());
+        bp.discardPage(pid(0));
+        assertEquals(0, bp.getArenaPages());
+        touch(bp, 0);
+        assertEquals(0, bp.getArenaHits());
+
+        for (int i = 2; i < 6; i++) {
+            touch(bp, i);
+        }
+        assertEquals(4, bp.getArenaPages());
+        bp.discardPages(hf.getId());
+        assertEquals(0, bp.getArenaPages());
+        for (int i = 0; i < 6; i++) {
+            touch(bp, i);
+        }
+        assertEquals(0, bp.getArenaHits());
+        assertEquals(4, bp.getArenaPages());
+    }
+
+    /** A HeapPage with a second constructor besides (id, data). */
+    static class TwoConstructorPage extends HeapPage {
+        TwoConstructorPage(HeapPageId id) throws IOException {
+            this(id, HeapPage.createEmptyPageData());
+        }
+
+        public TwoConstructorPage(HeapPageId id, byte[] data) throws IOException {
+            super(id, data);
+        }
+    }
+
+    /**
+     * Unit test for a page whose class has more than one constructor being
+     * rebuilt from the arena with its (id, data) constructor.
+     */
+    @Test public void pageWithTwoConstructors() throws Exception {
+        HeapFile file = new HeapFile(hf.getFile(), hf.getTupleDesc()) {
+            @Override
+            public Page readPage(PageId pid) {
+                try {
+                    return new TwoConstructorPage((HeapPageId) pid, super.readPage(pid).getPageData());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Database.getCatalog().addTable(file, "two");
+        BufferPool bp = Database.resetBufferPool(1, 4);
+        HeapPageId first = new HeapPageId(file.getId(), 0);
+        HeapPageId second = new HeapPageId(file.getId(), 1);
+        bp.getPage(tid, first, Permissions.READ_ONLY);
+        bp.unpinPage(tid, first);
+        bp.getPage(tid, second, Permissions.READ_ONLY);
+        bp.unpinPage(tid, second);
+
+        Page page = bp.getPage(tid, first, Permissions.READ_ONLY);
+        assertEquals(1, bp.getArenaHits());
+        assertTrue(page instanceof TwoConstructorPage);
+        assertEquals(0, ((HeapPage) page).getNumEmptySlots());
+    }
+
+    /** A HeapPage that can't be built from its id and data alone. */
+    static class TaggedPage extends HeapPage {
+        TaggedPage(HeapPageId id, byte[] data, int tag) throws IOException {
+            super(id, data);
+        }
+    }
+
+    /**
+     * Unit test for pages without an (id, data) constructor being left out
+     * of the arena, and read from disk again.
+     */
+    @Test public void pageWithoutConstructorSkipped() throws Exception {
+        HeapFile file = new HeapFile(hf.getFile(), hf.getTupleDesc()) {
+            @Override
+            public Page readPage(PageId pid) {
+                try {
+                    return new TaggedPage((HeapPageId) pid, super.readPage(pid).getPageData(), 1);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Database.getCatalog().addTable(file, "tagged");
+        BufferPool bp = Database.resetBufferPool(1, 4);
+        for (int pgNo = 0; pgNo < 3; pgNo++) {
+            HeapPageId pid = new HeapPageId(file.getId(), pgNo);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        assertEquals(0, bp.getArenaPages());
+        Page page = bp.getPage(tid, new HeapPageId(file.getId(), 0), Permissions.READ_ONLY);
+        assertTrue(page instanceof TaggedPage);
+        assertEquals(0, bp.getArenaHits());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolArenaTest.class);
+    }
+}
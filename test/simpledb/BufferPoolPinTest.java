@@ -0,0 +1,111 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private TransactionId tid;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 504 tuples per page of two int columns, so 6 pages
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, new ArrayList<ArrayList<Integer>>());
+        bp = Database.resetBufferPool(2);
+        tid = new TransactionId();
+    }
+
+    private HeapPageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    /**
+     * Unit test for getPage() refusing to evict pinned pages.
+     */
+    @Test public void pinnedPagesAreNotEvicted() throws Exception {
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        assertTrue(bp.isPinned(pid(0)));
+        assertTrue(bp.isPinned(pid(1)));
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected DbException, all pages are pinned");
+        } catch (DbException e) {
+            // expected
+        }
+
+        bp.unpinPage(tid, pid(0));
+        assertFalse(bp.isPinned(pid(0)));
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        assertTrue(bp.isPinned(pid(1)));
+    }
+
+    /**
+     * Unit test for pin counts: a page stays pinned until every pin is released.
+     */
+    @Test public void pinCounts() throws Exception {
+        TransactionId tid2 = new TransactionId();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid2, pid(0), Permissions.READ_ONLY);
+
+        bp.unpinPage(tid, pid(0));
+        bp.unpinPage(tid, pid(0));
+        // unpinning a page that isn't pinned by tid has no effect
+        bp.unpinPage(tid, pid(0));
+        assertTrue(bp.isPinned(pid(0)));
+        bp.unpinPage(tid2, pid(0));
+        assertFalse(bp.isPinned(pid(0)));
+    }
+
+    /**
+     * Unit test for transactionComplete() dropping leftover pins.
+     */
+    @Test public void transactionCompleteReleasesPins() throws Exception {
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_WRITE);
+        bp.transactionComplete(tid);
+        assertFalse(bp.isPinned(pid(0)));
+        assertFalse(bp.isPinned(pid(1)));
+    }
+
+    /**
+     * Unit test for HeapFile's iterator holding one pin at a time, so a
+     * scan works with a pool smaller than the table.
+     */
+    @Test public void scanUnpinsPages() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+            if (count == 504 * 3) {
+                assertFalse(bp.isPinned(pid(1)));
+                assertTrue(bp.isPinned(pid(2)) || bp.isPinned(pid(3)));
+            }
+        }
+        assertEquals(504 * 6, count);
+        it.close();
+        for (int i = 0; i < 6; i++) {
+            assertFalse(bp.isPinned(pid(i)));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPinTest.class);
+    }
+}
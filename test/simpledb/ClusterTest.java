@@ -0,0 +1,334 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ClusterTest extends SimpleDbTestBase {
+    private static final int ROWS = 10000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File dir;
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "kind", "amount"});
+        dir = File.createTempFile("orders", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File txt = new File(dir, "orders.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                // the ids in a scrambled order
+                int id = (int) ((long) i * 7919 % ROWS);
+                bw.write(id + "," + (id % 7) + "," + (ROWS - id) + "\n");
+            }
+        }
+        File dat = new File(dir, "orders.dat");
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), 3, TYPES, ',');
+        hf = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "orders");
+        for (String name : new String[]{"orders.txt", "orders.dat", "orders.kind.idx", "catalog.txt"}) {
+            new File(dir, name).deleteOnExit();
+        }
+    }
+
+    /** @return the values of field i of the tuples of the iterator, in order */
+    private static List<Integer> values(DbFileIterator it, int i) throws Exception {
+        List<Integer> values = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            values.add(((IntField) it.next().getField(i)).getValue());
+        }
+        it.close();
+        return values;
+    }
+
+    /** @return the ids of the tuples of the iterator, in order */
+    private static List<Integer> ids(OpIterator it) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return ids;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Unit test for clustering: the tuples are rewritten in order of the
+     * field, and the indexes of the table find them at their new places.
+     */
+    @Test public void cluster() throws Exception {
+        Database.getCatalog().addIndex(hf.getId(), "kind", new File(dir, "orders.kind.idx"));
+        Database.getCatalog().addBitmapIndex(hf.getId(), "kind");
+        int pages = hf.numPages();
+        assertEquals(-1, Database.getCatalog().getClusterField(hf.getId()));
+
+        Database.getCatalog().cluster(hf.getId(), "id");
+        assertEquals(0, Database.getCatalog().getClusterField(hf.getId()));
+        assertEquals(pages, hf.numPages());
+        TransactionId tid = new TransactionId();
+        assertEquals(range(0, ROWS), values(hf.iterator(tid), 0));
+
+        List<Integer> kind3 = new ArrayList<>();
+        for (int id = 3; id < ROWS; id += 7) {
+            kind3.add(id);
+        }
+        SecondaryIndex index = Database.getCatalog().getIndexes(hf.getId()).get(0);
+        assertEquals(kind3, values(index.tuples(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(3))), 0));
+        BitmapHeapScan.Condition c = BitmapHeapScan.Condition.of(
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(3)));
+        assertEquals(1, Database.getCatalog().getBitmapIndexes(hf.getId()).size());
+        assertEquals(kind3, ids(new BitmapHeapScan(tid, hf.getId(), "o", c)));
+        Database.getBufferPool().transactionComplete(tid);
+
+        // clustering on another field reorders the table again
+        Database.getCatalog().cluster(hf.getId(), "amount");
+        assertEquals(2, Database.getCatalog().getClusterField(hf.getId()));
+        tid = new TransactionId();
+        List<Integer> descending = range(0, ROWS);
+        Collections.reverse(descending);
+        assertEquals(descending, values(hf.iterator(tid), 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for range scans: a scan with a range on the clustered field
+     * reads only the pages of the range, plus a few for the binary search.
+     */
+    @Test public void rangeScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(4000)));
+        scan.addFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(4500)));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads = 0;
+        assertEquals(500, ids(scan).size());
+        assertEquals(hf.numPages(), hf.reads);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.getCatalog().cluster(hf.getId(), "id");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads = 0;
+        tid = new TransactionId();
+        assertEquals(range(4000, 4500), ids(scan));
+        int tuplesPerPage = ROWS / hf.numPages();
+        int log2 = 32 - Integer.numberOfLeadingZeros(hf.numPages());
+        assertTrue(hf.reads + " reads", hf.reads <= 500 / tuplesPerPage + 2 + log2);
+
+        // equality and open ranges
+        scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.EQUALS, new IntField(ROWS - 1)));
+        assertEquals(Collections.singletonList(ROWS - 1), ids(scan));
+        scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(10)));
+        assertEquals(range(0, 11), ids(scan));
+        scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(ROWS)));
+        assertTrue(ids(scan).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the ids of the tuples with the value in field i, by a SeqScan */
+    private List<Integer> equal(TransactionId tid, int i, int value) throws Exception {
+        SeqScan scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(i, Predicate.Op.EQUALS, new IntField(value)));
+        return ids(scan);
+    }
+
+    /**
+     * Unit test for equality on the clustered field: any value is found,
+     * in the middle of a page or of the table, at page boundaries, and
+     * across the pages its duplicates fill, reading few pages.
+     */
+    @Test public void equalityScan() throws Exception {
+        Database.getCatalog().cluster(hf.getId(), "id");
+        int tuplesPerPage = ROWS / hf.numPages();
+        int log2 = 32 - Integer.numberOfLeadingZeros(hf.numPages());
+        TransactionId tid = new TransactionId();
+        for (int id : new int[]{0, tuplesPerPage / 2, tuplesPerPage - 1, tuplesPerPage,
+                ROWS / 2 + tuplesPerPage / 2, 4000, ROWS - 1}) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            hf.reads = 0;
+            assertEquals(Collections.singletonList(id), equal(tid, 0, id));
+            assertTrue(hf.reads + " reads", hf.reads <= 2 + log2);
+        }
+        assertTrue(equal(tid, 0, -1).isEmpty());
+        assertTrue(equal(tid, 0, ROWS).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // a value whose duplicates span many pages
+        Database.getCatalog().cluster(hf.getId(), "kind");
+        tid = new TransactionId();
+        List<Integer> kind3 = new ArrayList<>();
+        for (int id = 3; id < ROWS; id += 7) {
+            kind3.add(id);
+        }
+        List<Integer> actual = equal(tid, 1, 3);
+        Collections.sort(actual);
+        assertEquals(kind3, actual);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for deletes and inserts: deleted tuples leave the order
+     * intact, an insert makes the table unclustered.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        Database.getCatalog().cluster(hf.getId(), "id");
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100)));
+        Delete delete = new Delete(tid, new Filter(
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(0)), scan));
+        delete.open();
+        assertEquals(15, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, Database.getCatalog().getClusterField(hf.getId()));
+
+        tid = new TransactionId();
+        scan = new SeqScan(tid, hf.getId(), "o");
+        scan.addFilter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - 20)));
+        assertEquals(range(ROWS - 20, ROWS), ids(scan));
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(0));
+        t.setField(2, new IntField(0));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(-1, Database.getCatalog().getClusterField(hf.getId()));
+        List<Integer> expected = range(ROWS - 20, ROWS + 1);
+        List<Integer> actual = ids(scan);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for recovery: a crash after clustering doesn't apply the
+     * logged images of the table's pages from before the rewrite.
+     */
+    @Test public void recoveryAfterCluster() throws Exception {
+        TransactionId tid = new TransactionId();
+        Delete delete = new Delete(tid, new Filter(
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(5)), new SeqScan(tid, hf.getId(), "o")));
+        delete.open();
+        assertEquals(1, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getCatalog().cluster(hf.getId(), "id");
+
+        // crash and recover
+        Database.reset();
+        HeapFile reopened = new HeapFile(hf.getFile(), td);
+        Database.getCatalog().addTable(reopened, "orders");
+        Database.getLogFile().recover();
+        List<Integer> expected = range(0, ROWS);
+        expected.remove(Integer.valueOf(5));
+        tid = new TransactionId();
+        assertEquals(expected, values(reopened.iterator(tid), 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return true if the plan has an OrderBy */
+    private static boolean sorts(OpIterator plan) {
+        if (plan instanceof OrderBy) {
+            return true;
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (sorts(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unit test for the planner: ORDER BY the clustered field needs no
+     * sort, and a range on it is read with a SeqScan.
+     */
+    @Test public void physicalPlan() throws Exception {
+        Database.getCatalog().addBitmapIndex(hf.getId(), "id");
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "o");
+        lp.addFilter("o.id", Predicate.Op.LESS_THAN, "50");
+        lp.addFilter("o.kind", Predicate.Op.EQUALS, "1");
+        lp.addProjectField("o.id", null);
+        lp.addOrderBy("o.id", true);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("orders", new TableStats(hf.getId(), 1));
+        TransactionId tid = new TransactionId();
+        assertTrue(sorts(lp.physicalPlan(tid, stats, false)));
+
+        Database.getCatalog().cluster(hf.getId(), "id");
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        assertFalse(sorts(plan));
+        assertEquals(Arrays.asList(1, 8, 15, 22, 29, 36, 43), ids(plan));
+
+        LogicalPlan desc = new LogicalPlan();
+        desc.addScan(hf.getId(), "o");
+        desc.addProjectField("o.id", null);
+        desc.addOrderBy("o.id", false);
+        assertTrue(sorts(desc.physicalPlan(tid, stats, false)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for the clustered annotation of the catalog file and the
+     * CLUSTER statement.
+     */
+    @Test public void loadSchemaAndParse() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("orders (id int pk clustered, kind int, amount int)\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        int tableid = Database.getCatalog().getTableId("orders");
+        assertEquals(0, Database.getCatalog().getClusterField(tableid));
+        TransactionId tid = new TransactionId();
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        assertEquals(range(0, ROWS), values(file.iterator(tid), 0));
+        Database.getBufferPool().transactionComplete(tid);
+
+        new Parser().processNextStatement("CLUSTER orders ON kind;");
+        assertEquals(1, Database.getCatalog().getClusterField(tableid));
+        tid = new TransactionId();
+        List<Integer> kinds = values(file.iterator(tid), 1);
+        List<Integer> sorted = new ArrayList<>(kinds);
+        Collections.sort(sorted);
+        assertEquals(sorted, kinds);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ClusterTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+
+    /** A ColumnFile that counts the pages read from each column. */
+    private static class CountingColumnFile extends ColumnFile {
+        final int[] reads = new int[TYPES.length];
+
+        CountingColumnFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads[((ColumnPageId) pid).getColumn()]++;
+            return super.readPage(pid);
+        }
+    }
+
+    private TupleDesc td;
+    private CountingColumnFile cf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "title", "year", "venue"});
+        File txt = File.createTempFile("papers", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + ",paper " + i + "," + (1990 + i / 100) + "," + (i % 7) + "\n");
+            }
+        }
+        File dat = File.createTempFile("papers", ".dat");
+        dat.deleteOnExit();
+        for (int i = 0; i < TYPES.length; i++) {
+            ColumnFile.columnFile(dat, i).deleteOnExit();
+        }
+        HeapFileEncoder.convertColumns(txt, dat, BufferPool.getPageSize(), 4, TYPES, ',');
+        cf = new CountingColumnFile(dat, td);
+        Database.getCatalog().addTable(cf, "papers");
+    }
+
+    private void checkRow(Tuple t) {
+        int id = ((IntField) t.getField(0)).getValue();
+        assertEquals("paper " + id, ((StringField) t.getField(1)).getValue());
+        assertEquals(new IntField(1990 + id / 100), t.getField(2));
+        assertEquals(new IntField(id % 7), t.getField(3));
+    }
+
+    /**
+     * Unit test for reading back a ColumnFile loaded by HeapFileEncoder.
+     */
+    @Test public void scan() throws Exception {
+        assertEquals((ROWS + ColumnPage.valuesPerPage(Type.INT_TYPE) - 1) / ColumnPage.valuesPerPage(Type.INT_TYPE),
+                cf.numPages(0));
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, cf.getId(), "p");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            checkRow(scan.next());
+            n++;
+        }
+        scan.close();
+        assertEquals(ROWS, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a scan of two columns: the files of the others are not
+     * read.
+     */
+    @Test public void projectedScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, cf.getId(), "p", new int[]{3, 0});
+        assertEquals("p.venue", scan.getTupleDesc().getFieldName(0));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            int id = ((IntField) t.getField(1)).getValue();
+            assertEquals(new IntField(id % 7), t.getField(0));
+            n++;
+        }
+        scan.close();
+        assertEquals(ROWS, n);
+        assertEquals(0, cf.reads[1]);
+        assertEquals(0, cf.reads[2]);
+        assertEquals(cf.numPages(3), cf.reads[3]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for late materialization: with a selective filter, only the
+     * pages of the other columns that hold matching tuples are read.
+     */
+    @Test public void filteredScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate year = new Predicate(2, Predicate.Op.EQUALS, new IntField(1995));
+        SeqScan scan = new SeqScan(tid, cf.getId(), "p", new int[]{1}, new Predicate[]{year});
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(1, t.getTupleDesc().numFields());
+            assertTrue(((StringField) t.getField(0)).getValue().startsWith("paper 5"));
+            n++;
+        }
+        scan.close();
+        assertEquals(100, n);
+        assertEquals(cf.numPages(2), cf.reads[2]);
+        assertTrue(cf.reads[1] <= 100 / ColumnPage.valuesPerPage(Type.STRING_TYPE) + 2);
+        assertTrue(cf.reads[1] < cf.numPages(1) / 4);
+        assertEquals(0, cf.reads[0]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for inserting and deleting through the BufferPool.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("paper " + ROWS, Type.STRING_LEN));
+        t.setField(2, new IntField(1990 + ROWS / 100));
+        t.setField(3, new IntField(ROWS % 7));
+        Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+
+        Predicate first = new Predicate(0, Predicate.Op.EQUALS, new IntField(0));
+        SeqScan scan = new SeqScan(tid, cf.getId(), "p", new int[]{0, 1, 2, 3}, new Predicate[]{first});
+        scan.open();
+        Tuple victim = scan.next();
+        assertFalse(scan.hasNext());
+        scan.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        int n = 0;
+        boolean found = false;
+        while (it.hasNext()) {
+            Tuple r = it.next();
+            checkRow(r);
+            assertFalse(((IntField) r.getField(0)).getValue() == 0);
+            found |= r.getRecordId().equals(t.getRecordId());
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+        assertTrue(found);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File dat;
+    private CompressedHeapFile cf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"paperid", "authorid"});
+        File txt = File.createTempFile("paperauths", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i / 3 + "," + (i * 7) % 1000 + "\n");
+            }
+        }
+        dat = File.createTempFile("paperauths", ".dat");
+        dat.deleteOnExit();
+        CompressedHeapFile.mapFile(dat).deleteOnExit();
+        HeapFileEncoder.convertCompressed(txt, dat, BufferPool.getPageSize(), 2, TYPES, ',');
+        cf = new CompressedHeapFile(dat, td);
+        Database.getCatalog().addTable(cf, "paperauths");
+    }
+
+    /**
+     * Unit test for PageCompressor on pages that compress and pages that
+     * don't.
+     */
+    @Test public void compressorRoundTrip() {
+        Random r = new Random(0);
+        byte[] zeros = new byte[4096];
+        byte[] noise = new byte[4096];
+        r.nextBytes(noise);
+        byte[] mixed = new byte[4096];
+        for (int i = 0; i < mixed.length; i += 4) {
+            mixed[i + 3] = (byte) r.nextInt(16);
+        }
+        for (byte[] src : new byte[][]{zeros, noise, mixed, new byte[0], new byte[]{1, 2, 3}}) {
+            byte[] image = PageCompressor.compress(src);
+            byte[] dst = new byte[src.length];
+            PageCompressor.decompress(image, image.length, dst);
+            assertArrayEquals(src, dst);
+        }
+        assertTrue(PageCompressor.compress(zeros).length < 64);
+    }
+
+    /**
+     * Unit test for a compressed table: fewer bytes on disk, same tuples.
+     */
+    @Test public void scan() throws Exception {
+        assertEquals((ROWS + 503) / 504, cf.numPages());
+        assertTrue(cf.getStoredBytes() < cf.numPages() * BufferPool.getPageSize() / 2);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new IntField(n / 3), t.getField(0));
+            assertEquals(new IntField((n * 7) % 1000), t.getField(1));
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for updating pages: pages that grow are moved, and the
+     * table survives flushing and reopening.
+     */
+    @Test public void updateAndReopen() throws Exception {
+        Random r = new Random(1);
+        TransactionId tid = new TransactionId();
+        int inserted = 600;
+        for (int i = 0; i < inserted; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(r.nextInt()));
+            t.setField(1, new IntField(r.nextInt()));
+            Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        CompressedHeapFile reopened = new CompressedHeapFile(dat, td);
+        Database.getCatalog().addTable(reopened, "paperauths");
+        tid = new TransactionId();
+        DbFileIterator it = reopened.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS + inserted, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
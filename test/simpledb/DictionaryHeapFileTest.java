@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class DictionaryHeapFileTest extends SimpleDbTestBase {
+    private static final String[] VENUES = {"SIGMOD", "VLDB", "ICDE", "PODS", "CIDR"};
+    private static final int ROWS = 1000;
+
+    private TupleDesc td;
+    private File dat;
+    private DictionaryHeapFile df;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "venue"});
+        File txt = File.createTempFile("venues", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + "," + VENUES[i % VENUES.length] + "\n");
+            }
+        }
+        dat = File.createTempFile("venues", ".dat");
+        dat.deleteOnExit();
+        DictionaryHeapFile.dictionaryFile(dat, 1).deleteOnExit();
+        boolean[] encoded = {false, true};
+        HeapFileEncoder.convertDictionary(txt, dat, BufferPool.getPageSize(), 2,
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, encoded, ',');
+        df = new DictionaryHeapFile(dat, td, encoded);
+        Database.getCatalog().addTable(df, "venues");
+    }
+
+    private int count(OpIterator it) throws Exception {
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * Unit test for pages of codes: 8 bytes a tuple instead of 136, and
+     * values read back as DictStringFields.
+     */
+    @Test public void scan() throws Exception {
+        assertEquals(5, df.getDictionary(1).size());
+        assertNull(df.getDictionary(0));
+        assertEquals(2, df.numPages());
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = df.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertTrue(t.getField(1) instanceof DictStringField);
+            assertEquals(VENUES[id % VENUES.length], ((StringField) t.getField(1)).getValue());
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for equality predicates and GROUP BY on an encoded column.
+     */
+    @Test public void filterAndGroup() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new StringField("VLDB", Type.STRING_LEN));
+        assertEquals(ROWS / VENUES.length, count(new Filter(p, new SeqScan(tid, df.getId(), "v"))));
+        p = new Predicate(1, Predicate.Op.NOT_EQUALS, new StringField("VLDB", Type.STRING_LEN));
+        assertEquals(ROWS - ROWS / VENUES.length, count(new Filter(p, new SeqScan(tid, df.getId(), "v"))));
+        p = new Predicate(1, Predicate.Op.EQUALS, new StringField("KDD", Type.STRING_LEN));
+        assertEquals(0, count(new Filter(p, new SeqScan(tid, df.getId(), "v"))));
+
+        Aggregate agg = new Aggregate(new SeqScan(tid, df.getId(), "v"), 0, 1, Aggregator.Op.COUNT);
+        agg.open();
+        int groups = 0;
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            assertEquals(ROWS / VENUES.length, ((IntField) t.getField(1)).getValue());
+            groups++;
+        }
+        agg.close();
+        assertEquals(VENUES.length, groups);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for inserting a new value: it is added to the dictionary
+     * and survives flushing and reopening the table.
+     */
+    @Test public void insertNewValue() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("KDD", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, df.getId(), t);
+        assertEquals(6, df.getDictionary(1).size());
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        DictionaryHeapFile reopened = new DictionaryHeapFile(dat, td, new boolean[]{false, true});
+        Database.getCatalog().addTable(reopened, "venues");
+        tid = new TransactionId();
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new StringField("KDD", Type.STRING_LEN));
+        Filter f = new Filter(p, new SeqScan(tid, reopened.getId(), "v"));
+        f.open();
+        assertTrue(f.hasNext());
+        assertEquals(new IntField(ROWS), f.next().getField(0));
+        assertFalse(f.hasNext());
+        f.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for forcing the dictionary: new strings are on disk once a
+     * page holding their codes is committed, without flushing the page.
+     */
+    @Test public void forcedOnCommit() throws Exception {
+        File dict = DictionaryHeapFile.dictionaryFile(dat, 1);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 20; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(ROWS + i));
+            t.setField(1, new StringField("venue" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, df.getId(), t);
+        }
+        assertEquals(25, df.getDictionary(1).size());
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(25, new StringDictionary(dict).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictionaryHeapFileTest.class);
+    }
+}
@@ -0,0 +1,187 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHashFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+
+    private TupleDesc td;
+    private File dat;
+    private CountingHashFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"id", "year"});
+        dat = File.createTempFile("papers", ".dat");
+        dat.delete();
+        dat.deleteOnExit();
+        hf = new CountingHashFile(dat, 0, td);
+        Database.getCatalog().addTable(hf, "papers");
+    }
+
+    private Tuple tuple(int id, int year) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new IntField(year));
+        return t;
+    }
+
+    /** Inserts ids 0 to rows - 1, then commits. */
+    private void load(int rows) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int id = 0; id < rows; id++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(id, 1900 + id % 100));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private List<Integer> keys(TransactionId tid, IndexPredicate ipred) throws Exception {
+        List<Integer> keys = new ArrayList<>();
+        OpIterator it = new IndexScan(tid, hf.getId(), "p", ipred);
+        it.open();
+        while (it.hasNext()) {
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Unit test for inserts: splits keep every tuple in the file and keep
+     * the buckets from growing long chains.
+     */
+    @Test public void insertAndScan() throws Exception {
+        load(ROWS);
+        int minPages = ROWS / HashBucketPage.getMaxTuples(td);
+        assertTrue(hf.numPages() + " pages", hf.numPages() > minPages && hf.numPages() < 5 * minPages / 2);
+        TransactionId tid = new TransactionId();
+        Set<Integer> ids = new HashSet<>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            assertTrue(ids.add(((IntField) it.next().getField(0)).getValue()));
+        }
+        it.close();
+        assertEquals(ROWS, ids.size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for lookups: a point lookup reads a bucket, and only a
+     * constant number of pages from disk.
+     */
+    @Test public void lookup() throws Exception {
+        load(ROWS);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads = 0;
+        TransactionId tid = new TransactionId();
+        IndexPredicate eq = new IndexPredicate(Predicate.Op.EQUALS, new IntField(12345));
+        assertEquals(Collections.singletonList(12345), keys(tid, eq));
+        assertTrue("read " + hf.reads + " pages", hf.reads <= 4);
+        for (int id = 0; id < ROWS; id += 997) {
+            assertEquals(Collections.singletonList(id), keys(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(id))));
+        }
+        assertTrue(keys(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(ROWS))).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for duplicate keys: all tuples with a key are in its
+     * bucket, even when they fill several pages.
+     */
+    @Test public void duplicateKeys() throws Exception {
+        HashFile years = new HashFile(File.createTempFile("years", ".dat"), 1, td);
+        years.getFile().delete();
+        years.getFile().deleteOnExit();
+        Database.getCatalog().addTable(years, "years");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 6000; i++) {
+            Database.getBufferPool().insertTuple(tid, years.getId(), tuple(i, 1990 + i % 3));
+        }
+        DbFileIterator it = years.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(1991)));
+        Set<Integer> ids = new HashSet<>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(1991, ((IntField) t.getField(1)).getValue());
+            ids.add(((IntField) t.getField(0)).getValue());
+        }
+        it.close();
+        assertEquals(2000, ids.size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for deletes and aborts: deleted tuples are gone, and an
+     * aborted insert that split buckets leaves the committed tuples where
+     * lookups find them.  The table stays small enough for the BufferPool
+     * to hold every page the aborted transaction changes.
+     */
+    @Test public void deleteAndAbort() throws Exception {
+        int rows = 2000;
+        load(rows);
+        TransactionId tid = new TransactionId();
+        IndexPredicate eq = new IndexPredicate(Predicate.Op.EQUALS, new IntField(500));
+        Delete delete = new Delete(tid, new IndexScan(tid, hf.getId(), "p", eq));
+        delete.open();
+        assertEquals(1, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertTrue(keys(tid, eq).isEmpty());
+        int pages = hf.numPages();
+        for (int id = rows; id < 2 * rows; id++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(id, 2000));
+        }
+        assertTrue(hf.numPages() > pages);
+        IndexPredicate added = new IndexPredicate(Predicate.Op.EQUALS, new IntField(rows + 7));
+        assertEquals(Collections.singletonList(rows + 7), keys(tid, added));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertTrue(keys(tid, added).isEmpty());
+        for (int id = 0; id < rows; id += 7) {
+            assertEquals(Collections.singletonList(id), keys(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(id))));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for reopening: the buckets are found again in the file.
+     */
+    @Test public void reopen() throws Exception {
+        load(ROWS);
+        Database.getBufferPool().flushAllPages();
+        Database.reset();
+        HashFile reopened = new HashFile(dat, 0, td);
+        Database.getCatalog().addTable(reopened, "papers");
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = reopened.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(4242)));
+        it.open();
+        assertEquals(1942, ((IntField) it.next().getField(1)).getValue());
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashFileTest.class);
+    }
+}
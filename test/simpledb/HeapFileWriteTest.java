@@ -1,5 +1,9 @@
 package simpledb;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -89,6 +93,34 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.writePages() with an unsorted batch containing
+     * both adjacent and non-adjacent pages
+     */
+    @Test public void writePages() throws Exception {
+        int tableId = empty.getId();
+        List<Page> pages = new ArrayList<>();
+        for (int pgNo : new int[]{4, 1, 0, 5, 2}) {
+            HeapPage p = new HeapPage(new HeapPageId(tableId, pgNo), HeapPage.createEmptyPageData());
+            p.insertTuple(Utility.getHeapTuple(pgNo, 2));
+            pages.add(p);
+        }
+        empty.writePages(pages);
+
+        // page 3 was never written, so it reads back as an empty page
+        assertEquals(6, empty.numPages());
+        for (int pgNo = 0; pgNo < 6; pgNo++) {
+            HeapPage p = (HeapPage) empty.readPage(new HeapPageId(tableId, pgNo));
+            Iterator<Tuple> it = p.iterator();
+            if (pgNo == 3) {
+                assertFalse(it.hasNext());
+            } else {
+                assertEquals(pgNo, ((IntField) it.next().getField(0)).getValue());
+                assertFalse(it.hasNext());
+            }
+        }
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,9 +1,13 @@
 package simpledb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -126,6 +130,58 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage before images: the bytes the page was read
+     * from until setBeforeImage(), then the contents at that point, even
+     * after later changes.
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA;
+        HeapPage page = new HeapPage(pid, data);
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        assertArrayEquals(data, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        page.deleteTuple(page.iterator().next());
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * Unit test for HeapPage.writePageData(): writes the same bytes as
+     * getPageData(), and as serializing each field through a stream, even
+     * into a reused array holding another page.
+     */
+    @Test public void writePageData() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData());
+        page.deleteTuple(page.iterator().next());
+        byte[] buffer = new byte[BufferPool.getPageSize()];
+        Arrays.fill(buffer, (byte) 0x55);
+        page.writePageData(buffer);
+        assertArrayEquals(page.getPageData(), buffer);
+
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        Database.getCatalog().addTable(new SkeletonFile(-2, td), SystemTestUtil.getUUID());
+        HeapPage strings = new HeapPage(new HeapPageId(-2, 0), HeapPage.createEmptyPageData());
+        ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(fields);
+        for (int i = 0; i < 3; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+            strings.insertTuple(t);
+            t.getField(0).serialize(dos);
+            t.getField(1).serialize(dos);
+        }
+        strings.writePageData(buffer);
+        byte[] tuples = Arrays.copyOfRange(buffer, strings.header.length, strings.header.length + fields.size());
+        assertArrayEquals(fields.toByteArray(), tuples);
+        assertArrayEquals(strings.getPageData(), new HeapPage(strings.getId(), buffer.clone()).getPageData());
+    }
+
     /**
      * JUnit suite target
      */
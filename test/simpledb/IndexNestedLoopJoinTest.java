@@ -0,0 +1,231 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int PAPERS = 3000;
+    private static final int AUTHORS = 200;
+
+    private TupleDesc td;
+    private HeapFile authors;
+    private HeapFile papers;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"id", "year"});
+        authors = new HeapFile(tempFile("authors"), new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"id", "paper"}));
+        Database.getCatalog().addTable(authors, "authors");
+        papers = new HeapFile(tempFile("papers"), td);
+        Database.getCatalog().addTable(papers, "papers");
+        Random random = new Random(6830);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < AUTHORS; i++) {
+            Database.getBufferPool().insertTuple(tid, authors.getId(), tuple(authors.getTupleDesc(), i,
+                    random.nextInt(PAPERS + 100)));
+        }
+        for (Tuple t : papers()) {
+            Database.getBufferPool().insertTuple(tid, papers.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static File tempFile(String name) throws Exception {
+        File f = File.createTempFile(name, ".dat");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static Tuple tuple(TupleDesc td, int a, int b) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(a));
+        t.setField(1, new IntField(b));
+        return t;
+    }
+
+    private List<Tuple> papers() {
+        List<Tuple> papers = new ArrayList<>();
+        for (int id = 0; id < PAPERS; id++) {
+            papers.add(tuple(td, id, 1900 + id % 100));
+        }
+        return papers;
+    }
+
+    private BTreeFile btreePapers() throws Exception {
+        File f = tempFile("papers_btree");
+        BTreeFileEncoder.bulkLoad(papers().iterator(), f, td, 0, BTreeFileEncoder.DEFAULT_FILL_FACTOR);
+        BTreeFile bf = new BTreeFile(f, 0, td);
+        Database.getCatalog().addTable(bf, "papers_btree");
+        return bf;
+    }
+
+    private HashFile hashPapers() throws Exception {
+        HashFile hf = new HashFile(tempFile("papers_hash"), 0, td);
+        Database.getCatalog().addTable(hf, "papers_hash");
+        TransactionId tid = new TransactionId();
+        for (Tuple t : papers()) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return hf;
+    }
+
+    /** @return the tuples of the iterator, in sorted order */
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /** @return the result of a nested loops Join of authors with papers */
+    private List<String> expected(TransactionId tid, JoinPredicate p) throws Exception {
+        return rows(new Join(p, new SeqScan(tid, authors.getId(), "a"), new SeqScan(tid, papers.getId(), "p")));
+    }
+
+    private List<String> actual(TransactionId tid, JoinPredicate p, int tableid) throws Exception {
+        return rows(new IndexNestedLoopJoin(tid, p, new SeqScan(tid, authors.getId(), "a"), tableid, "p"));
+    }
+
+    /**
+     * Unit test for getTupleDesc: the same as that of a Join with a
+     * SeqScan of the table.
+     */
+    @Test public void getTupleDesc() throws Exception {
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        OpIterator outer = new SeqScan(tid, authors.getId(), "a");
+        assertEquals(new Join(p, outer, new SeqScan(tid, papers.getId(), "p")).getTupleDesc(),
+                new IndexNestedLoopJoin(tid, p, outer, papers.getId(), "p").getTupleDesc());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a B+ tree inner table: equality and range joins give
+     * the tuples a nested loops Join does.
+     */
+    @Test public void btreeFile() throws Exception {
+        BTreeFile bf = btreePapers();
+        TransactionId tid = new TransactionId();
+        JoinPredicate eq = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        List<String> expected = expected(tid, eq);
+        assertTrue(expected.size() > AUTHORS / 2);
+        assertEquals(expected, actual(tid, eq, bf.getId()));
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.GREATER_THAN, Predicate.Op.LESS_THAN_OR_EQ}) {
+            JoinPredicate range = new JoinPredicate(1, op, 0);
+            assertEquals(expected(tid, range), actual(tid, range, bf.getId()));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a hash inner table: equality joins give the tuples a
+     * nested loops Join does, and other joins can't use the index.
+     */
+    @Test public void hashFile() throws Exception {
+        HashFile hf = hashPapers();
+        TransactionId tid = new TransactionId();
+        JoinPredicate eq = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        assertEquals(expected(tid, eq), actual(tid, eq, hf.getId()));
+        assertFalse(IndexNestedLoopJoin.hasIndex(hf.getId(), 0, Predicate.Op.LESS_THAN));
+        assertFalse(IndexNestedLoopJoin.hasIndex(hf.getId(), 1, Predicate.Op.EQUALS));
+        try {
+            actual(tid, new JoinPredicate(1, Predicate.Op.LESS_THAN, 0), hf.getId());
+            fail("a hash index can't answer a range join");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a heap inner table with a secondary index on the join
+     * field, which need not be unique.
+     */
+    @Test public void secondaryIndex() throws Exception {
+        File idx = tempFile("papers_year");
+        Database.getCatalog().addIndex(papers.getId(), "year", idx);
+        assertTrue(IndexNestedLoopJoin.hasIndex(papers.getId(), 1, Predicate.Op.EQUALS));
+        TransactionId tid = new TransactionId();
+        List<Tuple> years = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            years.add(tuple(td, i, 1900 + i * 3));
+        }
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.LESS_THAN}) {
+            JoinPredicate p = new JoinPredicate(1, op, 1);
+            OpIterator yearsScan = new TupleIterator(td, years);
+            List<String> expected = rows(new Join(p, yearsScan, new SeqScan(tid, papers.getId(), "p")));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, rows(new IndexNestedLoopJoin(tid, p, yearsScan, papers.getId(), "p")));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for JoinOptimizer.instantiateJoin: it chooses an index
+     * nested loop join when the inner table has an index on the join field
+     * and is larger than a probe, and reapplies the filters of the inner
+     * plan above it.
+     */
+    @Test public void instantiateJoin() throws Exception {
+        BTreeFile bf = btreePapers();
+        TransactionId tid = new TransactionId();
+        LogicalJoinNode lj = new LogicalJoinNode("a", "p", "a.paper", "p.id", Predicate.Op.EQUALS);
+
+        OpIterator plan2 = new SeqScan(tid, bf.getId(), "p");
+        OpIterator j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, authors.getId(), "a"), plan2);
+        assertTrue(j instanceof IndexNestedLoopJoin);
+        assertEquals(expected(tid, new JoinPredicate(1, Predicate.Op.EQUALS, 0)), rows(j));
+
+        Predicate before1950 = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1950));
+        plan2 = new Filter(before1950, new SeqScan(tid, bf.getId(), "p"));
+        j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, authors.getId(), "a"), plan2);
+        assertTrue(j instanceof Filter);
+        assertTrue(j.getTupleDesc().equals(new Join(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, authors.getId(), "a"), plan2).getTupleDesc()));
+        List<String> expected = rows(new Filter(new Predicate(3, Predicate.Op.LESS_THAN, new IntField(1950)),
+                new Join(new JoinPredicate(1, Predicate.Op.EQUALS, 0), new SeqScan(tid, authors.getId(), "a"),
+                        new SeqScan(tid, papers.getId(), "p"))));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(j));
+
+        // no index on the join field
+        j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, authors.getId(), "a"),
+                new SeqScan(tid, papers.getId(), "p"));
+        assertTrue(j instanceof Join);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // a one page table is as cheap to scan as to probe
+        File f = tempFile("tiny");
+        BTreeFileEncoder.bulkLoad(papers().subList(0, 10).iterator(), f, td, 0, BTreeFileEncoder.DEFAULT_FILL_FACTOR);
+        BTreeFile tiny = new BTreeFile(f, 0, td);
+        Database.getCatalog().addTable(tiny, "tiny");
+        tid = new TransactionId();
+        j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, authors.getId(), "a"),
+                new SeqScan(tid, tiny.getId(), "p"));
+        assertTrue(j instanceof Join);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
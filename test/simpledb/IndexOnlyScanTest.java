@@ -0,0 +1,254 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IndexOnlyScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+    private static final int COLUMNS = 8;
+
+    private TupleDesc td;
+    private File dir;
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        String[] names = new String[COLUMNS];
+        names[0] = "id";
+        names[1] = "year";
+        for (int i = 2; i < COLUMNS; i++) {
+            names[i] = "c" + i;
+        }
+        td = new TupleDesc(Utility.getTypes(COLUMNS), names);
+        dir = File.createTempFile("papers", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File txt = new File(dir, "papers.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + "," + (1900 + i % 100));
+                for (int j = 2; j < COLUMNS; j++) {
+                    bw.write("," + j);
+                }
+                bw.write("\n");
+            }
+        }
+        File dat = new File(dir, "papers.dat");
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), COLUMNS, Utility.getTypes(COLUMNS), ',');
+        hf = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "papers");
+        for (String name : new String[]{"papers.txt", "papers.dat", "papers.year.idx", "catalog.txt"}) {
+            new File(dir, name).deleteOnExit();
+        }
+    }
+
+    private SecondaryIndex yearIndex() throws Exception {
+        return Database.getCatalog().addIndex(hf.getId(), "year", new File(dir, "papers.year.idx"), "id");
+    }
+
+    /** @return the (id, year) pairs of the tuples of the iterator */
+    private static List<String> rows(OpIterator it, int idField, int yearField) throws Exception {
+        List<String> rows = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.add(t.getField(idField) + " " + t.getField(yearField));
+        }
+        it.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Unit test for the entries: they store the included fields, and the
+     * scan returns the stored fields in table order.
+     */
+    @Test public void entries() throws Exception {
+        SecondaryIndex index = yearIndex();
+        assertArrayEquals(new int[]{0}, index.getIncludedColumns());
+        assertEquals(0, index.entryField(1));
+        assertEquals(1, index.entryField(0));
+        assertEquals(-1, index.entryField(2));
+        assertEquals(4, index.getFile().getTupleDesc().numFields());
+
+        TransactionId tid = new TransactionId();
+        IndexPredicate y1905 = new IndexPredicate(Predicate.Op.EQUALS, new IntField(1905));
+        IndexOnlyScan scan = new IndexOnlyScan(tid, index, "p", y1905);
+        assertEquals(new TupleDesc(Utility.getTypes(2), new String[]{"p.id", "p.year"}), scan.getTupleDesc());
+        Filter expected = new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(1905)),
+                new SeqScan(tid, hf.getId(), "p"));
+        assertEquals(rows(expected, 0, 1), rows(scan, 0, 1));
+        assertEquals(ROWS / 100, rows(scan, 0, 1).size());
+
+        // the RecordIds are those of the table tuples
+        scan.open();
+        Tuple t = scan.next();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(),
+                Permissions.READ_ONLY);
+        assertEquals(t.getField(0), page.getTuple(t.getRecordId().getTupleNumber()).getField(0));
+        Database.getBufferPool().unpinPage(tid, page.getId());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for reading: a scan reads no pages of the table.
+     */
+    @Test public void readsNoTablePages() throws Exception {
+        SecondaryIndex index = yearIndex();
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads = 0;
+        TransactionId tid = new TransactionId();
+        IndexPredicate range = new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(1910));
+        assertEquals(ROWS / 10, rows(new IndexOnlyScan(tid, index, "p", range), 0, 1).size());
+        assertEquals(0, hf.reads);
+        DbFileIterator it = index.tuples(tid, range);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+        assertTrue(hf.reads > 0);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for keeping the included fields up to date on inserts and
+     * deletes.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        SecondaryIndex index = yearIndex();
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < COLUMNS; i++) {
+            t.setField(i, new IntField(i));
+        }
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(2024));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        IndexPredicate y2024 = new IndexPredicate(Predicate.Op.EQUALS, new IntField(2024));
+        assertEquals(Collections.singletonList(ROWS + " 2024"), rows(new IndexOnlyScan(tid, index, "p", y2024), 0, 1));
+        Database.getBufferPool().deleteTuple(tid, t);
+        assertTrue(rows(new IndexOnlyScan(tid, index, "p", y2024), 0, 1).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the IndexOnlyScan in the plan, or null */
+    private static IndexOnlyScan findScan(OpIterator plan) {
+        if (plan instanceof IndexOnlyScan) {
+            return (IndexOnlyScan) plan;
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                IndexOnlyScan scan = findScan(child);
+                if (scan != null) {
+                    return scan;
+                }
+            }
+        }
+        return null;
+    }
+
+    private OpIterator plan(TransactionId tid, String filter, String... select) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "p");
+        if (filter != null) {
+            lp.addFilter("p.year", Predicate.Op.GREATER_THAN_OR_EQ, filter);
+        }
+        for (String field : select) {
+            lp.addProjectField(field, null);
+        }
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("papers", new TableStats(hf.getId(), 1));
+        return lp.physicalPlan(tid, stats, false);
+    }
+
+    /**
+     * Unit test for the planner: a query that only refers to fields an
+     * index stores reads the index instead of the table.
+     */
+    @Test public void physicalPlan() throws Exception {
+        SecondaryIndex index = yearIndex();
+        TransactionId tid = new TransactionId();
+
+        OpIterator plan = plan(tid, "1990", "p.id");
+        IndexOnlyScan scan = findScan(plan);
+        assertNotNull(scan);
+        assertSame(index, scan.getIndex());
+        assertEquals(Predicate.Op.GREATER_THAN_OR_EQ, scan.getIndexPredicate().getOp());
+        Filter expected = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(1990)),
+                new SeqScan(tid, hf.getId(), "p"));
+        List<String> ids = new ArrayList<>();
+        expected.open();
+        while (expected.hasNext()) {
+            ids.add(expected.next().getField(0).toString());
+        }
+        expected.close();
+        Collections.sort(ids);
+        List<String> actual = new ArrayList<>();
+        plan.open();
+        while (plan.hasNext()) {
+            actual.add(plan.next().getField(0).toString());
+        }
+        plan.close();
+        Collections.sort(actual);
+        assertEquals(ids, actual);
+
+        // without a filter, the index is still smaller than the table
+        scan = findScan(plan(tid, null, "p.year", "p.id"));
+        assertNotNull(scan);
+        assertNull(scan.getIndexPredicate());
+
+        // the index doesn't store c2
+        assertNull(findScan(plan(tid, "1990", "p.id", "p.c2")));
+        assertNull(findScan(plan(tid, "1990", "null.*")));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for declaring included fields in the catalog file.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("papers (id int pk, year int index include id c3");
+            for (int i = 2; i < COLUMNS; i++) {
+                bw.write(", c" + i + " int");
+            }
+            bw.write(")\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        int tableid = Database.getCatalog().getTableId("papers");
+        List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tableid);
+        assertEquals(1, indexes.size());
+        assertEquals(1, indexes.get(0).getColumn());
+        assertArrayEquals(new int[]{0, 3}, indexes.get(0).getIncludedColumns());
+        TransactionId tid = new TransactionId();
+        IndexPredicate y1999 = new IndexPredicate(Predicate.Op.EQUALS, new IntField(1999));
+        IndexOnlyScan scan = new IndexOnlyScan(tid, indexes.get(0), "p", y1999);
+        assertEquals(3, scan.getTupleDesc().numFields());
+        assertEquals(ROWS / 100, rows(scan, 0, 1).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexOnlyScanTest.class);
+    }
+}
@@ -0,0 +1,274 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LsmFileTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private File dir;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = Utility.getTupleDesc(2);
+        dir = TestUtil.createTempDir("events");
+    }
+
+    @After public void tearDown() {
+        TestUtil.deleteTempDir(dir);
+    }
+
+    private LsmFile open(int memtableSize) {
+        LsmFile lsm = new LsmFile(new File(dir, "events.dat"), 0, td, memtableSize);
+        Database.getCatalog().addTable(lsm, "events");
+        return lsm;
+    }
+
+    private static Tuple tuple(int key, int value) {
+        return Utility.getHeapTuple(new int[]{key, value});
+    }
+
+    /**
+     * Unit test for inserts: a scan returns the tuples in key order,
+     * duplicates included; uncommitted tuples are seen by their
+     * transaction, and aborted ones not at all.
+     */
+    @Test public void insertAndScan() throws Exception {
+        LsmFile lsm = open(LsmFile.DEFAULT_MEMTABLE_SIZE);
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(5, 0), tuple(1, 1), tuple(3, 2), tuple(1, 1)));
+        TransactionId tid = new TransactionId();
+        List<String> committed = Arrays.asList("1:1", "1:1", "3:2", "5:0");
+        assertEquals(committed, TestUtil.scanStrings(lsm, tid));
+
+        Database.getBufferPool().insertTuple(tid, lsm.getId(), tuple(2, 7));
+        assertEquals(Arrays.asList("1:1", "1:1", "2:7", "3:2", "5:0"), TestUtil.scanStrings(lsm, tid));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(committed, TestUtil.scanStrings(lsm));
+
+        // through the operators
+        TransactionId other = new TransactionId();
+        SeqScan ss = new SeqScan(other, lsm.getId(), "e");
+        ss.open();
+        assertEquals(1, ((IntField) ss.next().getField(0)).getValue());
+        ss.close();
+        Database.getBufferPool().transactionComplete(other);
+    }
+
+    /**
+     * Unit test for deletes: one copy is deleted per tuple, from the
+     * memtable or a run, and tuples that aren't there can't be deleted.
+     */
+    @Test public void delete() throws Exception {
+        LsmFile lsm = open(3);
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(1, 0), tuple(2, 0), tuple(2, 0), tuple(3, 0)));
+        assertEquals(1, lsm.numRuns());
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(4, 0)));
+
+        TransactionId tid = new TransactionId();
+        Tuple one = TestUtil.findTuple(lsm, tid, 1);
+        SeqScan ss = new SeqScan(tid, lsm.getId(), "e");
+        Delete delete = new Delete(tid, new Filter(new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(2)), ss));
+        delete.open();
+        assertEquals(3, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        assertEquals(Arrays.asList("3:0", "4:0"), TestUtil.scanStrings(lsm, tid));
+        try {
+            Database.getBufferPool().deleteTuple(tid, one);
+            fail("the tuple was deleted already");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Tuple three = TestUtil.findTuple(lsm, tid, 3);
+        Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(lsm, tid, 4));
+        Database.getBufferPool().insertTuple(tid, lsm.getId(), tuple(4, 0));
+        Database.getBufferPool().deleteTuple(tid, three);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(Arrays.asList("4:0"), TestUtil.scanStrings(lsm));
+    }
+
+    /**
+     * Unit test for flushes and compaction: the memtable is written to runs,
+     * which are merged into one in the background, without deleted tuples.
+     */
+    @Test public void flushAndCompact() throws Exception {
+        LsmFile lsm = open(100);
+        Random random = new Random(6830);
+        List<String> expected = new ArrayList<>();
+        for (int round = 0; round < 6; round++) {
+            List<Tuple> tuples = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int key = random.nextInt(1000);
+                tuples.add(tuple(key, round));
+                expected.add(String.format("%d:%d", key, round));
+            }
+            TestUtil.insertTuples(lsm, tuples);
+        }
+        lsm.awaitCompaction();
+        assertTrue(lsm.numRuns() + " runs", lsm.numRuns() <= LsmFile.MAX_RUNS);
+        Comparator<String> byKey = Comparator.comparingInt((String s) -> Integer.parseInt(s.split(":")[0]))
+                .thenComparingInt(s -> Integer.parseInt(s.split(":")[1]));
+        expected.sort(byKey);
+        assertEquals(expected, TestUtil.scanStrings(lsm));
+
+        // delete every tuple of round 0, then merge everything
+        TransactionId tid = new TransactionId();
+        SeqScan ss = new SeqScan(tid, lsm.getId(), "e");
+        Delete delete = new Delete(tid, new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(0)), ss));
+        delete.open();
+        assertEquals(100, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+        lsm.flush();
+        lsm.compact();
+        assertEquals(1, lsm.numRuns());
+        expected.removeIf(s -> s.endsWith(":0"));
+        assertEquals(expected, TestUtil.scanStrings(lsm));
+        long runBytes = 0;
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(".run")) {
+                runBytes += f.length();
+            }
+        }
+        // one entry of a count and two ints per distinct tuple
+        assertEquals(new HashSet<>(expected).size() * (4 + 4 + 4), runBytes);
+    }
+
+    /**
+     * Unit test for recovery: committed changes are found again when the
+     * table is reopened, from the log and the runs; a torn record at the
+     * end of the log is dropped.
+     */
+    @Test public void reopen() throws Exception {
+        LsmFile lsm = open(3);
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(1, 0), tuple(2, 0), tuple(3, 0)));
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(9, 0)));
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(lsm, tid, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        TransactionId uncommitted = new TransactionId();
+        Database.getBufferPool().insertTuple(uncommitted, lsm.getId(), tuple(5, 0));
+        List<String> expected = Arrays.asList("1:0", "3:0", "9:0");
+
+        lsm = open(3);
+        assertEquals(1, lsm.numRuns());
+        assertEquals(2, lsm.memtableSize());
+        // its lock goes with the old table
+        Database.getBufferPool().transactionComplete(uncommitted, false);
+        assertEquals(expected, TestUtil.scanStrings(lsm));
+
+        // a torn commit record
+        File log = null;
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(".wal")) {
+                log = f;
+            }
+        }
+        try (java.io.FileOutputStream out = new java.io.FileOutputStream(log, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 0, 0});
+        }
+        lsm = open(3);
+        assertEquals(expected, TestUtil.scanStrings(lsm));
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(0, 0)));
+        lsm = open(3);
+        assertEquals(Arrays.asList("0:0", "1:0", "3:0", "9:0"), TestUtil.scanStrings(lsm));
+    }
+
+    /**
+     * Unit test for locking: a scan waits for a transaction that changed the
+     * table to complete, and a change waits for the scans of others.
+     */
+    @Test public void locking() throws Exception {
+        LsmFile lsm = open(LsmFile.DEFAULT_MEMTABLE_SIZE);
+        TestUtil.insertTuples(lsm, Arrays.asList(tuple(1, 0)));
+        TransactionId writer = new TransactionId();
+        Database.getBufferPool().insertTuple(writer, lsm.getId(), tuple(2, 0));
+        List<List<String>> seen = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            try {
+                seen.add(TestUtil.scanStrings(lsm));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+        reader.join(200);
+        assertTrue("the scan waits for the writer", reader.isAlive());
+        Database.getBufferPool().transactionComplete(writer);
+        reader.join();
+        assertEquals(Arrays.asList(Arrays.asList("1:0", "2:0")), seen);
+
+        TransactionId scanner = new TransactionId();
+        assertEquals(Arrays.asList("1:0", "2:0"), TestUtil.scanStrings(lsm, scanner));
+        Thread inserter = new Thread(() -> {
+            try {
+                TestUtil.insertTuples(lsm, Arrays.asList(tuple(3, 0)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        inserter.start();
+        inserter.join(200);
+        assertTrue("the insert waits for the scan", inserter.isAlive());
+        assertEquals(Arrays.asList("1:0", "2:0"), TestUtil.scanStrings(lsm, scanner));
+        Database.getBufferPool().transactionComplete(scanner);
+        inserter.join();
+        assertEquals(Arrays.asList("1:0", "2:0", "3:0"), TestUtil.scanStrings(lsm));
+    }
+
+    /**
+     * Unit test for commits: the table's own log only gets the changes of
+     * a transaction once its COMMIT record is in the database's log, which
+     * still gets one COMMIT record.
+     */
+    @Test public void commitAfterLog() throws Exception {
+        LsmFile lsm = open(LsmFile.DEFAULT_MEMTABLE_SIZE);
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), lsm.getId(), tuple(1, 0));
+        boolean[] committedFirst = new boolean[1];
+        Database.getBufferPool().enlist(t.getId(),
+                (tid, commit) -> committedFirst[0] = commit && !Database.getLogFile().isActive(tid));
+        int records = Database.getLogFile().getTotalRecords();
+        t.commit();
+        assertTrue(committedFirst[0]);
+        assertEquals(records + 1, Database.getLogFile().getTotalRecords());
+        assertEquals(Arrays.asList("1:0"), TestUtil.scanStrings(lsm));
+    }
+
+    /**
+     * Unit test for declaring an LSM table in the catalog file.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("events (id int pk, value int) lsm\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        DbFile file = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("events"));
+        assertTrue(file instanceof LsmFile);
+        assertEquals(0, ((LsmFile) file).keyField());
+        TestUtil.insertTuples(file, Arrays.asList(tuple(2, 1), tuple(1, 2)));
+        assertEquals(Arrays.asList("1:2", "2:1"), TestUtil.scanStrings(file));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LsmFileTest.class);
+    }
+}
@@ -0,0 +1,290 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class MemoryFileTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private File dir;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        dir = TestUtil.createTempDir("dims");
+    }
+
+    @After public void tearDown() {
+        TestUtil.deleteTempDir(dir);
+    }
+
+    private MemoryFile open() {
+        MemoryFile file = new MemoryFile(new File(dir, "dims.dat"), td);
+        Database.getCatalog().addTable(file, "dims");
+        return file;
+    }
+
+    private Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Unit test for inserts: committed tuples are scanned in insertion order;
+     * uncommitted tuples are only seen by their transaction, and aborted
+     * ones not at all.
+     */
+    @Test public void insertAndScan() throws Exception {
+        MemoryFile file = open();
+        List<Tuple> tuples = new ArrayList<>();
+        List<String> committed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tuples.add(tuple(i, "n" + i));
+            committed.add(i + ":n" + i);
+        }
+        TestUtil.insertTuples(file, tuples);
+        assertEquals(100, file.numTuples());
+        TransactionId tid = new TransactionId();
+        TransactionId other = new TransactionId();
+        assertEquals(committed, TestUtil.scanStrings(file, tid));
+
+        Database.getBufferPool().insertTuple(tid, file.getId(), tuple(100, "new"));
+        List<String> mine = new ArrayList<>(committed);
+        mine.add("100:new");
+        assertEquals(mine, TestUtil.scanStrings(file, tid));
+        assertEquals(committed, TestUtil.scanStrings(file, other));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(committed, TestUtil.scanStrings(file, other));
+        assertEquals(100, file.numTuples());
+        Database.getBufferPool().transactionComplete(other);
+    }
+
+    /**
+     * Unit test for deletes: a deleted tuple is gone once its transaction
+     * commits, a tuple can't be deleted twice, and a scan opened before the
+     * commit doesn't change under it.
+     */
+    @Test public void delete() throws Exception {
+        MemoryFile file = open();
+        TestUtil.insertTuples(file, Arrays.asList(tuple(1, "a"), tuple(2, "b"), tuple(3, "c")));
+
+        TransactionId tid = new TransactionId();
+        Tuple two = TestUtil.findTuple(file, tid, 2);
+        Database.getBufferPool().deleteTuple(tid, two);
+        assertEquals(Arrays.asList("1:a", "3:c"), TestUtil.scanStrings(file, tid));
+        try {
+            Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(file, new TransactionId(), 2));
+            fail("the tuple was deleted already");
+        } catch (DbException e) {
+            // expected
+        }
+        // a tuple inserted and deleted again in the same transaction
+        Tuple four = tuple(4, "d");
+        Database.getBufferPool().insertTuple(tid, file.getId(), four);
+        Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(file, tid, 4));
+
+        DbFileIterator before = file.iterator(new TransactionId());
+        before.open();
+        Database.getBufferPool().transactionComplete(tid);
+        List<String> seen = new ArrayList<>();
+        while (before.hasNext()) {
+            Tuple t = before.next();
+            seen.add(t.getField(0) + ":" + t.getField(1));
+        }
+        before.close();
+        assertEquals(Arrays.asList("1:a", "2:b", "3:c"), seen);
+        assertEquals(Arrays.asList("1:a", "3:c"), TestUtil.scanStrings(file));
+        assertEquals(2, file.numTuples());
+    }
+
+    /**
+     * Unit test for conflicting deletes: a tuple another transaction is
+     * deleting can't be deleted until that transaction aborts, and not at
+     * all once it commits.
+     */
+    @Test public void deleteConflict() throws Exception {
+        MemoryFile file = open();
+        TestUtil.insertTuples(file, Arrays.asList(tuple(1, "a"), tuple(2, "b")));
+        TransactionId first = new TransactionId();
+        TransactionId second = new TransactionId();
+        Tuple one = TestUtil.findTuple(file, second, 1);
+        Database.getBufferPool().deleteTuple(first, TestUtil.findTuple(file, first, 1));
+        try {
+            Database.getBufferPool().deleteTuple(second, one);
+            fail("first is deleting the tuple");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(second, false);
+        Database.getBufferPool().transactionComplete(first, false);
+
+        first = new TransactionId();
+        second = new TransactionId();
+        one = TestUtil.findTuple(file, first, 1);
+        Database.getBufferPool().deleteTuple(second, TestUtil.findTuple(file, second, 1));
+        Database.getBufferPool().transactionComplete(second);
+        try {
+            Database.getBufferPool().deleteTuple(first, one);
+            fail("second deleted the tuple");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(first, false);
+        assertEquals(Arrays.asList("2:b"), TestUtil.scanStrings(file));
+    }
+
+    /**
+     * Unit test for scans through the operators: the filters of a SeqScan
+     * are checked by the MemoryFile, and a Delete over it works.
+     */
+    @Test public void seqScan() throws Exception {
+        MemoryFile file = new MemoryFile(td);
+        Database.getCatalog().addTable(file, "temp");
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tuples.add(tuple(i, i % 2 == 0 ? "even" : "odd"));
+        }
+        TestUtil.insertTuples(file, tuples);
+
+        TransactionId tid = new TransactionId();
+        SeqScan ss = new SeqScan(tid, file.getId(), "t");
+        ss.addFilter(new Predicate(1, Predicate.Op.EQUALS, new StringField("odd", Type.STRING_LEN)));
+        ss.addFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)));
+        ss.open();
+        List<Integer> ids = new ArrayList<>();
+        while (ss.hasNext()) {
+            ids.add(((IntField) ss.next().getField(0)).getValue());
+        }
+        ss.close();
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), ids);
+
+        SeqScan all = new SeqScan(tid, file.getId(), "t");
+        all.addFilter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(40)));
+        Delete delete = new Delete(tid, all);
+        delete.open();
+        assertEquals(10, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(40, file.numTuples());
+        assertNull(file.getFile());
+    }
+
+    /**
+     * Unit test for snapshots: a checkpoint writes the committed tuples,
+     * which the table is loaded from when it is opened again.
+     */
+    @Test public void checkpoint() throws Exception {
+        MemoryFile file = open();
+        TestUtil.insertTuples(file, Arrays.asList(tuple(1, "a"), tuple(2, "b"), tuple(3, "")));
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(file, tid, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        TransactionId uncommitted = new TransactionId();
+        Database.getBufferPool().insertTuple(uncommitted, file.getId(), tuple(5, "e"));
+        file.checkpoint();
+        Database.getBufferPool().transactionComplete(uncommitted, false);
+
+        // one count, then the ints, then the strings as a short length and bytes
+        assertEquals(4 + 2 * 4 + (2 + 1) + 2, file.getFile().length());
+        file = open();
+        assertEquals(Arrays.asList("1:a", "3:"), TestUtil.scanStrings(file));
+        TestUtil.insertTuples(file, Arrays.asList(tuple(4, "d")));
+
+        // the log's checkpoint snapshots memory tables too
+        Database.getLogFile().logCheckpoint();
+        file = open();
+        assertEquals(Arrays.asList("1:a", "3:", "4:d"), TestUtil.scanStrings(file));
+    }
+
+    /**
+     * Unit test for compaction: a temporary table with steady inserts and
+     * deletes stays small, scans opened before a compaction are not
+     * disturbed by it, and tuples read before it can still be deleted.
+     */
+    @Test public void compaction() throws Exception {
+        MemoryFile file = new MemoryFile(td);
+        Database.getCatalog().addTable(file, "temp");
+        int next = 0;
+        for (int round = 0; round < 200; round++) {
+            List<Tuple> tuples = new ArrayList<>();
+            for (int i = 0; i < 10; i++, next++) {
+                tuples.add(tuple(next, "r" + round));
+            }
+            TestUtil.insertTuples(file, tuples);
+            TransactionId tid = new TransactionId();
+            for (int id = next - 20; id < next - 10 && id >= 0; id++) {
+                Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(file, tid, id));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            assertTrue(file.numSlots() + " slots", file.numSlots() <= 64);
+        }
+        assertEquals(10, file.numTuples());
+
+        // a scan and a tuple from before a compaction
+        TransactionId tid = new TransactionId();
+        Tuple last = TestUtil.findTuple(file, tid, next - 1);
+        DbFileIterator before = file.iterator(new TransactionId());
+        before.open();
+        TransactionId other = new TransactionId();
+        for (int id = next - 10; id < next - 2; id++) {
+            Database.getBufferPool().deleteTuple(other, TestUtil.findTuple(file, other, id));
+        }
+        Database.getBufferPool().transactionComplete(other);
+        assertEquals(2, file.numSlots());
+        int seen = 0;
+        for (; before.hasNext(); seen++) {
+            before.next();
+        }
+        before.close();
+        assertEquals(10, seen);
+        Database.getBufferPool().deleteTuple(tid, last);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(Arrays.asList((next - 2) + ":r199"), TestUtil.scanStrings(file));
+
+        // a checkpoint compacts too
+        TestUtil.insertTuples(file, Arrays.asList(tuple(-1, "x"), tuple(-2, "y"), tuple(-3, "z")));
+        tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, TestUtil.findTuple(file, tid, -1));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5, file.numSlots());
+        file.checkpoint();
+        assertEquals(3, file.numSlots());
+        assertEquals(Arrays.asList((next - 2) + ":r199", "-2:y", "-3:z"), TestUtil.scanStrings(file));
+    }
+
+    /**
+     * Unit test for declaring a memory table in the catalog file.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("dims (id int pk, name string) memory\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        DbFile file = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("dims"));
+        assertTrue(file instanceof MemoryFile);
+        assertEquals(new File(dir, "dims.dat").getAbsoluteFile(), ((MemoryFile) file).getFile().getAbsoluteFile());
+        TestUtil.insertTuples(file, Arrays.asList(tuple(2, "x"), tuple(1, "y")));
+        assertEquals(Arrays.asList("2:x", "1:y"), TestUtil.scanStrings(file));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MemoryFileTest.class);
+    }
+}
@@ -0,0 +1,129 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PageBloomFilterTest extends SimpleDbTestBase {
+    private static final int ROWS = 10000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.STRING_TYPE};
+
+    private TupleDesc td;
+    private File dat;
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "name"});
+        File txt = File.createTempFile("authors", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                // ids in no particular order, so a zone map can't help
+                int id = (i * 7919) % ROWS;
+                bw.write(id + ",author" + id + "\n");
+            }
+        }
+        dat = File.createTempFile("authors", ".dat");
+        dat.deleteOnExit();
+        PageBloomFilter.bloomFile(dat, 0).deleteOnExit();
+        PageBloomFilter.bloomFile(dat, 1).deleteOnExit();
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), 2, TYPES, ',', new int[]{0});
+        hf = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "authors");
+    }
+
+    private int count(SeqScan scan) throws Exception {
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    private SeqScan lookup(TransactionId tid, HeapFile file, int column, Field v) {
+        SeqScan scan = new SeqScan(tid, file.getId(), "a");
+        scan.addFilter(new Predicate(column, Predicate.Op.EQUALS, v));
+        return scan;
+    }
+
+    /**
+     * Unit test for point lookups: the filters built by the encoder skip
+     * nearly every page that doesn't hold the key, for int and string
+     * columns.
+     */
+    @Test public void pointLookup() throws Exception {
+        assertNotNull(hf.getBloomFilter(0));
+        assertNull(hf.getBloomFilter(1));
+        assertEquals(hf.numPages(), hf.getBloomFilter(0).numPages());
+
+        TransactionId tid = new TransactionId();
+        assertEquals(1, count(lookup(tid, hf, 0, new IntField(4242))));
+        assertTrue(hf.reads <= 3);
+        hf.reads = 0;
+        assertEquals(0, count(lookup(tid, hf, 0, new IntField(-5))));
+        assertTrue(hf.reads <= 2);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(hf.numPages(), hf.createBloomFilter(1).numPages());
+        hf.reads = 0;
+        tid = new TransactionId();
+        assertEquals(1, count(lookup(tid, hf, 1, new StringField("author4242", Type.STRING_LEN))));
+        assertTrue(hf.reads <= 3);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for keeping the filters up to date: a key inserted into an
+     * old page is found before and after the page is written, and after the
+     * table is reopened.
+     */
+    @Test public void insertAndReopen() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, first);
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS + 1));
+        t.setField(1, new StringField("new author", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(0, t.getRecordId().getPageId().getPageNumber());
+
+        assertEquals(1, count(lookup(tid, hf, 0, new IntField(ROWS + 1))));
+        assertEquals(0, count(lookup(tid, hf, 0, first.getField(0))));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        CountingHeapFile reopened = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(reopened, "authors");
+        assertNotNull(reopened.getBloomFilter(0));
+        tid = new TransactionId();
+        assertEquals(1, count(lookup(tid, reopened, 0, new IntField(ROWS + 1))));
+        assertTrue(reopened.reads <= 3);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageBloomFilterTest.class);
+    }
+}
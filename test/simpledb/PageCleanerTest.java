@@ -0,0 +1,93 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageCleanerTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 10;
+
+    private HeapFile hf;
+    private TransactionId tid;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 504 tuples per page of two int columns
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3 * POOL_PAGES, null, new ArrayList<ArrayList<Integer>>());
+        bp = Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        bp.stopPageCleaner();
+        bp.transactionComplete(tid);
+    }
+
+    private void dirtyPages(int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            Page p = bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_WRITE);
+            p.markDirty(true, tid);
+            bp.unpinPage(tid, p.getId());
+        }
+    }
+
+    private void waitForCleaner(double ratio) throws Exception {
+        for (int i = 0; i < 200 && bp.dirtyRatio() > ratio; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Unit test for the cleaner bringing the dirty ratio down to the low
+     * water mark.
+     */
+    @Test public void cleansToLowWaterMark() throws Exception {
+        dirtyPages(0, 8);
+        assertEquals(0.8, bp.dirtyRatio(), 0.001);
+
+        PageCleaner cleaner = bp.startPageCleaner(0.2, 0.5, 1);
+        waitForCleaner(0.2);
+        assertEquals(0.2, bp.dirtyRatio(), 0.001);
+        // the count is bumped after the page is written; let the cleaner finish
+        bp.stopPageCleaner();
+        assertEquals(6, cleaner.getPagesWritten());
+    }
+
+    /**
+     * Unit test for page faults finding clean victims once the cleaner runs.
+     */
+    @Test public void evictionsDoNotWrite() throws Exception {
+        bp.startPageCleaner(0, 0.1, 1);
+        for (int round = 0; round < 3; round++) {
+            dirtyPages(round * POOL_PAGES, (round + 1) * POOL_PAGES - 1);
+            waitForCleaner(0);
+        }
+        assertEquals(0, bp.getDirtyEvictions());
+        PageCleaner cleaner = bp.getPageCleaner();
+        bp.stopPageCleaner();
+        assertTrue(cleaner.getPagesWritten() >= 3 * (POOL_PAGES - 1));
+    }
+
+    /** Without a cleaner, faulting in pages over a fully dirty pool has to write. */
+    @Test public void evictionsWriteWithoutCleaner() throws Exception {
+        dirtyPages(0, 2 * POOL_PAGES);
+        assertTrue(bp.getDirtyEvictions() > 0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCleanerTest.class);
+    }
+}
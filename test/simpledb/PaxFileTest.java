@@ -0,0 +1,163 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PaxFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 1000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File txt;
+    private PaxFile pf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "title", "year", "venue"});
+        txt = File.createTempFile("papers", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + ",paper " + i + "," + (1990 + i % 30) + "," + (i % 7) + "\n");
+            }
+        }
+        File dat = File.createTempFile("papers", ".dat");
+        dat.deleteOnExit();
+        HeapFileEncoder.convertPax(txt, dat, BufferPool.getPageSize(), 4, TYPES, ',');
+        pf = new PaxFile(dat, td);
+        Database.getCatalog().addTable(pf, "papers");
+    }
+
+    private void checkRow(Tuple t) {
+        int id = ((IntField) t.getField(0)).getValue();
+        assertEquals("paper " + id, ((StringField) t.getField(1)).getValue());
+        assertEquals(new IntField(1990 + id % 30), t.getField(2));
+        assertEquals(new IntField(id % 7), t.getField(3));
+    }
+
+    /**
+     * Unit test for a PaxFile loaded by HeapFileEncoder: same number of
+     * pages as a HeapFile, and the same tuples.
+     */
+    @Test public void scan() throws Exception {
+        File rows = File.createTempFile("papers", ".dat");
+        rows.deleteOnExit();
+        HeapFileEncoder.convert(txt, rows, BufferPool.getPageSize(), 4, TYPES, ',');
+        assertEquals(new HeapFile(rows, td).numPages(), pf.numPages());
+
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, pf.getId(), "p");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            checkRow(scan.next());
+            n++;
+        }
+        scan.close();
+        assertEquals(ROWS, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a SeqScan of some columns, in a different order.
+     */
+    @Test public void projectedScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, pf.getId(), "p", new int[]{3, 0});
+        TupleDesc desc = scan.getTupleDesc();
+        assertEquals(2, desc.numFields());
+        assertEquals("p.venue", desc.getFieldName(0));
+        assertEquals("p.id", desc.getFieldName(1));
+
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(2, t.getTupleDesc().numFields());
+            int id = ((IntField) t.getField(1)).getValue();
+            assertEquals(new IntField(id % 7), t.getField(0));
+            assertNotNull(t.getRecordId());
+            n++;
+        }
+        scan.close();
+        assertEquals(ROWS, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for inserting and deleting through the BufferPool, and for
+     * the before image of a modified page.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("paper " + ROWS, Type.STRING_LEN));
+        t.setField(2, new IntField(1990 + ROWS % 30));
+        t.setField(3, new IntField(ROWS % 7));
+        Database.getBufferPool().insertTuple(tid, pf.getId(), t);
+
+        PaxPage page = (PaxPage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_ONLY);
+        assertEquals(page.getNumEmptySlots() + 1, page.getBeforeImage().getNumEmptySlots());
+
+        DbFileIterator it = pf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, first);
+
+        it = pf.iterator(tid);
+        it.open();
+        int n = 0;
+        boolean found = false;
+        while (it.hasNext()) {
+            Tuple r = it.next();
+            checkRow(r);
+            assertFalse(r.getRecordId().equals(first.getRecordId()));
+            found |= r.getRecordId().equals(t.getRecordId());
+            n++;
+        }
+        it.close();
+        assertEquals(ROWS, n);
+        assertTrue(found);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for a projected SeqScan over a table whose pages don't
+     * decode single columns.
+     */
+    @Test public void projectedHeapFileScan() throws Exception {
+        File rows = File.createTempFile("papers", ".dat");
+        rows.deleteOnExit();
+        HeapFileEncoder.convert(txt, rows, BufferPool.getPageSize(), 4, TYPES, ',');
+        HeapFile hf = new HeapFile(rows, td);
+        Database.getCatalog().addTable(hf, "rows");
+
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "r", new int[]{1});
+        scan.open();
+        Tuple t = scan.next();
+        assertEquals(1, t.getTupleDesc().numFields());
+        assertEquals("paper 0", ((StringField) t.getField(0)).getValue());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxFileTest.class);
+    }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class RoaringBitmapTest {
+
+    private static RoaringBitmap bitmap(Collection<Long> values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (long v : values) {
+            bitmap.add(v);
+        }
+        return bitmap;
+    }
+
+    private static List<Long> values(RoaringBitmap bitmap) {
+        List<Long> values = new ArrayList<>();
+        RoaringBitmap.LongIterator it = bitmap.iterator();
+        while (it.hasNext()) {
+            values.add(it.next());
+        }
+        return values;
+    }
+
+    /**
+     * @return a random set with values in a few containers, some sparse
+     *   and some dense
+     */
+    private static TreeSet<Long> randomSet(Random random) {
+        TreeSet<Long> set = new TreeSet<>();
+        for (int key = 0; key < 6; key++) {
+            int n = random.nextBoolean() ? random.nextInt(100) : 5000 + random.nextInt(40000);
+            for (int i = 0; i < n; i++) {
+                set.add(((long) key * 3 << 16) + random.nextInt(1 << 16));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Unit test for add, remove and contains, across array and bitmap
+     * containers.
+     */
+    @Test public void addRemoveContains() {
+        Random random = new Random(6830);
+        TreeSet<Long> set = randomSet(random);
+        RoaringBitmap bitmap = bitmap(set);
+        assertEquals(new ArrayList<>(set), values(bitmap));
+        assertEquals(set.size(), bitmap.cardinality());
+        for (int i = 0; i < 100000; i++) {
+            long v = ((long) random.nextInt(20) << 16) + random.nextInt(1 << 16);
+            assertEquals(set.contains(v), bitmap.contains(v));
+            if (random.nextBoolean()) {
+                assertEquals(set.add(v), bitmap.add(v));
+            } else {
+                assertEquals(set.remove(v), bitmap.remove(v));
+            }
+        }
+        assertEquals(new ArrayList<>(set), values(bitmap));
+        assertEquals(set.size(), bitmap.cardinality());
+        for (long v : new ArrayList<>(set)) {
+            assertTrue(bitmap.remove(v));
+        }
+        assertTrue(bitmap.isEmpty());
+        assertFalse(bitmap.iterator().hasNext());
+    }
+
+    /**
+     * Unit test for and, or and andNot.
+     */
+    @Test public void combine() {
+        Random random = new Random(6830);
+        for (int round = 0; round < 10; round++) {
+            TreeSet<Long> a = randomSet(random);
+            TreeSet<Long> b = randomSet(random);
+            RoaringBitmap ra = bitmap(a);
+            RoaringBitmap rb = bitmap(b);
+
+            TreeSet<Long> expected = new TreeSet<>(a);
+            expected.retainAll(b);
+            assertEquals(new ArrayList<>(expected), values(ra.and(rb)));
+            expected = new TreeSet<>(a);
+            expected.addAll(b);
+            assertEquals(new ArrayList<>(expected), values(ra.or(rb)));
+            expected = new TreeSet<>(a);
+            expected.removeAll(b);
+            assertEquals(new ArrayList<>(expected), values(ra.andNot(rb)));
+            assertEquals(bitmap(expected), ra.andNot(rb));
+
+            // the operands are unchanged
+            assertEquals(new ArrayList<>(a), values(ra));
+            assertEquals(new ArrayList<>(b), values(rb));
+        }
+    }
+
+    /**
+     * Unit test for compression: sparse containers take 2 bytes per value,
+     * dense ones 8 KB.
+     */
+    @Test public void sizeInBytes() {
+        RoaringBitmap sparse = new RoaringBitmap();
+        for (long v = 0; v < 1000; v++) {
+            sparse.add(v * 1000);
+        }
+        assertTrue(sparse.sizeInBytes() < 3000);
+        RoaringBitmap dense = new RoaringBitmap();
+        for (long v = 0; v < 1 << 16; v++) {
+            dense.add(v);
+        }
+        assertEquals(8 + 8192, dense.sizeInBytes());
+        try {
+            dense.add(-1);
+            fail("negative values aren't allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RoaringBitmapTest.class);
+    }
+}
@@ -0,0 +1,204 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingBTreeFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SecondaryIndexTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File dir;
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "year"});
+        dir = File.createTempFile("venues", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File txt = new File(dir, "venues.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + "," + (1900 + i % 100) + "\n");
+            }
+        }
+        File dat = new File(dir, "venues.dat");
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), 2, TYPES, ',');
+        hf = new HeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "venues");
+        for (String name : new String[]{"venues.txt", "venues.dat", "venues.year.idx", "catalog.txt"}) {
+            new File(dir, name).deleteOnExit();
+        }
+    }
+
+
+    /** @return the ids of the tuples the index finds for the year */
+    private List<Integer> lookup(SecondaryIndex index, TransactionId tid, int year) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        DbFileIterator it = index.entries(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(year)));
+        it.open();
+        while (it.hasNext()) {
+            RecordId rid = index.getRecordId(it.next());
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+            Iterator<Tuple> tuples = page.iterator();
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                if (t.getRecordId().equals(rid)) {
+                    assertEquals(year, ((IntField) t.getField(1)).getValue());
+                    ids.add(((IntField) t.getField(0)).getValue());
+                }
+            }
+            Database.getBufferPool().unpinPage(tid, rid.getPageId());
+        }
+        it.close();
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Unit test for building an index from the tuples already in the
+     * table.
+     */
+    @Test public void build() throws Exception {
+        SecondaryIndex index = Database.getCatalog().addIndex(hf.getId(), "year", new File(dir, "venues.year.idx"));
+        assertEquals(Collections.singletonList(index), Database.getCatalog().getIndexes(hf.getId()));
+        TransactionId tid = new TransactionId();
+        assertEquals(Arrays.asList(5, 105, 205), lookup(index, tid, 1905).subList(0, 3));
+        assertEquals(ROWS / 100, lookup(index, tid, 1905).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for keeping the index up to date: Insert and Delete update
+     * it in the same transaction, and an abort rolls it back.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        SecondaryIndex index = Database.getCatalog().addIndex(hf.getId(), "year", new File(dir, "venues.year.idx"));
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(2024));
+        Insert insert = new Insert(tid, new TupleIterator(td, Collections.singletonList(t)), hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        assertEquals(Collections.singletonList(ROWS), lookup(index, tid, 2024));
+        Predicate y1950 = new Predicate(1, Predicate.Op.EQUALS, new IntField(1950));
+        Delete delete = new Delete(tid, new Filter(y1950, new SeqScan(tid, hf.getId(), "v")));
+        delete.open();
+        assertEquals(ROWS / 100, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        assertTrue(lookup(index, tid, 1950).isEmpty());
+        assertEquals(ROWS / 100, lookup(index, tid, 1951).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        t = new Tuple(td);
+        t.setField(0, new IntField(ROWS + 1));
+        t.setField(1, new IntField(2025));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(Collections.singletonList(ROWS + 1), lookup(index, tid, 2025));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertTrue(lookup(index, tid, 2025).isEmpty());
+        assertEquals(Collections.singletonList(ROWS), lookup(index, tid, 2024));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for deletes of a value that fills several index leaves:
+     * each entry is found by one descent of the index, not by a scan of
+     * the entries with the value.
+     */
+    @Test public void deleteOneDescent() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(ROWS + i));
+            t.setField(1, new IntField(1999));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        File f = new File(dir, "venues.year.idx");
+        SecondaryIndex built = Database.getCatalog().addIndex(hf.getId(), "year", f);
+        TupleDesc entryTd = built.getFile().getTupleDesc();
+        CountingBTreeFile entries = new CountingBTreeFile(f, SecondaryIndex.keyFields(0), entryTd);
+        Database.getCatalog().addTable(entries, "venues_year_idx");
+        SecondaryIndex index = new SecondaryIndex(hf.getId(), 1, entries);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        tid = new TransactionId();
+        int before = lookup(index, tid, 1999).size();
+        assertTrue(entries.reads > 4);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        entries.reads = 0;
+        tid = new TransactionId();
+        List<Tuple> victims = new ArrayList<>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            if (id == ROWS + 1500 || id == ROWS + 2999) {
+                victims.add(t);
+            }
+        }
+        it.close();
+        for (Tuple t : victims) {
+            index.deleteEntry(tid, t);
+        }
+        assertTrue("read " + entries.reads + " pages", entries.reads <= 8);
+        assertEquals(before - 2, lookup(index, tid, 1999).size());
+        try {
+            index.deleteEntry(tid, victims.get(0));
+            fail("the entry was deleted already");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for declaring an index in the catalog file.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, "catalog.txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(catalog))) {
+            bw.write("venues (id int pk, year int index)\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        int tableid = Database.getCatalog().getTableId("venues");
+        List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tableid);
+        assertEquals(1, indexes.size());
+        assertEquals(1, indexes.get(0).getColumn());
+        assertTrue(new File(dir, "venues.year.idx").exists());
+        assertEquals(indexes.get(0).getFile().getId(), Database.getCatalog().getTableId("venues_year_idx"));
+        TransactionId tid = new TransactionId();
+        assertEquals(ROWS / 100, lookup(indexes.get(0), tid, 1999).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SecondaryIndexTest.class);
+    }
+}
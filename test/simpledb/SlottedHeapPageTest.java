@@ -0,0 +1,160 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private SlottedHeapFile sf;
+    private HeapPageId pid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        sf = new SlottedHeapFile(f, td);
+        Database.getCatalog().addTable(sf, "slotted");
+        pid = new HeapPageId(sf.getId(), 0);
+    }
+
+    private Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private SlottedHeapPage emptyPage() throws Exception {
+        return new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+    }
+
+    /**
+     * Unit test for serializing a page and reading it back.
+     */
+    @Test public void roundTrip() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        for (int i = 0; i < 20; i++) {
+            page.insertTuple(tuple(i, "author " + i));
+        }
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        assertEquals(20, copy.getNumTuples());
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < 20; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("author " + i, ((StringField) t.getField(1)).getValue());
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for short strings taking only the space they need: a
+     * HeapPage holds 30 (int, string) tuples.
+     */
+    @Test public void holdsShortStrings() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        int n = 0;
+        Tuple t = tuple(n, "Sam Madden");
+        while (page.hasRoomFor(t)) {
+            page.insertTuple(t);
+            t = tuple(++n, "Sam Madden");
+        }
+        // 4 bytes of int, 2 + 10 bytes of string and 4 bytes of slot
+        assertEquals((BufferPool.getPageSize() - SlottedHeapPage.HEADER_SIZE) / 20, n);
+        assertTrue(page.getFreeSpace() < 20);
+        try {
+            page.insertTuple(t);
+            fail("page should be full; expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for deleteTuple() keeping the other tuples' slots and a
+     * later insert reusing the freed slot.
+     */
+    @Test public void deleteReusesSlot() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Tuple t = tuple(i, "x");
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        page.deleteTuple(tuples.get(1));
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        assertEquals(2, copy.getNumTuples());
+        Iterator<Tuple> it = copy.iterator();
+        assertEquals(new RecordId(pid, 0), it.next().getRecordId());
+        assertEquals(new RecordId(pid, 2), it.next().getRecordId());
+
+        try {
+            copy.deleteTuple(tuples.get(1));
+            fail("slot already empty; expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+
+        Tuple t = tuple(3, "a longer name than before");
+        copy.insertTuple(t);
+        assertEquals(new RecordId(pid, 1), t.getRecordId());
+    }
+
+    /**
+     * Unit test for a SlottedHeapFile loaded by HeapFileEncoder and grown
+     * through the BufferPool.
+     */
+    @Test public void fileInsertAndScan() throws Exception {
+        File txt = File.createTempFile("slotted", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < 1000; i++) {
+                bw.write(i + ",paper " + i + "\n");
+            }
+        }
+        HeapFileEncoder.convertSlotted(txt, sf.getFile(), BufferPool.getPageSize(), 2,
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, ',');
+        // about 20 bytes a record, against 34 pages of HeapPages
+        assertTrue(sf.numPages() <= 6);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 1000; i < 1100; i++) {
+            Database.getBufferPool().insertTuple(tid, sf.getId(), tuple(i, "paper " + i));
+        }
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals("paper " + id, ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        it.close();
+        assertEquals(1100, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
@@ -190,6 +190,77 @@ public class TestUtil {
         return buf;
     }
 
+    /** @return a new, empty temporary directory; see {@link #deleteTempDir} */
+    public static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    /** Deletes a directory made by {@link #createTempDir} and its files. */
+    public static void deleteTempDir(File dir) {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * @return the tuples of the file as tid sees them, in scan order, each
+     *   as its fields joined by ":"
+     */
+    public static List<String> scanStrings(DbFile file, TransactionId tid) throws Exception {
+        List<String> tuples = new ArrayList<>();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                sb.append(i == 0 ? "" : ":").append(t.getField(i));
+            }
+            tuples.add(sb.toString());
+        }
+        it.close();
+        return tuples;
+    }
+
+    /**
+     * @return the committed tuples of the file as by {@link #scanStrings},
+     *   scanned by a transaction of their own
+     */
+    public static List<String> scanStrings(DbFile file) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<String> tuples = scanStrings(file, tid);
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    /** @return the first tuple tid sees in the file whose first field is the int key */
+    public static Tuple findTuple(DbFile file, TransactionId tid, int key) throws Exception {
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() == key) {
+                it.close();
+                return t;
+            }
+        }
+        it.close();
+        throw new NoSuchElementException("no tuple with key " + key);
+    }
+
+    /** Inserts the tuples into the file in a transaction of their own and commits it. */
+    public static void insertTuples(DbFile file, Collection<Tuple> tuples) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (Tuple t : tuples) {
+            Database.getBufferPool().insertTuple(tid, file.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /**
      * Stub DbFile class for unit testing.
      */
@@ -241,6 +312,59 @@ public class TestUtil {
 		}
     }
 
+    /**
+     * HeapFile that counts the pages read from disk, for tests of how
+     * many pages an access method touches.
+     */
+    public static class CountingHeapFile extends HeapFile {
+        public int reads;
+
+        public CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    /**
+     * BTreeFile that counts the pages read from disk.
+     */
+    public static class CountingBTreeFile extends BTreeFile {
+        public int reads;
+
+        public CountingBTreeFile(File f, int key, TupleDesc td) {
+            super(f, key, td);
+        }
+
+        public CountingBTreeFile(File f, int[] keyFields, TupleDesc td) {
+            super(f, keyFields, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    /**
+     * HashFile that counts the pages read from disk.
+     */
+    public static class CountingHashFile extends HashFile {
+        public int reads;
+
+        public CountingHashFile(File f, int key, TupleDesc td) {
+            super(f, key, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
     /**
      * Mock SeqScan class for unit testing.
      */
@@ -0,0 +1,126 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingHeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int ROWS = 10000;
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.INT_TYPE};
+
+    private TupleDesc td;
+    private File dat;
+    private CountingHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(TYPES, new String[]{"id", "year"});
+        File txt = File.createTempFile("venues", ".txt");
+        txt.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(txt))) {
+            for (int i = 0; i < ROWS; i++) {
+                bw.write(i + "," + (1900 + i / 100) + "\n");
+            }
+        }
+        dat = File.createTempFile("venues", ".dat");
+        dat.deleteOnExit();
+        ZoneMap.zoneFile(dat).deleteOnExit();
+        HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), 2, TYPES, ',');
+        hf = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(hf, "venues");
+    }
+
+    private int count(SeqScan scan) throws Exception {
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /**
+     * Unit test for skipping pages: a range predicate on the load order
+     * reads only the pages that hold the range.
+     */
+    @Test public void skipScan() throws Exception {
+        Predicate recent = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(1990));
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "v");
+        scan.addFilter(recent);
+        assertEquals(900, count(scan));
+        assertEquals(hf.numPages(), hf.reads);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.createZoneMap();
+        hf.reads = 0;
+        tid = new TransactionId();
+        scan = new SeqScan(tid, hf.getId(), "v");
+        scan.addFilter(recent);
+        assertEquals(900, count(scan));
+        assertTrue(hf.reads <= 900 / 504 + 2);
+
+        scan = new SeqScan(tid, hf.getId(), "v");
+        scan.addFilter(new Predicate(1, Predicate.Op.EQUALS, new IntField(1850)));
+        assertEquals(0, count(scan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for keeping the zone map up to date: a value inserted into
+     * an old page is found before and after the page is written, and after
+     * the table is reopened.
+     */
+    @Test public void insertAndReopen() throws Exception {
+        hf.createZoneMap();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, first);
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(3000));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(0, t.getRecordId().getPageId().getPageNumber());
+
+        Predicate future = new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(3000));
+        SeqScan scan = new SeqScan(tid, hf.getId(), "v");
+        scan.addFilter(future);
+        assertEquals(1, count(scan));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        CountingHeapFile reopened = new CountingHeapFile(dat, td);
+        Database.getCatalog().addTable(reopened, "venues");
+        assertNotNull(reopened.getZoneMap());
+        tid = new TransactionId();
+        scan = new SeqScan(tid, reopened.getId(), "v");
+        scan.addFilter(future);
+        assertEquals(1, count(scan));
+        assertEquals(1, reopened.reads);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -243,6 +243,49 @@ public class LogTest extends SimpleDbTestBase {
         t.commit();
     }
 
+    @Test public void TestAbortAfterCheckpointAndOtherTraffic()
+            throws IOException, DbException, TransactionAbortedException {
+        setup();
+        doInsert(hf1, 1, 2);
+
+        // *** Test:
+        // T1 updates on both sides of a checkpoint (which truncates the
+        // log) while other transactions commit; T1's undo chain must
+        // still reach all of its updates
+
+        Transaction t1 = new Transaction();
+        t1.start();
+        insertRow(hf1, t1, 3, 0);
+        Database.getBufferPool().flushAllPages();
+
+        for (int i = 0; i < 5; i++) {
+            doInsert(hf2, 30 + 2 * i, 31 + 2 * i);
+        }
+        Database.getLogFile().logCheckpoint();
+
+        insertRow(hf1, t1, 4, 0);
+        abort(t1);
+
+        Transaction t = new Transaction();
+        t.start();
+        look(hf1, t, 1, true);
+        look(hf1, t, 2, true);
+        look(hf1, t, 3, false);
+        look(hf1, t, 4, false);
+        look(hf2, t, 30, true);
+        look(hf2, t, 39, true);
+        t.commit();
+
+        crash();
+
+        t = new Transaction();
+        t.start();
+        look(hf1, t, 3, false);
+        look(hf1, t, 4, false);
+        look(hf2, t, 39, true);
+        t.commit();
+    }
+
     @Test public void TestAbortCrash()
             throws IOException, DbException, TransactionAbortedException {
         setup();
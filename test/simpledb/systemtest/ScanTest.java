@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -130,6 +131,50 @@ public class ScanTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Many threads scanning a table larger than the buffer pool at the same
+     * time, so hits, misses and evictions race with each other.
+     */
+    @Test public void testConcurrentScans() throws Exception {
+        // 504 tuples per page of two int columns, so 20 pages
+        final int rows = 504 * 20;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, rows, null, null);
+        Database.resetBufferPool(10);
+
+        final int threads = 8;
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] scanners = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            scanners[i] = new Thread(() -> {
+                try {
+                    TransactionId tid = new TransactionId();
+                    for (int pass = 0; pass < 5; pass++) {
+                        SeqScan scan = new SeqScan(tid, f.getId(), "");
+                        scan.open();
+                        int count = 0;
+                        while (scan.hasNext()) {
+                            scan.next();
+                            count++;
+                        }
+                        scan.close();
+                        if (count != rows) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    Database.getBufferPool().transactionComplete(tid);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failures.incrementAndGet();
+                }
+            });
+            scanners[i].start();
+        }
+        for (Thread t : scanners) {
+            t.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);